@@ -0,0 +1,364 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.columnar;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.libholmes.MappedOctetReader;
+import org.libholmes.OctetReader;
+import org.libholmes.OctetString;
+import org.libholmes.ParseException;
+
+/** A class for reading a columnar file written by ColumnarWriter.
+ *
+ * The file is memory-mapped, and only the footer is read when the file
+ * is opened. Column blocks are decoded on request, one chunk at a time,
+ * into a caller-supplied array, so a scan touches only the columns which
+ * it needs and allocates nothing per row. The minimum and maximum value
+ * of each column within each chunk can be used to skip chunks without
+ * decoding them.
+ *
+ * Instances are not thread-safe, but separate instances may read the
+ * same file concurrently.
+ */
+public final class ColumnarReader {
+    /** The length of the trailer, in octets. */
+    private static final int TRAILER_LENGTH = 16;
+
+    /** The mapped file. */
+    private final MappedOctetReader reader;
+
+    /** The name of each column. */
+    private final String[] names;
+
+    /** The type of each column. */
+    private final int[] types;
+
+    /** The requested encoding of each column. */
+    private final int[] encodings;
+
+    /** The number of rows in each chunk. */
+    private final int[] rowCounts;
+
+    /** The offset of each block, indexed by chunk then column. */
+    private final long[][] offsets;
+
+    /** The length of each block, indexed by chunk then column. */
+    private final int[][] lengths;
+
+    /** The actual encoding of each block, indexed by chunk then column. */
+    private final int[][] blockEncodings;
+
+    /** The minimum value of each block, indexed by chunk then column. */
+    private final long[][] mins;
+
+    /** The maximum value of each block, indexed by chunk then column. */
+    private final long[][] maxs;
+
+    /** The total number of rows. */
+    private final long totalRows;
+
+    /** Open ColumnarReader for a file.
+     * @param path the pathname of the file to be read
+     * @throws IOException if the file could not be opened or mapped
+     * @throws ParseException if the file is not a valid columnar file
+     */
+    public ColumnarReader(Path path) throws IOException, ParseException {
+        reader = new MappedOctetReader(path, OctetString.LITTLE_ENDIAN);
+        long size = reader.remainingLong();
+        int magicLength = ColumnarWriter.MAGIC.length;
+        if (size < magicLength + TRAILER_LENGTH) {
+            throw new ParseException("truncated columnar file");
+        }
+        if (!Arrays.equals(reader.peekBytes(0, magicLength),
+            ColumnarWriter.MAGIC)) {
+            throw new ParseException("columnar file has invalid magic");
+        }
+        reader.setPosition(size - TRAILER_LENGTH);
+        long footerOffset = reader.readLong();
+        if (!Arrays.equals(reader.readBytes(magicLength),
+            ColumnarWriter.MAGIC)) {
+            throw new ParseException(
+                "columnar file has invalid trailing magic");
+        }
+        if ((footerOffset < magicLength) ||
+            (footerOffset > size - TRAILER_LENGTH)) {
+            throw new ParseException("invalid columnar footer offset");
+        }
+
+        try {
+            reader.setPosition(footerOffset);
+            int columnCount = reader.readInt();
+            if ((columnCount < 0) || (columnCount > 0xffff)) {
+                throw new ParseException("invalid columnar column count");
+            }
+            names = new String[columnCount];
+            types = new int[columnCount];
+            encodings = new int[columnCount];
+            for (int i = 0; i != columnCount; ++i) {
+                int nameLength = reader.readShort() & 0xffff;
+                names[i] = new String(reader.readBytes(nameLength),
+                    StandardCharsets.UTF_8);
+                types[i] = reader.readByte();
+                encodings[i] = reader.readByte();
+                if ((types[i] != ColumnarWriter.UINT32) &&
+                    (types[i] != ColumnarWriter.INT64)) {
+                    throw new ParseException("unknown columnar column type");
+                }
+            }
+
+            int chunkCount = reader.readInt();
+            long directoryLength = chunkCount * (4 + 29L * columnCount);
+            long available = reader.remainingLong() - TRAILER_LENGTH;
+            if ((chunkCount < 0) || (directoryLength > available)) {
+                throw new ParseException("invalid columnar chunk count");
+            }
+            rowCounts = new int[chunkCount];
+            offsets = new long[chunkCount][columnCount];
+            lengths = new int[chunkCount][columnCount];
+            blockEncodings = new int[chunkCount][columnCount];
+            mins = new long[chunkCount][columnCount];
+            maxs = new long[chunkCount][columnCount];
+            long total = 0;
+            for (int i = 0; i != chunkCount; ++i) {
+                rowCounts[i] = reader.readInt();
+                if (rowCounts[i] < 1) {
+                    throw new ParseException("invalid columnar row count");
+                }
+                total += rowCounts[i];
+                for (int j = 0; j != columnCount; ++j) {
+                    offsets[i][j] = reader.readLong();
+                    lengths[i][j] = reader.readInt();
+                    blockEncodings[i][j] = reader.readByte();
+                    mins[i][j] = reader.readLong();
+                    maxs[i][j] = reader.readLong();
+                    if ((offsets[i][j] < magicLength) ||
+                        (lengths[i][j] < 0) ||
+                        (offsets[i][j] > footerOffset - lengths[i][j])) {
+                        throw new ParseException(
+                            "columnar block extends beyond data region");
+                    }
+                }
+            }
+            totalRows = total;
+        } catch (IndexOutOfBoundsException ex) {
+            throw new ParseException("truncated columnar footer");
+        }
+    }
+
+    /** Get the number of columns.
+     * @return the number of columns
+     */
+    public int getColumnCount() {
+        return names.length;
+    }
+
+    /** Get the name of a column.
+     * @param column the index of the column
+     * @return the name
+     */
+    public String getColumnName(int column) {
+        return names[column];
+    }
+
+    /** Get the type of a column.
+     * @param column the index of the column
+     * @return the column type, ColumnarWriter.UINT32 or INT64
+     */
+    public int getColumnType(int column) {
+        return types[column];
+    }
+
+    /** Get the requested encoding of a column.
+     * Individual chunks may have been written using PLAIN encoding if the
+     * requested encoding was unsuitable.
+     * @param column the index of the column
+     * @return the requested encoding
+     */
+    public int getColumnEncoding(int column) {
+        return encodings[column];
+    }
+
+    /** Find a column by name.
+     * @param name the name of the column
+     * @return the index of the column, or -1 if not found
+     */
+    public int findColumn(String name) {
+        for (int i = 0; i != names.length; ++i) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Get the number of chunks.
+     * @return the number of chunks
+     */
+    public int getChunkCount() {
+        return rowCounts.length;
+    }
+
+    /** Get the number of rows in a chunk.
+     * @param chunk the index of the chunk
+     * @return the number of rows
+     */
+    public int getRowCount(int chunk) {
+        return rowCounts[chunk];
+    }
+
+    /** Get the total number of rows.
+     * @return the number of rows
+     */
+    public long getRowCount() {
+        return totalRows;
+    }
+
+    /** Get the minimum value of a column within a chunk.
+     * @param chunk the index of the chunk
+     * @param column the index of the column
+     * @return the minimum value
+     */
+    public long getMin(int chunk, int column) {
+        return mins[chunk][column];
+    }
+
+    /** Get the maximum value of a column within a chunk.
+     * @param chunk the index of the chunk
+     * @param column the index of the column
+     * @return the maximum value
+     */
+    public long getMax(int chunk, int column) {
+        return maxs[chunk][column];
+    }
+
+    /** Read a value at the width of a given column type.
+     * @param block the block
+     * @param index the index into the block
+     * @param type the column type
+     * @return the value
+     */
+    private static long getValue(OctetString block, int index, int type) {
+        return (type == ColumnarWriter.UINT32) ?
+            (block.getInt(index) & 0xffffffffL) : block.getLong(index);
+    }
+
+    /** Read the values of a column within a chunk.
+     * @param chunk the index of the chunk
+     * @param column the index of the column
+     * @param dst an array into which the values should be placed, which
+     *  must be at least as long as the number of rows in the chunk
+     * @return the number of rows in the chunk
+     * @throws ParseException if the block cannot be decoded
+     */
+    public int read(int chunk, int column, long[] dst)
+        throws ParseException {
+
+        int count = rowCounts[chunk];
+        if (dst.length < count) {
+            throw new IllegalArgumentException(
+                "destination array too short for chunk");
+        }
+        int type = types[column];
+        int width = (type == ColumnarWriter.UINT32) ? 4 : 8;
+        OctetString block = reader.getOctetString(offsets[chunk][column],
+            lengths[chunk][column]);
+        try {
+            switch (blockEncodings[chunk][column]) {
+                case ColumnarWriter.PLAIN:
+                    if (block.length() != count * width) {
+                        throw new ParseException(
+                            "columnar block has wrong length");
+                    }
+                    for (int i = 0; i != count; ++i) {
+                        dst[i] = getValue(block, i * width, type);
+                    }
+                    break;
+                case ColumnarWriter.DELTA:
+                    readDelta(block, count, dst);
+                    break;
+                case ColumnarWriter.DICTIONARY:
+                    readDictionary(block, count, type, width, dst);
+                    break;
+                default:
+                    throw new ParseException(
+                        "unknown columnar block encoding");
+            }
+        } catch (IndexOutOfBoundsException ex) {
+            throw new ParseException("truncated columnar block");
+        }
+        return count;
+    }
+
+    /** Decode a delta-encoded block.
+     * @param block the block
+     * @param count the number of rows
+     * @param dst an array into which the values should be placed
+     * @throws ParseException if the block cannot be decoded
+     */
+    private static void readDelta(OctetString block, int count, long[] dst)
+        throws ParseException {
+
+        OctetReader in = block.makeOctetReader();
+        long value = in.readLong();
+        dst[0] = value;
+        for (int i = 1; i != count; ++i) {
+            long v = 0;
+            int shift = 0;
+            int b;
+            do {
+                if (shift > 63) {
+                    throw new ParseException(
+                        "columnar varint too long");
+                }
+                b = in.readByte();
+                v |= (long) (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            value += (v >>> 1) ^ -(v & 1);
+            dst[i] = value;
+        }
+    }
+
+    /** Decode a dictionary-encoded block.
+     * @param block the block
+     * @param count the number of rows
+     * @param type the column type
+     * @param width the width of the column type, in octets
+     * @param dst an array into which the values should be placed
+     * @throws ParseException if the block cannot be decoded
+     */
+    private static void readDictionary(OctetString block, int count,
+        int type, int width, long[] dst) throws ParseException {
+
+        int size = block.getInt(0);
+        if ((size < 1) || (size > ColumnarWriter.MAX_DICTIONARY_SIZE)) {
+            throw new ParseException("invalid columnar dictionary size");
+        }
+        long[] dictionary = new long[size];
+        for (int i = 0; i != size; ++i) {
+            dictionary[i] = getValue(block, 4 + i * width, type);
+        }
+        int base = 4 + size * width;
+        int indexWidth = (size <= 0x100) ? 1 : 2;
+        if (block.length() != base + count * indexWidth) {
+            throw new ParseException("columnar block has wrong length");
+        }
+        for (int i = 0; i != count; ++i) {
+            int index = (indexWidth == 1) ?
+                (block.getByte(base + i) & 0xff) :
+                (block.getShort(base + i * 2) & 0xffff);
+            if (index >= size) {
+                throw new ParseException(
+                    "columnar dictionary index out of range");
+            }
+            dst[i] = dictionary[index];
+        }
+    }
+}
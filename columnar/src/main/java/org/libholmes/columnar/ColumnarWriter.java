@@ -0,0 +1,479 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.columnar;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/** A class for writing rows of integer fields to a columnar file.
+ *
+ * Rows are accumulated in memory until a chunk is full, then each column
+ * of the chunk is written as a contiguous block, so that a reader can
+ * fetch the columns it needs without touching the others. The minimum
+ * and maximum value of each column within each chunk are recorded, so
+ * that a reader can skip chunks which cannot contain values of interest.
+ *
+ * The file is self-describing. All multi-octet integers are little-endian.
+ * The file begins with an 8-octet magic number, followed by the column
+ * blocks, followed by a footer, followed by the offset of the footer (8
+ * octets) and the magic number again. The footer contains:
+ * - the number of columns (4 octets), then for each column its name
+ *   (2-octet length, then UTF-8), its type and its requested encoding
+ *   (1 octet each); then
+ * - the number of chunks (4 octets), then for each chunk its row count
+ *   (4 octets), then for each column the offset (8 octets), length (4
+ *   octets), actual encoding (1 octet), minimum (8 octets) and maximum
+ *   (8 octets) of its block.
+ *
+ * Each block is encoded in one of the following ways:
+ * - PLAIN: each value at the width of the column type.
+ * - DELTA: the first value (8 octets), then the difference between each
+ *   value and its predecessor as a zigzag-encoded base-128 varint. This
+ *   suits timestamps and other slowly-increasing values.
+ * - DICTIONARY: the number of distinct values (4 octets), then the
+ *   distinct values at the width of the column type, then for each row an
+ *   index into those values of 1 octet (if there are no more than 256
+ *   distinct values) or 2 octets (otherwise). This suits addresses and
+ *   other values drawn from a small set. If a chunk has more than 65536
+ *   distinct values then it is written as PLAIN instead.
+ *
+ * Fields which are not set for a given row have the value zero.
+ */
+public final class ColumnarWriter implements Closeable {
+    /** A constant used to indicate an unsigned 32-bit column type. */
+    public static final int UINT32 = 0;
+
+    /** A constant used to indicate a signed 64-bit column type. */
+    public static final int INT64 = 1;
+
+    /** A constant used to indicate plain encoding. */
+    public static final int PLAIN = 0;
+
+    /** A constant used to indicate delta encoding. */
+    public static final int DELTA = 1;
+
+    /** A constant used to indicate dictionary encoding. */
+    public static final int DICTIONARY = 2;
+
+    /** The default number of rows per chunk. */
+    public static final int DEFAULT_CHUNK_ROWS = 0x10000;
+
+    /** The magic number at the start and end of the file. */
+    static final byte[] MAGIC =
+        "LHCOLUMN".getBytes(StandardCharsets.US_ASCII);
+
+    /** The maximum number of distinct values in a dictionary. */
+    static final int MAX_DICTIONARY_SIZE = 0x10000;
+
+    /** A growable little-endian buffer. */
+    private static final class Output {
+        /** The buffer content. */
+        ByteBuffer buffer;
+
+        /** Construct Output.
+         * @param capacity the initial capacity, in octets
+         */
+        Output(int capacity) {
+            buffer = ByteBuffer.allocate(capacity)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        /** Ensure that there is room for a given number of octets.
+         * @param count the number of octets required
+         */
+        void reserve(int count) {
+            if (buffer.remaining() < count) {
+                int capacity = Math.max(buffer.capacity() * 2,
+                    buffer.position() + count);
+                ByteBuffer newBuffer = ByteBuffer.allocate(capacity)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+                buffer.flip();
+                newBuffer.put(buffer);
+                buffer = newBuffer;
+            }
+        }
+
+        /** Append a value at the width of a given column type.
+         * @param type the column type
+         * @param value the value
+         */
+        void putValue(int type, long value) {
+            if (type == UINT32) {
+                reserve(4);
+                buffer.putInt((int) value);
+            } else {
+                reserve(8);
+                buffer.putLong(value);
+            }
+        }
+
+        /** Append a zigzag-encoded base-128 varint.
+         * @param value the value
+         */
+        void putVarint(long value) {
+            reserve(10);
+            long v = (value << 1) ^ (value >> 63);
+            while ((v & ~0x7fL) != 0) {
+                buffer.put((byte) ((v & 0x7f) | 0x80));
+                v >>>= 7;
+            }
+            buffer.put((byte) v);
+        }
+    }
+
+    /** A column, and the values buffered for the current chunk. */
+    private static final class Column {
+        /** The name of the column. */
+        final String name;
+
+        /** The column type. */
+        final int type;
+
+        /** The requested encoding. */
+        final int encoding;
+
+        /** The values buffered for the current chunk. */
+        long[] values;
+
+        /** The value for the current row. */
+        long current = 0;
+
+        /** Construct Column.
+         * @param name the name of the column
+         * @param type the column type
+         * @param encoding the requested encoding
+         */
+        Column(String name, int type, int encoding) {
+            this.name = name;
+            this.type = type;
+            this.encoding = encoding;
+        }
+    }
+
+    /** The channel to which the file is written. */
+    private final WritableByteChannel out;
+
+    /** The number of rows per chunk. */
+    private final int chunkRows;
+
+    /** The columns. */
+    private final ArrayList<Column> columns = new ArrayList<Column>();
+
+    /** A buffer for encoding column blocks. */
+    private final Output block = new Output(0x10000);
+
+    /** A buffer for the chunk directory, which forms part of the footer.
+     */
+    private final Output directory = new Output(0x1000);
+
+    /** The hash table slots for dictionary encoding, each of which holds
+     * an index into dictValues plus one, or zero if empty. */
+    private int[] dictSlots = null;
+
+    /** The distinct values found during dictionary encoding. */
+    private long[] dictValues = null;
+
+    /** The index into dictValues of each row, for dictionary encoding. */
+    private int[] dictIndices = null;
+
+    /** The number of chunks written. */
+    private int chunkCount = 0;
+
+    /** The number of rows buffered for the current chunk. */
+    private int rowCount = 0;
+
+    /** The total number of rows written. */
+    private long totalRows = 0;
+
+    /** The number of octets written to the channel. */
+    private long position = 0;
+
+    /** True if this writer has been closed, otherwise false. */
+    private boolean closed = false;
+
+    /** Construct ColumnarWriter for a channel.
+     * The magic number is written immediately.
+     * @param out the channel to which the file should be written
+     * @param chunkRows the number of rows per chunk
+     * @throws IOException if the file could not be written
+     */
+    public ColumnarWriter(WritableByteChannel out, int chunkRows)
+        throws IOException {
+
+        if (chunkRows < 1) {
+            throw new IllegalArgumentException(
+                "chunk size must be at least 1 row");
+        }
+        this.out = out;
+        this.chunkRows = chunkRows;
+        write(ByteBuffer.wrap(MAGIC));
+    }
+
+    /** Construct ColumnarWriter for a file.
+     * Any existing file is overwritten.
+     * @param path the pathname of the file to be written
+     * @throws IOException if the file could not be written
+     */
+    public ColumnarWriter(Path path) throws IOException {
+        this(FileChannel.open(path, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE),
+            DEFAULT_CHUNK_ROWS);
+    }
+
+    /** Write the content of a buffer to the channel.
+     * @param buffer the buffer, which should be ready for reading
+     * @throws IOException if the content could not be written
+     */
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += out.write(buffer);
+        }
+    }
+
+    /** Add a column.
+     * All columns must be added before the first row is written.
+     * @param name the name of the column
+     * @param type the column type, UINT32 or INT64
+     * @param encoding the requested encoding, PLAIN, DELTA or DICTIONARY
+     * @return the index of the column
+     */
+    public int addColumn(String name, int type, int encoding) {
+        if ((rowCount != 0) || (totalRows != 0)) {
+            throw new IllegalStateException(
+                "columns must be added before the first row");
+        }
+        if ((type != UINT32) && (type != INT64)) {
+            throw new IllegalArgumentException("unknown column type");
+        }
+        if ((encoding != PLAIN) && (encoding != DELTA) &&
+            (encoding != DICTIONARY)) {
+            throw new IllegalArgumentException("unknown column encoding");
+        }
+        if (name.getBytes(StandardCharsets.UTF_8).length > 0xffff) {
+            throw new IllegalArgumentException("column name too long");
+        }
+        for (Column column : columns) {
+            if (column.name.equals(name)) {
+                throw new IllegalArgumentException(
+                    "duplicate column name");
+            }
+        }
+        Column column = new Column(name, type, encoding);
+        column.values = new long[chunkRows];
+        columns.add(column);
+        return columns.size() - 1;
+    }
+
+    /** Set the value of a field in the current row.
+     * @param column the index of the column
+     * @param value the value
+     */
+    public void set(int column, long value) {
+        Column c = columns.get(column);
+        if ((c.type == UINT32) && ((value & ~0xffffffffL) != 0)) {
+            throw new IllegalArgumentException(
+                "value out of range for unsigned 32-bit column");
+        }
+        c.current = value;
+    }
+
+    /** End the current row.
+     * Fields which have not been set are given the value zero.
+     * @throws IOException if the file could not be written
+     */
+    public void endRow() throws IOException {
+        for (Column column : columns) {
+            column.values[rowCount] = column.current;
+            column.current = 0;
+        }
+        rowCount += 1;
+        totalRows += 1;
+        if (rowCount == chunkRows) {
+            writeChunk();
+        }
+    }
+
+    /** Get the number of rows written.
+     * @return the number of rows, including any not yet flushed
+     */
+    public long getRowCount() {
+        return totalRows;
+    }
+
+    /** Encode a block using plain encoding.
+     * @param column the column
+     */
+    private void encodePlain(Column column) {
+        for (int i = 0; i != rowCount; ++i) {
+            block.putValue(column.type, column.values[i]);
+        }
+    }
+
+    /** Encode a block using delta encoding.
+     * @param column the column
+     */
+    private void encodeDelta(Column column) {
+        long[] values = column.values;
+        block.reserve(8);
+        block.buffer.putLong(values[0]);
+        for (int i = 1; i != rowCount; ++i) {
+            block.putVarint(values[i] - values[i - 1]);
+        }
+    }
+
+    /** Encode a block using dictionary encoding.
+     * @param column the column
+     * @return true if successful, or false if there were too many
+     *  distinct values
+     */
+    private boolean encodeDictionary(Column column) {
+        if (dictSlots == null) {
+            int capacity = Integer.highestOneBit(
+                Math.min(chunkRows, MAX_DICTIONARY_SIZE) * 2 - 1) << 1;
+            dictSlots = new int[capacity];
+            dictValues = new long[MAX_DICTIONARY_SIZE];
+            dictIndices = new int[chunkRows];
+        }
+        Arrays.fill(dictSlots, 0);
+        int mask = dictSlots.length - 1;
+
+        // Find the distinct values, and the index of each row's value.
+        long[] values = column.values;
+        int[] indices = dictIndices;
+        int size = 0;
+        for (int i = 0; i != rowCount; ++i) {
+            long value = values[i];
+            long h = value * 0x9e3779b97f4a7c15L;
+            int slot = (int) (h ^ (h >>> 32)) & mask;
+            while (true) {
+                int entry = dictSlots[slot];
+                if (entry == 0) {
+                    if (size == MAX_DICTIONARY_SIZE) {
+                        return false;
+                    }
+                    dictValues[size] = value;
+                    dictSlots[slot] = ++size;
+                    indices[i] = size - 1;
+                    break;
+                }
+                if (dictValues[entry - 1] == value) {
+                    indices[i] = entry - 1;
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        block.reserve(4);
+        block.buffer.putInt(size);
+        for (int i = 0; i != size; ++i) {
+            block.putValue(column.type, dictValues[i]);
+        }
+        if (size <= 0x100) {
+            block.reserve(rowCount);
+            for (int i = 0; i != rowCount; ++i) {
+                block.buffer.put((byte) indices[i]);
+            }
+        } else {
+            block.reserve(rowCount * 2);
+            for (int i = 0; i != rowCount; ++i) {
+                block.buffer.putShort((short) indices[i]);
+            }
+        }
+        return true;
+    }
+
+    /** Write the buffered rows as a chunk.
+     * @throws IOException if the chunk could not be written
+     */
+    private void writeChunk() throws IOException {
+        directory.reserve(4);
+        directory.buffer.putInt(rowCount);
+        for (Column column : columns) {
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+            for (int i = 0; i != rowCount; ++i) {
+                long value = column.values[i];
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+
+            block.buffer.clear();
+            int encoding = column.encoding;
+            if (encoding == DELTA) {
+                encodeDelta(column);
+            } else if (encoding == DICTIONARY) {
+                if (!encodeDictionary(column)) {
+                    block.buffer.clear();
+                    encoding = PLAIN;
+                    encodePlain(column);
+                }
+            } else {
+                encodePlain(column);
+            }
+            block.buffer.flip();
+
+            directory.reserve(29);
+            directory.buffer.putLong(position);
+            directory.buffer.putInt(block.buffer.remaining());
+            directory.buffer.put((byte) encoding);
+            directory.buffer.putLong(min);
+            directory.buffer.putLong(max);
+            write(block.buffer);
+        }
+        chunkCount += 1;
+        rowCount = 0;
+    }
+
+    /** Write any buffered rows, then the footer, then close the channel.
+     * @throws IOException if the file could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (rowCount != 0) {
+                writeChunk();
+            }
+            long footerOffset = position;
+            Output footer = new Output(0x1000);
+            footer.reserve(4);
+            footer.buffer.putInt(columns.size());
+            for (Column column : columns) {
+                byte[] name = column.name.getBytes(StandardCharsets.UTF_8);
+                footer.reserve(name.length + 4);
+                footer.buffer.putShort((short) name.length);
+                footer.buffer.put(name);
+                footer.buffer.put((byte) column.type);
+                footer.buffer.put((byte) column.encoding);
+            }
+            footer.reserve(4);
+            footer.buffer.putInt(chunkCount);
+            directory.buffer.flip();
+            footer.reserve(directory.buffer.remaining());
+            footer.buffer.put(directory.buffer);
+            footer.reserve(16);
+            footer.buffer.putLong(footerOffset);
+            footer.buffer.put(MAGIC);
+            footer.buffer.flip();
+            write(footer.buffer);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,234 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.columnar;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.libholmes.Artefact;
+import org.libholmes.OctetString;
+import org.libholmes.Timestamped;
+import org.libholmes.pcap.PcapPacket;
+import org.libholmes.inet.Inet4Datagram;
+import org.libholmes.tcp.TcpSegment;
+import org.libholmes.udp.UdpDatagram;
+
+/** A class for writing decoded packet metadata to a columnar file.
+ *
+ * Each packet is written as one row, with fields taken from whichever of
+ * the PCAP, IPv4, TCP and UDP layers are present. The layers column
+ * records which of these were found, since fields belonging to absent
+ * layers are written as zero. Timestamps are delta-encoded, and
+ * addresses, protocols, destination ports and TCP flags are dictionary
+ * encoded, since these typically take few distinct values within a
+ * chunk.
+ */
+public final class PacketColumnWriter implements Closeable {
+    /** The name of the timestamp column, in nanoseconds since the epoch.
+     */
+    public static final String TIMESTAMP = "timestamp";
+
+    /** The name of the captured length column. */
+    public static final String CAPTURED_LENGTH = "capturedLength";
+
+    /** The name of the original length column. */
+    public static final String ORIGINAL_LENGTH = "originalLength";
+
+    /** The name of the layers column. */
+    public static final String LAYERS = "layers";
+
+    /** The name of the IPv4 source address column. */
+    public static final String SRC_ADDR = "srcAddr";
+
+    /** The name of the IPv4 destination address column. */
+    public static final String DST_ADDR = "dstAddr";
+
+    /** The name of the IP protocol column. */
+    public static final String PROTOCOL = "protocol";
+
+    /** The name of the IPv4 total length column. */
+    public static final String IP_LENGTH = "ipLength";
+
+    /** The name of the source port column. */
+    public static final String SRC_PORT = "srcPort";
+
+    /** The name of the destination port column. */
+    public static final String DST_PORT = "dstPort";
+
+    /** The name of the TCP flags column.
+     * Bits 0 to 7 hold the flags from octet 13 of the TCP header (FIN
+     * through CWR), and bit 8 holds the NS flag.
+     */
+    public static final String TCP_FLAGS = "tcpFlags";
+
+    /** The name of the TCP or UDP payload length column. */
+    public static final String PAYLOAD_LENGTH = "payloadLength";
+
+    /** A bit in the layers column indicating an IPv4 datagram. */
+    public static final int LAYER_INET4 = 1;
+
+    /** A bit in the layers column indicating a TCP segment. */
+    public static final int LAYER_TCP = 2;
+
+    /** A bit in the layers column indicating a UDP datagram. */
+    public static final int LAYER_UDP = 4;
+
+    /** The writer for the columnar file. */
+    private final ColumnarWriter writer;
+
+    /** The index of the timestamp column. */
+    private final int timestamp;
+
+    /** The index of the captured length column. */
+    private final int capturedLength;
+
+    /** The index of the original length column. */
+    private final int originalLength;
+
+    /** The index of the layers column. */
+    private final int layers;
+
+    /** The index of the source address column. */
+    private final int srcAddr;
+
+    /** The index of the destination address column. */
+    private final int dstAddr;
+
+    /** The index of the protocol column. */
+    private final int protocol;
+
+    /** The index of the IP length column. */
+    private final int ipLength;
+
+    /** The index of the source port column. */
+    private final int srcPort;
+
+    /** The index of the destination port column. */
+    private final int dstPort;
+
+    /** The index of the TCP flags column. */
+    private final int tcpFlags;
+
+    /** The index of the payload length column. */
+    private final int payloadLength;
+
+    /** Construct PacketColumnWriter.
+     * The packet metadata columns are added to the given writer, which
+     * must not yet have had any rows written to it.
+     * @param writer the writer for the columnar file
+     */
+    public PacketColumnWriter(ColumnarWriter writer) {
+        this.writer = writer;
+        timestamp = writer.addColumn(TIMESTAMP, ColumnarWriter.INT64,
+            ColumnarWriter.DELTA);
+        capturedLength = writer.addColumn(CAPTURED_LENGTH,
+            ColumnarWriter.UINT32, ColumnarWriter.PLAIN);
+        originalLength = writer.addColumn(ORIGINAL_LENGTH,
+            ColumnarWriter.UINT32, ColumnarWriter.PLAIN);
+        layers = writer.addColumn(LAYERS, ColumnarWriter.UINT32,
+            ColumnarWriter.DICTIONARY);
+        srcAddr = writer.addColumn(SRC_ADDR, ColumnarWriter.UINT32,
+            ColumnarWriter.DICTIONARY);
+        dstAddr = writer.addColumn(DST_ADDR, ColumnarWriter.UINT32,
+            ColumnarWriter.DICTIONARY);
+        protocol = writer.addColumn(PROTOCOL, ColumnarWriter.UINT32,
+            ColumnarWriter.DICTIONARY);
+        ipLength = writer.addColumn(IP_LENGTH, ColumnarWriter.UINT32,
+            ColumnarWriter.PLAIN);
+        srcPort = writer.addColumn(SRC_PORT, ColumnarWriter.UINT32,
+            ColumnarWriter.PLAIN);
+        dstPort = writer.addColumn(DST_PORT, ColumnarWriter.UINT32,
+            ColumnarWriter.DICTIONARY);
+        tcpFlags = writer.addColumn(TCP_FLAGS, ColumnarWriter.UINT32,
+            ColumnarWriter.DICTIONARY);
+        payloadLength = writer.addColumn(PAYLOAD_LENGTH,
+            ColumnarWriter.UINT32, ColumnarWriter.PLAIN);
+    }
+
+    /** Read a big-endian unsigned integer, regardless of byte order.
+     * @param content the octet string
+     * @param index the index into the octet string
+     * @return the integer
+     */
+    private static long getUnsignedInt(OctetString content, int index) {
+        return ((content.getByte(index) & 0xffL) << 24) |
+            ((content.getByte(index + 1) & 0xffL) << 16) |
+            ((content.getByte(index + 2) & 0xffL) << 8) |
+            (content.getByte(index + 3) & 0xffL);
+    }
+
+    /** Get the flags from a TCP segment.
+     * @param segment the TCP segment
+     * @return the flags, as for the TCP flags column
+     */
+    private static int getFlags(TcpSegment segment) {
+        int flags = 0;
+        flags |= segment.getNsFlag() ? 0x100 : 0;
+        flags |= segment.getCwrFlag() ? 0x80 : 0;
+        flags |= segment.getEceFlag() ? 0x40 : 0;
+        flags |= segment.getUrgFlag() ? 0x20 : 0;
+        flags |= segment.getAckFlag() ? 0x10 : 0;
+        flags |= segment.getPshFlag() ? 0x08 : 0;
+        flags |= segment.getRstFlag() ? 0x04 : 0;
+        flags |= segment.getSynFlag() ? 0x02 : 0;
+        flags |= segment.getFinFlag() ? 0x01 : 0;
+        return flags;
+    }
+
+    /** Write the metadata for a packet.
+     * @param artefact the innermost decoded artefact of the packet
+     * @throws IOException if the file could not be written
+     */
+    public void write(Artefact artefact) throws IOException {
+        Timestamped ts = artefact.find(Timestamped.class);
+        if (ts != null) {
+            writer.set(timestamp, ts.getTimestamp());
+        }
+        PcapPacket packet = artefact.find(PcapPacket.class);
+        if (packet != null) {
+            writer.set(capturedLength,
+                packet.getCapturedLength() & 0xffffffffL);
+            writer.set(originalLength,
+                packet.getOriginalLength() & 0xffffffffL);
+        }
+
+        int found = 0;
+        Inet4Datagram datagram = artefact.find(Inet4Datagram.class);
+        if (datagram != null) {
+            found |= LAYER_INET4;
+            OctetString header = datagram.getHeader();
+            writer.set(srcAddr, getUnsignedInt(header, 12));
+            writer.set(dstAddr, getUnsignedInt(header, 16));
+            writer.set(protocol, datagram.getProtocol());
+            writer.set(ipLength, datagram.getLength());
+        }
+        TcpSegment segment = artefact.find(TcpSegment.class);
+        if (segment != null) {
+            found |= LAYER_TCP;
+            writer.set(srcPort, segment.getSrcPort());
+            writer.set(dstPort, segment.getDstPort());
+            writer.set(tcpFlags, getFlags(segment));
+            writer.set(payloadLength, segment.getPayload().length());
+        }
+        UdpDatagram udp = artefact.find(UdpDatagram.class);
+        if (udp != null) {
+            found |= LAYER_UDP;
+            writer.set(srcPort, udp.getSrcPort());
+            writer.set(dstPort, udp.getDstPort());
+            writer.set(payloadLength, udp.getPayload().length());
+        }
+        writer.set(layers, found);
+        writer.endRow();
+    }
+
+    /** Close the underlying columnar file.
+     * @throws IOException if the file could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
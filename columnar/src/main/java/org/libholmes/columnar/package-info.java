@@ -0,0 +1,11 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+/**
+ * This is a subpackage of libholmes. It provides a columnar binary file
+ * format for storing decoded packet metadata, so that large captures can
+ * be analysed by scanning only the fields of interest.
+ */
+package org.libholmes.columnar;
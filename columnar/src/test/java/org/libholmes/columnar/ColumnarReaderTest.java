@@ -0,0 +1,167 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.columnar;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import org.libholmes.ParseException;
+
+public class ColumnarReaderTest {
+    private static Path makeTempFile() throws IOException {
+        File file = File.createTempFile("libholmes", ".col");
+        file.deleteOnExit();
+        return file.toPath();
+    }
+
+    private static ColumnarWriter makeWriter(Path path, int chunkRows)
+        throws IOException {
+
+        return new ColumnarWriter(Files.newByteChannel(path,
+            StandardOpenOption.WRITE), chunkRows);
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException, ParseException {
+        Path path = makeTempFile();
+        try (ColumnarWriter writer = makeWriter(path, 100)) {
+            int ts = writer.addColumn("ts", ColumnarWriter.INT64,
+                ColumnarWriter.DELTA);
+            int addr = writer.addColumn("addr", ColumnarWriter.UINT32,
+                ColumnarWriter.DICTIONARY);
+            int len = writer.addColumn("len", ColumnarWriter.UINT32,
+                ColumnarWriter.PLAIN);
+            writer.addColumn("unset", ColumnarWriter.INT64,
+                ColumnarWriter.PLAIN);
+            for (int i = 0; i != 250; ++i) {
+                writer.set(ts, 1500000000000000000L + i * 1000L - (i % 3));
+                writer.set(addr, 0xc0a80000L + (i % 5));
+                writer.set(len, 0xffffffffL - i);
+                writer.endRow();
+            }
+            assertEquals(250, writer.getRowCount());
+        }
+
+        ColumnarReader reader = new ColumnarReader(path);
+        assertEquals(4, reader.getColumnCount());
+        assertEquals(250, reader.getRowCount());
+        assertEquals(3, reader.getChunkCount());
+        assertEquals(100, reader.getRowCount(0));
+        assertEquals(50, reader.getRowCount(2));
+        assertEquals(1, reader.findColumn("addr"));
+        assertEquals(-1, reader.findColumn("missing"));
+        assertEquals("len", reader.getColumnName(2));
+        assertEquals(ColumnarWriter.INT64, reader.getColumnType(0));
+        assertEquals(ColumnarWriter.DICTIONARY,
+            reader.getColumnEncoding(1));
+
+        long[] values = new long[100];
+        int row = 0;
+        for (int chunk = 0; chunk != reader.getChunkCount(); ++chunk) {
+            int count = reader.read(chunk, 0, values);
+            for (int i = 0; i != count; ++i) {
+                int r = row + i;
+                assertEquals(1500000000000000000L + r * 1000L - (r % 3),
+                    values[i]);
+            }
+            count = reader.read(chunk, 1, values);
+            for (int i = 0; i != count; ++i) {
+                assertEquals(0xc0a80000L + ((row + i) % 5), values[i]);
+            }
+            count = reader.read(chunk, 2, values);
+            for (int i = 0; i != count; ++i) {
+                assertEquals(0xffffffffL - (row + i), values[i]);
+            }
+            count = reader.read(chunk, 3, values);
+            for (int i = 0; i != count; ++i) {
+                assertEquals(0, values[i]);
+            }
+            row += count;
+        }
+        assertEquals(250, row);
+
+        assertEquals(0xc0a80000L, reader.getMin(1, 1));
+        assertEquals(0xc0a80004L, reader.getMax(1, 1));
+        assertEquals(0xffffffffL - 199, reader.getMin(1, 2));
+        assertEquals(0xffffffffL - 100, reader.getMax(1, 2));
+    }
+
+    @Test
+    public void testDictionaryOverflow() throws IOException, ParseException {
+        int rows = ColumnarWriter.MAX_DICTIONARY_SIZE + 10;
+        Path path = makeTempFile();
+        try (ColumnarWriter writer = makeWriter(path, rows)) {
+            int wide = writer.addColumn("wide", ColumnarWriter.UINT32,
+                ColumnarWriter.DICTIONARY);
+            int medium = writer.addColumn("medium", ColumnarWriter.INT64,
+                ColumnarWriter.DICTIONARY);
+            for (int i = 0; i != rows; ++i) {
+                writer.set(wide, i);
+                writer.set(medium, -(i % 1000));
+                writer.endRow();
+            }
+        }
+
+        ColumnarReader reader = new ColumnarReader(path);
+        long[] values = new long[rows];
+        assertEquals(rows, reader.read(0, 0, values));
+        for (int i = 0; i != rows; ++i) {
+            assertEquals(i, values[i]);
+        }
+        reader.read(0, 1, values);
+        for (int i = 0; i != rows; ++i) {
+            assertEquals(-(i % 1000), values[i]);
+        }
+        assertEquals(-999, reader.getMin(0, 1));
+        assertEquals(0, reader.getMax(0, 1));
+    }
+
+    @Test
+    public void testEmpty() throws IOException, ParseException {
+        Path path = makeTempFile();
+        try (ColumnarWriter writer = makeWriter(path, 10)) {
+            writer.addColumn("x", ColumnarWriter.INT64,
+                ColumnarWriter.DELTA);
+        }
+        ColumnarReader reader = new ColumnarReader(path);
+        assertEquals(1, reader.getColumnCount());
+        assertEquals(0, reader.getChunkCount());
+        assertEquals(0, reader.getRowCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsignedRange() throws IOException {
+        try (ColumnarWriter writer = makeWriter(makeTempFile(), 10)) {
+            int x = writer.addColumn("x", ColumnarWriter.UINT32,
+                ColumnarWriter.PLAIN);
+            writer.set(x, -1);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testLateColumn() throws IOException {
+        try (ColumnarWriter writer = makeWriter(makeTempFile(), 10)) {
+            writer.addColumn("x", ColumnarWriter.UINT32,
+                ColumnarWriter.PLAIN);
+            writer.endRow();
+            writer.addColumn("y", ColumnarWriter.UINT32,
+                ColumnarWriter.PLAIN);
+        }
+    }
+
+    @Test(expected = ParseException.class)
+    public void testBadMagic() throws IOException, ParseException {
+        Path path = makeTempFile();
+        Files.write(path, new byte[40]);
+        new ColumnarReader(path);
+    }
+}
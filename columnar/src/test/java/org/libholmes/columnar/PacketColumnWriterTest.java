@@ -0,0 +1,120 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.columnar;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import org.libholmes.HexOctetReader;
+import org.libholmes.ParseException;
+import org.libholmes.pcap.PcapPacket;
+import org.libholmes.inet.Inet4Datagram;
+import org.libholmes.tcp.TcpSegment;
+import org.libholmes.udp.UdpDatagram;
+
+public class PacketColumnWriterTest {
+    private static final String TCP_PACKET =
+        "5c8f00000001e2400000003c0000003c" +
+        "4500003c000040004006b7fcc0a80084" +
+        "c0a800eb0050c3c2e89b7d7979d976b4" +
+        "a01216a002b80000020405b40402080a" +
+        "e765064c04829ef001030305";
+
+    private static final String UDP_PACKET =
+        "5c8f00010000000000000020000005dc" +
+        "45000020f99340004011be75c0a80088" +
+        "c0a800ebb60d3039000caef174657374";
+
+    private static final String OTHER_PACKET =
+        "5c8f0002000000000000000400000004" +
+        "01020304";
+
+    @Test
+    public void test() throws IOException, ParseException {
+        PcapPacket packet0 = PcapPacket.parse(null,
+            new HexOctetReader(TCP_PACKET));
+        Inet4Datagram datagram0 = Inet4Datagram.parse(packet0,
+            packet0.getPayload().makeOctetReader());
+        TcpSegment segment = TcpSegment.parse(datagram0,
+            datagram0.getPayload());
+
+        PcapPacket packet1 = PcapPacket.parse(null,
+            new HexOctetReader(UDP_PACKET));
+        Inet4Datagram datagram1 = Inet4Datagram.parse(packet1,
+            packet1.getPayload().makeOctetReader());
+        UdpDatagram udp = UdpDatagram.parse(datagram1,
+            datagram1.getPayload());
+
+        PcapPacket packet2 = PcapPacket.parse(null,
+            new HexOctetReader(OTHER_PACKET));
+
+        File file = File.createTempFile("libholmes", ".col");
+        file.deleteOnExit();
+        Path path = file.toPath();
+        try (PacketColumnWriter writer =
+            new PacketColumnWriter(new ColumnarWriter(path))) {
+
+            writer.write(segment);
+            writer.write(udp);
+            writer.write(packet2);
+        }
+
+        ColumnarReader reader = new ColumnarReader(path);
+        assertEquals(3, reader.getRowCount());
+        assertEquals(1, reader.getChunkCount());
+        long[] values = new long[3];
+
+        reader.read(0, reader.findColumn(PacketColumnWriter.TIMESTAMP),
+            values);
+        assertEquals(packet0.getTimestamp(), values[0]);
+        assertEquals(packet1.getTimestamp(), values[1]);
+        assertEquals(packet2.getTimestamp(), values[2]);
+
+        reader.read(0, reader.findColumn(PacketColumnWriter.LAYERS),
+            values);
+        assertArrayEquals(new long[]{
+            PacketColumnWriter.LAYER_INET4 | PacketColumnWriter.LAYER_TCP,
+            PacketColumnWriter.LAYER_INET4 | PacketColumnWriter.LAYER_UDP,
+            0}, values);
+
+        reader.read(0, reader.findColumn(PacketColumnWriter.SRC_ADDR),
+            values);
+        assertArrayEquals(new long[]{0xc0a80084L, 0xc0a80088L, 0},
+            values);
+        reader.read(0, reader.findColumn(PacketColumnWriter.DST_ADDR),
+            values);
+        assertArrayEquals(new long[]{0xc0a800ebL, 0xc0a800ebL, 0},
+            values);
+        reader.read(0, reader.findColumn(PacketColumnWriter.PROTOCOL),
+            values);
+        assertArrayEquals(new long[]{6, 17, 0}, values);
+        reader.read(0, reader.findColumn(PacketColumnWriter.IP_LENGTH),
+            values);
+        assertArrayEquals(new long[]{60, 32, 0}, values);
+        reader.read(0, reader.findColumn(PacketColumnWriter.SRC_PORT),
+            values);
+        assertArrayEquals(new long[]{80, 0xb60d, 0}, values);
+        reader.read(0, reader.findColumn(PacketColumnWriter.DST_PORT),
+            values);
+        assertArrayEquals(new long[]{0xc3c2, 12345, 0}, values);
+        reader.read(0, reader.findColumn(PacketColumnWriter.TCP_FLAGS),
+            values);
+        assertArrayEquals(new long[]{0x12, 0, 0}, values);
+        reader.read(0, reader.findColumn(
+            PacketColumnWriter.PAYLOAD_LENGTH), values);
+        assertArrayEquals(new long[]{0, 4, 0}, values);
+        reader.read(0, reader.findColumn(
+            PacketColumnWriter.CAPTURED_LENGTH), values);
+        assertArrayEquals(new long[]{60, 32, 4}, values);
+        reader.read(0, reader.findColumn(
+            PacketColumnWriter.ORIGINAL_LENGTH), values);
+        assertArrayEquals(new long[]{60, 1500, 4}, values);
+    }
+}
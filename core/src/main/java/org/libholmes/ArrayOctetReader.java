@@ -74,13 +74,12 @@ public class ArrayOctetReader extends OctetReader {
             throw new IndexOutOfBoundsException(
                 "read beyond end of octet stream");
         }
-        int byteOrder = getByteOrder();
-        int result = content[index + ((1 ^ byteOrder) & 1)] & 0xff;
-        result <<= 8;
-        result |= content[index + ((0 ^ byteOrder) & 1)] & 0xff;
+        short result = (getByteOrder() == BIG_ENDIAN) ?
+            BigEndianOctetWindow.getShort(content, index) :
+            LittleEndianOctetWindow.getShort(content, index);
         index += 2;
         rem -= 2;
-        return (short) result;
+        return result;
     }
 
     @Override
@@ -89,14 +88,9 @@ public class ArrayOctetReader extends OctetReader {
             throw new IndexOutOfBoundsException(
                 "read beyond end of octet stream");
         }
-        int byteOrder = getByteOrder();
-        int result = content[index + ((3 ^ byteOrder) & 3)] & 0xff;
-        result <<= 8;
-        result |= content[index + ((2 ^ byteOrder) & 3)] & 0xff;
-        result <<= 8;
-        result |= content[index + ((1 ^ byteOrder) & 3)] & 0xff;
-        result <<= 8;
-        result |= content[index + ((0 ^ byteOrder) & 3)] & 0xff;
+        int result = (getByteOrder() == BIG_ENDIAN) ?
+            BigEndianOctetWindow.getInt(content, index) :
+            LittleEndianOctetWindow.getInt(content, index);
         index += 4;
         rem -= 4;
         return result;
@@ -108,22 +102,9 @@ public class ArrayOctetReader extends OctetReader {
             throw new IndexOutOfBoundsException(
                 "read beyond end of octet stream");
         }
-        int byteOrder = getByteOrder();
-        long result = content[index + ((7 ^ byteOrder) & 7)] & 0xff;
-        result <<= 8;
-        result |= content[index + ((6 ^ byteOrder) & 7)] & 0xff;
-        result <<= 8;
-        result |= content[index + ((5 ^ byteOrder) & 7)] & 0xff;
-        result <<= 8;
-        result |= content[index + ((4 ^ byteOrder) & 7)] & 0xff;
-        result <<= 8;
-        result |= content[index + ((3 ^ byteOrder) & 7)] & 0xff;
-        result <<= 8;
-        result |= content[index + ((2 ^ byteOrder) & 7)] & 0xff;
-        result <<= 8;
-        result |= content[index + ((1 ^ byteOrder) & 7)] & 0xff;
-        result <<= 8;
-        result |= content[index + ((0 ^ byteOrder) & 7)] & 0xff;
+        long result = (getByteOrder() == BIG_ENDIAN) ?
+            BigEndianOctetWindow.getLong(content, index) :
+            LittleEndianOctetWindow.getLong(content, index);
         index += 8;
         rem -= 8;
         return result;
@@ -184,11 +165,9 @@ public class ArrayOctetReader extends OctetReader {
                 "peek beyond end of octet stream");
         }
         int base = index + offset;
-        int byteOrder = getByteOrder();
-        int result = content[base + ((1 ^ byteOrder) & 1)] & 0xff;
-        result <<= 8;
-        result |= content[base + ((0 ^ byteOrder) & 1)] & 0xff;
-        return (short) result;
+        return (getByteOrder() == BIG_ENDIAN) ?
+            BigEndianOctetWindow.getShort(content, base) :
+            LittleEndianOctetWindow.getShort(content, base);
     }
 
     @Override
@@ -202,15 +181,9 @@ public class ArrayOctetReader extends OctetReader {
                 "peek beyond end of octet stream");
         }
         int base = index + offset;
-        int byteOrder = getByteOrder();
-        int result = content[base + ((3 ^ byteOrder) & 3)] & 0xff;
-        result <<= 8;
-        result |= content[base + ((2 ^ byteOrder) & 3)] & 0xff;
-        result <<= 8;
-        result |= content[base + ((1 ^ byteOrder) & 3)] & 0xff;
-        result <<= 8;
-        result |= content[base + ((0 ^ byteOrder) & 3)] & 0xff;
-        return result;
+        return (getByteOrder() == BIG_ENDIAN) ?
+            BigEndianOctetWindow.getInt(content, base) :
+            LittleEndianOctetWindow.getInt(content, base);
     }
 
     @Override
@@ -224,23 +197,9 @@ public class ArrayOctetReader extends OctetReader {
                 "peek beyond end of octet stream");
         }
         int base = index + offset;
-        int byteOrder = getByteOrder();
-        long result = content[base + ((7 ^ byteOrder) & 7)] & 0xff;
-        result <<= 8;
-        result |= content[base + ((6 ^ byteOrder) & 7)] & 0xff;
-        result <<= 8;
-        result |= content[base + ((5 ^ byteOrder) & 7)] & 0xff;
-        result <<= 8;
-        result |= content[base + ((4 ^ byteOrder) & 7)] & 0xff;
-        result <<= 8;
-        result |= content[base + ((3 ^ byteOrder) & 7)] & 0xff;
-        result <<= 8;
-        result |= content[base + ((2 ^ byteOrder) & 7)] & 0xff;
-        result <<= 8;
-        result |= content[base + ((1 ^ byteOrder) & 7)] & 0xff;
-        result <<= 8;
-        result |= content[base + ((0 ^ byteOrder) & 7)] & 0xff;
-        return result;
+        return (getByteOrder() == BIG_ENDIAN) ?
+            BigEndianOctetWindow.getLong(content, base) :
+            LittleEndianOctetWindow.getLong(content, base);
     }
 
     @Override
@@ -277,6 +236,23 @@ public class ArrayOctetReader extends OctetReader {
         return new ArrayOctetString(content, base, count, getByteOrder());
     }
 
+    @Override
+    public OctetWindow peekWindow(int offset, int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        if (offset < 0) {
+            throw new IndexOutOfBoundsException(
+                "negative offset into octet stream");
+        }
+        if (offset > remaining() - count) {
+            throw new IndexOutOfBoundsException(
+                "peek beyond end of octet stream");
+        }
+        return OctetWindow.wrap(content, index + offset, count,
+            getByteOrder());
+    }
+
     @Override
     public OctetReader dupOctetReader() {
         return new ArrayOctetReader(content, index, rem, getByteOrder());
@@ -5,6 +5,7 @@
 
 package org.libholmes;
 
+import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.Arrays;
 
@@ -83,11 +84,9 @@ public class ArrayOctetString extends OctetString {
                 "read beyond end of octet string");
         }
         int base = offset + index;
-        int byteOrder = getByteOrder();
-        int result = content[base + ((1 ^ byteOrder) & 1)] & 0xff;
-        result <<= 8;
-        result |= content[base + ((0 ^ byteOrder) & 1)] & 0xff;
-        return (short) result;
+        return (getByteOrder() == BIG_ENDIAN) ?
+            BigEndianOctetWindow.getShort(content, base) :
+            LittleEndianOctetWindow.getShort(content, base);
     }
 
     @Override
@@ -101,15 +100,9 @@ public class ArrayOctetString extends OctetString {
                 "read beyond end of octet string");
         }
         int base = offset + index;
-        int byteOrder = getByteOrder();
-        int result = content[base + ((3 ^ byteOrder) & 3)] & 0xff;
-        result <<= 8;
-        result |= content[base + ((2 ^ byteOrder) & 3)] & 0xff;
-        result <<= 8;
-        result |= content[base + ((1 ^ byteOrder) & 3)] & 0xff;
-        result <<= 8;
-        result |= content[base + ((0 ^ byteOrder) & 3)] & 0xff;
-        return result;
+        return (getByteOrder() == BIG_ENDIAN) ?
+            BigEndianOctetWindow.getInt(content, base) :
+            LittleEndianOctetWindow.getInt(content, base);
     }
 
     @Override
@@ -123,23 +116,9 @@ public class ArrayOctetString extends OctetString {
                 "read beyond end of octet string");
         }
         int base = offset + index;
-        int byteOrder = getByteOrder();
-        long result = content[base + ((7 ^ byteOrder) & 7)] & 0xff;
-        result <<= 8;
-        result |= content[base + ((6 ^ byteOrder) & 7)] & 0xff;
-        result <<= 8;
-        result |= content[base + ((5 ^ byteOrder) & 7)] & 0xff;
-        result <<= 8;
-        result |= content[base + ((4 ^ byteOrder) & 7)] & 0xff;
-        result <<= 8;
-        result |= content[base + ((3 ^ byteOrder) & 7)] & 0xff;
-        result <<= 8;
-        result |= content[base + ((2 ^ byteOrder) & 7)] & 0xff;
-        result <<= 8;
-        result |= content[base + ((1 ^ byteOrder) & 7)] & 0xff;
-        result <<= 8;
-        result |= content[base + ((0 ^ byteOrder) & 7)] & 0xff;
-        return result;
+        return (getByteOrder() == BIG_ENDIAN) ?
+            BigEndianOctetWindow.getLong(content, base) :
+            LittleEndianOctetWindow.getLong(content, base);
     }
 
     @Override
@@ -198,6 +177,23 @@ public class ArrayOctetString extends OctetString {
         return new ArrayOctetString(content, base, count, getByteOrder());
     }
 
+    @Override
+    public OctetWindow getWindow(int index, int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        if (index < 0) {
+            throw new IndexOutOfBoundsException(
+                "negative index into octet string");
+        }
+        if (index > len - count) {
+            throw new IndexOutOfBoundsException(
+                "read beyond end of octet string");
+        }
+        return OctetWindow.wrap(content, offset + index, count,
+            getByteOrder());
+    }
+
     @Override
     public OctetReader makeOctetReader(int index, int count) {
         if (count < 0) {
@@ -283,11 +279,25 @@ public class ArrayOctetString extends OctetString {
     }
 
     @Override
-    public final String toString() {
-        StringBuilder builder = new StringBuilder();
-        for (int i = 0; i != len; ++i) {
-            builder.append(String.format("%02x", content[offset + i] & 0xff));
+    public final void appendHex(Appendable out, int index, int count)
+        throws IOException {
+
+        if (count < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        if (index < 0) {
+            throw new IndexOutOfBoundsException(
+                "negative index into octet string");
         }
-        return builder.toString();
+        if (index > len - count) {
+            throw new IndexOutOfBoundsException(
+                "read beyond end of octet string");
+        }
+        Hex.encode(content, offset + index, count, out);
+    }
+
+    @Override
+    public final String toString() {
+        return Hex.encode(content, offset, len);
     }
 }
@@ -5,9 +5,13 @@
 
 package org.libholmes;
 
+import java.util.Map;
+
 import javax.json.Json;
 import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
+import javax.json.JsonValue;
+import javax.json.stream.JsonGenerator;
 
 /** An abstract base class to represent a decoded artefact. */
 public abstract class Artefact {
@@ -65,6 +69,22 @@ public abstract class Artefact {
      */
     protected abstract void buildJson(JsonObjectBuilder builder);
 
+    /** Build a JSON object for this artefact, subject to a projection.
+     * By default this calls buildJson without regard to the projection,
+     * since toJson then removes any excluded fields. Subclasses which
+     * have derived fields should override this method so that those
+     * fields are not computed unless required. An override should test
+     * each field against the projection exactly as generateJson does, so
+     * that the two methods produce the same members.
+     * @param builder a JsonObjectBuilder for the object to be built
+     * @param projection the fields to be included
+     */
+    protected void buildJson(JsonObjectBuilder builder,
+        JsonProjection projection) {
+
+        buildJson(builder);
+    }
+
     /** Get this artefact as a JSON object.
      * @return the JSON object
      */
@@ -74,6 +94,70 @@ public abstract class Artefact {
         return builder.build();
     }
 
+    /** Get this artefact as a JSON object, subject to a projection.
+     * @param projection the fields to be included
+     * @return the JSON object
+     */
+    public final JsonObject toJson(JsonProjection projection) {
+        JsonObjectBuilder builder = Json.createObjectBuilder();
+        buildJson(builder, projection);
+        return projection.select(this, builder.build());
+    }
+
+    /** Generate the members of a JSON object for this artefact.
+     * This is the streaming counterpart of buildJson, and must produce
+     * the same members. By default the object is built using buildJson
+     * and then copied to the generator, but subclasses which are
+     * serialised in large numbers should override this method to write
+     * their members directly.
+     * @param generator a JsonGenerator positioned within the object
+     * @param projection the fields to be included
+     */
+    protected void generateJson(JsonGenerator generator,
+        JsonProjection projection) {
+
+        JsonObject json = toJson(projection);
+        for (Map.Entry<String, JsonValue> entry : json.entrySet()) {
+            generator.write(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /** Write this artefact as a JSON object.
+     * This avoids building an intermediate JsonObject where the artefact
+     * supports streaming.
+     * @param generator a JsonGenerator positioned where a value may be
+     *  written
+     */
+    public final void writeJson(JsonGenerator generator) {
+        writeJson(generator, JsonProjection.FULL);
+    }
+
+    /** Write this artefact as a JSON object, subject to a projection.
+     * @param generator a JsonGenerator positioned where a value may be
+     *  written
+     * @param projection the fields to be included
+     */
+    public final void writeJson(JsonGenerator generator,
+        JsonProjection projection) {
+
+        generator.writeStartObject();
+        generateJson(generator, projection);
+        generator.writeEnd();
+    }
+
+    /** Write this artefact as a named member of a JSON object.
+     * @param name the name of the member
+     * @param generator a JsonGenerator positioned within an object
+     * @param projection the fields to be included
+     */
+    public final void writeJson(String name, JsonGenerator generator,
+        JsonProjection projection) {
+
+        generator.writeStartObject(name);
+        generateJson(generator, projection);
+        generator.writeEnd();
+    }
+
    /** Examine this artefact.
      * By default this method does nothing.
      * @param logger a logger for recording findings
@@ -0,0 +1,72 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes;
+
+/** An OctetWindow class for big-endian content.
+ * The static methods of this class are also used by other classes in
+ * this package which read big-endian values from byte arrays.
+ */
+public final class BigEndianOctetWindow extends OctetWindow {
+    /** Construct BigEndianOctetWindow.
+     * @param content an array with the required content (not copied)
+     * @param offset the offset into the byte array of the first octet
+     * @param count the number of octets in the window
+     */
+    BigEndianOctetWindow(byte[] content, int offset, int count) {
+        super(content, offset, count);
+    }
+
+    /** Get a big-endian 16-bit short integer from a byte array.
+     * @param content the byte array
+     * @param base the index into the array of the first octet
+     * @return the short integer that was read
+     */
+    static short getShort(byte[] content, int base) {
+        return (short) ((content[base] << 8) | (content[base + 1] & 0xff));
+    }
+
+    /** Get a big-endian 32-bit integer from a byte array.
+     * @param content the byte array
+     * @param base the index into the array of the first octet
+     * @return the integer that was read
+     */
+    static int getInt(byte[] content, int base) {
+        return (content[base] << 24) |
+            ((content[base + 1] & 0xff) << 16) |
+            ((content[base + 2] & 0xff) << 8) |
+            (content[base + 3] & 0xff);
+    }
+
+    /** Get a big-endian 64-bit long integer from a byte array.
+     * @param content the byte array
+     * @param base the index into the array of the first octet
+     * @return the long integer that was read
+     */
+    static long getLong(byte[] content, int base) {
+        return ((long) getInt(content, base) << 32) |
+            (getInt(content, base + 4) & 0xffffffffL);
+    }
+
+    @Override
+    public short getShort(int index) {
+        return getShort(content, offset + index);
+    }
+
+    @Override
+    public int getInt(int index) {
+        return getInt(content, offset + index);
+    }
+
+    @Override
+    public long getLong(int index) {
+        return getLong(content, offset + index);
+    }
+
+    @Override
+    public int getByteOrder() {
+        return BIG_ENDIAN;
+    }
+}
@@ -0,0 +1,231 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes;
+
+import java.nio.ByteBuffer;
+
+/** An OctetReader class for reading octets stored in a ByteBuffer.
+ * Both heap and direct buffers are supported, so this class can be used
+ * to read from off-heap memory without first copying it into a byte array.
+ */
+public class ByteBufferOctetReader extends OctetReader {
+    /** A buffer containing the content to be read.
+     * The content extends from index zero to the limit of the buffer.
+     * The buffer is not shared with any other object, and its byte order
+     * matches that of this reader.
+     */
+    private final ByteBuffer content;
+
+    /** The index into the buffer of the next octet to be read. */
+    private int index;
+
+    /** The number of octets remaining. */
+    private int rem;
+
+    /** Construct ByteBufferOctetReader from a ByteBuffer.
+     * The content is taken to be the octets between the position and the
+     * limit of the buffer. The position, limit and byte order of the
+     * buffer are not modified.
+     * @param content a buffer with the required content (not copied)
+     * @param byteOrder the required byte order
+     */
+    public ByteBufferOctetReader(ByteBuffer content, int byteOrder) {
+        super(byteOrder);
+        this.content = content.slice();
+        this.content.order(ByteBufferOctetString.toByteOrder(byteOrder));
+        this.index = 0;
+        this.rem = this.content.limit();
+    }
+
+    /** Make a buffer which refers to part of the content.
+     * @param offset the offset in octets from the current position
+     * @param count the number of octets to be included
+     * @return a new buffer, positioned at the start of the required range
+     *  and limited to its end
+     */
+    private ByteBuffer range(int offset, int count) {
+        ByteBuffer dup = content.duplicate();
+        dup.position(index + offset);
+        dup.limit(index + offset + count);
+        return dup;
+    }
+
+    /** Check that a given range lies within the remaining octets.
+     * @param offset the offset in octets from the current position
+     * @param count the number of octets in the range
+     */
+    private void checkPeek(int offset, int count) {
+        if (offset < 0) {
+            throw new IndexOutOfBoundsException(
+                "negative offset into octet stream");
+        }
+        if (offset > rem - count) {
+            throw new IndexOutOfBoundsException(
+                "peek beyond end of octet stream");
+        }
+    }
+
+    /** Check that a given number of octets can be read.
+     * @param count the number of octets to be read
+     */
+    private void checkRead(int count) {
+        if (rem < count) {
+            throw new IndexOutOfBoundsException(
+                "read beyond end of octet stream");
+        }
+    }
+
+    @Override
+    public byte readByte() {
+        checkRead(1);
+        byte result = content.get(index);
+        index += 1;
+        rem -= 1;
+        return result;
+    }
+
+    @Override
+    public short readShort() {
+        checkRead(2);
+        short result = content.getShort(index);
+        index += 2;
+        rem -= 2;
+        return result;
+    }
+
+    @Override
+    public int readInt() {
+        checkRead(4);
+        int result = content.getInt(index);
+        index += 4;
+        rem -= 4;
+        return result;
+    }
+
+    @Override
+    public long readLong() {
+        checkRead(8);
+        long result = content.getLong(index);
+        index += 8;
+        rem -= 8;
+        return result;
+    }
+
+    @Override
+    public byte[] readBytes(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        checkRead(count);
+        byte[] result = new byte[count];
+        range(0, count).get(result);
+        index += count;
+        rem -= count;
+        return result;
+    }
+
+    @Override
+    public OctetString readOctetString(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        checkRead(count);
+        OctetString result = new ByteBufferOctetString(range(0, count),
+            getByteOrder());
+        index += count;
+        rem -= count;
+        return result;
+    }
+
+    @Override
+    public byte peekByte(int offset) {
+        checkPeek(offset, 1);
+        return content.get(index + offset);
+    }
+
+    @Override
+    public short peekShort(int offset) {
+        checkPeek(offset, 2);
+        return content.getShort(index + offset);
+    }
+
+    @Override
+    public int peekInt(int offset) {
+        checkPeek(offset, 4);
+        return content.getInt(index + offset);
+    }
+
+    @Override
+    public long peekLong(int offset) {
+        checkPeek(offset, 8);
+        return content.getLong(index + offset);
+    }
+
+    @Override
+    public byte[] peekBytes(int offset, int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        checkPeek(offset, count);
+        byte[] result = new byte[count];
+        range(offset, count).get(result);
+        return result;
+    }
+
+    @Override
+    public OctetString peekOctetString(int offset, int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        checkPeek(offset, count);
+        return new ByteBufferOctetString(range(offset, count),
+            getByteOrder());
+    }
+
+    @Override
+    public OctetWindow peekWindow(int offset, int count) {
+        if (!content.hasArray()) {
+            return super.peekWindow(offset, count);
+        }
+        if (count < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        checkPeek(offset, count);
+        return OctetWindow.wrap(content.array(),
+            content.arrayOffset() + index + offset, count, getByteOrder());
+    }
+
+    @Override
+    public OctetReader dupOctetReader() {
+        return new ByteBufferOctetReader(range(0, rem), getByteOrder());
+    }
+
+    @Override
+    public void skip(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        checkRead(count);
+        index += count;
+        rem -= count;
+    }
+
+    @Override
+    public int remaining() {
+        return rem;
+    }
+
+    @Override
+    public boolean hasRemaining() {
+        return rem > 0;
+    }
+
+    @Override
+    public void setByteOrder(int byteOrder) {
+        super.setByteOrder(byteOrder);
+        content.order(ByteBufferOctetString.toByteOrder(byteOrder));
+    }
+}
@@ -0,0 +1,175 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+/** An OctetString class for content stored in a ByteBuffer.
+ * Both heap and direct buffers are supported, so this class can be used
+ * to refer to off-heap memory without first copying it into a byte array.
+ */
+public class ByteBufferOctetString extends OctetString {
+    /** A buffer containing the required content.
+     * The content extends from index zero to the limit of the buffer.
+     * The buffer is not shared with any other object, and its byte order
+     * matches that of this octet string.
+     */
+    private final ByteBuffer content;
+
+    /** Construct ByteBufferOctetString from a ByteBuffer.
+     * The content is taken to be the octets between the position and the
+     * limit of the buffer. The position, limit and byte order of the
+     * buffer are not modified.
+     * @param content a buffer with the required content (not copied)
+     * @param byteOrder the required byte order
+     */
+    public ByteBufferOctetString(ByteBuffer content, int byteOrder) {
+        super(byteOrder);
+        this.content = content.slice();
+        this.content.order(toByteOrder(byteOrder));
+    }
+
+    /** Convert an OctetString byte order to a ByteOrder.
+     * @param byteOrder the byte order to be converted
+     * @return the corresponding ByteOrder
+     */
+    static ByteOrder toByteOrder(int byteOrder) {
+        return (byteOrder == BIG_ENDIAN) ?
+            ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+    }
+
+    /** Check that a given range lies within this octet string.
+     * @param index the index into the octet string
+     * @param count the number of octets in the range
+     */
+    private void checkRange(int index, int count) {
+        if (index < 0) {
+            throw new IndexOutOfBoundsException(
+                "negative index into octet string");
+        }
+        if (index > content.limit() - count) {
+            throw new IndexOutOfBoundsException(
+                "read beyond end of octet string");
+        }
+    }
+
+    /** Make a buffer which refers to part of the content.
+     * @param index the index into the octet string
+     * @param count the number of octets to be included
+     * @return a new buffer, positioned at the start of the required range
+     *  and limited to its end
+     */
+    private ByteBuffer range(int index, int count) {
+        ByteBuffer dup = content.duplicate();
+        dup.position(index);
+        dup.limit(index + count);
+        return dup;
+    }
+
+    @Override
+    public byte getByte(int index) {
+        checkRange(index, 1);
+        return content.get(index);
+    }
+
+    @Override
+    public short getShort(int index) {
+        checkRange(index, 2);
+        return content.getShort(index);
+    }
+
+    @Override
+    public int getInt(int index) {
+        checkRange(index, 4);
+        return content.getInt(index);
+    }
+
+    @Override
+    public long getLong(int index) {
+        checkRange(index, 8);
+        return content.getLong(index);
+    }
+
+    @Override
+    public byte[] getBytes(int index, int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        checkRange(index, count);
+        byte[] result = new byte[count];
+        range(index, count).get(result);
+        return result;
+    }
+
+    @Override
+    public String getString(int index, int count, Charset charset) {
+        if (count < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        checkRange(index, count);
+        if (content.hasArray()) {
+            return new String(content.array(),
+                content.arrayOffset() + index, count, charset);
+        }
+        return charset.decode(range(index, count)).toString();
+    }
+
+    @Override
+    public String getString(Charset charset) {
+        return getString(0, content.limit(), charset);
+    }
+
+    @Override
+    public OctetString getOctetString(int index, int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        checkRange(index, count);
+        return new ByteBufferOctetString(range(index, count),
+            getByteOrder());
+    }
+
+    @Override
+    public OctetWindow getWindow(int index, int count) {
+        if (!content.hasArray()) {
+            return super.getWindow(index, count);
+        }
+        if (count < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        checkRange(index, count);
+        return OctetWindow.wrap(content.array(),
+            content.arrayOffset() + index, count, getByteOrder());
+    }
+
+    @Override
+    public OctetReader makeOctetReader(int index, int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        checkRange(index, count);
+        return new ByteBufferOctetReader(range(index, count),
+            getByteOrder());
+    }
+
+    @Override
+    public OctetReader makeOctetReader() {
+        return new ByteBufferOctetReader(content.duplicate(),
+            getByteOrder());
+    }
+
+    @Override
+    public int length() {
+        return content.limit();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return content.limit() == 0;
+    }
+}
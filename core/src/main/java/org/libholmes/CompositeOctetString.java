@@ -0,0 +1,174 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes;
+
+import java.util.Arrays;
+import java.util.List;
+
+/** An OctetString class to represent a concatenation of other
+ * OctetStrings.
+ *
+ * The parts are referred to rather than copied, so that content which
+ * arrives in pieces (such as IP fragments or TCP segments) can be
+ * presented as a single octet string without duplicating it. Requests
+ * which fall within a single part are delegated to that part, and others
+ * are assembled from the parts concerned.
+ */
+public final class CompositeOctetString extends OctetString {
+    /** The parts from which this octet string is composed. */
+    private final OctetString[] parts;
+
+    /** The index into this octet string of the first octet of each part,
+     * followed by the total length.
+     */
+    private final int[] starts;
+
+    /** Construct CompositeOctetString from a list of parts.
+     * @param parts the parts to be concatenated (not copied)
+     * @param byteOrder the required byte order
+     */
+    public CompositeOctetString(List<? extends OctetString> parts,
+        int byteOrder) {
+
+        super(byteOrder);
+        this.parts = parts.toArray(new OctetString[parts.size()]);
+        this.starts = new int[this.parts.length + 1];
+        int total = 0;
+        for (int i = 0; i != this.parts.length; ++i) {
+            starts[i] = total;
+            total += this.parts[i].length();
+            if (total < 0) {
+                throw new IllegalArgumentException(
+                    "composite octet string too long");
+            }
+        }
+        starts[this.parts.length] = total;
+    }
+
+    /** Check that a given range lies within this octet string.
+     * @param index the index into the octet string
+     * @param count the number of octets in the range
+     */
+    private void checkRange(int index, int count) {
+        if (index < 0) {
+            throw new IndexOutOfBoundsException(
+                "negative index into octet string");
+        }
+        if (index > length() - count) {
+            throw new IndexOutOfBoundsException(
+                "read beyond end of octet string");
+        }
+    }
+
+    /** Find the part which contains a given octet.
+     * @param index the index into this octet string of the octet
+     * @return the index of the part
+     */
+    private int findPart(int index) {
+        int found = Arrays.binarySearch(starts, 0, parts.length, index);
+        if (found < 0) {
+            return -found - 2;
+        }
+        // Skip over any empty parts.
+        while (starts[found + 1] == index) {
+            found += 1;
+        }
+        return found;
+    }
+
+    /** Find the part which wholly contains a given range.
+     * @param index the index into this octet string of the range
+     * @param count the number of octets in the range
+     * @return the index of the part, or -1 if the range is split between
+     *  more than one part, or if the part has a different byte order
+     */
+    private int findWholePart(int index, int count) {
+        int part = findPart(index);
+        if ((index + count > starts[part + 1]) ||
+            (parts[part].getByteOrder() != getByteOrder())) {
+            return -1;
+        }
+        return part;
+    }
+
+    @Override
+    public byte getByte(int index) {
+        checkRange(index, 1);
+        int part = findPart(index);
+        return parts[part].getByte(index - starts[part]);
+    }
+
+    @Override
+    public short getShort(int index) {
+        checkRange(index, 2);
+        int part = findWholePart(index, 2);
+        if (part < 0) {
+            return super.getShort(index);
+        }
+        return parts[part].getShort(index - starts[part]);
+    }
+
+    @Override
+    public int getInt(int index) {
+        checkRange(index, 4);
+        int part = findWholePart(index, 4);
+        if (part < 0) {
+            return super.getInt(index);
+        }
+        return parts[part].getInt(index - starts[part]);
+    }
+
+    @Override
+    public long getLong(int index) {
+        checkRange(index, 8);
+        int part = findWholePart(index, 8);
+        if (part < 0) {
+            return super.getLong(index);
+        }
+        return parts[part].getLong(index - starts[part]);
+    }
+
+    @Override
+    public byte[] getBytes(int index, int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        checkRange(index, count);
+        byte[] result = new byte[count];
+        int done = 0;
+        int part = (count == 0) ? 0 : findPart(index);
+        while (done != count) {
+            int offset = index + done - starts[part];
+            int n = Math.min(count - done, parts[part].length() - offset);
+            byte[] content = parts[part].getBytes(offset, n);
+            System.arraycopy(content, 0, result, done, n);
+            done += n;
+            part += 1;
+        }
+        return result;
+    }
+
+    @Override
+    public OctetString getOctetString(int index, int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        checkRange(index, count);
+        if (count != 0) {
+            int part = findWholePart(index, count);
+            if (part >= 0) {
+                return parts[part].getOctetString(index - starts[part],
+                    count);
+            }
+        }
+        return super.getOctetString(index, count);
+    }
+
+    @Override
+    public int length() {
+        return starts[parts.length];
+    }
+}
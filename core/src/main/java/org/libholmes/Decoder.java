@@ -0,0 +1,24 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes;
+
+/** An interface for decoding one protocol layer within a DecoderRegistry.
+ * Implementations decode their own layer, then pass the payload back to
+ * the registry so that any nested layer can be decoded in turn.
+ */
+public interface Decoder {
+    /** Decode a protocol layer, and any layers nested within it.
+     * @param registry the registry to be used for nested layers
+     * @param parent the parent artefact, or null if none
+     * @param content the octets to be decoded
+     * @param depth the number of nested layers which may be decoded
+     *  beneath this one
+     * @return the innermost artefact decoded
+     * @throws ParseException if the octets cannot be parsed
+     */
+    Artefact decode(DecoderRegistry registry, Artefact parent,
+        OctetString content, int depth) throws ParseException;
+}
@@ -0,0 +1,159 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes;
+
+/** A class for decoding a stack of protocol layers.
+ *
+ * Decoders are registered in dispatch tables which are indexed directly
+ * by link type, EtherType, IP protocol number, or TCP or UDP port, so
+ * that selecting the decoder for the next layer requires only an array
+ * lookup. Each protocol module provides a decoder with a static register
+ * method, which should be called for each module that is required.
+ *
+ * Decoding stops when a layer is reached for which no decoder has been
+ * registered, or when a given depth limit is reached. The innermost
+ * artefact is returned, and the outer layers can be found by following
+ * its parents.
+ *
+ * Registration is not synchronised, so it should be completed before a
+ * registry is shared between threads. Decoding may then take place
+ * concurrently, provided that all of the registered decoders are
+ * stateless. A registry holding a stateful decoder (such as one which
+ * reassembles fragments) must be used from one thread only, with frames
+ * decoded in capture order.
+ */
+public final class DecoderRegistry {
+    /** The dispatch table for link types. */
+    public static final int LINK_TYPE = 0;
+
+    /** The dispatch table for EtherTypes. */
+    public static final int ETHER_TYPE = 1;
+
+    /** The dispatch table for IP protocol numbers. */
+    public static final int IP_PROTOCOL = 2;
+
+    /** The dispatch table for TCP ports. */
+    public static final int TCP_PORT = 3;
+
+    /** The dispatch table for UDP ports. */
+    public static final int UDP_PORT = 4;
+
+    /** A depth limit which allows all available layers to be decoded. */
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    /** The number of entries in each dispatch table. */
+    private static final int[] TABLE_SIZES = {
+        0x10000, 0x10000, 0x100, 0x10000, 0x10000 };
+
+    /** The dispatch tables.
+     * Each table is created when its first decoder is registered.
+     */
+    private final Decoder[][] tables = new Decoder[TABLE_SIZES.length][];
+
+    /** Register a decoder.
+     * Any decoder previously registered for the same key is replaced.
+     * @param table the dispatch table
+     * @param key the key within the dispatch table
+     * @param decoder the decoder
+     */
+    public void register(int table, int key, Decoder decoder) {
+        if ((table < 0) || (table >= TABLE_SIZES.length)) {
+            throw new IllegalArgumentException("invalid dispatch table");
+        }
+        if ((key < 0) || (key >= TABLE_SIZES[table])) {
+            throw new IllegalArgumentException(
+                "key out of range for dispatch table");
+        }
+        if (tables[table] == null) {
+            tables[table] = new Decoder[TABLE_SIZES[table]];
+        }
+        tables[table][key] = decoder;
+    }
+
+    /** Get the decoder registered for a given key.
+     * @param table the dispatch table
+     * @param key the key within the dispatch table
+     * @return the decoder, or null if none
+     */
+    public Decoder get(int table, int key) {
+        Decoder[] decoders = tables[table];
+        if ((decoders == null) || (key < 0) || (key >= decoders.length)) {
+            return null;
+        }
+        return decoders[key];
+    }
+
+    /** Decode a layer using a given dispatch table.
+     * This is intended for use by decoders, to decode the next layer.
+     * If the depth limit has been reached, or if there is no decoder for
+     * the given key, then the parent is returned without further decoding.
+     * @param table the dispatch table
+     * @param key the key within the dispatch table
+     * @param parent the parent artefact
+     * @param content the octets to be decoded
+     * @param depth the number of layers which may be decoded
+     * @return the innermost artefact decoded
+     * @throws ParseException if the octets cannot be parsed
+     */
+    public Artefact decode(int table, int key, Artefact parent,
+        OctetString content, int depth) throws ParseException {
+
+        if (depth <= 0) {
+            return parent;
+        }
+        Decoder decoder = get(table, key);
+        if (decoder == null) {
+            return parent;
+        }
+        return decoder.decode(this, parent, content, depth - 1);
+    }
+
+    /** Decode a layer using a port-indexed dispatch table.
+     * The destination port is tried first, followed by the source port.
+     * @param table the dispatch table
+     * @param srcPort the source port
+     * @param dstPort the destination port
+     * @param parent the parent artefact
+     * @param content the octets to be decoded
+     * @param depth the number of layers which may be decoded
+     * @return the innermost artefact decoded
+     * @throws ParseException if the octets cannot be parsed
+     */
+    public Artefact decodePorts(int table, int srcPort, int dstPort,
+        Artefact parent, OctetString content, int depth)
+        throws ParseException {
+
+        int key = (get(table, dstPort) != null) ? dstPort : srcPort;
+        return decode(table, key, parent, content, depth);
+    }
+
+    /** Decode a captured frame.
+     * @param parent the parent artefact, typically the captured packet
+     * @param linkType the link type of the frame
+     * @param frame the content of the frame
+     * @param depth the number of layers which may be decoded
+     * @return the innermost artefact decoded
+     * @throws ParseException if the octets cannot be parsed
+     */
+    public Artefact decodeFrame(Artefact parent, int linkType,
+        OctetString frame, int depth) throws ParseException {
+
+        return decode(LINK_TYPE, linkType, parent, frame, depth);
+    }
+
+    /** Decode a captured frame, without a depth limit.
+     * @param parent the parent artefact, typically the captured packet
+     * @param linkType the link type of the frame
+     * @param frame the content of the frame
+     * @return the innermost artefact decoded
+     * @throws ParseException if the octets cannot be parsed
+     */
+    public Artefact decodeFrame(Artefact parent, int linkType,
+        OctetString frame) throws ParseException {
+
+        return decodeFrame(parent, linkType, frame, UNLIMITED);
+    }
+}
@@ -0,0 +1,139 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.CharBuffer;
+
+/** A utility class for encoding octets as hexadecimal digits.
+ *
+ * Digits are looked up in a table rather than formatted, and are written
+ * in bulk to a character array, Appendable or OutputStream. Encoding to
+ * an Appendable or OutputStream is performed in fixed-size chunks, so
+ * that large inputs can be encoded without creating a String of
+ * comparable size. Output is in lower case unless otherwise stated.
+ */
+public final class Hex {
+    /** The lower case hex digits, indexed by value. */
+    private static final char[] LOWER = "0123456789abcdef".toCharArray();
+
+    /** The upper case hex digits, indexed by value. */
+    private static final char[] UPPER = "0123456789ABCDEF".toCharArray();
+
+    /** The number of octets encoded per chunk, when encoding to an
+     * Appendable or OutputStream. */
+    static final int CHUNK_SIZE = 0x1000;
+
+    /** Prevent instantiation. */
+    private Hex() {}
+
+    /** Encode part of a byte array into a character array.
+     * @param src the array of octets to be encoded
+     * @param offset the index into the source array of the first octet
+     * @param count the number of octets to be encoded
+     * @param dst the array into which the digits should be written
+     * @param dstOffset the index into the destination array at which to
+     *  write the first digit
+     */
+    public static void encode(byte[] src, int offset, int count, char[] dst,
+        int dstOffset) {
+
+        for (int i = 0; i != count; ++i) {
+            int b = src[offset + i];
+            dst[dstOffset++] = LOWER[(b >> 4) & 0xf];
+            dst[dstOffset++] = LOWER[b & 0xf];
+        }
+    }
+
+    /** Encode part of a byte array as a String.
+     * @param src the array of octets to be encoded
+     * @param offset the index into the array of the first octet
+     * @param count the number of octets to be encoded
+     * @return the resulting string
+     */
+    public static String encode(byte[] src, int offset, int count) {
+        char[] chars = new char[count * 2];
+        encode(src, offset, count, chars, 0);
+        return new String(chars);
+    }
+
+    /** Append part of a character array to an Appendable.
+     * @param out the Appendable
+     * @param chars the characters to be appended
+     * @param count the number of characters to be appended
+     * @throws IOException if the characters could not be appended
+     */
+    static void append(Appendable out, char[] chars, int count)
+        throws IOException {
+
+        if (out instanceof StringBuilder) {
+            ((StringBuilder) out).append(chars, 0, count);
+        } else if (out instanceof Writer) {
+            ((Writer) out).write(chars, 0, count);
+        } else {
+            out.append(CharBuffer.wrap(chars, 0, count));
+        }
+    }
+
+    /** Encode part of a byte array to an Appendable.
+     * @param src the array of octets to be encoded
+     * @param offset the index into the array of the first octet
+     * @param count the number of octets to be encoded
+     * @param out the Appendable to which the digits should be written
+     * @throws IOException if the digits could not be written
+     */
+    public static void encode(byte[] src, int offset, int count,
+        Appendable out) throws IOException {
+
+        char[] chars = new char[Math.min(count, CHUNK_SIZE) * 2];
+        int done = 0;
+        while (done != count) {
+            int n = Math.min(count - done, CHUNK_SIZE);
+            encode(src, offset + done, n, chars, 0);
+            append(out, chars, n * 2);
+            done += n;
+        }
+    }
+
+    /** Encode part of a byte array to an OutputStream, as ASCII.
+     * @param src the array of octets to be encoded
+     * @param offset the index into the array of the first octet
+     * @param count the number of octets to be encoded
+     * @param out the OutputStream to which the digits should be written
+     * @throws IOException if the digits could not be written
+     */
+    public static void encode(byte[] src, int offset, int count,
+        OutputStream out) throws IOException {
+
+        byte[] digits = new byte[Math.min(count, CHUNK_SIZE) * 2];
+        int done = 0;
+        while (done != count) {
+            int n = Math.min(count - done, CHUNK_SIZE);
+            for (int i = 0, j = 0; i != n; ++i) {
+                int b = src[offset + done + i];
+                digits[j++] = (byte) LOWER[(b >> 4) & 0xf];
+                digits[j++] = (byte) LOWER[b & 0xf];
+            }
+            out.write(digits, 0, n * 2);
+            done += n;
+        }
+    }
+
+    /** Append a single octet to a StringBuilder as two hex digits.
+     * @param builder the StringBuilder
+     * @param b the octet to be appended
+     * @param upperCase true for upper case, false for lower case
+     */
+    public static void append(StringBuilder builder, int b,
+        boolean upperCase) {
+
+        char[] digits = upperCase ? UPPER : LOWER;
+        builder.append(digits[(b >> 4) & 0xf]);
+        builder.append(digits[b & 0xf]);
+    }
+}
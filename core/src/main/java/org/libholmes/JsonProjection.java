@@ -0,0 +1,303 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonValue;
+
+/** A class to specify which fields should be included when an artefact is
+ * converted to JSON.
+ *
+ * Fields are selected by artefact type. A type may be given an include
+ * set, in which case only the named fields are written, and an exclude
+ * set, in which case the named fields are omitted. Rules for a type apply
+ * to its subclasses unless they have rules of their own.
+ *
+ * Some fields are expensive to produce, because they require the content
+ * of the artefact to be traversed. These are referred to as derived
+ * fields, and include calculated checksums and payloads. The FULL
+ * projection writes them, to match toJson, but other projections omit
+ * them unless they are named in the include set for the relevant type.
+ * Payloads can additionally be truncated to a given number of octets,
+ * and encoded as either hex or base64.
+ *
+ * Instances are immutable, and may be shared between threads.
+ */
+public final class JsonProjection {
+    /** A constant used to indicate hex encoding of payloads. */
+    public static final int HEX = 0;
+
+    /** A constant used to indicate base64 encoding of payloads. */
+    public static final int BASE64 = 1;
+
+    /** A projection which includes all fields, including derived fields,
+     * with payloads encoded in full as hex.
+     */
+    public static final JsonProjection FULL = new JsonProjection(true,
+        Collections.<Class<?>, Rule>emptyMap(), Integer.MAX_VALUE, HEX);
+
+    /** A projection which includes all fields except for derived fields.
+     */
+    public static final JsonProjection DEFAULT = new JsonProjection(false,
+        Collections.<Class<?>, Rule>emptyMap(), Integer.MAX_VALUE, HEX);
+
+    /** The field selection rule for an artefact type. */
+    private static final class Rule {
+        /** The fields to be included, or null to include all fields
+         * apart from derived fields. */
+        final Set<String> included;
+
+        /** The fields to be excluded. */
+        final Set<String> excluded;
+
+        /** Construct Rule.
+         * @param included the fields to be included, or null for all
+         * @param excluded the fields to be excluded
+         */
+        Rule(Set<String> included, Set<String> excluded) {
+            this.included = included;
+            this.excluded = excluded;
+        }
+    }
+
+    /** A rule which includes all non-derived fields. */
+    private static final Rule NO_RULE =
+        new Rule(null, Collections.<String>emptySet());
+
+    /** True if derived fields are included by default, otherwise false. */
+    private final boolean derived;
+
+    /** The rules which have been specified, indexed by artefact type. */
+    private final Map<Class<?>, Rule> rules;
+
+    /** The maximum number of payload octets to be encoded. */
+    private final int payloadLimit;
+
+    /** The payload encoding. */
+    private final int payloadEncoding;
+
+    /** The rule which applies to each artefact type, once resolved. */
+    private final ConcurrentHashMap<Class<?>, Rule> resolved =
+        new ConcurrentHashMap<Class<?>, Rule>();
+
+    /** Construct JsonProjection.
+     * @param derived true if derived fields are included by default,
+     *  otherwise false
+     * @param rules the rules for each artefact type (not copied)
+     * @param payloadLimit the maximum number of payload octets to encode
+     * @param payloadEncoding the payload encoding
+     */
+    private JsonProjection(boolean derived, Map<Class<?>, Rule> rules,
+        int payloadLimit, int payloadEncoding) {
+
+        this.derived = derived;
+        this.rules = rules;
+        this.payloadLimit = payloadLimit;
+        this.payloadEncoding = payloadEncoding;
+    }
+
+    /** Make a copy of this projection with a modified rule.
+     * @param type the artefact type to which the rule applies
+     * @param included the fields to be added to the include set, or null
+     *  if none
+     * @param excluded the fields to be added to the exclude set, or null
+     *  if none
+     * @return the resulting projection
+     */
+    private JsonProjection withRule(Class<? extends Artefact> type,
+        String[] included, String[] excluded) {
+
+        Rule rule = rules.get(type);
+        Set<String> newIncluded = null;
+        if ((rule != null) && (rule.included != null)) {
+            newIncluded = new HashSet<String>(rule.included);
+        }
+        if (included != null) {
+            if (newIncluded == null) {
+                newIncluded = new HashSet<String>();
+            }
+            newIncluded.addAll(Arrays.asList(included));
+        }
+        Set<String> newExcluded = new HashSet<String>();
+        if (rule != null) {
+            newExcluded.addAll(rule.excluded);
+        }
+        if (excluded != null) {
+            newExcluded.addAll(Arrays.asList(excluded));
+        }
+
+        Map<Class<?>, Rule> newRules = new HashMap<Class<?>, Rule>(rules);
+        newRules.put(type, new Rule(newIncluded, newExcluded));
+        return new JsonProjection(derived, newRules, payloadLimit,
+            payloadEncoding);
+    }
+
+    /** Make a copy of this projection which includes given fields for a
+     * given artefact type.
+     * Once a type has an include set, fields which are not in that set
+     * are omitted. Derived fields must be included explicitly unless
+     * this projection includes them by default.
+     * @param type the artefact type
+     * @param fields the names of the fields to be included
+     * @return the resulting projection
+     */
+    public JsonProjection include(Class<? extends Artefact> type,
+        String... fields) {
+
+        return withRule(type, fields, null);
+    }
+
+    /** Make a copy of this projection which excludes given fields for a
+     * given artefact type.
+     * @param type the artefact type
+     * @param fields the names of the fields to be excluded
+     * @return the resulting projection
+     */
+    public JsonProjection exclude(Class<? extends Artefact> type,
+        String... fields) {
+
+        return withRule(type, null, fields);
+    }
+
+    /** Make a copy of this projection with a given payload limit.
+     * Payloads longer than the limit are truncated before being encoded.
+     * @param limit the maximum number of payload octets to be encoded
+     * @return the resulting projection
+     */
+    public JsonProjection withPayloadLimit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("payload limit is negative");
+        }
+        return new JsonProjection(derived, rules, limit, payloadEncoding);
+    }
+
+    /** Make a copy of this projection with a given payload encoding.
+     * @param encoding the required encoding, HEX or BASE64
+     * @return the resulting projection
+     */
+    public JsonProjection withPayloadEncoding(int encoding) {
+        if ((encoding != HEX) && (encoding != BASE64)) {
+            throw new IllegalArgumentException("unknown payload encoding");
+        }
+        return new JsonProjection(derived, rules, payloadLimit, encoding);
+    }
+
+    /** Get the maximum number of payload octets to be encoded.
+     * @return the payload limit, in octets
+     */
+    public int getPayloadLimit() {
+        return payloadLimit;
+    }
+
+    /** Get the payload encoding.
+     * @return the payload encoding, HEX or BASE64
+     */
+    public int getPayloadEncoding() {
+        return payloadEncoding;
+    }
+
+    /** Get the rule which applies to a given artefact.
+     * @param artefact the artefact
+     * @return the rule
+     */
+    private Rule getRule(Artefact artefact) {
+        if (rules.isEmpty()) {
+            return NO_RULE;
+        }
+        Class<?> type = artefact.getClass();
+        Rule rule = resolved.get(type);
+        if (rule == null) {
+            Class<?> c = type;
+            while ((c != null) && (rule == null)) {
+                rule = rules.get(c);
+                c = c.getSuperclass();
+            }
+            if (rule == null) {
+                rule = NO_RULE;
+            }
+            resolved.put(type, rule);
+        }
+        return rule;
+    }
+
+    /** Test whether an ordinary field should be included.
+     * @param artefact the artefact to which the field belongs
+     * @param field the name of the field
+     * @return true if the field should be included, otherwise false
+     */
+    public boolean includes(Artefact artefact, String field) {
+        Rule rule = getRule(artefact);
+        if ((rule.included != null) && !rule.included.contains(field)) {
+            return false;
+        }
+        return !rule.excluded.contains(field);
+    }
+
+    /** Test whether a derived field should be included.
+     * Callers should use this to avoid computing the field at all when
+     * it is not required.
+     * @param artefact the artefact to which the field belongs
+     * @param field the name of the field
+     * @return true if the field should be included, otherwise false
+     */
+    public boolean includesDerived(Artefact artefact, String field) {
+        Rule rule = getRule(artefact);
+        if (rule.included != null) {
+            if (!rule.included.contains(field)) {
+                return false;
+            }
+        } else if (!derived) {
+            return false;
+        }
+        return !rule.excluded.contains(field);
+    }
+
+    /** Encode a payload as a string.
+     * @param payload the payload to be encoded
+     * @return the payload, truncated and encoded as required
+     */
+    public String encode(OctetString payload) {
+        int count = Math.min(payload.length(), payloadLimit);
+        if (payloadEncoding == BASE64) {
+            return Base64.getEncoder().encodeToString(
+                payload.getBytes(0, count));
+        }
+        if (count != payload.length()) {
+            payload = payload.getOctetString(0, count);
+        }
+        return payload.toString();
+    }
+
+    /** Remove any excluded fields from a JSON object.
+     * @param artefact the artefact from which the object was built
+     * @param json the JSON object
+     * @return the JSON object with excluded fields removed
+     */
+    JsonObject select(Artefact artefact, JsonObject json) {
+        Rule rule = getRule(artefact);
+        if (rule == NO_RULE) {
+            return json;
+        }
+        JsonObjectBuilder builder = Json.createObjectBuilder();
+        for (Map.Entry<String, JsonValue> entry : json.entrySet()) {
+            if (includes(artefact, entry.getKey())) {
+                builder.add(entry.getKey(), entry.getValue());
+            }
+        }
+        return builder.build();
+    }
+}
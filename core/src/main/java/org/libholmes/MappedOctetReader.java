@@ -0,0 +1,454 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/** An OctetReader class for reading octets from a memory-mapped file.
+ * Since a single mapping cannot exceed 2 GiB, the file is mapped as a
+ * sequence of fixed-size windows. Each window overlaps the start of the
+ * next, so that any OctetString no longer than the overlap can be
+ * returned as a view into a single window without copying. Longer
+ * OctetStrings which happen to straddle a window boundary are copied
+ * onto the heap.
+ *
+ * Because positions within the file are held as long integers, files
+ * larger than Integer.MAX_VALUE octets can be read. However the value
+ * returned by remaining() is limited to Integer.MAX_VALUE, so callers
+ * that need the true value should use remainingLong() instead.
+ */
+public class MappedOctetReader extends OctetReader {
+    /** The default window size, expressed as a power of two. */
+    private static final int DEFAULT_WINDOW_SHIFT = 30;
+
+    /** The default overlap between windows, in octets. */
+    private static final int DEFAULT_WINDOW_OVERLAP = 1 << 24;
+
+    /** The mapped windows.
+     * These are shared between duplicate readers, and must not have their
+     * position, limit or byte order changed.
+     */
+    private final ByteBuffer[] windows;
+
+    /** Per-reader duplicates of the mapped windows.
+     * These are created on demand, and have their byte order set to match
+     * that of this reader.
+     */
+    private final ByteBuffer[] views;
+
+    /** The window size, expressed as a power of two. */
+    private final int windowShift;
+
+    /** The position in the file of the next octet to be read. */
+    private long position;
+
+    /** The position in the file immediately after the last octet. */
+    private final long limit;
+
+    /** Construct MappedOctetReader from an existing set of windows.
+     * @param windows the mapped windows (not copied)
+     * @param windowShift the window size, expressed as a power of two
+     * @param position the position of the first octet to be read
+     * @param limit the position immediately after the last octet
+     * @param byteOrder the required byte order
+     */
+    private MappedOctetReader(ByteBuffer[] windows, int windowShift,
+        long position, long limit, int byteOrder) {
+
+        super(byteOrder);
+        this.windows = windows;
+        this.views = new ByteBuffer[windows.length];
+        this.windowShift = windowShift;
+        this.position = position;
+        this.limit = limit;
+    }
+
+    /** Construct MappedOctetReader from a file channel, with a given
+     * window size and overlap.
+     * @param channel the file channel to be mapped
+     * @param byteOrder the required byte order
+     * @param windowShift the window size, expressed as a power of two
+     * @param windowOverlap the overlap between windows, in octets
+     * @throws IOException if the file could not be mapped
+     */
+    MappedOctetReader(FileChannel channel, int byteOrder, int windowShift,
+        int windowOverlap) throws IOException {
+
+        this(mapWindows(channel, windowShift, windowOverlap), windowShift,
+            0, channel.size(), byteOrder);
+    }
+
+    /** Construct MappedOctetReader from a file channel.
+     * The mapping remains valid after the channel has been closed.
+     * @param channel the file channel to be mapped
+     * @param byteOrder the required byte order
+     * @throws IOException if the file could not be mapped
+     */
+    public MappedOctetReader(FileChannel channel, int byteOrder)
+        throws IOException {
+
+        this(channel, byteOrder, DEFAULT_WINDOW_SHIFT,
+            DEFAULT_WINDOW_OVERLAP);
+    }
+
+    /** Construct MappedOctetReader from a pathname.
+     * @param path the pathname of the file to be mapped
+     * @param byteOrder the required byte order
+     * @throws IOException if the file could not be opened or mapped
+     */
+    public MappedOctetReader(Path path, int byteOrder) throws IOException {
+        this(openAndMap(path), DEFAULT_WINDOW_SHIFT, 0,
+            Files.size(path), byteOrder);
+    }
+
+    /** Map a file channel as a sequence of overlapping windows.
+     * @param channel the file channel to be mapped
+     * @param windowShift the window size, expressed as a power of two
+     * @param windowOverlap the overlap between windows, in octets
+     * @return the mapped windows
+     * @throws IOException if the file could not be mapped
+     */
+    private static ByteBuffer[] mapWindows(FileChannel channel,
+        int windowShift, int windowOverlap) throws IOException {
+
+        long size = channel.size();
+        long windowSize = 1L << windowShift;
+        int count = (int) ((size + windowSize - 1) >>> windowShift);
+        ByteBuffer[] windows = new ByteBuffer[count];
+        for (int i = 0; i != count; ++i) {
+            long base = (long) i << windowShift;
+            long mapSize = Math.min(windowSize + windowOverlap, size - base);
+            windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, base,
+                mapSize);
+        }
+        return windows;
+    }
+
+    /** Open a file and map it as a sequence of overlapping windows.
+     * @param path the pathname of the file to be mapped
+     * @return the mapped windows
+     * @throws IOException if the file could not be opened or mapped
+     */
+    private static ByteBuffer[] openAndMap(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+            StandardOpenOption.READ)) {
+
+            return mapWindows(channel, DEFAULT_WINDOW_SHIFT,
+                DEFAULT_WINDOW_OVERLAP);
+        }
+    }
+
+    /** Get the view for a given window.
+     * @param index the index of the window
+     * @return a buffer with the byte order of this reader
+     */
+    private ByteBuffer view(int index) {
+        ByteBuffer result = views[index];
+        if (result == null) {
+            result = windows[index].duplicate();
+            result.order(ByteBufferOctetString.toByteOrder(getByteOrder()));
+            views[index] = result;
+        }
+        return result;
+    }
+
+    /** Check that a given range lies within the remaining octets.
+     * @param offset the offset in octets from the current position
+     * @param count the number of octets in the range
+     */
+    private void checkPeek(int offset, int count) {
+        if (offset < 0) {
+            throw new IndexOutOfBoundsException(
+                "negative offset into octet stream");
+        }
+        if (offset > limit - position - count) {
+            throw new IndexOutOfBoundsException(
+                "peek beyond end of octet stream");
+        }
+    }
+
+    /** Check that a given number of octets can be read.
+     * @param count the number of octets to be read
+     */
+    private void checkRead(int count) {
+        if (count > limit - position) {
+            throw new IndexOutOfBoundsException(
+                "read beyond end of octet stream");
+        }
+    }
+
+    /** Get the index of the window containing a given position.
+     * @param pos the position in the file
+     * @return the window index
+     */
+    private int windowIndex(long pos) {
+        return (int) (pos >>> windowShift);
+    }
+
+    /** Get the offset into its window of a given position.
+     * @param pos the position in the file
+     * @return the offset into the window
+     */
+    private int windowOffset(long pos) {
+        return (int) (pos & ((1L << windowShift) - 1));
+    }
+
+    /** Copy octets from the file into a byte array.
+     * @param pos the position in the file of the first octet to be copied
+     * @param dst the destination array
+     */
+    private void copy(long pos, byte[] dst) {
+        int done = 0;
+        while (done != dst.length) {
+            ByteBuffer window = windows[windowIndex(pos)].duplicate();
+            int offset = windowOffset(pos);
+            int count = Math.min(dst.length - done, window.limit() - offset);
+            window.position(offset);
+            window.get(dst, done, count);
+            done += count;
+            pos += count;
+        }
+    }
+
+    /** Make an OctetString from a range of octets in the file.
+     * If possible this will be a view into the mapped file, however
+     * a copy will be made if the range straddles a window boundary and
+     * is longer than the overlap between windows.
+     * @param pos the position in the file of the first octet
+     * @param count the number of octets
+     * @return the resulting OctetString
+     */
+    private OctetString makeOctetString(long pos, int count) {
+        if (count != 0) {
+            int index = windowIndex(pos);
+            int offset = windowOffset(pos);
+            ByteBuffer window = windows[index];
+            if (offset <= window.limit() - count) {
+                ByteBuffer dup = window.duplicate();
+                dup.position(offset);
+                dup.limit(offset + count);
+                return new MappedOctetString(dup, getByteOrder());
+            }
+        }
+        byte[] result = new byte[count];
+        copy(pos, result);
+        return new ArrayOctetString(result, getByteOrder());
+    }
+
+    @Override
+    public byte readByte() {
+        checkRead(1);
+        byte result = view(windowIndex(position)).get(
+            windowOffset(position));
+        position += 1;
+        return result;
+    }
+
+    @Override
+    public short readShort() {
+        checkRead(2);
+        short result = peekShort(0);
+        position += 2;
+        return result;
+    }
+
+    @Override
+    public int readInt() {
+        checkRead(4);
+        int result = peekInt(0);
+        position += 4;
+        return result;
+    }
+
+    @Override
+    public long readLong() {
+        checkRead(8);
+        long result = peekLong(0);
+        position += 8;
+        return result;
+    }
+
+    @Override
+    public byte[] readBytes(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        checkRead(count);
+        byte[] result = new byte[count];
+        copy(position, result);
+        position += count;
+        return result;
+    }
+
+    @Override
+    public OctetString readOctetString(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        checkRead(count);
+        OctetString result = makeOctetString(position, count);
+        position += count;
+        return result;
+    }
+
+    @Override
+    public byte peekByte(int offset) {
+        checkPeek(offset, 1);
+        long pos = position + offset;
+        return view(windowIndex(pos)).get(windowOffset(pos));
+    }
+
+    @Override
+    public short peekShort(int offset) {
+        checkPeek(offset, 2);
+        long pos = position + offset;
+        ByteBuffer view = view(windowIndex(pos));
+        int index = windowOffset(pos);
+        if (index <= view.limit() - 2) {
+            return view.getShort(index);
+        }
+        return super.peekShort(offset);
+    }
+
+    @Override
+    public int peekInt(int offset) {
+        checkPeek(offset, 4);
+        long pos = position + offset;
+        ByteBuffer view = view(windowIndex(pos));
+        int index = windowOffset(pos);
+        if (index <= view.limit() - 4) {
+            return view.getInt(index);
+        }
+        return super.peekInt(offset);
+    }
+
+    @Override
+    public long peekLong(int offset) {
+        checkPeek(offset, 8);
+        long pos = position + offset;
+        ByteBuffer view = view(windowIndex(pos));
+        int index = windowOffset(pos);
+        if (index <= view.limit() - 8) {
+            return view.getLong(index);
+        }
+        return super.peekLong(offset);
+    }
+
+    @Override
+    public byte[] peekBytes(int offset, int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        checkPeek(offset, count);
+        byte[] result = new byte[count];
+        copy(position + offset, result);
+        return result;
+    }
+
+    @Override
+    public OctetString peekOctetString(int offset, int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        checkPeek(offset, count);
+        return makeOctetString(position + offset, count);
+    }
+
+    @Override
+    public OctetReader dupOctetReader() {
+        return new MappedOctetReader(windows, windowShift, position, limit,
+            getByteOrder());
+    }
+
+    @Override
+    public void skip(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        checkRead(count);
+        position += count;
+    }
+
+    @Override
+    public int remaining() {
+        return (int) Math.min(limit - position, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public boolean hasRemaining() {
+        return position < limit;
+    }
+
+    @Override
+    public void setByteOrder(int byteOrder) {
+        super.setByteOrder(byteOrder);
+        ByteOrder order = ByteBufferOctetString.toByteOrder(byteOrder);
+        for (ByteBuffer view : views) {
+            if (view != null) {
+                view.order(order);
+            }
+        }
+    }
+
+    /** Get the number of octets remaining to be read, without limit.
+     * @return the number remaining
+     */
+    public final long remainingLong() {
+        return limit - position;
+    }
+
+    /** Get the current position within the file.
+     * @return the offset from the start of the file, in octets
+     */
+    public final long getPosition() {
+        return position;
+    }
+
+    /** Get a given-length OctetString from an absolute position within the
+     * file, without affecting the current position.
+     * As with readOctetString, the result refers to the mapped content
+     * wherever possible rather than being a copy of it.
+     * @param position the offset from the start of the file, in octets
+     * @param count the number of octets to be included
+     * @return the resulting OctetString
+     */
+    public final OctetString getOctetString(long position, int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        if (position < 0) {
+            throw new IndexOutOfBoundsException(
+                "negative position in octet stream");
+        }
+        if (position > limit - count) {
+            throw new IndexOutOfBoundsException(
+                "read beyond end of octet stream");
+        }
+        return makeOctetString(position, count);
+    }
+
+    /** Set the current position within the file.
+     * @param position the required offset from the start of the file,
+     *  in octets
+     */
+    public final void setPosition(long position) {
+        if (position < 0) {
+            throw new IndexOutOfBoundsException(
+                "negative position in octet stream");
+        }
+        if (position > limit) {
+            throw new IndexOutOfBoundsException(
+                "position beyond end of octet stream");
+        }
+        this.position = position;
+    }
+}
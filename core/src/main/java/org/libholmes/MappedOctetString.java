@@ -0,0 +1,26 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes;
+
+import java.nio.ByteBuffer;
+
+/** An OctetString class for content stored in a memory-mapped file.
+ * Instances are normally obtained from a MappedOctetReader. They refer
+ * directly to the mapped region, so the content is not copied onto the
+ * heap. OctetStrings and OctetReaders derived from a MappedOctetString
+ * are ByteBufferOctetStrings and ByteBufferOctetReaders which refer to the
+ * same mapped region.
+ */
+public class MappedOctetString extends ByteBufferOctetString {
+    /** Construct MappedOctetString from a buffer.
+     * @param content a buffer containing the required content between its
+     *  position and its limit (not copied)
+     * @param byteOrder the required byte order
+     */
+    MappedOctetString(ByteBuffer content, int byteOrder) {
+        super(content, byteOrder);
+    }
+}
@@ -0,0 +1,254 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** A class for exporting a sequence of artefacts as newline-delimited
+ * JSON, using a pool of worker threads.
+ *
+ * The input is divided into batches. Each batch is decoded and serialised
+ * by a worker into a pooled buffer, using an NdjsonWriter, so that the
+ * expensive part of the conversion takes place in parallel. Completed
+ * buffers are written to the output channel by the calling thread in
+ * the order in which the batches were submitted, so the output is in
+ * the same order as the input. The number of buffers in flight is
+ * bounded: when the limit is reached, the calling thread waits for the
+ * oldest batch to complete and writes it out before reading any further
+ * input.
+ *
+ * Each line is an array describing the stack of artefacts from the input
+ * item inwards, as for NdjsonWriter.writeStack. The input items are read
+ * by the calling thread but decoded by the workers, so they must be
+ * safe to decode on a different thread from the one which created them.
+ * An item which cannot be decoded, because the decoder raises a
+ * ParseException or (as parsers do for truncated content) an
+ * IndexOutOfBoundsException, is written undecoded. Any other exception
+ * raised by the decoder aborts the export.
+ * The decoder is called concurrently and out of input order, so it must
+ * not depend on state shared between items: in particular, it must not
+ * use a DecoderRegistry which holds a stateful decoder.
+ */
+public final class NdjsonExporter {
+    /** An interface for decoding the layers within an input item. */
+    public interface StackDecoder<T extends Artefact> {
+        /** Decode the layers within an input item.
+         * @param item the input item
+         * @return the innermost artefact decoded, which must be the item
+         *  or one of its descendants
+         * @throws ParseException if the item cannot be decoded
+         */
+        Artefact decode(T item) throws ParseException;
+    }
+
+    /** The default number of input items per batch. */
+    private static final int DEFAULT_BATCH_SIZE = 256;
+
+    /** The fields to be written. */
+    private final JsonProjection projection;
+
+    /** The number of worker threads. */
+    private final int threads;
+
+    /** The maximum number of batches in flight. */
+    private final int maxInFlight;
+
+    /** The number of input items per batch. */
+    private final int batchSize;
+
+    /** Construct NdjsonExporter.
+     * @param projection the fields to be written
+     * @param threads the number of worker threads
+     * @param maxInFlight the maximum number of batches which may be in
+     *  flight at any one time
+     * @param batchSize the number of input items per batch
+     */
+    public NdjsonExporter(JsonProjection projection, int threads,
+        int maxInFlight, int batchSize) {
+
+        if (threads < 1) {
+            throw new IllegalArgumentException(
+                "thread count must be at least 1");
+        }
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException(
+                "in-flight limit must be at least 1");
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException(
+                "batch size must be at least 1");
+        }
+        this.projection = projection;
+        this.threads = threads;
+        this.maxInFlight = maxInFlight;
+        this.batchSize = batchSize;
+    }
+
+    /** Construct NdjsonExporter with one worker thread per processor.
+     * @param projection the fields to be written
+     */
+    public NdjsonExporter(JsonProjection projection) {
+        this(projection, Runtime.getRuntime().availableProcessors(),
+            4 * Runtime.getRuntime().availableProcessors(),
+            DEFAULT_BATCH_SIZE);
+    }
+
+    /** A pooled buffer into which a batch is serialised. */
+    private static final class Buffer extends ByteArrayOutputStream {
+        /** A writer which serialises into this buffer. */
+        final NdjsonWriter writer;
+
+        /** Construct Buffer.
+         * @param projection the fields to be written
+         */
+        Buffer(JsonProjection projection) {
+            super(0x10000);
+            this.writer = new NdjsonWriter(this, projection);
+        }
+
+        /** Write the content of this buffer to a channel, then empty it.
+         * @param out the channel
+         * @throws IOException if the content could not be written
+         */
+        void drainTo(WritableByteChannel out) throws IOException {
+            ByteBuffer content = ByteBuffer.wrap(buf, 0, count);
+            while (content.hasRemaining()) {
+                out.write(content);
+            }
+            reset();
+        }
+    }
+
+    /** A task to decode and serialise one batch. */
+    private static final class Task<T extends Artefact>
+        implements Callable<Buffer> {
+
+        /** The input items. */
+        private final List<T> items;
+
+        /** The decoder for the input items. */
+        private final StackDecoder<T> decoder;
+
+        /** The buffer into which the batch should be serialised. */
+        private final Buffer buffer;
+
+        /** Construct Task.
+         * @param items the input items
+         * @param decoder the decoder for the input items
+         * @param buffer the buffer into which to serialise the batch
+         */
+        Task(List<T> items, StackDecoder<T> decoder, Buffer buffer) {
+            this.items = items;
+            this.decoder = decoder;
+            this.buffer = buffer;
+        }
+
+        @Override
+        public Buffer call() throws IOException {
+            for (T item : items) {
+                Artefact innermost;
+                try {
+                    innermost = decoder.decode(item);
+                } catch (ParseException | IndexOutOfBoundsException ex) {
+                    // Write whatever could be obtained without decoding,
+                    // in keeping with the permissive approach to parsing.
+                    // Parsers raise IndexOutOfBoundsException when the
+                    // content is truncated, so that is treated likewise.
+                    innermost = item;
+                }
+                buffer.writer.writeStack(innermost, item);
+            }
+            buffer.writer.flush();
+            return buffer;
+        }
+    }
+
+    /** Wait for a batch to complete, then write it out.
+     * @param pending the future result of the batch
+     * @param out the output channel
+     * @return the buffer, which may then be reused
+     * @throws IOException if the batch could not be serialised or written
+     */
+    private static Buffer complete(Future<Buffer> pending,
+        WritableByteChannel out) throws IOException {
+
+        Buffer buffer;
+        try {
+            buffer = pending.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("NDJSON export interrupted");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+        buffer.drainTo(out);
+        return buffer;
+    }
+
+    /** Export a sequence of artefacts.
+     * @param items the input items, in the order they should be written
+     * @param decoder the decoder for the input items
+     * @param out the channel to which the output should be written
+     * @return the number of lines written
+     * @throws IOException if the output could not be written
+     */
+    public <T extends Artefact> long export(Iterator<? extends T> items,
+        StackDecoder<T> decoder, WritableByteChannel out)
+        throws IOException {
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            ArrayDeque<Future<Buffer>> pending =
+                new ArrayDeque<Future<Buffer>>(maxInFlight);
+            ArrayDeque<Buffer> spare = new ArrayDeque<Buffer>(maxInFlight);
+            long lines = 0;
+            while (items.hasNext()) {
+                List<T> batch = new ArrayList<T>(batchSize);
+                while ((batch.size() != batchSize) && items.hasNext()) {
+                    batch.add(items.next());
+                }
+                lines += batch.size();
+
+                if (pending.size() == maxInFlight) {
+                    spare.add(complete(pending.remove(), out));
+                }
+                Buffer buffer = spare.isEmpty() ?
+                    new Buffer(projection) : spare.remove();
+                pending.add(executor.submit(
+                    new Task<T>(batch, decoder, buffer)));
+            }
+            while (!pending.isEmpty()) {
+                complete(pending.remove(), out);
+            }
+            return lines;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
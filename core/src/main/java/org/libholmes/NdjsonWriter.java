@@ -0,0 +1,160 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonGeneratorFactory;
+
+/** A class for writing artefacts as newline-delimited JSON.
+ *
+ * Each call writes one line, containing one JSON value. Artefacts are
+ * written using Artefact.writeJson, so memory use does not grow with
+ * the number of artefacts written. A line is either the object for a
+ * single artefact, or an array describing a stack of artefacts from the
+ * outermost layer inwards, in which each element is an object with a
+ * single member named after the class of the artefact. A JsonProjection
+ * may be given to restrict which fields are written.
+ */
+public final class NdjsonWriter implements Closeable, Flushable {
+    /** The factory for JSON generators. */
+    private static final JsonGeneratorFactory FACTORY =
+        Json.createGeneratorFactory(null);
+
+    /** The writer to which output is sent. */
+    private final Writer out;
+
+    /** A view of the output writer which ignores flush and close.
+     * A generator is created for each line and closed afterwards, so
+     * that its buffers are released, but the output is flushed only when
+     * requested by the caller.
+     */
+    private final Writer shield;
+
+    /** The fields to be written. */
+    private final JsonProjection projection;
+
+    /** Construct NdjsonWriter with a given projection.
+     * Output is encoded as UTF-8 and buffered.
+     * @param out the stream to which output should be written
+     * @param projection the fields to be written
+     */
+    public NdjsonWriter(OutputStream out, JsonProjection projection) {
+        this.projection = projection;
+        this.out = new BufferedWriter(new OutputStreamWriter(out,
+            StandardCharsets.UTF_8), 0x10000);
+        this.shield = new Writer() {
+            @Override
+            public void write(char[] cbuf, int off, int len)
+                throws IOException {
+
+                NdjsonWriter.this.out.write(cbuf, off, len);
+            }
+
+            @Override
+            public void write(String str, int off, int len)
+                throws IOException {
+
+                NdjsonWriter.this.out.write(str, off, len);
+            }
+
+            @Override
+            public void flush() {}
+
+            @Override
+            public void close() {}
+        };
+    }
+
+    /** Construct NdjsonWriter.
+     * All fields are written, as for Artefact.toJson.
+     * @param out the stream to which output should be written
+     */
+    public NdjsonWriter(OutputStream out) {
+        this(out, JsonProjection.FULL);
+    }
+
+    /** Close a generator and end the line.
+     * @param generator the generator
+     * @throws IOException if the output could not be written
+     */
+    private void endLine(JsonGenerator generator) throws IOException {
+        try {
+            generator.close();
+        } catch (JsonException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw ex;
+        }
+        out.write('\n');
+    }
+
+    /** Write a single artefact.
+     * @param artefact the artefact to be written
+     * @throws IOException if the output could not be written
+     */
+    public void write(Artefact artefact) throws IOException {
+        JsonGenerator generator = FACTORY.createGenerator(shield);
+        artefact.writeJson(generator, projection);
+        endLine(generator);
+    }
+
+    /** Write a stack of artefacts.
+     * @param artefact the innermost artefact to be written
+     * @param outermost the outermost artefact to be written, which must be
+     *  the innermost artefact or one of its ancestors, or null to write
+     *  all ancestors
+     * @throws IOException if the output could not be written
+     */
+    public void writeStack(Artefact artefact, Artefact outermost)
+        throws IOException {
+
+        ArrayList<Artefact> stack = new ArrayList<Artefact>();
+        Artefact layer = artefact;
+        while (layer != null) {
+            stack.add(layer);
+            if (layer == outermost) {
+                break;
+            }
+            layer = layer.getParent();
+        }
+        Collections.reverse(stack);
+
+        JsonGenerator generator = FACTORY.createGenerator(shield);
+        generator.writeStartArray();
+        for (Artefact item : stack) {
+            generator.writeStartObject();
+            item.writeJson(item.getClass().getSimpleName(), generator,
+                projection);
+            generator.writeEnd();
+        }
+        generator.writeEnd();
+        endLine(generator);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -14,6 +14,12 @@ package org.libholmes;
  * unlikely to be particularly efficient and it is expected that they will be
  * overridden in most cases.
  *
+ * The methods readOctetString and peekOctetString return views of the
+ * underlying content rather than copies, so that decoding a nested
+ * sequence of protocol layers does not repeatedly duplicate the payload.
+ * Subclasses which override these methods should preserve this property
+ * wherever the underlying storage allows.
+ *
  * Byte order control has been designed in a way which could be extended to
  * allow for mixed-endian operation, however this is explicitly disallowed
  * until the consequences are better understood.
@@ -113,19 +119,15 @@ public abstract class OctetReader implements Cloneable {
     /** Read a given-length OctetString from the octet stream.
      * The exact type of the result is unspecified, and may vary depending
      * on both the type of the originating OctetReader, and the content to
-     * be placed within it.
+     * be placed within it, however it refers to the content of this
+     * reader rather than being a copy of it.
      * @param count the number of octets to be read
      * @return the resulting OctetString
      */
     public OctetString readOctetString(int count) {
-        if (count < 0) {
-            throw new IllegalArgumentException("octet count is negative");
-        }
-        byte[] result = new byte[count];
-        for (int i = 0; i != count; ++i) {
-            result[i] = readByte();
-        }
-        return new ArrayOctetString(result, byteOrder);
+        OctetString result = peekOctetString(0, count);
+        skip(count);
+        return result;
     }
 
     /** Peek ahead to an 8-bit byte in the octet stream.
@@ -210,7 +212,8 @@ public abstract class OctetReader implements Cloneable {
     /** Peek ahead to a given-length OctetString in the octet stream.
      * The exact type of the result is unspecified, and may vary depending
      * on both the type of the originating OctetReader, and the content to
-     * be placed within it.
+     * be placed within it, however it refers to the content of this
+     * reader rather than being a copy of it.
      * @param offset the offset in octets from the current position
      * @param count the number of octets to be read
      * @return the resulting OctetString
@@ -227,15 +230,41 @@ public abstract class OctetReader implements Cloneable {
             throw new IndexOutOfBoundsException(
                 "peek beyond end of octet stream");
         }
-        byte[] result = new byte[count];
-        for (int i = 0; i != count; ++i) {
-            result[i] = peekByte(offset + i);
-        }
-        return new ArrayOctetString(result, byteOrder);
+        OctetReader dup = dupOctetReader();
+        dup.skip(offset);
+        return new ReaderOctetString(dup, count, byteOrder);
+    }
+
+    /** Read a given-length OctetWindow from the octet stream.
+     * The window has the current byte order of this reader, and that does
+     * not change if the byte order of the reader is subsequently changed.
+     * @param count the number of octets to be read
+     * @return the resulting OctetWindow
+     */
+    public OctetWindow readWindow(int count) {
+        OctetWindow result = peekWindow(0, count);
+        skip(count);
+        return result;
+    }
+
+    /** Peek ahead to a given-length OctetWindow in the octet stream.
+     * The window has the current byte order of this reader, and that does
+     * not change if the byte order of the reader is subsequently changed.
+     * By default the content of the window is copied, however subclasses
+     * which store their content in a byte array may avoid this.
+     * @param offset the offset in octets from the current position
+     * @param count the number of octets to be read
+     * @return the resulting OctetWindow
+     */
+    public OctetWindow peekWindow(int offset, int count) {
+        return OctetWindow.wrap(peekBytes(offset, count), 0, count,
+            byteOrder);
     }
 
     /** Make a duplicate of this OctetReader.
      * Following creation, the two OctetReaders operate independently.
+     * If the length of the content is not known then the duplicate need
+     * only cover the octets which remaining() reports as available.
      * @return the resulting OctetReader
      */
     public abstract OctetReader dupOctetReader();
@@ -246,10 +275,22 @@ public abstract class OctetReader implements Cloneable {
     public abstract void skip(int count);
 
     /** Get the number of octets remaining to be read.
-     * @return the number remaining
+     * If the length of the content is not known in advance (see
+     * isLengthKnown) then the result is a lower bound: at least this many
+     * octets can be read, and it is zero only if none can be read.
+     * @return the number remaining, or a lower bound on that number
      */
     public abstract int remaining();
 
+    /** Check whether the length of the content is known in advance.
+     * If not, remaining() returns only a lower bound on the number of
+     * octets which can be read.
+     * @return true if the length is known, otherwise false
+     */
+    public boolean isLengthKnown() {
+        return true;
+    }
+
     /** Check whether there are any octets remaining to be read.
      * @return true if there are octets remaining, otherwise false
      */
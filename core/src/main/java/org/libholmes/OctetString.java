@@ -5,6 +5,7 @@
 
 package org.libholmes;
 
+import java.io.IOException;
 import java.nio.charset.Charset;
 
 /** An abstract base class to represent an artefact composed of a sequence
@@ -15,6 +16,12 @@ import java.nio.charset.Charset;
  * working subclass. However, these defaults is unlikely to be particularly
  * efficient, and it is expected that they will be overridden in most cases.
  *
+ * The methods getOctetString and makeOctetReader return views of the
+ * underlying content rather than copies, so that decoding a nested
+ * sequence of protocol layers does not repeatedly duplicate the payload.
+ * Subclasses which override these methods should preserve this property
+ * wherever the underlying storage allows.
+ *
  * Byte order control has been designed in a way which could be extended to
  * allow for mixed-endian operation, however this is explicitly disallowed
  * until the consequences are better understood.
@@ -135,35 +142,45 @@ public abstract class OctetString {
     }
 
     /** Get a given-length OctetString from this octet string.
+     * The result refers to the content of this octet string rather than
+     * being a copy of it.
      * @param index the index into the octet string
      * @param count the number of octets to be read
-     * @return the resulting octet reader
+     * @return the resulting octet string
      */
     public OctetString getOctetString(int index, int count) {
-        if (count < 0) {
-            throw new IllegalArgumentException("octet count is negative");
-        }
-        byte[] result = new byte[count];
-        for (int i = 0; i != count; ++i) {
-            result[i] = getByte(index + i);
-        }
-        return new ArrayOctetString(result, getByteOrder());
+        return new OctetSubstring(this, index, count);
+    }
+
+    /** Get a given-length OctetWindow from this octet string.
+     * The window has the same byte order as this octet string. By default
+     * the content of the window is copied, however subclasses which store
+     * their content in a byte array may avoid this.
+     * @param index the index into the octet string
+     * @param count the number of octets to be included
+     * @return the resulting octet window
+     */
+    public OctetWindow getWindow(int index, int count) {
+        return OctetWindow.wrap(getBytes(index, count), 0, count,
+            getByteOrder());
+    }
+
+    /** Get an OctetWindow for the whole of this octet string.
+     * @return the resulting octet window
+     */
+    public OctetWindow getWindow() {
+        return getWindow(0, length());
     }
 
     /** Make a reader for part of this OctetString.
+     * The reader refers to the content of this octet string rather than
+     * to a copy of it.
      * @param index the index into the octet string
      * @param count the number of octets to be read
      * @return the resulting OctetReader
      */
     public OctetReader makeOctetReader(int index, int count) {
-        if (count < 0) {
-            throw new IllegalArgumentException("octet count is negative");
-        }
-        byte[] result = new byte[count];
-        for (int i = 0; i != count; ++i) {
-            result[i] = getByte(index + i);
-        }
-        return new ArrayOctetReader(result, getByteOrder());
+        return new OctetStringReader(this, index, count, getByteOrder());
     }
 
     /** Make a reader for the whole of this OctetString.
@@ -232,13 +249,42 @@ public abstract class OctetString {
         return result;
     }
 
+    /** Append part of this octet string to an Appendable as hex.
+     * Octets are encoded in chunks, so no String is created for the
+     * range as a whole.
+     * @param out the Appendable to which the digits should be written
+     * @param index the index into the octet string
+     * @param count the number of octets to be encoded
+     * @throws IOException if the digits could not be written
+     */
+    public void appendHex(Appendable out, int index, int count)
+        throws IOException {
+
+        if (count < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        int chunk = Math.min(count, Hex.CHUNK_SIZE);
+        char[] chars = new char[chunk * 2];
+        int done = 0;
+        while (done != count) {
+            int n = Math.min(count - done, chunk);
+            Hex.encode(getBytes(index + done, n), 0, n, chars, 0);
+            Hex.append(out, chars, n * 2);
+            done += n;
+        }
+    }
+
+    /** Append this octet string to an Appendable as hex.
+     * @param out the Appendable to which the digits should be written
+     * @throws IOException if the digits could not be written
+     */
+    public void appendHex(Appendable out) throws IOException {
+        appendHex(out, 0, length());
+    }
+
     @Override
     public String toString() {
-        int len = length();
-        StringBuilder builder = new StringBuilder();
-        for (int i = 0; i != len; ++i) {
-            builder.append(String.format("%02x", getByte(i) & 0xff));
-        }
-        return builder.toString();
+        byte[] content = getBytes();
+        return Hex.encode(content, 0, content.length);
     }
 }
@@ -0,0 +1,218 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes;
+
+/** An OctetReader class for reading octets from an OctetString.
+ * This is used by the default implementation of
+ * OctetString.makeOctetReader, so that the content is not copied.
+ */
+final class OctetStringReader extends OctetReader {
+    /** The OctetString to be read. */
+    private final OctetString content;
+
+    /** The index into the OctetString of the next octet to be read. */
+    private int index;
+
+    /** The number of octets remaining. */
+    private int rem;
+
+    /** Construct OctetStringReader from part of an OctetString.
+     * @param content the OctetString to be read
+     * @param offset the index into the OctetString of the first octet
+     *  to be read
+     * @param count the number of octets to be read
+     * @param byteOrder the required byte order
+     */
+    OctetStringReader(OctetString content, int offset, int count,
+        int byteOrder) {
+
+        super(byteOrder);
+        if (count < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        if (offset < 0) {
+            throw new IndexOutOfBoundsException(
+                "negative index into octet string");
+        }
+        if (offset > content.length() - count) {
+            throw new IndexOutOfBoundsException(
+                "read beyond end of octet string");
+        }
+        this.content = content;
+        this.index = offset;
+        this.rem = count;
+    }
+
+    /** Check that a given range lies within the remaining octets.
+     * @param offset the offset in octets from the current position
+     * @param count the number of octets in the range
+     */
+    private void checkPeek(int offset, int count) {
+        if (offset < 0) {
+            throw new IndexOutOfBoundsException(
+                "negative offset into octet stream");
+        }
+        if (offset > rem - count) {
+            throw new IndexOutOfBoundsException(
+                "peek beyond end of octet stream");
+        }
+    }
+
+    /** Check that a given number of octets can be read.
+     * @param count the number of octets to be read
+     */
+    private void checkRead(int count) {
+        if (rem < count) {
+            throw new IndexOutOfBoundsException(
+                "read beyond end of octet stream");
+        }
+    }
+
+    /** Test whether multi-octet values can be delegated to the content.
+     * This is only possible if the content has the same byte order as
+     * this reader.
+     * @return true if the byte orders match, otherwise false
+     */
+    private boolean sameByteOrder() {
+        return getByteOrder() == content.getByteOrder();
+    }
+
+    @Override
+    public byte readByte() {
+        checkRead(1);
+        byte result = content.getByte(index);
+        index += 1;
+        rem -= 1;
+        return result;
+    }
+
+    @Override
+    public short readShort() {
+        checkRead(2);
+        short result = peekShort(0);
+        index += 2;
+        rem -= 2;
+        return result;
+    }
+
+    @Override
+    public int readInt() {
+        checkRead(4);
+        int result = peekInt(0);
+        index += 4;
+        rem -= 4;
+        return result;
+    }
+
+    @Override
+    public long readLong() {
+        checkRead(8);
+        long result = peekLong(0);
+        index += 8;
+        rem -= 8;
+        return result;
+    }
+
+    @Override
+    public byte[] readBytes(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        checkRead(count);
+        byte[] result = content.getBytes(index, count);
+        index += count;
+        rem -= count;
+        return result;
+    }
+
+    @Override
+    public OctetString readOctetString(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        checkRead(count);
+        OctetString result = content.getOctetString(index, count);
+        index += count;
+        rem -= count;
+        return result;
+    }
+
+    @Override
+    public byte peekByte(int offset) {
+        checkPeek(offset, 1);
+        return content.getByte(index + offset);
+    }
+
+    @Override
+    public short peekShort(int offset) {
+        checkPeek(offset, 2);
+        if (sameByteOrder()) {
+            return content.getShort(index + offset);
+        }
+        return super.peekShort(offset);
+    }
+
+    @Override
+    public int peekInt(int offset) {
+        checkPeek(offset, 4);
+        if (sameByteOrder()) {
+            return content.getInt(index + offset);
+        }
+        return super.peekInt(offset);
+    }
+
+    @Override
+    public long peekLong(int offset) {
+        checkPeek(offset, 8);
+        if (sameByteOrder()) {
+            return content.getLong(index + offset);
+        }
+        return super.peekLong(offset);
+    }
+
+    @Override
+    public byte[] peekBytes(int offset, int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        checkPeek(offset, count);
+        return content.getBytes(index + offset, count);
+    }
+
+    @Override
+    public OctetString peekOctetString(int offset, int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        checkPeek(offset, count);
+        return content.getOctetString(index + offset, count);
+    }
+
+    @Override
+    public OctetReader dupOctetReader() {
+        return new OctetStringReader(content, index, rem, getByteOrder());
+    }
+
+    @Override
+    public void skip(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        checkRead(count);
+        index += count;
+        rem -= count;
+    }
+
+    @Override
+    public int remaining() {
+        return rem;
+    }
+
+    @Override
+    public boolean hasRemaining() {
+        return rem > 0;
+    }
+}
@@ -0,0 +1,115 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes;
+
+/** An OctetString class to represent part of another OctetString.
+ * This is used by the default implementation of
+ * OctetString.getOctetString, so that the content is not copied.
+ */
+final class OctetSubstring extends OctetString {
+    /** The OctetString containing the required content. */
+    private final OctetString parent;
+
+    /** The index into the parent of the first octet. */
+    private final int offset;
+
+    /** The length of the required content, in octets. */
+    private final int len;
+
+    /** Construct OctetSubstring from part of another OctetString.
+     * @param parent the OctetString containing the required content
+     * @param offset the index into the parent of the first octet
+     * @param count the number of octets to be included
+     */
+    OctetSubstring(OctetString parent, int offset, int count) {
+        super(parent.getByteOrder());
+        if (count < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        if (offset < 0) {
+            throw new IndexOutOfBoundsException(
+                "negative index into octet string");
+        }
+        if (offset > parent.length() - count) {
+            throw new IndexOutOfBoundsException(
+                "read beyond end of octet string");
+        }
+        this.parent = parent;
+        this.offset = offset;
+        this.len = count;
+    }
+
+    /** Check that a given range lies within this octet string.
+     * @param index the index into the octet string
+     * @param count the number of octets in the range
+     */
+    private void checkRange(int index, int count) {
+        if (index < 0) {
+            throw new IndexOutOfBoundsException(
+                "negative index into octet string");
+        }
+        if (index > len - count) {
+            throw new IndexOutOfBoundsException(
+                "read beyond end of octet string");
+        }
+    }
+
+    @Override
+    public byte getByte(int index) {
+        checkRange(index, 1);
+        return parent.getByte(offset + index);
+    }
+
+    @Override
+    public short getShort(int index) {
+        checkRange(index, 2);
+        return parent.getShort(offset + index);
+    }
+
+    @Override
+    public int getInt(int index) {
+        checkRange(index, 4);
+        return parent.getInt(offset + index);
+    }
+
+    @Override
+    public long getLong(int index) {
+        checkRange(index, 8);
+        return parent.getLong(offset + index);
+    }
+
+    @Override
+    public byte[] getBytes(int index, int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        checkRange(index, count);
+        return parent.getBytes(offset + index, count);
+    }
+
+    @Override
+    public OctetString getOctetString(int index, int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        checkRange(index, count);
+        return new OctetSubstring(parent, offset + index, count);
+    }
+
+    @Override
+    public OctetReader makeOctetReader(int index, int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        checkRange(index, count);
+        return parent.makeOctetReader(offset + index, count);
+    }
+
+    @Override
+    public int length() {
+        return len;
+    }
+}
@@ -0,0 +1,121 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes;
+
+/** An abstract base class to represent a fixed-length window onto a byte
+ * array, with a fixed byte order.
+ *
+ * A window is intended for decoding fixed-format protocol headers. The
+ * bounds of the window are validated once, when it is created, after
+ * which fields can be read without further validation. Indices are not
+ * checked against the length of the window when fields are read: reading
+ * outside the window gives an unspecified result or throws an
+ * IndexOutOfBoundsException.
+ *
+ * Because the byte order cannot change once the window has been created,
+ * it is implemented by a separate subclass for each byte order. There is
+ * no need for the byte order to be tested, or for octet indices to be
+ * computed, each time a field is read.
+ */
+public abstract class OctetWindow {
+    /** A constant used to indicate little-endian byte order. */
+    public static final int LITTLE_ENDIAN = 0;
+
+    /** A constant used to indicate big-endian byte order. */
+    public static final int BIG_ENDIAN = -1;
+
+    /** A byte array in which the required content is present (but
+     * potentially with extra data at the start and/or end). */
+    final byte[] content;
+
+    /** The offset, in octets, from the start of the byte array to the
+     * start of the window. */
+    final int offset;
+
+    /** The length of the window, in octets. */
+    private final int len;
+
+    /** Construct OctetWindow.
+     * @param content an array with the required content (not copied)
+     * @param offset the offset into the byte array of the first octet
+     * @param count the number of octets in the window
+     */
+    OctetWindow(byte[] content, int offset, int count) {
+        this.content = content;
+        this.offset = offset;
+        this.len = count;
+    }
+
+    /** Get an 8-bit byte from the window.
+     * @param index the index into the window
+     * @return the byte that was read
+     */
+    public final byte getByte(int index) {
+        return content[offset + index];
+    }
+
+    /** Get a 16-bit short integer from the window.
+     * @param index the index into the window
+     * @return the short integer that was read
+     */
+    public abstract short getShort(int index);
+
+    /** Get a 32-bit integer from the window.
+     * @param index the index into the window
+     * @return the integer that was read
+     */
+    public abstract int getInt(int index);
+
+    /** Get a 64-bit long integer from the window.
+     * @param index the index into the window
+     * @return the long integer that was read
+     */
+    public abstract long getLong(int index);
+
+    /** Get the length of the window.
+     * @return the length, in octets
+     */
+    public final int length() {
+        return len;
+    }
+
+    /** Get the byte order.
+     * This returns the value LITTLE_ENDIAN or BIG_ENDIAN.
+     * @return the byte order
+     */
+    public abstract int getByteOrder();
+
+    /** Make an OctetWindow for part of a byte array.
+     * @param content an array with the required content (not copied)
+     * @param offset the offset into the byte array of the first octet
+     * @param count the number of octets in the window
+     * @param byteOrder the required byte order
+     * @return the resulting OctetWindow
+     */
+    public static OctetWindow wrap(byte[] content, int offset, int count,
+        int byteOrder) {
+
+        if (count < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        if (offset < 0) {
+            throw new IndexOutOfBoundsException(
+                "negative offset into byte array");
+        }
+        if (offset > content.length - count) {
+            throw new IndexOutOfBoundsException(
+                "read beyond end of byte array");
+        }
+        switch (byteOrder) {
+        case BIG_ENDIAN:
+            return new BigEndianOctetWindow(content, offset, count);
+        case LITTLE_ENDIAN:
+            return new LittleEndianOctetWindow(content, offset, count);
+        default:
+            throw new IllegalArgumentException("invalid byte order");
+        }
+    }
+}
@@ -0,0 +1,251 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/** An InputStream class which reads ahead from another stream using a
+ * background thread.
+ *
+ * This is intended for sources which are expensive to read, such as
+ * decompressing streams, so that the work of producing the data overlaps
+ * with the work of consuming it. Data is passed between the threads using
+ * a fixed number of buffers, which are reused, so memory usage is bounded
+ * and there is no per-read allocation.
+ *
+ * The underlying stream is closed by the background thread, once the end
+ * of the underlying stream has been reached, once it has raised an
+ * exception, or once this stream has been closed. It is never closed by
+ * the consumer thread, since the background thread may be part way
+ * through a read (and some streams, such as GZIPInputStream, do not allow
+ * one thread to close them while another is reading). Any exception or
+ * error raised by the underlying stream is passed to the consumer in
+ * place of the remaining data. Instances should always be closed, since
+ * otherwise the background thread will remain blocked once all of the
+ * buffers have been filled.
+ */
+public final class ReadAheadInputStream extends InputStream {
+    /** The default buffer size, in octets. */
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    /** The default number of buffers. */
+    private static final int DEFAULT_BUFFER_COUNT = 4;
+
+    /** A buffer which has been filled by the background thread. */
+    private static final class Chunk {
+        /** The buffer, or null if this chunk marks the end of the stream. */
+        final byte[] data;
+
+        /** The number of octets in the buffer. */
+        final int length;
+
+        /** The exception or error raised by the underlying stream, or null
+         * if none.
+         */
+        final Throwable error;
+
+        /** Construct Chunk.
+         * @param data the buffer, or null to mark the end of the stream
+         * @param length the number of octets in the buffer
+         * @param error the exception or error raised, or null if none
+         */
+        Chunk(byte[] data, int length, Throwable error) {
+            this.data = data;
+            this.length = length;
+            this.error = error;
+        }
+    }
+
+    /** The underlying stream. */
+    private final InputStream in;
+
+    /** Buffers which are available to be filled. */
+    private final BlockingQueue<byte[]> empty;
+
+    /** Buffers which have been filled, in stream order. */
+    private final BlockingQueue<Chunk> full;
+
+    /** The background thread. */
+    private final Thread thread;
+
+    /** The chunk currently being consumed, or null if none. */
+    private Chunk current = null;
+
+    /** The index into the current chunk of the next octet to be read. */
+    private int index = 0;
+
+    /** True if the end of the stream has been reached. */
+    private boolean eof = false;
+
+    /** True if this stream has been closed. This is used in addition to
+     * interrupting the background thread, since the underlying stream
+     * might clear the interrupt status.
+     */
+    private volatile boolean closed = false;
+
+    /** Construct ReadAheadInputStream with a given buffer size and count.
+     * @param in the underlying stream
+     * @param bufferSize the size of each buffer, in octets
+     * @param bufferCount the number of buffers
+     */
+    public ReadAheadInputStream(InputStream in, int bufferSize,
+        int bufferCount) {
+
+        if ((bufferSize < 1) || (bufferCount < 1)) {
+            throw new IllegalArgumentException(
+                "buffer size and count must be positive");
+        }
+        this.in = in;
+        this.empty = new ArrayBlockingQueue<byte[]>(bufferCount);
+        this.full = new ArrayBlockingQueue<Chunk>(bufferCount + 1);
+        for (int i = 0; i != bufferCount; ++i) {
+            empty.add(new byte[bufferSize]);
+        }
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                readAhead();
+            }
+        }, "libholmes-read-ahead");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Construct ReadAheadInputStream with the default buffer size and
+     * count.
+     * @param in the underlying stream
+     */
+    public ReadAheadInputStream(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFER_COUNT);
+    }
+
+    /** Fill buffers from the underlying stream until it has ended, or
+     * until this stream has been closed.
+     * This is run on the background thread.
+     */
+    private void readAhead() {
+        try {
+            try {
+                while (true) {
+                    byte[] buffer = empty.take();
+                    int length = 0;
+                    int n = 0;
+                    while ((length != buffer.length) && (n >= 0)) {
+                        if (closed) {
+                            throw new InterruptedException();
+                        }
+                        n = in.read(buffer, length, buffer.length - length);
+                        if (n > 0) {
+                            length += n;
+                        }
+                    }
+                    if (length != 0) {
+                        full.put(new Chunk(buffer, length, null));
+                    }
+                    if (n < 0) {
+                        full.put(new Chunk(null, 0, null));
+                        break;
+                    }
+                }
+            } catch (InterruptedException ex) {
+                // No action: this stream has been closed.
+            } catch (Throwable ex) {
+                full.put(new Chunk(null, 0, ex));
+            } finally {
+                in.close();
+            }
+        } catch (InterruptedException ex) {
+            // No action: this stream has been closed.
+        } catch (IOException ex) {
+            // No action: the end of the stream has already been queued.
+        }
+    }
+
+    /** Ensure that the current chunk has octets remaining.
+     * @return true if octets are available, false at the end of the stream
+     * @throws IOException if the underlying stream raised an exception
+     */
+    private boolean nextChunk() throws IOException {
+        if (eof) {
+            return false;
+        }
+        if ((current != null) && (index != current.length)) {
+            return true;
+        }
+        if (current != null) {
+            empty.add(current.data);
+            current = null;
+        }
+        Chunk chunk;
+        try {
+            chunk = full.take();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while reading ahead", ex);
+        }
+        if (chunk.error != null) {
+            eof = true;
+            if (chunk.error instanceof IOException) {
+                throw (IOException) chunk.error;
+            }
+            if (chunk.error instanceof RuntimeException) {
+                throw (RuntimeException) chunk.error;
+            }
+            if (chunk.error instanceof Error) {
+                throw (Error) chunk.error;
+            }
+            throw new IOException(chunk.error);
+        }
+        if (chunk.data == null) {
+            eof = true;
+            return false;
+        }
+        current = chunk;
+        index = 0;
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextChunk()) {
+            return -1;
+        }
+        return current.data[index++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] dst, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!nextChunk()) {
+            return -1;
+        }
+        int count = Math.min(length, current.length - index);
+        System.arraycopy(current.data, index, dst, offset, count);
+        index += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return (current != null) ? current.length - index : 0;
+    }
+
+    /** Close this stream.
+     * The background thread is interrupted, and closes the underlying
+     * stream once any read in progress has completed.
+     */
+    @Override
+    public void close() {
+        eof = true;
+        closed = true;
+        thread.interrupt();
+    }
+}
@@ -0,0 +1,104 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes;
+
+/** An OctetString class for content which is accessed through an
+ * OctetReader.
+ * This is used by the default implementation of
+ * OctetReader.peekOctetString, so that the content is not copied.
+ */
+final class ReaderOctetString extends OctetString {
+    /** A reader positioned at the start of the required content.
+     * This is not shared with any other object, and its byte order
+     * matches that of this octet string.
+     */
+    private final OctetReader reader;
+
+    /** The length of the required content, in octets. */
+    private final int len;
+
+    /** Construct ReaderOctetString from an OctetReader.
+     * @param reader a reader positioned at the start of the required
+     *  content (not copied, and not subsequently used by the caller)
+     * @param count the number of octets to be included
+     * @param byteOrder the required byte order
+     */
+    ReaderOctetString(OctetReader reader, int count, int byteOrder) {
+        super(byteOrder);
+        if (count < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        if (count > reader.remaining()) {
+            throw new IndexOutOfBoundsException(
+                "read beyond end of octet stream");
+        }
+        reader.setByteOrder(byteOrder);
+        this.reader = reader;
+        this.len = count;
+    }
+
+    /** Check that a given range lies within this octet string.
+     * @param index the index into the octet string
+     * @param count the number of octets in the range
+     */
+    private void checkRange(int index, int count) {
+        if (index < 0) {
+            throw new IndexOutOfBoundsException(
+                "negative index into octet string");
+        }
+        if (index > len - count) {
+            throw new IndexOutOfBoundsException(
+                "read beyond end of octet string");
+        }
+    }
+
+    @Override
+    public byte getByte(int index) {
+        checkRange(index, 1);
+        return reader.peekByte(index);
+    }
+
+    @Override
+    public short getShort(int index) {
+        checkRange(index, 2);
+        return reader.peekShort(index);
+    }
+
+    @Override
+    public int getInt(int index) {
+        checkRange(index, 4);
+        return reader.peekInt(index);
+    }
+
+    @Override
+    public long getLong(int index) {
+        checkRange(index, 8);
+        return reader.peekLong(index);
+    }
+
+    @Override
+    public byte[] getBytes(int index, int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        checkRange(index, count);
+        return reader.peekBytes(index, count);
+    }
+
+    @Override
+    public OctetString getOctetString(int index, int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        checkRange(index, count);
+        return reader.peekOctetString(index, count);
+    }
+
+    @Override
+    public int length() {
+        return len;
+    }
+}
@@ -0,0 +1,314 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/** An OctetReader class for reading octets from a stream.
+ *
+ * Octets are read from the underlying channel into a buffer which is
+ * refilled as required, so the amount of memory used does not depend on
+ * the length of the stream. The buffer grows only when a peek extends
+ * beyond its current capacity. OctetStrings returned by this reader are
+ * copies, since the buffer is subsequently reused.
+ *
+ * Because the length of a stream is not known in advance, isLengthKnown()
+ * returns false and remaining() returns the number of octets currently
+ * buffered. This is a lower bound which is zero if and only if the end of
+ * the stream has been reached. The channel should be in blocking mode.
+ * I/O errors are reported as UncheckedIOExceptions.
+ */
+public class StreamOctetReader extends OctetReader {
+    /** The default buffer size, in octets. */
+    private static final int DEFAULT_BUFFER_SIZE = 0x10000;
+
+    /** The channel from which octets are read. */
+    private final ReadableByteChannel channel;
+
+    /** The buffer into which octets are read. */
+    private byte[] buffer;
+
+    /** The index into the buffer of the next octet to be read. */
+    private int index = 0;
+
+    /** The number of octets currently buffered. */
+    private int count = 0;
+
+    /** True if the end of the stream has been reached, otherwise false. */
+    private boolean eof = false;
+
+    /** Construct StreamOctetReader from a channel, with a given buffer
+     * size.
+     * @param channel the channel from which octets are to be read
+     * @param byteOrder the required byte order
+     * @param bufferSize the initial buffer size, in octets
+     */
+    public StreamOctetReader(ReadableByteChannel channel, int byteOrder,
+        int bufferSize) {
+
+        super(byteOrder);
+        if (bufferSize < 8) {
+            throw new IllegalArgumentException("buffer size too small");
+        }
+        this.channel = channel;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /** Construct StreamOctetReader from a channel.
+     * @param channel the channel from which octets are to be read
+     * @param byteOrder the required byte order
+     */
+    public StreamOctetReader(ReadableByteChannel channel, int byteOrder) {
+        this(channel, byteOrder, DEFAULT_BUFFER_SIZE);
+    }
+
+    /** Construct StreamOctetReader from an input stream.
+     * @param in the input stream from which octets are to be read
+     * @param byteOrder the required byte order
+     */
+    public StreamOctetReader(InputStream in, int byteOrder) {
+        this(Channels.newChannel(in), byteOrder, DEFAULT_BUFFER_SIZE);
+    }
+
+    /** Read from the channel into part of a byte array.
+     * @param dst the destination array
+     * @param offset the offset into the array
+     * @param length the maximum number of octets to read
+     * @return the number of octets read, or -1 at the end of the stream
+     */
+    private int readChannel(byte[] dst, int offset, int length) {
+        try {
+            return channel.read(ByteBuffer.wrap(dst, offset, length));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /** Attempt to buffer a given number of octets.
+     * Fewer octets will be buffered if the end of the stream is reached.
+     * @param needed the number of octets required
+     */
+    private void fill(int needed) {
+        if ((count >= needed) || eof) {
+            return;
+        }
+        if (needed > buffer.length) {
+            byte[] newBuffer = new byte[Math.max(needed, buffer.length * 2)];
+            System.arraycopy(buffer, index, newBuffer, 0, count);
+            buffer = newBuffer;
+            index = 0;
+        } else if (index + needed > buffer.length) {
+            System.arraycopy(buffer, index, buffer, 0, count);
+            index = 0;
+        }
+        while (count < needed) {
+            int end = index + count;
+            int n = readChannel(buffer, end, buffer.length - end);
+            if (n < 0) {
+                eof = true;
+                return;
+            }
+            count += n;
+        }
+    }
+
+    /** Ensure that a given range has been buffered.
+     * @param offset the offset in octets from the current position
+     * @param length the number of octets in the range
+     */
+    private void ensurePeek(int offset, int length) {
+        if (offset < 0) {
+            throw new IndexOutOfBoundsException(
+                "negative offset into octet stream");
+        }
+        fill(offset + length);
+        if (offset > count - length) {
+            throw new IndexOutOfBoundsException(
+                "peek beyond end of octet stream");
+        }
+    }
+
+    /** Ensure that a given number of octets has been buffered.
+     * @param length the number of octets to be read
+     */
+    private void ensureRead(int length) {
+        fill(length);
+        if (count < length) {
+            throw new IndexOutOfBoundsException(
+                "read beyond end of octet stream");
+        }
+    }
+
+    /** Consume a given number of buffered octets.
+     * @param length the number of octets to be consumed
+     */
+    private void consume(int length) {
+        index += length;
+        count -= length;
+    }
+
+    @Override
+    public byte readByte() {
+        ensureRead(1);
+        byte result = buffer[index];
+        consume(1);
+        return result;
+    }
+
+    @Override
+    public short readShort() {
+        short result = peekShort(0);
+        consume(2);
+        return result;
+    }
+
+    @Override
+    public int readInt() {
+        int result = peekInt(0);
+        consume(4);
+        return result;
+    }
+
+    @Override
+    public long readLong() {
+        long result = peekLong(0);
+        consume(8);
+        return result;
+    }
+
+    @Override
+    public byte[] readBytes(int length) {
+        if (length < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        // Octets which have already been buffered are copied from the
+        // buffer, but the remainder are read directly into the result
+        // so that the buffer need not grow.
+        byte[] result = new byte[length];
+        int done = Math.min(length, count);
+        System.arraycopy(buffer, index, result, 0, done);
+        consume(done);
+        while (done != length) {
+            int n = eof ? -1 : readChannel(result, done, length - done);
+            if (n < 0) {
+                eof = true;
+                throw new IndexOutOfBoundsException(
+                    "read beyond end of octet stream");
+            }
+            done += n;
+        }
+        return result;
+    }
+
+    @Override
+    public OctetString readOctetString(int length) {
+        return new ArrayOctetString(readBytes(length), getByteOrder());
+    }
+
+    @Override
+    public byte peekByte(int offset) {
+        ensurePeek(offset, 1);
+        return buffer[index + offset];
+    }
+
+    @Override
+    public short peekShort(int offset) {
+        ensurePeek(offset, 2);
+        int base = index + offset;
+        return (getByteOrder() == BIG_ENDIAN) ?
+            BigEndianOctetWindow.getShort(buffer, base) :
+            LittleEndianOctetWindow.getShort(buffer, base);
+    }
+
+    @Override
+    public int peekInt(int offset) {
+        ensurePeek(offset, 4);
+        int base = index + offset;
+        return (getByteOrder() == BIG_ENDIAN) ?
+            BigEndianOctetWindow.getInt(buffer, base) :
+            LittleEndianOctetWindow.getInt(buffer, base);
+    }
+
+    @Override
+    public long peekLong(int offset) {
+        ensurePeek(offset, 8);
+        int base = index + offset;
+        return (getByteOrder() == BIG_ENDIAN) ?
+            BigEndianOctetWindow.getLong(buffer, base) :
+            LittleEndianOctetWindow.getLong(buffer, base);
+    }
+
+    @Override
+    public byte[] peekBytes(int offset, int length) {
+        if (length < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        ensurePeek(offset, length);
+        byte[] result = new byte[length];
+        System.arraycopy(buffer, index + offset, result, 0, length);
+        return result;
+    }
+
+    @Override
+    public OctetString peekOctetString(int offset, int length) {
+        return new ArrayOctetString(peekBytes(offset, length),
+            getByteOrder());
+    }
+
+    /** Make a duplicate of this OctetReader.
+     * The duplicate covers only the octets which are currently buffered,
+     * since the remainder of the stream can be read only once. It is
+     * independent of this reader and of the underlying channel.
+     * @return the resulting OctetReader
+     */
+    @Override
+    public OctetReader dupOctetReader() {
+        fill(1);
+        return new ArrayOctetReader(
+            Arrays.copyOfRange(buffer, index, index + count),
+            getByteOrder());
+    }
+
+    @Override
+    public void skip(int length) {
+        if (length < 0) {
+            throw new IllegalArgumentException("octet count is negative");
+        }
+        while (length > count) {
+            length -= count;
+            consume(count);
+            fill(1);
+            if (count == 0) {
+                throw new IndexOutOfBoundsException(
+                    "read beyond end of octet stream");
+            }
+        }
+        consume(length);
+    }
+
+    @Override
+    public int remaining() {
+        fill(1);
+        return count;
+    }
+
+    @Override
+    public boolean hasRemaining() {
+        fill(1);
+        return count > 0;
+    }
+
+    @Override
+    public boolean isLengthKnown() {
+        return false;
+    }
+}
@@ -0,0 +1,46 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class ByteBufferOctetReaderTest extends OctetReaderTest {
+    @Override
+    public OctetReader makeOctetReader(byte[] content) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(content.length + 8);
+        buffer.put(new byte[]{0x55, 0x55, 0x55});
+        buffer.put(content);
+        buffer.put(new byte[]{0x55, 0x55, 0x55, 0x55, 0x55});
+        buffer.position(3);
+        buffer.limit(3 + content.length);
+        return new ByteBufferOctetReader(buffer, OctetReader.BIG_ENDIAN);
+    }
+
+    @Test
+    public void testConstructFromHeapBuffer() {
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[]{0, 1, 2, 3});
+        buffer.position(1);
+        OctetReader reader = new ByteBufferOctetReader(buffer,
+            OctetReader.LITTLE_ENDIAN);
+        assertEquals(0x0201, reader.readShort());
+        assertEquals(1, buffer.position());
+        assertEquals(new HexOctetString("03"), reader.readOctetString(1));
+    }
+
+    @Test
+    public void testReadOctetStringIsView() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(4);
+        OctetReader reader = new ByteBufferOctetReader(buffer,
+            OctetReader.BIG_ENDIAN);
+        reader.skip(1);
+        OctetString string = reader.readOctetString(2);
+        buffer.put(2, (byte) 0x7f);
+        assertEquals(new HexOctetString("007f"), string);
+    }
+}
@@ -0,0 +1,43 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class ByteBufferOctetStringTest extends OctetStringTest {
+    @Override
+    public OctetString makeOctetString(byte[] content, int byteOrder) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(content.length + 8);
+        buffer.put(new byte[]{0x55, 0x55, 0x55});
+        buffer.put(content);
+        buffer.put(new byte[]{0x55, 0x55, 0x55, 0x55, 0x55});
+        buffer.position(3);
+        buffer.limit(3 + content.length);
+        return new ByteBufferOctetString(buffer, byteOrder);
+    }
+
+    @Test
+    public void testMakeOctetReaderType() {
+        OctetString string = makeOctetStringLittleEndian(
+            new byte[]{0, 1, 2, 3, 4});
+        OctetReader reader = string.makeOctetReader(1, 4);
+        assertTrue(reader instanceof ByteBufferOctetReader);
+        assertEquals(0x04030201, reader.readInt());
+        assertFalse(reader.hasRemaining());
+    }
+
+    @Test
+    public void testGetOctetStringType() {
+        OctetString string = makeOctetStringBigEndian(
+            new byte[]{0, 1, 2, 3, 4});
+        OctetString part = string.getOctetString(1, 3);
+        assertTrue(part instanceof ByteBufferOctetString);
+        assertEquals(new HexOctetString("010203"), part);
+    }
+}
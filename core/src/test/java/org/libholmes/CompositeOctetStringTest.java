@@ -0,0 +1,60 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class CompositeOctetStringTest extends OctetStringTest {
+    @Override
+    public OctetString makeOctetString(byte[] content, int byteOrder) {
+        // Split the content into parts of increasing length, preceded by
+        // an empty part, so that multi-octet reads straddle boundaries.
+        List<OctetString> parts = new ArrayList<OctetString>();
+        parts.add(new ArrayOctetString(new byte[0], byteOrder));
+        int index = 0;
+        int size = 1;
+        while (index != content.length) {
+            int n = Math.min(size, content.length - index);
+            parts.add(new ArrayOctetString(content, index, n, byteOrder));
+            index += n;
+            size += 1;
+        }
+        return new CompositeOctetString(parts, byteOrder);
+    }
+
+    @Test
+    public void testWholePartView() {
+        byte[] content = new byte[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9};
+        OctetString first = new ArrayOctetString(content, 0, 4,
+            OctetString.BIG_ENDIAN);
+        OctetString second = new ArrayOctetString(content, 4, 6,
+            OctetString.BIG_ENDIAN);
+        OctetString string = new CompositeOctetString(
+            Arrays.asList(first, second), OctetString.BIG_ENDIAN);
+        assertEquals(10, string.length());
+        assertTrue(string.getOctetString(5, 3) instanceof ArrayOctetString);
+        assertEquals(new HexOctetString("050607"),
+            string.getOctetString(5, 3));
+        assertEquals(new HexOctetString("020304"),
+            string.getOctetString(2, 3));
+        assertEquals(0x03040506, string.getInt(3));
+    }
+
+    @Test
+    public void testMixedByteOrder() {
+        OctetString first = new HexOctetString("<0102");
+        OctetString second = new HexOctetString("<0304");
+        OctetString string = new CompositeOctetString(
+            Arrays.asList(first, second), OctetString.BIG_ENDIAN);
+        assertEquals(0x0102, string.getShort(0));
+        assertEquals(0x01020304, string.getInt(0));
+    }
+}
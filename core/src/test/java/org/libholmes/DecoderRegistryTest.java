@@ -0,0 +1,83 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes;
+
+import javax.json.JsonObjectBuilder;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class DecoderRegistryTest {
+    // A minimal layer consisting of a one-octet type followed by a payload.
+    private static class Layer extends Artefact {
+        final int type;
+        final OctetString payload;
+
+        Layer(Artefact parent, OctetString content) {
+            super(parent);
+            type = content.getByte(0) & 0xff;
+            payload = content.getOctetString(1, content.length() - 1);
+        }
+
+        @Override
+        protected void buildJson(JsonObjectBuilder builder) {}
+    }
+
+    private static final Decoder layerDecoder = new Decoder() {
+        @Override
+        public Artefact decode(DecoderRegistry registry, Artefact parent,
+            OctetString content, int depth) throws ParseException {
+
+            Layer layer = new Layer(parent, content);
+            return registry.decode(DecoderRegistry.IP_PROTOCOL, layer.type,
+                layer, layer.payload, depth);
+        }
+    };
+
+    private static int countLayers(Artefact artefact) {
+        int count = 0;
+        while (artefact instanceof Layer) {
+            count += 1;
+            artefact = artefact.getParent();
+        }
+        return count;
+    }
+
+    @Test
+    public void testDecode() throws ParseException {
+        DecoderRegistry registry = new DecoderRegistry();
+        registry.register(DecoderRegistry.LINK_TYPE, 1, layerDecoder);
+        registry.register(DecoderRegistry.IP_PROTOCOL, 7, layerDecoder);
+        OctetString frame = new HexOctetString("07070900");
+
+        assertEquals(3, countLayers(registry.decodeFrame(null, 1, frame)));
+        assertEquals(2, countLayers(registry.decodeFrame(null, 1, frame, 2)));
+        assertEquals(0, countLayers(registry.decodeFrame(null, 1, frame, 0)));
+        assertEquals(0, countLayers(registry.decodeFrame(null, 2, frame)));
+        assertSame(layerDecoder, registry.get(DecoderRegistry.IP_PROTOCOL, 7));
+        assertNull(registry.get(DecoderRegistry.IP_PROTOCOL, 8));
+        assertNull(registry.get(DecoderRegistry.TCP_PORT, 80));
+    }
+
+    @Test
+    public void testDecodePorts() throws ParseException {
+        DecoderRegistry registry = new DecoderRegistry();
+        registry.register(DecoderRegistry.UDP_PORT, 53, layerDecoder);
+        OctetString content = new HexOctetString("00");
+        assertEquals(1, countLayers(registry.decodePorts(
+            DecoderRegistry.UDP_PORT, 5353, 53, null, content, 1)));
+        assertEquals(1, countLayers(registry.decodePorts(
+            DecoderRegistry.UDP_PORT, 53, 5353, null, content, 1)));
+        assertEquals(0, countLayers(registry.decodePorts(
+            DecoderRegistry.UDP_PORT, 5353, 5354, null, content, 1)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testKeyOutOfRange() {
+        new DecoderRegistry().register(DecoderRegistry.IP_PROTOCOL, 256,
+            layerDecoder);
+    }
+}
@@ -0,0 +1,62 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class HexTest {
+    private static final byte[] RAW = {0, 1, 0x10, 0x7f, -0x80, -1};
+
+    @Test
+    public void testEncodeString() {
+        assertEquals("0001107f80ff", Hex.encode(RAW, 0, RAW.length));
+        assertEquals("107f", Hex.encode(RAW, 2, 2));
+        assertEquals("", Hex.encode(RAW, 3, 0));
+    }
+
+    @Test
+    public void testEncodeChars() {
+        char[] chars = {'x', 'x', 'x', 'x', 'x', 'x'};
+        Hex.encode(RAW, 4, 2, chars, 1);
+        assertEquals("x80ffx", new String(chars));
+    }
+
+    @Test
+    public void testEncodeAppendable() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        Hex.encode(RAW, 1, 4, builder);
+        assertEquals("01107f80", builder.toString());
+        StringBuffer buffer = new StringBuffer();
+        Hex.encode(RAW, 0, RAW.length, buffer);
+        assertEquals("0001107f80ff", buffer.toString());
+    }
+
+    @Test
+    public void testEncodeOutputStream() throws IOException {
+        byte[] raw = new byte[Hex.CHUNK_SIZE + 3];
+        raw[Hex.CHUNK_SIZE] = -1;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Hex.encode(raw, 0, raw.length, out);
+        String result = new String(out.toByteArray(),
+            StandardCharsets.US_ASCII);
+        assertEquals(2 * raw.length, result.length());
+        assertEquals("ff0000", result.substring(2 * Hex.CHUNK_SIZE));
+    }
+
+    @Test
+    public void testAppendByte() {
+        StringBuilder builder = new StringBuilder();
+        Hex.append(builder, 0xab, false);
+        Hex.append(builder, -2, true);
+        Hex.append(builder, 5, true);
+        assertEquals("abFE05", builder.toString());
+    }
+}
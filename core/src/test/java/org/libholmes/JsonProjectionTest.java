@@ -0,0 +1,120 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes;
+
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class JsonProjectionTest {
+    private static class Record extends Artefact {
+        int derivedCount = 0;
+
+        Record() {
+            super(null);
+        }
+
+        @Override
+        protected void buildJson(JsonObjectBuilder builder) {
+            buildJson(builder, JsonProjection.FULL);
+        }
+
+        @Override
+        protected void buildJson(JsonObjectBuilder builder,
+            JsonProjection projection) {
+
+            builder.add("id", 1);
+            builder.add("name", "test");
+            if (projection.includesDerived(this, "payload")) {
+                derivedCount += 1;
+                builder.add("payload", projection.encode(
+                    new HexOctetString("010203ff")));
+            }
+        }
+    }
+
+    private static class SubRecord extends Record {}
+
+    @Test
+    public void testFull() {
+        Record record = new Record();
+        assertEquals(record.toJson(), record.toJson(JsonProjection.FULL));
+        assertEquals("010203ff", record.toJson(JsonProjection.FULL)
+            .getString("payload"));
+    }
+
+    @Test
+    public void testDefault() {
+        Record record = new Record();
+        JsonObject json = record.toJson(JsonProjection.DEFAULT);
+        assertEquals(1, json.getInt("id"));
+        assertEquals("test", json.getString("name"));
+        assertFalse(json.containsKey("payload"));
+        assertEquals(0, record.derivedCount);
+    }
+
+    @Test
+    public void testInclude() {
+        Record record = new Record();
+        JsonProjection projection = JsonProjection.DEFAULT
+            .include(Record.class, "id")
+            .include(Record.class, "payload");
+        JsonObject json = record.toJson(projection);
+        assertEquals(2, json.size());
+        assertEquals(1, json.getInt("id"));
+        assertEquals("010203ff", json.getString("payload"));
+        assertEquals(1, record.derivedCount);
+    }
+
+    @Test
+    public void testExclude() {
+        Record record = new Record();
+        JsonProjection projection = JsonProjection.FULL
+            .exclude(Record.class, "name", "payload");
+        JsonObject json = record.toJson(projection);
+        assertEquals(1, json.size());
+        assertEquals(1, json.getInt("id"));
+        assertEquals(0, record.derivedCount);
+    }
+
+    @Test
+    public void testSubclass() {
+        JsonProjection projection = JsonProjection.DEFAULT
+            .include(Record.class, "name");
+        assertEquals(1, new SubRecord().toJson(projection).size());
+        projection = projection.include(SubRecord.class, "id");
+        JsonObject json = new SubRecord().toJson(projection);
+        assertEquals(1, json.size());
+        assertEquals(1, json.getInt("id"));
+        assertEquals(1, new Record().toJson(projection).size());
+    }
+
+    @Test
+    public void testEncode() {
+        OctetString payload = new HexOctetString("010203ff");
+        JsonProjection projection = JsonProjection.FULL;
+        assertEquals("010203ff", projection.encode(payload));
+        assertEquals("0102", projection.withPayloadLimit(2)
+            .encode(payload));
+        assertEquals("AQID/w==", projection.withPayloadEncoding(
+            JsonProjection.BASE64).encode(payload));
+        assertEquals("AQI=", projection.withPayloadLimit(2)
+            .withPayloadEncoding(JsonProjection.BASE64).encode(payload));
+        assertEquals("", projection.withPayloadLimit(0).encode(payload));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeLimit() {
+        JsonProjection.FULL.withPayloadLimit(-1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownEncoding() {
+        JsonProjection.FULL.withPayloadEncoding(2);
+    }
+}
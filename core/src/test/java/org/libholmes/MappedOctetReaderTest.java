@@ -0,0 +1,92 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class MappedOctetReaderTest extends OctetReaderTest {
+    private static MappedOctetReader mapContent(byte[] content,
+        int windowShift, int windowOverlap) throws IOException {
+
+        File file = File.createTempFile("libholmes", ".bin");
+        file.deleteOnExit();
+        Files.write(file.toPath(), content);
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+            StandardOpenOption.READ)) {
+
+            return new MappedOctetReader(channel, OctetReader.BIG_ENDIAN,
+                windowShift, windowOverlap);
+        }
+    }
+
+    @Override
+    public OctetReader makeOctetReader(byte[] content) {
+        // Use a small window size so that multi-octet reads frequently
+        // straddle window boundaries.
+        try {
+            return mapContent(content, 2, 1);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    @Test
+    public void testReadOctetStringWithinOverlap() throws IOException {
+        byte[] raw = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9};
+        OctetReader reader = mapContent(raw, 2, 4);
+        reader.skip(3);
+        OctetString string = reader.readOctetString(5);
+        assertTrue(string instanceof MappedOctetString);
+        assertEquals(new HexOctetString("0304050607"), string);
+    }
+
+    @Test
+    public void testReadOctetStringBeyondOverlap() throws IOException {
+        byte[] raw = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9};
+        OctetReader reader = mapContent(raw, 2, 1);
+        reader.skip(3);
+        OctetString string = reader.readOctetString(5);
+        assertEquals(new HexOctetString("0304050607"), string);
+        assertEquals(2, reader.remaining());
+    }
+
+    @Test
+    public void testPosition() throws IOException {
+        byte[] raw = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9};
+        MappedOctetReader reader = mapContent(raw, 2, 1);
+        reader.skip(3);
+        assertEquals(3, reader.getPosition());
+        assertEquals(7, reader.remainingLong());
+        reader.setPosition(8);
+        assertEquals(8, reader.readByte());
+        assertEquals(1, reader.remaining());
+    }
+
+    @Test
+    public void testAbsoluteOctetString() throws IOException {
+        byte[] raw = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9};
+        MappedOctetReader reader = mapContent(raw, 2, 1);
+        reader.skip(1);
+        assertEquals(new HexOctetString("040506"),
+            reader.getOctetString(4, 3));
+        assertEquals(new HexOctetString("0809"),
+            reader.getOctetString(8, 2));
+        assertEquals(1, reader.getPosition());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testAbsoluteOctetStringOverrun() throws IOException {
+        byte[] raw = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9};
+        mapContent(raw, 2, 1).getOctetString(8, 3);
+    }
+}
@@ -0,0 +1,39 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+public class MappedOctetStringTest extends OctetStringTest {
+    @Override
+    public OctetString makeOctetString(byte[] content, int byteOrder) {
+        byte[] newContent = new byte[content.length + 8];
+        newContent[0] = 0x55;
+        newContent[1] = 0x55;
+        newContent[2] = 0x55;
+        for (int i = 0; i != content.length; ++i) {
+            newContent[3 + i] = content[i];
+        }
+        newContent[3 + content.length] = 0x55;
+        newContent[4 + content.length] = 0x55;
+        newContent[5 + content.length] = 0x55;
+        newContent[6 + content.length] = 0x55;
+        newContent[7 + content.length] = 0x55;
+        try {
+            File file = File.createTempFile("libholmes", ".bin");
+            file.deleteOnExit();
+            Files.write(file.toPath(), newContent);
+            OctetReader reader = new MappedOctetReader(file.toPath(),
+                byteOrder);
+            reader.skip(3);
+            return reader.readOctetString(content.length);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.json.JsonObjectBuilder;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class NdjsonExporterTest {
+    private static class Item extends Artefact {
+        final int index;
+
+        Item(Artefact parent, int index) {
+            super(parent);
+            this.index = index;
+        }
+
+        @Override
+        protected void buildJson(JsonObjectBuilder builder) {
+            builder.add("index", index);
+            builder.add("payload", "0123456789abcdef");
+        }
+    }
+
+    private static final NdjsonExporter.StackDecoder<Item> DECODER =
+        new NdjsonExporter.StackDecoder<Item>() {
+            @Override
+            public Artefact decode(Item item) throws ParseException {
+                if (item.index % 7 == 3) {
+                    throw new ParseException("undecodable item");
+                }
+                if (item.index % 5 == 0) {
+                    // Vary the cost of decoding, so that batches complete
+                    // out of order.
+                    Thread.yield();
+                }
+                return new Item(item, item.index * 2);
+            }
+        };
+
+    private static List<Item> makeItems(int count) {
+        List<Item> items = new ArrayList<Item>(count);
+        for (int i = 0; i != count; ++i) {
+            items.add(new Item(null, i));
+        }
+        return items;
+    }
+
+    private static byte[] exportSequentially(List<Item> items)
+        throws IOException, ParseException {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (NdjsonWriter writer = new NdjsonWriter(out)) {
+            for (Item item : items) {
+                Artefact innermost;
+                try {
+                    innermost = DECODER.decode(item);
+                } catch (ParseException ex) {
+                    innermost = item;
+                }
+                writer.writeStack(innermost, item);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testOrder() throws IOException, ParseException {
+        List<Item> items = makeItems(10000);
+        NdjsonExporter exporter =
+            new NdjsonExporter(JsonProjection.FULL, 4, 3, 17);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long lines = exporter.export(items.iterator(), DECODER,
+            Channels.newChannel(out));
+        assertEquals(10000, lines);
+        assertArrayEquals(exportSequentially(items), out.toByteArray());
+    }
+
+    @Test
+    public void testSingleThread() throws IOException, ParseException {
+        List<Item> items = makeItems(100);
+        NdjsonExporter exporter =
+            new NdjsonExporter(JsonProjection.FULL, 1, 1, 1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(100, exporter.export(items.iterator(), DECODER,
+            Channels.newChannel(out)));
+        assertArrayEquals(exportSequentially(items), out.toByteArray());
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        NdjsonExporter exporter = new NdjsonExporter(JsonProjection.FULL);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(0, exporter.export(
+            Collections.<Item>emptyList().iterator(), DECODER,
+            Channels.newChannel(out)));
+        assertEquals(0, out.size());
+    }
+
+    @Test
+    public void testTruncated() throws IOException {
+        final OctetString runt = new HexOctetString("0102");
+        NdjsonExporter exporter =
+            new NdjsonExporter(JsonProjection.FULL, 2, 2, 10);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(100, exporter.export(makeItems(100).iterator(),
+            new NdjsonExporter.StackDecoder<Item>() {
+                @Override
+                public Artefact decode(Item item) {
+                    // Item 42 stands for a frame too short for its
+                    // header.
+                    OctetString frame = (item.index == 42) ?
+                        runt : new HexOctetString("01020304");
+                    return new Item(item, frame.getInt(0));
+                }
+            }, Channels.newChannel(out)));
+        String[] lines = new String(out.toByteArray(), "UTF-8").split("\n");
+        assertEquals(100, lines.length);
+        assertEquals("[{\"Item\":{\"index\":42," +
+            "\"payload\":\"0123456789abcdef\"}}]", lines[42]);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testWorkerFailure() throws IOException {
+        NdjsonExporter exporter =
+            new NdjsonExporter(JsonProjection.FULL, 2, 2, 10);
+        exporter.export(makeItems(100).iterator(),
+            new NdjsonExporter.StackDecoder<Item>() {
+                @Override
+                public Artefact decode(Item item) {
+                    if (item.index == 42) {
+                        throw new IllegalStateException("decoder failed");
+                    }
+                    return item;
+                }
+            }, Channels.newChannel(new ByteArrayOutputStream()));
+    }
+}
@@ -0,0 +1,93 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.stream.JsonGenerator;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class NdjsonWriterTest {
+    private static class Layer extends Artefact {
+        private final String name;
+
+        Layer(Artefact parent, String name) {
+            super(parent);
+            this.name = name;
+        }
+
+        @Override
+        protected void buildJson(JsonObjectBuilder builder) {
+            builder.add("name", name);
+            builder.add("depth", (getParent() == null) ? 0 : 1);
+        }
+    }
+
+    private static class StreamingLayer extends Layer {
+        StreamingLayer(Artefact parent, String name) {
+            super(parent, name);
+        }
+
+        @Override
+        protected void generateJson(JsonGenerator generator,
+            JsonProjection projection) {
+
+            generator.write("streamed", true);
+        }
+    }
+
+    @Test
+    public void testWrite() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (NdjsonWriter writer = new NdjsonWriter(out)) {
+            writer.write(new Layer(null, "a"));
+            writer.write(new Layer(null, "b\n"));
+        }
+        String[] lines = new String(out.toByteArray(),
+            StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        JsonObject json0 = Json.createReader(
+            new StringReader(lines[0])).readObject();
+        JsonObject json1 = Json.createReader(
+            new StringReader(lines[1])).readObject();
+        assertEquals(new Layer(null, "a").toJson(), json0);
+        assertEquals("b\n", json1.getString("name"));
+    }
+
+    @Test
+    public void testWriteStack() throws IOException {
+        Layer root = new Layer(null, "root");
+        Layer middle = new Layer(root, "middle");
+        Layer leaf = new StreamingLayer(middle, "leaf");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (NdjsonWriter writer = new NdjsonWriter(out)) {
+            writer.writeStack(leaf, middle);
+            writer.writeStack(leaf, null);
+        }
+        String[] lines = new String(out.toByteArray(),
+            StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        JsonArray json0 = Json.createReader(
+            new StringReader(lines[0])).readArray();
+        assertEquals(2, json0.size());
+        assertEquals("middle", json0.getJsonObject(0)
+            .getJsonObject("Layer").getString("name"));
+        assertTrue(json0.getJsonObject(1)
+            .getJsonObject("StreamingLayer").getBoolean("streamed"));
+        JsonArray json1 = Json.createReader(
+            new StringReader(lines[1])).readArray();
+        assertEquals(3, json1.size());
+    }
+}
@@ -488,6 +488,71 @@ public class OctetReaderTest {
         } catch (IllegalArgumentException ex) {}
     }
 
+    @Test
+    public void testReadOctetString() {
+        byte[] raw = {0, 1, 4, 9, 16, 25, 36, 49};
+        OctetReader reader = makeOctetReader(raw);
+        reader.skip(1);
+        OctetString string = reader.readOctetString(4);
+        assertEquals(new HexOctetString("01040910"), string);
+        assertEquals(0x0910, string.getShort(2));
+        assertEquals(new HexOctetString("0409"), string.getOctetString(1, 2));
+        assertEquals(3, reader.remaining());
+        assertEquals(0x19, reader.readByte());
+        try {
+            reader.readOctetString(3);
+            fail("IndexOutOfBoundsException expected");
+        } catch (IndexOutOfBoundsException ex) {}
+        try {
+            reader.readOctetString(-1);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException ex) {}
+    }
+
+    @Test
+    public void testPeekOctetString() {
+        byte[] raw = {0, 1, 4, 9, 16, 25, 36, 49};
+        OctetReader reader = makeOctetReader(raw);
+        reader.skip(1);
+        OctetString string = reader.peekOctetString(2, 3);
+        assertEquals(new HexOctetString("091019"), string);
+        assertEquals(7, reader.remaining());
+        try {
+            string.getByte(3);
+            fail("IndexOutOfBoundsException expected");
+        } catch (IndexOutOfBoundsException ex) {}
+        try {
+            reader.peekOctetString(5, 3);
+            fail("IndexOutOfBoundsException expected");
+        } catch (IndexOutOfBoundsException ex) {}
+        try {
+            reader.peekOctetString(-1, 0);
+            fail("IndexOutOfBoundsException expected");
+        } catch (IndexOutOfBoundsException ex) {}
+    }
+
+    @Test
+    public void testReadWindow() {
+        byte[] raw = {0, 1, 4, 9, 16, 25, 36, 49};
+        OctetReader reader = makeOctetReader(raw);
+        reader.skip(1);
+        OctetWindow window = reader.readWindow(4);
+        reader.setByteOrder(OctetReader.LITTLE_ENDIAN);
+        assertEquals(4, window.length());
+        assertEquals(OctetWindow.BIG_ENDIAN, window.getByteOrder());
+        assertEquals(0x01040910, window.getInt(0));
+        assertEquals(0x2419, reader.peekShort(0));
+        assertEquals(3, reader.remaining());
+        try {
+            reader.readWindow(4);
+            fail("IndexOutOfBoundsException expected");
+        } catch (IndexOutOfBoundsException ex) {}
+        try {
+            reader.peekWindow(-1, 1);
+            fail("IndexOutOfBoundsException expected");
+        } catch (IndexOutOfBoundsException ex) {}
+    }
+
     @Test
     public void testSkip() {
         byte[] raw = {0, 1, 2, 3, 4, 5, 6, 7};
@@ -5,6 +5,8 @@
 
 package org.libholmes;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.nio.charset.Charset;
 
 import static org.junit.Assert.*;
@@ -261,6 +263,60 @@ public class OctetStringTest {
         } catch (IllegalArgumentException ex) {}
     }
 
+    @Test
+    public void testGetOctetString() {
+        byte[] raw = {0, 1, 4, 9, 16, 25, 36, 49};
+        OctetString string = makeOctetStringBigEndian(raw);
+        OctetString part = string.getOctetString(2, 5);
+        assertEquals(new HexOctetString("0409101924"), part);
+        assertEquals(0x0910, part.getShort(1));
+        assertEquals(new HexOctetString("1019"), part.getOctetString(2, 2));
+        try {
+            part.getByte(5);
+            fail("IndexOutOfBoundsException expected");
+        } catch (IndexOutOfBoundsException ex) {}
+        try {
+            string.getOctetString(4, 5);
+            fail("IndexOutOfBoundsException expected");
+        } catch (IndexOutOfBoundsException ex) {}
+        try {
+            string.getOctetString(4, -1);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException ex) {}
+    }
+
+    @Test
+    public void testMakeOctetReader() {
+        byte[] raw = {0, 1, 4, 9, 16, 25, 36, 49};
+        OctetString string = makeOctetStringLittleEndian(raw);
+        OctetReader reader = string.makeOctetReader(1, 6);
+        assertEquals(6, reader.remaining());
+        assertEquals(0x0401, reader.readShort());
+        reader.setByteOrder(OctetReader.BIG_ENDIAN);
+        assertEquals(0x0910, reader.readShort());
+        assertEquals(new HexOctetString("1924"), reader.readOctetString(2));
+        assertFalse(reader.hasRemaining());
+        try {
+            string.makeOctetReader(4, 5);
+            fail("IndexOutOfBoundsException expected");
+        } catch (IndexOutOfBoundsException ex) {}
+    }
+
+    @Test
+    public void testGetWindow() {
+        byte[] raw = {0, 1, 4, 9, 16, 25, 36, 49};
+        OctetString string = makeOctetStringLittleEndian(raw);
+        OctetWindow window = string.getWindow(2, 4);
+        assertEquals(4, window.length());
+        assertEquals(OctetWindow.LITTLE_ENDIAN, window.getByteOrder());
+        assertEquals(0x19100904, window.getInt(0));
+        assertEquals(8, string.getWindow().length());
+        try {
+            string.getWindow(6, 3);
+            fail("IndexOutOfBoundsException expected");
+        } catch (IndexOutOfBoundsException ex) {}
+    }
+
     @Test
     public void testGetStringPart() {
         byte[] raw = {0x48, 0x65, 0x6c, 0x6c, 0x6f, 0x20,
@@ -351,4 +407,33 @@ public class OctetStringTest {
             makeOctetString(new byte[]{0, 127, -128, -1}).toString(),
             "007f80ff");
     }
+
+    @Test
+    public void testAppendHex() throws IOException {
+        OctetString string = makeOctetString(new byte[]{0, 127, -128, -1});
+        StringBuilder builder = new StringBuilder("x");
+        string.appendHex(builder);
+        assertEquals("x007f80ff", builder.toString());
+        StringWriter writer = new StringWriter();
+        string.appendHex(writer, 1, 2);
+        assertEquals("7f80", writer.toString());
+        try {
+            string.appendHex(builder, 3, 2);
+            fail("IndexOutOfBoundsException expected");
+        } catch (IndexOutOfBoundsException ex) {}
+    }
+
+    @Test
+    public void testAppendHexLarge() throws IOException {
+        byte[] raw = new byte[10000];
+        for (int i = 0; i != raw.length; ++i) {
+            raw[i] = (byte) (i * 7);
+        }
+        OctetString string = makeOctetString(raw);
+        StringBuilder builder = new StringBuilder();
+        string.appendHex(builder);
+        assertEquals(string.toString(), builder.toString());
+        assertEquals(20000, builder.length());
+        assertEquals("0e15", builder.substring(4, 8));
+    }
 }
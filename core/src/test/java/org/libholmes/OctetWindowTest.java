@@ -0,0 +1,62 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class OctetWindowTest {
+    private static final byte[] raw = {
+        0x55, 0x01, 0x23, 0x45, 0x67, -0x77, -0x55, -0x33, -0x11, 0x55 };
+
+    @Test
+    public void testBigEndian() {
+        OctetWindow window = OctetWindow.wrap(raw, 1, 8,
+            OctetWindow.BIG_ENDIAN);
+        assertTrue(window instanceof BigEndianOctetWindow);
+        assertEquals(OctetWindow.BIG_ENDIAN, window.getByteOrder());
+        assertEquals(8, window.length());
+        assertEquals(0x01, window.getByte(0));
+        assertEquals(0x0123, window.getShort(0));
+        assertEquals((short) 0xcdef, window.getShort(6));
+        assertEquals(0x01234567, window.getInt(0));
+        assertEquals(0x89abcdef, window.getInt(4));
+        assertEquals(0x0123456789abcdefL, window.getLong(0));
+    }
+
+    @Test
+    public void testLittleEndian() {
+        OctetWindow window = OctetWindow.wrap(raw, 1, 8,
+            OctetWindow.LITTLE_ENDIAN);
+        assertTrue(window instanceof LittleEndianOctetWindow);
+        assertEquals(OctetWindow.LITTLE_ENDIAN, window.getByteOrder());
+        assertEquals(0x2301, window.getShort(0));
+        assertEquals((short) 0xefcd, window.getShort(6));
+        assertEquals(0x67452301, window.getInt(0));
+        assertEquals(0xefcdab89, window.getInt(4));
+        assertEquals(0xefcdab8967452301L, window.getLong(0));
+    }
+
+    @Test
+    public void testWrapBounds() {
+        try {
+            OctetWindow.wrap(raw, 3, 8, OctetWindow.BIG_ENDIAN);
+            fail("IndexOutOfBoundsException expected");
+        } catch (IndexOutOfBoundsException ex) {}
+        try {
+            OctetWindow.wrap(raw, -1, 1, OctetWindow.BIG_ENDIAN);
+            fail("IndexOutOfBoundsException expected");
+        } catch (IndexOutOfBoundsException ex) {}
+        try {
+            OctetWindow.wrap(raw, 0, -1, OctetWindow.BIG_ENDIAN);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException ex) {}
+        try {
+            OctetWindow.wrap(raw, 0, 1, 1);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException ex) {}
+    }
+}
@@ -0,0 +1,125 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class ReadAheadInputStreamTest {
+    @Test
+    public void testRead() throws IOException {
+        byte[] content = new byte[1000];
+        for (int i = 0; i != content.length; ++i) {
+            content[i] = (byte) (i * 7);
+        }
+        try (InputStream in = new ReadAheadInputStream(
+            new ByteArrayInputStream(content), 64, 3)) {
+
+            assertEquals(content[0] & 0xff, in.read());
+            byte[] result = new byte[content.length];
+            int count = 1;
+            while (count != content.length) {
+                int n = in.read(result, count, 100);
+                assertTrue(n > 0);
+                count += n;
+            }
+            for (int i = 1; i != content.length; ++i) {
+                assertEquals(content[i], result[i]);
+            }
+            assertEquals(-1, in.read());
+            assertEquals(-1, in.read(result, 0, 1));
+        }
+    }
+
+    @Test
+    public void testStreamReader() throws IOException {
+        HexOctetString content = new HexOctetString(
+            "000102030405060708090a0b0c0d0e0f");
+        try (InputStream in = new ReadAheadInputStream(
+            new ByteArrayInputStream(content.getBytes()), 5, 2)) {
+
+            OctetReader reader = new StreamOctetReader(in,
+                OctetReader.BIG_ENDIAN);
+            assertEquals(0x00010203, reader.readInt());
+            assertEquals(0x0405060708090a0bL, reader.readLong());
+            assertEquals(new HexOctetString("0c0d0e0f"),
+                reader.readOctetString(4));
+            assertFalse(reader.hasRemaining());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testError() throws IOException {
+        InputStream failing = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("failed");
+            }
+        };
+        try (InputStream in = new ReadAheadInputStream(failing, 16, 2)) {
+            in.read();
+        }
+    }
+
+    @Test(timeout = 10000, expected = IllegalStateException.class)
+    public void testRuntimeException() throws IOException {
+        InputStream failing = new InputStream() {
+            @Override
+            public int read() {
+                throw new IllegalStateException("failed");
+            }
+        };
+        try (InputStream in = new ReadAheadInputStream(failing, 16, 2)) {
+            in.read();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testCloseDuringRead()
+        throws IOException, InterruptedException {
+
+        final CountDownLatch reading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch closed = new CountDownLatch(1);
+        final Thread[] closer = new Thread[1];
+        InputStream blocking = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                reading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    // Simulate a read which cannot be interrupted.
+                    try {
+                        release.await();
+                    } catch (InterruptedException ex2) {
+                        throw new IOException(ex2);
+                    }
+                }
+                return 0;
+            }
+
+            @Override
+            public void close() {
+                closer[0] = Thread.currentThread();
+                closed.countDown();
+            }
+        };
+        InputStream in = new ReadAheadInputStream(blocking, 16, 2);
+        reading.await();
+        in.close();
+        assertFalse(closed.await(100, TimeUnit.MILLISECONDS));
+        release.countDown();
+        closed.await();
+        assertNotSame(Thread.currentThread(), closer[0]);
+    }
+}
@@ -0,0 +1,58 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes;
+
+import java.io.ByteArrayInputStream;
+import java.nio.channels.Channels;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class StreamOctetReaderTest extends OctetReaderTest {
+    @Override
+    public OctetReader makeOctetReader(byte[] content) {
+        // Use a small buffer so that it must frequently be refilled.
+        return new StreamOctetReader(
+            Channels.newChannel(new ByteArrayInputStream(content)),
+            OctetReader.BIG_ENDIAN, 8);
+    }
+
+    @Test
+    public void testPeekBeyondBuffer() {
+        byte[] raw = new byte[64];
+        for (int i = 0; i != raw.length; ++i) {
+            raw[i] = (byte) i;
+        }
+        OctetReader reader = makeOctetReader(raw);
+        reader.skip(3);
+        assertEquals(0x28292a2b, reader.peekInt(37));
+        assertEquals(new HexOctetString("030405"), reader.readOctetString(3));
+        assertEquals(58, reader.readBytes(58).length);
+        assertFalse(reader.hasRemaining());
+    }
+
+    @Test
+    public void testDupOctetReader() {
+        byte[] raw = new byte[16];
+        for (int i = 0; i != raw.length; ++i) {
+            raw[i] = (byte) i;
+        }
+        OctetReader reader = makeOctetReader(raw);
+        assertFalse(reader.isLengthKnown());
+        reader.skip(2);
+        assertEquals(6, reader.remaining());
+        OctetReader dup = reader.dupOctetReader();
+        assertTrue(dup.isLengthKnown());
+        assertEquals(6, dup.remaining());
+        assertEquals(0x02030405, dup.readInt());
+
+        // The duplicate is unaffected by further reads from the original.
+        reader.skip(10);
+        assertEquals(0x0607, dup.readShort());
+        assertFalse(dup.hasRemaining());
+        assertEquals(0x0c0d0e0f, reader.readInt());
+    }
+}
@@ -9,6 +9,7 @@ import org.libholmes.OctetReader;
 import org.libholmes.OctetString;
 import org.libholmes.ArrayOctetString;
 import org.libholmes.Address;
+import org.libholmes.Hex;
 import org.libholmes.ParseException;
 
 /** A class to represent an Ethernet MAC address. */
@@ -61,8 +62,7 @@ public class EthernetAddress extends Address {
             if (builder.length() != 0) {
                 builder.append('-');
             }
-            int b = content.getByte(i) & 0xff;
-            builder.append(String.format("%02x", b));
+            Hex.append(builder, content.getByte(i), false);
         }
         return builder.toString();
     }
@@ -74,14 +74,12 @@ public class EthernetAddress extends Address {
      * @return the address as a string
      */
     public final String toString(String separator, boolean upperCase) {
-        String format = (upperCase) ? "%02X" : "%02x";
         StringBuilder builder = new StringBuilder();
         for (int i = 0, n = content.length(); i != n; ++i) {
             if (builder.length() != 0) {
                 builder.append(separator);
             }
-            int b = content.getByte(i) & 0xff;
-            builder.append(String.format(format, b));
+            Hex.append(builder, content.getByte(i), upperCase);
         }
         return builder.toString();
     }
@@ -0,0 +1,43 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.ethernet;
+
+import org.libholmes.OctetString;
+import org.libholmes.Artefact;
+import org.libholmes.Decoder;
+import org.libholmes.DecoderRegistry;
+import org.libholmes.ParseException;
+
+/** A decoder for Ethernet II frames.
+ * The payload is dispatched by EtherType.
+ */
+public final class EthernetDecoder implements Decoder {
+    /** The link type for Ethernet. */
+    public static final int LINKTYPE_ETHERNET = 1;
+
+    /** The shared instance of this decoder. */
+    private static final EthernetDecoder INSTANCE = new EthernetDecoder();
+
+    /** Construct EthernetDecoder. */
+    private EthernetDecoder() {}
+
+    @Override
+    public Artefact decode(DecoderRegistry registry, Artefact parent,
+        OctetString content, int depth) throws ParseException {
+
+        EthernetFrame frame = EthernetFrame.parse(parent, content);
+        return registry.decode(DecoderRegistry.ETHER_TYPE,
+            frame.getEtherType(), frame, frame.getPayload(), depth);
+    }
+
+    /** Register this decoder.
+     * @param registry the registry
+     */
+    public static void register(DecoderRegistry registry) {
+        registry.register(DecoderRegistry.LINK_TYPE, LINKTYPE_ETHERNET,
+            INSTANCE);
+    }
+}
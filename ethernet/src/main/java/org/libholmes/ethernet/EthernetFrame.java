@@ -6,10 +6,12 @@
 package org.libholmes.ethernet;
 
 import javax.json.JsonObjectBuilder;
+import javax.json.stream.JsonGenerator;
 
 import org.libholmes.OctetReader;
 import org.libholmes.OctetString;
 import org.libholmes.Artefact;
+import org.libholmes.JsonProjection;
 import org.libholmes.Logger;
 
 /** A class to represent an Ethernet II frame. */
@@ -75,11 +77,44 @@ public final class EthernetFrame extends Artefact {
     }
 
     @Override
-    protected void buildJson(JsonObjectBuilder builder) {
-        builder.add("dstAddr", getDstAddr().toString());
-        builder.add("srcAddr", getSrcAddr().toString());
-        builder.add("etherType", getEtherType());
-        builder.add("payload", getPayload().toString());
+    protected final void buildJson(JsonObjectBuilder builder) {
+        buildJson(builder, JsonProjection.FULL);
+    }
+
+    @Override
+    protected final void buildJson(JsonObjectBuilder builder,
+        JsonProjection projection) {
+
+        if (projection.includes(this, "dstAddr")) {
+            builder.add("dstAddr", getDstAddr().toString());
+        }
+        if (projection.includes(this, "srcAddr")) {
+            builder.add("srcAddr", getSrcAddr().toString());
+        }
+        if (projection.includes(this, "etherType")) {
+            builder.add("etherType", getEtherType());
+        }
+        if (projection.includesDerived(this, "payload")) {
+            builder.add("payload", projection.encode(getPayload()));
+        }
+    }
+
+    @Override
+    protected void generateJson(JsonGenerator generator,
+        JsonProjection projection) {
+
+        if (projection.includes(this, "dstAddr")) {
+            generator.write("dstAddr", getDstAddr().toString());
+        }
+        if (projection.includes(this, "srcAddr")) {
+            generator.write("srcAddr", getSrcAddr().toString());
+        }
+        if (projection.includes(this, "etherType")) {
+            generator.write("etherType", getEtherType());
+        }
+        if (projection.includesDerived(this, "payload")) {
+            generator.write("payload", projection.encode(getPayload()));
+        }
     }
 
     @Override
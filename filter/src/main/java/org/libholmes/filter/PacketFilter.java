@@ -0,0 +1,311 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.filter;
+
+import org.libholmes.OctetString;
+import org.libholmes.ParseException;
+
+/** A class to represent a compiled packet filter.
+ *
+ * A packet filter selects packets by examining the raw content of each
+ * frame, so that artefacts need only be constructed for packets which are
+ * of interest. Filters are written using a small expression language:
+ *
+ * - ip, tcp, udp, icmp: match by protocol
+ * - proto N: match by IP protocol number
+ * - [src|dst] host A: match by IPv4 address
+ * - [src|dst] net A/N: match by IPv4 netblock
+ * - [src|dst] port N: match by TCP or UDP port
+ * - flags F[,F...]: match TCP segments with all of the given flags set,
+ *   named fin, syn, rst, psh, ack, urg, ece and cwr
+ * - len OP N: match by captured frame length, where OP is one of
+ *   &lt;, &lt;=, =, &gt;= or &gt;
+ *
+ * Terms may be combined using and, or, not and parentheses. Where the
+ * direction of a host, net or port term is unspecified, it matches either
+ * the source or the destination.
+ *
+ * The expression is compiled into a flat program of primitive tests, each
+ * with a jump target for success and failure, so that evaluation neither
+ * allocates memory nor recurses. Jumps are always forward, so evaluation
+ * always terminates. Filters are immutable and may be shared between
+ * threads.
+ */
+public final class PacketFilter {
+    /** The link type for Ethernet. */
+    static final int LINKTYPE_ETHERNET = 1;
+
+    /** The link type for raw IP. */
+    static final int LINKTYPE_RAW = 101;
+
+    /** The link type for Linux cooked capture. */
+    static final int LINKTYPE_LINUX_SLL = 113;
+
+    /** The link type for raw IPv4. */
+    static final int LINKTYPE_IPV4 = 228;
+
+    /** Opcode: test whether the packet is IPv4. */
+    static final int OP_IP = 0;
+
+    /** Opcode: test the IP protocol number. */
+    static final int OP_PROTO = 1;
+
+    /** Opcode: test the source address against a netblock. */
+    static final int OP_SRC_NET = 2;
+
+    /** Opcode: test the destination address against a netblock. */
+    static final int OP_DST_NET = 3;
+
+    /** Opcode: test the source port. */
+    static final int OP_SRC_PORT = 4;
+
+    /** Opcode: test the destination port. */
+    static final int OP_DST_PORT = 5;
+
+    /** Opcode: test that all of the given TCP flags are set. */
+    static final int OP_FLAGS = 6;
+
+    /** Opcode: test that the length is less than a given value. */
+    static final int OP_LEN_LT = 7;
+
+    /** Opcode: test that the length is at most a given value. */
+    static final int OP_LEN_LE = 8;
+
+    /** Opcode: test that the length is equal to a given value. */
+    static final int OP_LEN_EQ = 9;
+
+    /** Opcode: test that the length is at least a given value. */
+    static final int OP_LEN_GE = 10;
+
+    /** Opcode: test that the length is greater than a given value. */
+    static final int OP_LEN_GT = 11;
+
+    /** A jump target indicating that the packet is accepted. */
+    static final int ACCEPT = -1;
+
+    /** A jump target indicating that the packet is rejected. */
+    static final int REJECT = -2;
+
+    /** The source expression. */
+    private final String expression;
+
+    /** The opcode of each instruction. */
+    private final int[] ops;
+
+    /** The argument of each instruction. */
+    private final int[] args;
+
+    /** The mask of each instruction, for netblock tests. */
+    private final int[] masks;
+
+    /** The jump target of each instruction if the test succeeds. */
+    private final int[] jt;
+
+    /** The jump target of each instruction if the test fails. */
+    private final int[] jf;
+
+    /** Construct PacketFilter from a compiled program.
+     * @param expression the source expression
+     * @param ops the opcode of each instruction
+     * @param args the argument of each instruction
+     * @param masks the mask of each instruction
+     * @param jt the jump target of each instruction on success
+     * @param jf the jump target of each instruction on failure
+     */
+    PacketFilter(String expression, int[] ops, int[] args, int[] masks,
+        int[] jt, int[] jf) {
+
+        this.expression = expression;
+        this.ops = ops;
+        this.args = args;
+        this.masks = masks;
+        this.jt = jt;
+        this.jf = jf;
+    }
+
+    /** Get the number of instructions in the compiled program.
+     * @return the number of instructions
+     */
+    public int size() {
+        return ops.length;
+    }
+
+    /** Get a 16-bit big-endian field from an octet string.
+     * @param frame the octet string
+     * @param index the index of the field
+     * @return the field value
+     */
+    private static int getShort(OctetString frame, int index) {
+        return ((frame.getByte(index) & 0xff) << 8) |
+            (frame.getByte(index + 1) & 0xff);
+    }
+
+    /** Get a 32-bit big-endian field from an octet string.
+     * @param frame the octet string
+     * @param index the index of the field
+     * @return the field value
+     */
+    private static int getInt(OctetString frame, int index) {
+        int value = frame.getInt(index);
+        return (frame.getByteOrder() == OctetString.BIG_ENDIAN) ?
+            value : Integer.reverseBytes(value);
+    }
+
+    /** Find the offset of the IPv4 header within a frame.
+     * @param linkType the link type
+     * @param frame the frame
+     * @return the offset of the IPv4 header, or -1 if not IPv4
+     */
+    private static int findInet4(int linkType, OctetString frame) {
+        int length = frame.length();
+        switch (linkType) {
+            case LINKTYPE_ETHERNET:
+                {
+                    int offset = 12;
+                    if (offset > length - 2) {
+                        return -1;
+                    }
+                    int etherType = getShort(frame, offset);
+                    while ((etherType == 0x8100) || (etherType == 0x88a8)) {
+                        offset += 4;
+                        if (offset > length - 2) {
+                            return -1;
+                        }
+                        etherType = getShort(frame, offset);
+                    }
+                    return (etherType == 0x0800) ? offset + 2 : -1;
+                }
+            case LINKTYPE_LINUX_SLL:
+                if (length < 16) {
+                    return -1;
+                }
+                return (getShort(frame, 14) == 0x0800) ? 16 : -1;
+            case LINKTYPE_RAW:
+            case LINKTYPE_IPV4:
+                return 0;
+            default:
+                return -1;
+        }
+    }
+
+    /** Test whether a frame matches this filter.
+     * The frame is examined in place, without being decoded into
+     * artefacts. Fields which lie beyond the end of the captured content
+     * are treated as absent, in which case any test which depends on them
+     * fails.
+     * @param linkType the link type, using the same numbering as the
+     *  network type of a PCAP file
+     * @param frame the captured frame
+     * @return true if the frame matches, otherwise false
+     */
+    public boolean matches(int linkType, OctetString frame) {
+        if (ops.length == 0) {
+            return true;
+        }
+
+        // Locate the fields needed by the tests, once per frame.
+        int length = frame.length();
+        boolean inet4 = false;
+        int proto = -1;
+        int srcAddr = 0;
+        int dstAddr = 0;
+        int srcPort = -1;
+        int dstPort = -1;
+        int flags = -1;
+        int ipOffset = findInet4(linkType, frame);
+        if ((ipOffset >= 0) && (ipOffset <= length - 20) &&
+            ((frame.getByte(ipOffset) & 0xf0) == 0x40)) {
+
+            inet4 = true;
+            proto = frame.getByte(ipOffset + 9) & 0xff;
+            srcAddr = getInt(frame, ipOffset + 12);
+            dstAddr = getInt(frame, ipOffset + 16);
+            int ihl = (frame.getByte(ipOffset) & 0x0f) * 4;
+            int fragmentOffset = getShort(frame, ipOffset + 6) & 0x1fff;
+            int offset = ipOffset + ihl;
+            if ((fragmentOffset == 0) && (ihl >= 20)) {
+                if (((proto == 6) || (proto == 17)) &&
+                    (offset <= length - 4)) {
+
+                    srcPort = getShort(frame, offset);
+                    dstPort = getShort(frame, offset + 2);
+                }
+                if ((proto == 6) && (offset <= length - 14)) {
+                    flags = frame.getByte(offset + 13) & 0xff;
+                }
+            }
+        }
+
+        int pc = 0;
+        while (true) {
+            boolean result;
+            int arg = args[pc];
+            switch (ops[pc]) {
+                case OP_IP:
+                    result = inet4;
+                    break;
+                case OP_PROTO:
+                    result = proto == arg;
+                    break;
+                case OP_SRC_NET:
+                    result = inet4 && ((srcAddr & masks[pc]) == arg);
+                    break;
+                case OP_DST_NET:
+                    result = inet4 && ((dstAddr & masks[pc]) == arg);
+                    break;
+                case OP_SRC_PORT:
+                    result = srcPort == arg;
+                    break;
+                case OP_DST_PORT:
+                    result = dstPort == arg;
+                    break;
+                case OP_FLAGS:
+                    result = (flags != -1) && ((flags & arg) == arg);
+                    break;
+                case OP_LEN_LT:
+                    result = length < arg;
+                    break;
+                case OP_LEN_LE:
+                    result = length <= arg;
+                    break;
+                case OP_LEN_EQ:
+                    result = length == arg;
+                    break;
+                case OP_LEN_GE:
+                    result = length >= arg;
+                    break;
+                case OP_LEN_GT:
+                    result = length > arg;
+                    break;
+                default:
+                    throw new IllegalStateException(
+                        "invalid packet filter opcode");
+            }
+            int next = result ? jt[pc] : jf[pc];
+            if (next < 0) {
+                return next == ACCEPT;
+            }
+            pc = next;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    /** Compile a packet filter from an expression.
+     * An empty expression matches every packet.
+     * @param expression the expression to be compiled
+     * @return the resulting packet filter
+     * @throws ParseException if the expression could not be parsed
+     */
+    public static PacketFilter compile(String expression)
+        throws ParseException {
+
+        return new PacketFilterCompiler(expression).compile();
+    }
+}
@@ -0,0 +1,489 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.libholmes.OctetString;
+import org.libholmes.ParseException;
+import org.libholmes.inet.InetAddress;
+import org.libholmes.inet.InetNetblock;
+
+/** A class for compiling packet filter expressions.
+ * The expression is first parsed into a tree, then flattened into a
+ * sequence of tests with forward jumps, using labels which are resolved
+ * once the whole program has been emitted.
+ */
+final class PacketFilterCompiler {
+    /** A pattern for splitting an expression into tokens. */
+    private static final Pattern TOKEN_PATTERN = Pattern.compile(
+        "\\(|\\)|!|<=|>=|==|<|>|=|[^\\s()!<>=]+");
+
+    /** The names of the TCP flags, in order of increasing bit value. */
+    private static final String[] FLAG_NAMES = {
+        "fin", "syn", "rst", "psh", "ack", "urg", "ece", "cwr" };
+
+    /** A node type for a primitive test. */
+    private static final int NODE_TEST = 0;
+
+    /** A node type for a conjunction. */
+    private static final int NODE_AND = 1;
+
+    /** A node type for a disjunction. */
+    private static final int NODE_OR = 2;
+
+    /** A node type for a negation. */
+    private static final int NODE_NOT = 3;
+
+    /** A node within the parse tree. */
+    private static final class Node {
+        /** The node type. */
+        final int type;
+
+        /** The first operand, or null if none. */
+        final Node left;
+
+        /** The second operand, or null if none. */
+        final Node right;
+
+        /** The opcode, for a primitive test. */
+        final int op;
+
+        /** The argument, for a primitive test. */
+        final int arg;
+
+        /** The mask, for a primitive test. */
+        final int mask;
+
+        /** Construct a node for a primitive test.
+         * @param op the opcode
+         * @param arg the argument
+         * @param mask the mask
+         */
+        Node(int op, int arg, int mask) {
+            this.type = NODE_TEST;
+            this.left = null;
+            this.right = null;
+            this.op = op;
+            this.arg = arg;
+            this.mask = mask;
+        }
+
+        /** Construct a node for a logical operator.
+         * @param type the node type
+         * @param left the first operand
+         * @param right the second operand, or null if none
+         */
+        Node(int type, Node left, Node right) {
+            this.type = type;
+            this.left = left;
+            this.right = right;
+            this.op = 0;
+            this.arg = 0;
+            this.mask = 0;
+        }
+    }
+
+    /** The source expression. */
+    private final String expression;
+
+    /** The tokens of the expression. */
+    private final List<String> tokens = new ArrayList<String>();
+
+    /** The index of the next token to be parsed. */
+    private int next = 0;
+
+    /** The number of instructions emitted. */
+    private int count = 0;
+
+    /** The opcode of each instruction. */
+    private int[] ops = new int[16];
+
+    /** The argument of each instruction. */
+    private int[] args = new int[16];
+
+    /** The mask of each instruction. */
+    private int[] masks = new int[16];
+
+    /** The success target of each instruction, as a label or terminal. */
+    private int[] jt = new int[16];
+
+    /** The failure target of each instruction, as a label or terminal. */
+    private int[] jf = new int[16];
+
+    /** The number of labels allocated. */
+    private int labelCount = 0;
+
+    /** The instruction index at which each label has been placed. */
+    private int[] labels = new int[16];
+
+    /** Construct PacketFilterCompiler.
+     * @param expression the expression to be compiled
+     */
+    PacketFilterCompiler(String expression) {
+        this.expression = expression;
+        Matcher matcher = TOKEN_PATTERN.matcher(expression);
+        while (matcher.find()) {
+            tokens.add(matcher.group());
+        }
+    }
+
+    /** Compile the expression.
+     * @return the resulting packet filter
+     * @throws ParseException if the expression could not be parsed
+     */
+    PacketFilter compile() throws ParseException {
+        if (!tokens.isEmpty()) {
+            Node root = parseOr();
+            if (next != tokens.size()) {
+                throw new ParseException(String.format(
+                    "unexpected token '%s' in packet filter", peek()));
+            }
+            emit(root, PacketFilter.ACCEPT, PacketFilter.REJECT);
+        }
+        for (int i = 0; i != count; ++i) {
+            jt[i] = resolve(jt[i]);
+            jf[i] = resolve(jf[i]);
+        }
+        return new PacketFilter(expression, Arrays.copyOf(ops, count),
+            Arrays.copyOf(args, count), Arrays.copyOf(masks, count),
+            Arrays.copyOf(jt, count), Arrays.copyOf(jf, count));
+    }
+
+    /** Peek at the next token.
+     * @return the next token, or null if none
+     */
+    private String peek() {
+        return (next < tokens.size()) ? tokens.get(next) : null;
+    }
+
+    /** Consume the next token.
+     * @return the token
+     * @throws ParseException if there are no tokens remaining
+     */
+    private String take() throws ParseException {
+        if (next == tokens.size()) {
+            throw new ParseException(
+                "unexpected end of packet filter expression");
+        }
+        return tokens.get(next++);
+    }
+
+    /** Consume the next token if it matches one of the given values.
+     * @param values the acceptable values
+     * @return true if a token was consumed, otherwise false
+     */
+    private boolean accept(String... values) {
+        String token = peek();
+        for (String value : values) {
+            if (value.equals(token)) {
+                next += 1;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Parse a disjunction.
+     * @return the resulting node
+     * @throws ParseException if the expression could not be parsed
+     */
+    private Node parseOr() throws ParseException {
+        Node node = parseAnd();
+        while (accept("or", "||")) {
+            node = new Node(NODE_OR, node, parseAnd());
+        }
+        return node;
+    }
+
+    /** Parse a conjunction.
+     * @return the resulting node
+     * @throws ParseException if the expression could not be parsed
+     */
+    private Node parseAnd() throws ParseException {
+        Node node = parseNot();
+        while (accept("and", "&&")) {
+            node = new Node(NODE_AND, node, parseNot());
+        }
+        return node;
+    }
+
+    /** Parse a negation.
+     * @return the resulting node
+     * @throws ParseException if the expression could not be parsed
+     */
+    private Node parseNot() throws ParseException {
+        if (accept("not", "!")) {
+            return new Node(NODE_NOT, parseNot(), null);
+        }
+        return parsePrimary();
+    }
+
+    /** Parse a parenthesised expression or a term.
+     * @return the resulting node
+     * @throws ParseException if the expression could not be parsed
+     */
+    private Node parsePrimary() throws ParseException {
+        if (accept("(")) {
+            Node node = parseOr();
+            if (!accept(")")) {
+                throw new ParseException(
+                    "missing closing parenthesis in packet filter");
+            }
+            return node;
+        }
+
+        String token = take();
+        switch (token) {
+            case "ip":
+                return new Node(PacketFilter.OP_IP, 0, 0);
+            case "icmp":
+                return new Node(PacketFilter.OP_PROTO, 1, 0);
+            case "tcp":
+                return new Node(PacketFilter.OP_PROTO, 6, 0);
+            case "udp":
+                return new Node(PacketFilter.OP_PROTO, 17, 0);
+            case "proto":
+                return new Node(PacketFilter.OP_PROTO,
+                    parseNumber(0xff), 0);
+            case "flags":
+                return new Node(PacketFilter.OP_FLAGS, parseFlags(), 0);
+            case "len":
+                return parseLength();
+            case "src":
+                return parseDirected(take(), true, false);
+            case "dst":
+                return parseDirected(take(), false, true);
+            default:
+                return parseDirected(token, true, true);
+        }
+    }
+
+    /** Parse a host, net or port term.
+     * @param keyword the keyword which introduces the term
+     * @param src true if the source should be tested, otherwise false
+     * @param dst true if the destination should be tested, otherwise false
+     * @return the resulting node
+     * @throws ParseException if the expression could not be parsed
+     */
+    private Node parseDirected(String keyword, boolean src, boolean dst)
+        throws ParseException {
+
+        int srcOp;
+        int dstOp;
+        int arg;
+        int mask;
+        switch (keyword) {
+            case "host":
+                srcOp = PacketFilter.OP_SRC_NET;
+                dstOp = PacketFilter.OP_DST_NET;
+                arg = parseInet4Address(take());
+                mask = -1;
+                break;
+            case "net":
+                {
+                    srcOp = PacketFilter.OP_SRC_NET;
+                    dstOp = PacketFilter.OP_DST_NET;
+                    InetNetblock netblock = InetNetblock.parse(take());
+                    int prefixLength = netblock.getPrefixLength();
+                    if ((prefixLength < 0) || (prefixLength > 32)) {
+                        throw new ParseException(
+                            "invalid prefix length in packet filter");
+                    }
+                    mask = (prefixLength == 0) ?
+                        0 : -1 << (32 - prefixLength);
+                    arg = toInt(netblock.getPrefix()) & mask;
+                }
+                break;
+            case "port":
+                srcOp = PacketFilter.OP_SRC_PORT;
+                dstOp = PacketFilter.OP_DST_PORT;
+                arg = parseNumber(0xffff);
+                mask = 0;
+                break;
+            default:
+                throw new ParseException(String.format(
+                    "unrecognised keyword '%s' in packet filter", keyword));
+        }
+        Node srcNode = new Node(srcOp, arg, mask);
+        Node dstNode = new Node(dstOp, arg, mask);
+        if (src && dst) {
+            return new Node(NODE_OR, srcNode, dstNode);
+        }
+        return src ? srcNode : dstNode;
+    }
+
+    /** Parse a length comparison.
+     * @return the resulting node
+     * @throws ParseException if the expression could not be parsed
+     */
+    private Node parseLength() throws ParseException {
+        String operator = take();
+        int op;
+        switch (operator) {
+            case "<":
+                op = PacketFilter.OP_LEN_LT;
+                break;
+            case "<=":
+                op = PacketFilter.OP_LEN_LE;
+                break;
+            case "=":
+            case "==":
+                op = PacketFilter.OP_LEN_EQ;
+                break;
+            case ">=":
+                op = PacketFilter.OP_LEN_GE;
+                break;
+            case ">":
+                op = PacketFilter.OP_LEN_GT;
+                break;
+            default:
+                throw new ParseException(String.format(
+                    "invalid length operator '%s' in packet filter",
+                    operator));
+        }
+        return new Node(op, parseNumber(Integer.MAX_VALUE), 0);
+    }
+
+    /** Parse a non-negative decimal number.
+     * @param max the maximum permitted value
+     * @return the number
+     * @throws ParseException if the expression could not be parsed
+     */
+    private int parseNumber(int max) throws ParseException {
+        String token = take();
+        try {
+            int value = Integer.parseInt(token);
+            if ((value >= 0) && (value <= max)) {
+                return value;
+            }
+        } catch (NumberFormatException ex) {
+            // No action: reported below.
+        }
+        throw new ParseException(String.format(
+            "invalid number '%s' in packet filter", token));
+    }
+
+    /** Parse a comma-separated list of TCP flag names.
+     * @return the corresponding flag mask
+     * @throws ParseException if the expression could not be parsed
+     */
+    private int parseFlags() throws ParseException {
+        int result = 0;
+        for (String name : take().split(",")) {
+            int bit = Arrays.asList(FLAG_NAMES).indexOf(name);
+            if (bit == -1) {
+                throw new ParseException(String.format(
+                    "unrecognised TCP flag '%s' in packet filter", name));
+            }
+            result |= 1 << bit;
+        }
+        return result;
+    }
+
+    /** Parse an IPv4 address.
+     * @param addrStr the address as a character string
+     * @return the address as a 32-bit integer
+     * @throws ParseException if the address could not be parsed
+     */
+    private static int parseInet4Address(String addrStr)
+        throws ParseException {
+
+        return toInt(InetAddress.parse(addrStr));
+    }
+
+    /** Convert an IPv4 address to a 32-bit integer.
+     * @param addr the address
+     * @return the address as a 32-bit integer
+     * @throws ParseException if the address is not an IPv4 address
+     */
+    private static int toInt(InetAddress addr) throws ParseException {
+        OctetString content = addr.getAddress();
+        if (content.length() != 4) {
+            throw new ParseException(
+                "only IPv4 addresses are supported in packet filters");
+        }
+        int value = content.getInt(0);
+        return (content.getByteOrder() == OctetString.BIG_ENDIAN) ?
+            value : Integer.reverseBytes(value);
+    }
+
+    /** Allocate a new label.
+     * @return the label
+     */
+    private int newLabel() {
+        if (labelCount == labels.length) {
+            labels = Arrays.copyOf(labels, labelCount * 2);
+        }
+        return labelCount++;
+    }
+
+    /** Place a label at the next instruction to be emitted.
+     * @param label the label
+     */
+    private void place(int label) {
+        labels[label] = count;
+    }
+
+    /** Resolve a jump target.
+     * @param target a label, or a terminal target
+     * @return the instruction index, or the terminal target
+     */
+    private int resolve(int target) {
+        return (target < 0) ? target : labels[target];
+    }
+
+    /** Emit the instructions for a node.
+     * @param node the node
+     * @param onTrue the target if the node is true
+     * @param onFalse the target if the node is false
+     */
+    private void emit(Node node, int onTrue, int onFalse) {
+        switch (node.type) {
+            case NODE_TEST:
+                if (count == ops.length) {
+                    int capacity = count * 2;
+                    ops = Arrays.copyOf(ops, capacity);
+                    args = Arrays.copyOf(args, capacity);
+                    masks = Arrays.copyOf(masks, capacity);
+                    jt = Arrays.copyOf(jt, capacity);
+                    jf = Arrays.copyOf(jf, capacity);
+                }
+                ops[count] = node.op;
+                args[count] = node.arg;
+                masks[count] = node.mask;
+                jt[count] = onTrue;
+                jf[count] = onFalse;
+                count += 1;
+                break;
+            case NODE_AND:
+                {
+                    int label = newLabel();
+                    emit(node.left, label, onFalse);
+                    place(label);
+                    emit(node.right, onTrue, onFalse);
+                }
+                break;
+            case NODE_OR:
+                {
+                    int label = newLabel();
+                    emit(node.left, onTrue, label);
+                    place(label);
+                    emit(node.right, onTrue, onFalse);
+                }
+                break;
+            case NODE_NOT:
+                emit(node.left, onFalse, onTrue);
+                break;
+            default:
+                throw new IllegalStateException("invalid node type");
+        }
+    }
+}
@@ -0,0 +1,11 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+/**
+ * This is a subpackage of libholmes. It provides classes for selecting
+ * network packets by examining their raw content, before any artefacts
+ * are constructed from them.
+ */
+package org.libholmes.filter;
@@ -0,0 +1,134 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.filter;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import org.libholmes.HexOctetString;
+import org.libholmes.OctetString;
+import org.libholmes.ParseException;
+
+public class PacketFilterTest {
+    // Ethernet, IPv4 10.0.0.1 to 192.168.1.2, TCP SYN port 1234 to 80.
+    private static final String tcpFrame =
+        "00112233445566778899aabb08004500002800010000400600000a000001" +
+        "c0a8010204d2005000000000000000005002040000000000";
+
+    // Ethernet with VLAN tag, IPv4 10.0.0.2 to 10.0.0.1, UDP port 5353
+    // to 53.
+    private static final String udpFrame =
+        "00112233445566778899aabb8100006408004500001c00010000401100000a" +
+        "0000020a00000114e9003500080000";
+
+    // Raw IPv4 non-initial fragment, 10.0.0.2 to 10.0.0.1, UDP.
+    private static final String fragment =
+        "4500001c00010010401100000a0000020a00000114e9003500080000";
+
+    // Ethernet ARP.
+    private static final String arpFrame =
+        "00112233445566778899aabb0806000000000000000000000000000000000000" +
+        "0000000000000000000000";
+
+    private static boolean matches(String expression, int linkType,
+        String hex) throws ParseException {
+
+        PacketFilter filter = PacketFilter.compile(expression);
+        boolean result = filter.matches(linkType, new HexOctetString(hex));
+        OctetString little = new HexOctetString("<" + hex);
+        assertEquals(result, filter.matches(linkType, little));
+        return result;
+    }
+
+    private static boolean matchesTcp(String expression)
+        throws ParseException {
+
+        return matches(expression, 1, tcpFrame);
+    }
+
+    private static boolean matchesUdp(String expression)
+        throws ParseException {
+
+        return matches(expression, 1, udpFrame);
+    }
+
+    @Test
+    public void testProtocol() throws ParseException {
+        assertTrue(matchesTcp("ip"));
+        assertTrue(matchesTcp("tcp"));
+        assertFalse(matchesTcp("udp"));
+        assertTrue(matchesUdp("udp"));
+        assertTrue(matchesUdp("proto 17"));
+        assertFalse(matches("ip", 1, arpFrame));
+        assertTrue(matches("not ip", 1, arpFrame));
+        assertFalse(matches("ip", 147, tcpFrame));
+    }
+
+    @Test
+    public void testAddress() throws ParseException {
+        assertTrue(matchesTcp("host 10.0.0.1"));
+        assertTrue(matchesTcp("host 192.168.1.2"));
+        assertTrue(matchesTcp("src host 10.0.0.1"));
+        assertFalse(matchesTcp("dst host 10.0.0.1"));
+        assertTrue(matchesTcp("dst net 192.168.0.0/16"));
+        assertFalse(matchesTcp("src net 192.168.0.0/16"));
+        assertTrue(matchesTcp("net 0.0.0.0/0"));
+        assertTrue(matchesUdp("src host 10.0.0.2 and dst host 10.0.0.1"));
+    }
+
+    @Test
+    public void testPort() throws ParseException {
+        assertTrue(matchesTcp("port 80"));
+        assertTrue(matchesTcp("src port 1234"));
+        assertFalse(matchesTcp("src port 80"));
+        assertTrue(matchesUdp("dst port 53"));
+        assertFalse(matches("port 53", 101, fragment));
+        assertTrue(matches("udp", 101, fragment));
+    }
+
+    @Test
+    public void testFlagsAndLength() throws ParseException {
+        assertTrue(matchesTcp("flags syn"));
+        assertFalse(matchesTcp("flags syn,ack"));
+        assertTrue(matchesTcp("flags syn and not flags ack"));
+        assertFalse(matchesUdp("flags syn"));
+        assertTrue(matchesTcp("len = 54"));
+        assertTrue(matchesTcp("len > 53 and len < 55"));
+        assertFalse(matchesTcp("len >= 55"));
+        assertTrue(matchesTcp("len <= 54"));
+    }
+
+    @Test
+    public void testOperators() throws ParseException {
+        assertTrue(matchesTcp(""));
+        assertTrue(matchesTcp("udp or tcp"));
+        assertTrue(matchesTcp("tcp and (port 53 or port 80)"));
+        assertFalse(matchesTcp("tcp and not (port 53 or port 80)"));
+        assertTrue(matchesTcp("!udp && (host 10.0.0.9 || port 1234)"));
+        assertFalse(matchesTcp("not not udp"));
+        assertEquals(3, PacketFilter.compile("tcp and port 80").size());
+    }
+
+    @Test(expected = ParseException.class)
+    public void testUnbalanced() throws ParseException {
+        PacketFilter.compile("(tcp and port 80");
+    }
+
+    @Test(expected = ParseException.class)
+    public void testTrailing() throws ParseException {
+        PacketFilter.compile("tcp udp");
+    }
+
+    @Test(expected = ParseException.class)
+    public void testBadPort() throws ParseException {
+        PacketFilter.compile("port 65536");
+    }
+
+    @Test(expected = ParseException.class)
+    public void testBadFlag() throws ParseException {
+        PacketFilter.compile("flags syn,foo");
+    }
+}
@@ -0,0 +1,39 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.icmp;
+
+import org.libholmes.OctetString;
+import org.libholmes.Artefact;
+import org.libholmes.Decoder;
+import org.libholmes.DecoderRegistry;
+import org.libholmes.ParseException;
+
+/** A decoder for ICMPv4 messages. */
+public final class Icmp4Decoder implements Decoder {
+    /** The IP protocol number for ICMPv4. */
+    public static final int PROTOCOL_ICMP = 1;
+
+    /** The shared instance of this decoder. */
+    private static final Icmp4Decoder INSTANCE = new Icmp4Decoder();
+
+    /** Construct Icmp4Decoder. */
+    private Icmp4Decoder() {}
+
+    @Override
+    public Artefact decode(DecoderRegistry registry, Artefact parent,
+        OctetString content, int depth) throws ParseException {
+
+        return Icmp4Message.parse(parent, content);
+    }
+
+    /** Register this decoder.
+     * @param registry the registry
+     */
+    public static void register(DecoderRegistry registry) {
+        registry.register(DecoderRegistry.IP_PROTOCOL, PROTOCOL_ICMP,
+            INSTANCE);
+    }
+}
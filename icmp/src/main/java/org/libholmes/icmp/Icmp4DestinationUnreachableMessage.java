@@ -7,6 +7,7 @@ package org.libholmes.icmp;
 
 import javax.json.JsonObjectBuilder;
 
+import org.libholmes.JsonProjection;
 import org.libholmes.OctetString;
 import org.libholmes.ParseException;
 
@@ -88,8 +89,18 @@ public class Icmp4DestinationUnreachableMessage extends Icmp4Message {
 
     @Override
     public final void buildJson(JsonObjectBuilder builder) {
-        super.buildJson(builder);
+        buildJson(builder, JsonProjection.FULL);
+    }
+
+    @Override
+    protected final void buildJson(JsonObjectBuilder builder,
+        JsonProjection projection) {
+
+        super.buildJson(builder, projection);
         builder.add("description", getDescription());
-        builder.add("originalDatagram", getOriginalDatagram().toString());
+        if (projection.includesDerived(this, "originalDatagram")) {
+            builder.add("originalDatagram",
+                projection.encode(getOriginalDatagram()));
+        }
     }
 }
@@ -7,6 +7,7 @@ package org.libholmes.icmp;
 
 import javax.json.JsonObjectBuilder;
 
+import org.libholmes.JsonProjection;
 import org.libholmes.OctetString;
 import org.libholmes.ParseException;
 
@@ -55,9 +56,18 @@ public class Icmp4EchoMessage extends Icmp4Message {
 
     @Override
     public final void buildJson(JsonObjectBuilder builder) {
-        super.buildJson(builder);
+        buildJson(builder, JsonProjection.FULL);
+    }
+
+    @Override
+    protected final void buildJson(JsonObjectBuilder builder,
+        JsonProjection projection) {
+
+        super.buildJson(builder, projection);
         builder.add("identifier", getIdentifier());
         builder.add("sequenceNumber", getSequenceNumber());
-        builder.add("data", getData().toString());
+        if (projection.includesDerived(this, "data")) {
+            builder.add("data", projection.encode(getData()));
+        }
     }
 }
@@ -12,6 +12,7 @@ import javax.json.JsonObjectBuilder;
 import org.libholmes.OctetReader;
 import org.libholmes.OctetString;
 import org.libholmes.Artefact;
+import org.libholmes.JsonProjection;
 import org.libholmes.Logger;
 import org.libholmes.ParseException;
 import org.libholmes.inet.InetChecksum;
@@ -86,15 +87,34 @@ public abstract class Icmp4Message extends Artefact {
         return body;
     }
 
-    /** Build a JSON object for this message.
+    /** Build a JSON object for this message, including all fields.
      * @param builder a JsonObjectBuilder for the object to be built
      */
+    @Override
     protected void buildJson(JsonObjectBuilder builder) {
+        buildJson(builder, JsonProjection.FULL);
+    }
+
+    /** Build a JSON object for this message, subject to a projection.
+     * Subclasses should override this method to add their own fields.
+     * The message body, and any other fields derived from it, are
+     * treated as derived fields.
+     * @param builder a JsonObjectBuilder for the object to be built
+     * @param projection the fields to be included
+     */
+    @Override
+    protected void buildJson(JsonObjectBuilder builder,
+        JsonProjection projection) {
+
         builder.add("type", getType());
         builder.add("code", getCode());
         builder.add("recordedChecksum", getRecordedChecksum());
-        builder.add("calculatedChecksum", getCalculatedChecksum());
-        builder.add("body", getBody().toString());
+        if (projection.includesDerived(this, "calculatedChecksum")) {
+            builder.add("calculatedChecksum", getCalculatedChecksum());
+        }
+        if (projection.includesDerived(this, "body")) {
+            builder.add("body", projection.encode(getBody()));
+        }
     }
 
     /** Parse ICMPv4 message from an OctetReader.
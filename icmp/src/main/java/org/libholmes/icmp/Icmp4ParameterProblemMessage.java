@@ -7,6 +7,7 @@ package org.libholmes.icmp;
 
 import javax.json.JsonObjectBuilder;
 
+import org.libholmes.JsonProjection;
 import org.libholmes.OctetString;
 import org.libholmes.ParseException;
 
@@ -71,9 +72,19 @@ public class Icmp4ParameterProblemMessage extends Icmp4Message {
 
     @Override
     public final void buildJson(JsonObjectBuilder builder) {
-        super.buildJson(builder);
+        buildJson(builder, JsonProjection.FULL);
+    }
+
+    @Override
+    protected final void buildJson(JsonObjectBuilder builder,
+        JsonProjection projection) {
+
+        super.buildJson(builder, projection);
         builder.add("pointer", getPointer());
         builder.add("description", getDescription());
-        builder.add("originalDatagram", getOriginalDatagram().toString());
+        if (projection.includesDerived(this, "originalDatagram")) {
+            builder.add("originalDatagram",
+                projection.encode(getOriginalDatagram()));
+        }
     }
 }
@@ -8,9 +8,12 @@ package org.libholmes.icmp;
 import static org.junit.Assert.*;
 import org.junit.Test;
 
+import javax.json.Json;
 import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
 
 import org.libholmes.HexOctetReader;
+import org.libholmes.JsonProjection;
 import org.libholmes.ParseException;
 
 public class Icmp4EchoMessageTest {
@@ -53,4 +56,44 @@ public class Icmp4EchoMessageTest {
             "3031323334353637",
             jsonMessage.getString("data"));
     }
+
+    @Test
+    public void testProjection() throws ParseException {
+        HexOctetReader content = new HexOctetReader(
+            "0800b00151ef00074de9875a" +
+            "0000000053f10e000000000010111213" +
+            "1415161718191a1b1c1d1e1f20212223" +
+            "2425262728292a2b2c2d2e2f30313233" +
+            "34353637");
+        Icmp4Message icmpMessage = Icmp4Message.parse(null, content);
+
+        JsonObject json0 = icmpMessage.toJson(JsonProjection.DEFAULT);
+        assertEquals(8, json0.getInt("type"));
+        assertEquals(0x51ef, json0.getInt("identifier"));
+        assertFalse(json0.containsKey("calculatedChecksum"));
+        assertFalse(json0.containsKey("body"));
+        assertFalse(json0.containsKey("data"));
+
+        JsonProjection projection = JsonProjection.DEFAULT
+            .include(Icmp4Message.class, "sequenceNumber", "body")
+            .withPayloadLimit(4);
+        JsonObject json1 = icmpMessage.toJson(projection);
+        assertEquals(2, json1.size());
+        assertEquals(7, json1.getInt("sequenceNumber"));
+        assertEquals("51ef0007", json1.getString("body"));
+
+        JsonProjection dataOnly = JsonProjection.DEFAULT
+            .include(Icmp4EchoMessage.class, "data")
+            .withPayloadLimit(3)
+            .withPayloadEncoding(JsonProjection.BASE64);
+        JsonObject json2 = icmpMessage.toJson(dataOnly);
+        assertEquals(1, json2.size());
+        assertEquals("TemH", json2.getString("data"));
+
+        assertEquals(icmpMessage.toJson().getString("data"),
+            icmpMessage.toJson(JsonProjection.FULL).getString("data"));
+        JsonObjectBuilder builder = Json.createObjectBuilder();
+        ((Icmp4EchoMessage) icmpMessage).buildJson(builder);
+        assertEquals(icmpMessage.toJson(), builder.build());
+    }
 }
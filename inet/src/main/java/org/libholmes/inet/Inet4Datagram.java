@@ -10,13 +10,15 @@ import java.util.ArrayList;
 import java.util.Collections;
 
 import javax.json.Json;
-import javax.json.JsonArray;
 import javax.json.JsonObjectBuilder;
 import javax.json.JsonArrayBuilder;
+import javax.json.stream.JsonGenerator;
 
 import org.libholmes.OctetReader;
 import org.libholmes.OctetString;
+import org.libholmes.OctetWindow;
 import org.libholmes.Artefact;
+import org.libholmes.JsonProjection;
 import org.libholmes.Timestamped;
 import org.libholmes.Logger;
 import org.libholmes.ParseException;
@@ -40,6 +42,12 @@ public class Inet4Datagram extends InetDatagram {
     /** The undecoded header. */
     private final OctetString header;
 
+    /** A window onto the undecoded header, for reading header fields.
+     * The bounds of the header are validated once, when the window is
+     * created, rather than each time a field is read.
+     */
+    private final OctetWindow headerWindow;
+
     /** The undecoded payload. */
     private final OctetString payload;
 
@@ -76,6 +84,7 @@ public class Inet4Datagram extends InetDatagram {
                 "invalid header length for IPv4");
         }
         this.header = reader.readOctetString(headerLength);
+        this.headerWindow = this.header.getWindow();
 
         int length = this.header.getShort(2) & 0xffff;
         if (length < headerLength) {
@@ -100,74 +109,81 @@ public class Inet4Datagram extends InetDatagram {
             headerReader.remaining());
     }
 
+    /** Get header.
+     * @return the undecoded header, including any options
+     */
+    public final OctetString getHeader() {
+        return header;
+    }
+
     /** Get internet header length.
      * @return the length, in 32-bit words
      */
     public final int getIhl() {
-        return header.getByte(0) & 0xf;
+        return headerWindow.getByte(0) & 0xf;
     }
 
     /** Get Type of Service.
      * @return the type of service, as an uninterpreted octet.
      */
     public final int getTos() {
-        return header.getByte(1) & 0xff;
+        return headerWindow.getByte(1) & 0xff;
     }
 
     /** Get datagram length.
      * @return the length of the datagram, in octets.
      */
     public final int getLength() {
-        return header.getShort(2) & 0xffff;
+        return headerWindow.getShort(2) & 0xffff;
     }
 
     /** Get identification field.
      * @return the identification field
      */
     public final int getId() {
-        return header.getShort(4) & 0xffff;
+        return headerWindow.getShort(4) & 0xffff;
     }
 
     /** Get evil bit.
      * @return true if datagram is declared to be malicious, otherwise false
      */
     public final boolean isEvil() {
-        return (header.getByte(6) & 0x80) != 0;
+        return (headerWindow.getByte(6) & 0x80) != 0;
     }
 
     /** Get DF (don't fragment) flag.
      * @return true if datagram should not be fragmented, otherwise false
      */
     public final boolean doNotFragment() {
-        return (header.getByte(6) & 0x40) != 0;
+        return (headerWindow.getByte(6) & 0x40) != 0;
     }
 
     /** Get MF (more fragments) flag.
      * @return true if datagram has more fragments, otherwise false
      */
     public final boolean hasMoreFragments() {
-        return (header.getByte(6) & 0x20) != 0;
+        return (headerWindow.getByte(6) & 0x20) != 0;
     }
 
     /** Get fragment offset.
      * @return the fragment offset, in units of 8-octet chunks
      */
     public final int getFragmentOffset() {
-        return header.getShort(6) & 0x1fff;
+        return headerWindow.getShort(6) & 0x1fff;
     }
 
     /** Get time to live.
      * @return the time to live, in hops
      */
     public final int getTtl() {
-        return header.getByte(8) & 0xff;
+        return headerWindow.getByte(8) & 0xff;
     }
 
     /** Get protocol number.
      * @return the protocol number
      */
     public final int getProtocol() {
-        return header.getByte(9) & 0xff;
+        return headerWindow.getByte(9) & 0xff;
     }
 
     /** Get the recorded header checksum.
@@ -176,7 +192,7 @@ public class Inet4Datagram extends InetDatagram {
      * @return the recorded header checksum
      */
     public final int getRecordedChecksum() {
-        return header.getShort(10) & 0xffff;
+        return headerWindow.getShort(10) & 0xffff;
     }
 
     /** Get the calculated header checksum.
@@ -287,30 +303,135 @@ public class Inet4Datagram extends InetDatagram {
 
     @Override
     public final void buildJson(JsonObjectBuilder builder) {
-        JsonArrayBuilder jsonOptionsBuilder = Json.createArrayBuilder();
-        for (Inet4Option option : options) {
-            jsonOptionsBuilder.add(option.toJson());
-        }
-        JsonArray jsonOptions = jsonOptionsBuilder.build();
-
-        builder.add("version", getVersion());
-        builder.add("ihl", getIhl());
-        builder.add("tos", getTos());
-        builder.add("length", getLength());
-        builder.add("id", getId());
-        builder.add("evil", isEvil());
-        builder.add("doNotFragment", doNotFragment());
-        builder.add("moreFragments", hasMoreFragments());
-        builder.add("fragmentOffset", getFragmentOffset());
-        builder.add("ttl", getTtl());
-        builder.add("protocol", getProtocol());
-        builder.add("recordedChecksum", getRecordedChecksum());
-        builder.add("calculatedChecksum", getCalculatedChecksum());
-        builder.add("srcAddr", getSrcAddr().toString());
-        builder.add("dstAddr", getDstAddr().toString());
-        builder.add("options", jsonOptions);
-        builder.add("padding", padding.toString());
-        builder.add("payload", payload.toString());
+        buildJson(builder, JsonProjection.FULL);
+    }
+
+    @Override
+    protected final void buildJson(JsonObjectBuilder builder,
+        JsonProjection projection) {
+
+        if (projection.includes(this, "version")) {
+            builder.add("version", getVersion());
+        }
+        if (projection.includes(this, "ihl")) {
+            builder.add("ihl", getIhl());
+        }
+        if (projection.includes(this, "tos")) {
+            builder.add("tos", getTos());
+        }
+        if (projection.includes(this, "length")) {
+            builder.add("length", getLength());
+        }
+        if (projection.includes(this, "id")) {
+            builder.add("id", getId());
+        }
+        if (projection.includes(this, "evil")) {
+            builder.add("evil", isEvil());
+        }
+        if (projection.includes(this, "doNotFragment")) {
+            builder.add("doNotFragment", doNotFragment());
+        }
+        if (projection.includes(this, "moreFragments")) {
+            builder.add("moreFragments", hasMoreFragments());
+        }
+        if (projection.includes(this, "fragmentOffset")) {
+            builder.add("fragmentOffset", getFragmentOffset());
+        }
+        if (projection.includes(this, "ttl")) {
+            builder.add("ttl", getTtl());
+        }
+        if (projection.includes(this, "protocol")) {
+            builder.add("protocol", getProtocol());
+        }
+        if (projection.includes(this, "recordedChecksum")) {
+            builder.add("recordedChecksum", getRecordedChecksum());
+        }
+        if (projection.includesDerived(this, "calculatedChecksum")) {
+            builder.add("calculatedChecksum", getCalculatedChecksum());
+        }
+        if (projection.includes(this, "srcAddr")) {
+            builder.add("srcAddr", getSrcAddr().toString());
+        }
+        if (projection.includes(this, "dstAddr")) {
+            builder.add("dstAddr", getDstAddr().toString());
+        }
+        if (projection.includes(this, "options")) {
+            JsonArrayBuilder jsonOptionsBuilder = Json.createArrayBuilder();
+            for (Inet4Option option : options) {
+                jsonOptionsBuilder.add(option.toJson());
+            }
+            builder.add("options", jsonOptionsBuilder.build());
+        }
+        if (projection.includes(this, "padding")) {
+            builder.add("padding", padding.toString());
+        }
+        if (projection.includesDerived(this, "payload")) {
+            builder.add("payload", projection.encode(payload));
+        }
+    }
+
+    @Override
+    protected final void generateJson(JsonGenerator generator,
+        JsonProjection projection) {
+
+        if (projection.includes(this, "version")) {
+            generator.write("version", getVersion());
+        }
+        if (projection.includes(this, "ihl")) {
+            generator.write("ihl", getIhl());
+        }
+        if (projection.includes(this, "tos")) {
+            generator.write("tos", getTos());
+        }
+        if (projection.includes(this, "length")) {
+            generator.write("length", getLength());
+        }
+        if (projection.includes(this, "id")) {
+            generator.write("id", getId());
+        }
+        if (projection.includes(this, "evil")) {
+            generator.write("evil", isEvil());
+        }
+        if (projection.includes(this, "doNotFragment")) {
+            generator.write("doNotFragment", doNotFragment());
+        }
+        if (projection.includes(this, "moreFragments")) {
+            generator.write("moreFragments", hasMoreFragments());
+        }
+        if (projection.includes(this, "fragmentOffset")) {
+            generator.write("fragmentOffset", getFragmentOffset());
+        }
+        if (projection.includes(this, "ttl")) {
+            generator.write("ttl", getTtl());
+        }
+        if (projection.includes(this, "protocol")) {
+            generator.write("protocol", getProtocol());
+        }
+        if (projection.includes(this, "recordedChecksum")) {
+            generator.write("recordedChecksum", getRecordedChecksum());
+        }
+        if (projection.includesDerived(this, "calculatedChecksum")) {
+            generator.write("calculatedChecksum", getCalculatedChecksum());
+        }
+        if (projection.includes(this, "srcAddr")) {
+            generator.write("srcAddr", getSrcAddr().toString());
+        }
+        if (projection.includes(this, "dstAddr")) {
+            generator.write("dstAddr", getDstAddr().toString());
+        }
+        if (projection.includes(this, "options")) {
+            generator.writeStartArray("options");
+            for (Inet4Option option : options) {
+                option.writeJson(generator);
+            }
+            generator.writeEnd();
+        }
+        if (projection.includes(this, "padding")) {
+            generator.write("padding", padding.toString());
+        }
+        if (projection.includesDerived(this, "payload")) {
+            generator.write("payload", projection.encode(payload));
+        }
     }
 
     @Override
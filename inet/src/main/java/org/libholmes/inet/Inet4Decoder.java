@@ -0,0 +1,128 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.inet;
+
+import org.libholmes.OctetString;
+import org.libholmes.Artefact;
+import org.libholmes.Decoder;
+import org.libholmes.DecoderRegistry;
+import org.libholmes.ParseException;
+
+/** A decoder for IPv4 datagrams.
+ * The payload is dispatched by protocol number. Fragments are not decoded
+ * further unless the decoder has a reassembler, in which case the payload
+ * of each reassembled datagram is decoded when its final fragment is
+ * received.
+ *
+ * Frames with the raw IP link type may contain IPv6 rather than IPv4, so
+ * for that link type decoding stops at the frame unless the version
+ * number is 4.
+ */
+public final class Inet4Decoder implements Decoder {
+    /** The EtherType for IPv4. */
+    public static final int ETHERTYPE_IPV4 = 0x0800;
+
+    /** The link type for raw IP. */
+    public static final int LINKTYPE_RAW = 101;
+
+    /** The link type for raw IPv4. */
+    public static final int LINKTYPE_IPV4 = 228;
+
+    /** The shared instance of this decoder. */
+    private static final Inet4Decoder INSTANCE =
+        new Inet4Decoder(null, false);
+
+    /** The shared instance of this decoder for the raw IP link type. */
+    private static final Inet4Decoder RAW_INSTANCE =
+        new Inet4Decoder(null, true);
+
+    /** The reassembler for fragmented datagrams, or null if none. */
+    private final Inet4Reassembler reassembler;
+
+    /** True if content which is not IPv4 should be left undecoded,
+     * otherwise false.
+     */
+    private final boolean raw;
+
+    /** Construct Inet4Decoder.
+     * @param reassembler the reassembler for fragmented datagrams, or
+     *  null if none
+     * @param raw true if content which is not IPv4 should be left
+     *  undecoded, otherwise false
+     */
+    private Inet4Decoder(Inet4Reassembler reassembler, boolean raw) {
+        this.reassembler = reassembler;
+        this.raw = raw;
+    }
+
+    /** Construct Inet4Decoder with a reassembler.
+     * The resulting decoder is stateful: see register(DecoderRegistry,
+     * Inet4Reassembler).
+     * @param reassembler the reassembler for fragmented datagrams
+     */
+    public Inet4Decoder(Inet4Reassembler reassembler) {
+        this(reassembler, false);
+    }
+
+    @Override
+    public Artefact decode(DecoderRegistry registry, Artefact parent,
+        OctetString content, int depth) throws ParseException {
+
+        if (raw && (content.length() != 0) &&
+            (((content.getByte(0) >> 4) & 0xf) != 4)) {
+            return parent;
+        }
+        Inet4Datagram datagram = Inet4Datagram.parse(parent, content);
+        if (datagram.hasMoreFragments() ||
+            (datagram.getFragmentOffset() != 0)) {
+            Inet4Datagram whole = (reassembler != null) ?
+                reassembler.add(datagram) : null;
+            if (whole == null) {
+                return datagram;
+            }
+            datagram = whole;
+        }
+        return registry.decode(DecoderRegistry.IP_PROTOCOL,
+            datagram.getProtocol(), datagram, datagram.getPayload(), depth);
+    }
+
+    /** Register this decoder.
+     * It is registered for the IPv4 EtherType, and for the raw IP and
+     * raw IPv4 link types.
+     * @param registry the registry
+     */
+    public static void register(DecoderRegistry registry) {
+        INSTANCE.registerAs(registry, RAW_INSTANCE);
+    }
+
+    /** Register a decoder which reassembles fragmented datagrams.
+     * It is registered for the IPv4 EtherType, and for the raw IP and
+     * raw IPv4 link types. Since the reassembler is stateful, the registry
+     * must then be used from one thread only, with frames decoded in
+     * capture order.
+     * @param registry the registry
+     * @param reassembler the reassembler for fragmented datagrams
+     */
+    public static void register(DecoderRegistry registry,
+        Inet4Reassembler reassembler) {
+
+        new Inet4Decoder(reassembler, false).registerAs(registry,
+            new Inet4Decoder(reassembler, true));
+    }
+
+    /** Register this decoder instance.
+     * @param registry the registry
+     * @param rawDecoder the equivalent decoder for the raw IP link type
+     */
+    private void registerAs(DecoderRegistry registry,
+        Inet4Decoder rawDecoder) {
+
+        registry.register(DecoderRegistry.ETHER_TYPE, ETHERTYPE_IPV4, this);
+        registry.register(DecoderRegistry.LINK_TYPE, LINKTYPE_RAW,
+            rawDecoder);
+        registry.register(DecoderRegistry.LINK_TYPE, LINKTYPE_IPV4, this);
+    }
+}
@@ -0,0 +1,108 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.inet;
+
+/** A class for inspecting an entry in an Inet4FlowTable.
+ *
+ * Each table owns a single instance of this class, which refers to
+ * whichever entry is currently being visited, so that visiting flows does
+ * not require any per-flow objects to be allocated. An instance is valid
+ * only for the duration of the visit, and should not be retained.
+ */
+public final class Inet4Flow {
+    /** The table to which this flow belongs. */
+    private final Inet4FlowTable table;
+
+    /** The slot within the table which is currently being visited. */
+    int slot = -1;
+
+    /** Construct Inet4Flow.
+     * @param table the table to which this flow belongs
+     */
+    Inet4Flow(Inet4FlowTable table) {
+        this.table = table;
+    }
+
+    /** Get the source address.
+     * @return the source address, as a big-endian integer
+     */
+    public int getSrcAddr() {
+        return table.getSrcAddr(slot);
+    }
+
+    /** Get the destination address.
+     * @return the destination address, as a big-endian integer
+     */
+    public int getDstAddr() {
+        return table.getDstAddr(slot);
+    }
+
+    /** Get the protocol number.
+     * @return the protocol number
+     */
+    public int getProtocol() {
+        return table.getProtocol(slot);
+    }
+
+    /** Get the source port.
+     * @return the source port, or zero if the protocol does not have ports
+     */
+    public int getSrcPort() {
+        return table.getSrcPort(slot);
+    }
+
+    /** Get the destination port.
+     * @return the destination port, or zero if the protocol does not have
+     *  ports
+     */
+    public int getDstPort() {
+        return table.getDstPort(slot);
+    }
+
+    /** Get the number of packets in this flow.
+     * @return the number of packets
+     */
+    public long getPacketCount() {
+        return table.getPacketCount(slot);
+    }
+
+    /** Get the number of octets in this flow.
+     * This is the sum of the IP datagram lengths.
+     * @return the number of octets
+     */
+    public long getOctetCount() {
+        return table.getOctetCount(slot);
+    }
+
+    /** Get the timestamp of the first packet in this flow.
+     * @return the timestamp, in nanoseconds since the epoch
+     */
+    public long getFirstTimestamp() {
+        return table.getFirstTimestamp(slot);
+    }
+
+    /** Get the timestamp of the last packet in this flow.
+     * @return the timestamp, in nanoseconds since the epoch
+     */
+    public long getLastTimestamp() {
+        return table.getLastTimestamp(slot);
+    }
+
+    /** Get the TCP flags seen in this flow.
+     * @return the bitwise OR of the flags octet from each TCP segment
+     */
+    public int getTcpFlags() {
+        return table.getTcpFlags(slot);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s:%d -> %s:%d (%d)",
+            Inet4FlowTable.formatAddr(getSrcAddr()), getSrcPort(),
+            Inet4FlowTable.formatAddr(getDstAddr()), getDstPort(),
+            getProtocol());
+    }
+}
@@ -0,0 +1,435 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.inet;
+
+import java.util.function.Consumer;
+
+import org.libholmes.OctetString;
+import org.libholmes.Timestamped;
+
+/** A class for summarising IPv4 traffic as unidirectional flows.
+ *
+ * A flow is identified by its source address, destination address,
+ * protocol, source port and destination port. Each key is packed into a
+ * pair of longs, and keys and per-flow counters are held in parallel
+ * primitive arrays using open addressing with linear probing, so that
+ * no objects are allocated per flow or per packet. An entry is marked as
+ * in use by having a non-zero packet count, and entries are removed by
+ * backward-shift deletion rather than by leaving tombstones.
+ *
+ * Flows which have been idle for longer than the timeout are removed
+ * and passed to a consumer. This happens when expire is called, and
+ * automatically as packets are added, whenever the capture time has
+ * advanced by a quarter of the timeout since the table was last scanned.
+ */
+public final class Inet4FlowTable {
+    /** The default idle timeout, in nanoseconds. */
+    public static final long DEFAULT_TIMEOUT = 60000000000L;
+
+    /** The initial capacity of the table. */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /** The protocol number for TCP. */
+    private static final int PROTOCOL_TCP = 6;
+
+    /** The protocol number for UDP. */
+    private static final int PROTOCOL_UDP = 17;
+
+    /** The protocol number for SCTP. */
+    private static final int PROTOCOL_SCTP = 132;
+
+    /** The idle timeout, in nanoseconds. */
+    private final long timeout;
+
+    /** The consumer for expired flows, or null if none. */
+    private final Consumer<Inet4Flow> expired;
+
+    /** A reusable view of the entry currently being visited. */
+    private final Inet4Flow flow = new Inet4Flow(this);
+
+    /** The source and destination address of each entry. */
+    private long[] addrs;
+
+    /** The protocol, source port and destination port of each entry. */
+    private long[] ports;
+
+    /** The packet count of each entry, or zero if not in use. */
+    private long[] packetCounts;
+
+    /** The octet count of each entry. */
+    private long[] octetCounts;
+
+    /** The timestamp of the first packet of each entry. */
+    private long[] firstTimestamps;
+
+    /** The timestamp of the last packet of each entry. */
+    private long[] lastTimestamps;
+
+    /** The TCP flags seen by each entry. */
+    private byte[] tcpFlags;
+
+    /** The number of entries in use. */
+    private int count = 0;
+
+    /** The capture time at which the table should next be scanned. */
+    private long nextScan = Long.MIN_VALUE;
+
+    /** Construct Inet4FlowTable with a given timeout.
+     * @param timeout the idle timeout, in nanoseconds
+     * @param expired a consumer for expired flows, or null if none
+     */
+    public Inet4FlowTable(long timeout, Consumer<Inet4Flow> expired) {
+        this.timeout = timeout;
+        this.expired = expired;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /** Construct Inet4FlowTable with the default timeout.
+     * @param expired a consumer for expired flows, or null if none
+     */
+    public Inet4FlowTable(Consumer<Inet4Flow> expired) {
+        this(DEFAULT_TIMEOUT, expired);
+    }
+
+    /** Allocate empty arrays.
+     * @param capacity the required capacity, which must be a power of two
+     */
+    private void allocate(int capacity) {
+        addrs = new long[capacity];
+        ports = new long[capacity];
+        packetCounts = new long[capacity];
+        octetCounts = new long[capacity];
+        firstTimestamps = new long[capacity];
+        lastTimestamps = new long[capacity];
+        tcpFlags = new byte[capacity];
+    }
+
+    /** Calculate the preferred slot for a key.
+     * @param addrKey the address part of the key
+     * @param portKey the protocol and port part of the key
+     * @return the preferred slot
+     */
+    private int hash(long addrKey, long portKey) {
+        long h = addrKey * 0x9e3779b97f4a7c15L + portKey;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h & (addrs.length - 1);
+    }
+
+    /** Find the slot for a key.
+     * @param addrKey the address part of the key
+     * @param portKey the protocol and port part of the key
+     * @return the slot containing the key, or the empty slot where it
+     *  should be inserted
+     */
+    private int find(long addrKey, long portKey) {
+        int mask = addrs.length - 1;
+        int slot = hash(addrKey, portKey);
+        while ((packetCounts[slot] != 0) &&
+            ((addrs[slot] != addrKey) || (ports[slot] != portKey))) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /** Double the capacity of the table. */
+    private void grow() {
+        long[] oldAddrs = addrs;
+        long[] oldPorts = ports;
+        long[] oldPacketCounts = packetCounts;
+        long[] oldOctetCounts = octetCounts;
+        long[] oldFirstTimestamps = firstTimestamps;
+        long[] oldLastTimestamps = lastTimestamps;
+        byte[] oldTcpFlags = tcpFlags;
+        allocate(oldAddrs.length * 2);
+        for (int i = 0; i != oldAddrs.length; ++i) {
+            if (oldPacketCounts[i] != 0) {
+                int slot = find(oldAddrs[i], oldPorts[i]);
+                addrs[slot] = oldAddrs[i];
+                ports[slot] = oldPorts[i];
+                packetCounts[slot] = oldPacketCounts[i];
+                octetCounts[slot] = oldOctetCounts[i];
+                firstTimestamps[slot] = oldFirstTimestamps[i];
+                lastTimestamps[slot] = oldLastTimestamps[i];
+                tcpFlags[slot] = oldTcpFlags[i];
+            }
+        }
+    }
+
+    /** Move an entry from one slot to another.
+     * @param from the slot containing the entry
+     * @param to the slot to which it should be moved
+     */
+    private void move(int from, int to) {
+        addrs[to] = addrs[from];
+        ports[to] = ports[from];
+        packetCounts[to] = packetCounts[from];
+        octetCounts[to] = octetCounts[from];
+        firstTimestamps[to] = firstTimestamps[from];
+        lastTimestamps[to] = lastTimestamps[from];
+        tcpFlags[to] = tcpFlags[from];
+    }
+
+    /** Remove the entry in a given slot.
+     * Subsequent entries in the same probe sequence are shifted back to
+     * fill the gap, so that they can still be found.
+     * @param slot the slot to be emptied
+     */
+    private void remove(int slot) {
+        int mask = addrs.length - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (packetCounts[next] != 0) {
+            int home = hash(addrs[next], ports[next]);
+            // The entry can fill the hole if its preferred slot does not
+            // lie cyclically within (hole, next].
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                move(next, hole);
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        packetCounts[hole] = 0;
+        count -= 1;
+    }
+
+    /** Add a packet to the table.
+     * @param srcAddr the source address, as a big-endian integer
+     * @param dstAddr the destination address, as a big-endian integer
+     * @param protocol the protocol number
+     * @param srcPort the source port, or zero if none
+     * @param dstPort the destination port, or zero if none
+     * @param length the length of the packet, in octets
+     * @param flags the TCP flags octet, or zero if not TCP
+     * @param timestamp the timestamp, in nanoseconds since the epoch
+     */
+    public void add(int srcAddr, int dstAddr, int protocol, int srcPort,
+        int dstPort, int length, int flags, long timestamp) {
+
+        if (timestamp >= nextScan) {
+            if (nextScan != Long.MIN_VALUE) {
+                expire(timestamp);
+            }
+            nextScan = timestamp + Math.max(timeout / 4, 1);
+        }
+
+        long addrKey = ((long) srcAddr << 32) | (dstAddr & 0xffffffffL);
+        long portKey = ((long) (protocol & 0xff) << 32) |
+            ((long) (srcPort & 0xffff) << 16) | (dstPort & 0xffff);
+        int slot = find(addrKey, portKey);
+        if (packetCounts[slot] == 0) {
+            if ((count + 1) * 2 > addrs.length) {
+                grow();
+                slot = find(addrKey, portKey);
+            }
+            addrs[slot] = addrKey;
+            ports[slot] = portKey;
+            octetCounts[slot] = 0;
+            firstTimestamps[slot] = timestamp;
+            lastTimestamps[slot] = timestamp;
+            tcpFlags[slot] = 0;
+            count += 1;
+        }
+        packetCounts[slot] += 1;
+        octetCounts[slot] += length;
+        lastTimestamps[slot] = Math.max(lastTimestamps[slot], timestamp);
+        tcpFlags[slot] |= (byte) flags;
+    }
+
+    /** Add an IPv4 datagram to the table.
+     * Ports are extracted for TCP, UDP and SCTP, and flags for TCP,
+     * except from non-initial fragments. The timestamp is taken from the
+     * nearest timestamped ancestor, or is zero if there is none.
+     * @param datagram the datagram to be added
+     */
+    public void add(Inet4Datagram datagram) {
+        OctetString header = datagram.getHeader();
+        OctetString payload = datagram.getPayload();
+        int protocol = datagram.getProtocol();
+        int srcPort = 0;
+        int dstPort = 0;
+        int flags = 0;
+        boolean hasPorts = (protocol == PROTOCOL_TCP) ||
+            (protocol == PROTOCOL_UDP) || (protocol == PROTOCOL_SCTP);
+        if (hasPorts && (datagram.getFragmentOffset() == 0) &&
+            (payload.length() >= 4)) {
+            srcPort = ((payload.getByte(0) & 0xff) << 8) |
+                (payload.getByte(1) & 0xff);
+            dstPort = ((payload.getByte(2) & 0xff) << 8) |
+                (payload.getByte(3) & 0xff);
+            if ((protocol == PROTOCOL_TCP) && (payload.length() >= 14)) {
+                flags = payload.getByte(13) & 0xff;
+            }
+        }
+        Timestamped ts = datagram.find(Timestamped.class);
+        add(getInt(header, 12), getInt(header, 16), protocol, srcPort,
+            dstPort, datagram.getLength(), flags,
+            (ts != null) ? ts.getTimestamp() : 0);
+    }
+
+    /** Read a big-endian integer, regardless of byte order.
+     * @param string the octet string
+     * @param index the index into the octet string
+     * @return the integer
+     */
+    private static int getInt(OctetString string, int index) {
+        return ((string.getByte(index) & 0xff) << 24) |
+            ((string.getByte(index + 1) & 0xff) << 16) |
+            ((string.getByte(index + 2) & 0xff) << 8) |
+            (string.getByte(index + 3) & 0xff);
+    }
+
+    /** Remove flows which have been idle for longer than the timeout.
+     * Each is passed to the consumer for expired flows before removal.
+     * @param timestamp the current time, in nanoseconds since the epoch
+     */
+    public void expire(long timestamp) {
+        int slot = 0;
+        while (slot != addrs.length) {
+            if ((packetCounts[slot] != 0) &&
+                (timestamp - lastTimestamps[slot] > timeout)) {
+                if (expired != null) {
+                    flow.slot = slot;
+                    expired.accept(flow);
+                }
+                // Removal may shift another entry into this slot, so it
+                // must be examined again.
+                remove(slot);
+            } else {
+                slot += 1;
+            }
+        }
+        flow.slot = -1;
+    }
+
+    /** Remove all flows, passing each to the consumer for expired flows.
+     * This should be called when there are no more packets to be added.
+     */
+    public void flush() {
+        for (int slot = 0; slot != addrs.length; ++slot) {
+            if ((packetCounts[slot] != 0) && (expired != null)) {
+                flow.slot = slot;
+                expired.accept(flow);
+            }
+        }
+        flow.slot = -1;
+        allocate(INITIAL_CAPACITY);
+        count = 0;
+    }
+
+    /** Visit each flow in the table, without removing it.
+     * The flows are visited in no particular order.
+     * @param visitor the consumer to which each flow is passed
+     */
+    public void forEach(Consumer<Inet4Flow> visitor) {
+        for (int slot = 0; slot != addrs.length; ++slot) {
+            if (packetCounts[slot] != 0) {
+                flow.slot = slot;
+                visitor.accept(flow);
+            }
+        }
+        flow.slot = -1;
+    }
+
+    /** Get the number of flows in the table.
+     * @return the number of flows
+     */
+    public int size() {
+        return count;
+    }
+
+    /** Format an address packed into an integer.
+     * @param addr the address, as a big-endian integer
+     * @return the address in dotted decimal notation
+     */
+    static String formatAddr(int addr) {
+        return ((addr >>> 24) & 0xff) + "." + ((addr >>> 16) & 0xff) +
+            "." + ((addr >>> 8) & 0xff) + "." + (addr & 0xff);
+    }
+
+    /** Get the source address of an entry.
+     * @param slot the slot containing the entry
+     * @return the source address
+     */
+    int getSrcAddr(int slot) {
+        return (int) (addrs[slot] >>> 32);
+    }
+
+    /** Get the destination address of an entry.
+     * @param slot the slot containing the entry
+     * @return the destination address
+     */
+    int getDstAddr(int slot) {
+        return (int) addrs[slot];
+    }
+
+    /** Get the protocol number of an entry.
+     * @param slot the slot containing the entry
+     * @return the protocol number
+     */
+    int getProtocol(int slot) {
+        return (int) (ports[slot] >>> 32) & 0xff;
+    }
+
+    /** Get the source port of an entry.
+     * @param slot the slot containing the entry
+     * @return the source port
+     */
+    int getSrcPort(int slot) {
+        return (int) (ports[slot] >>> 16) & 0xffff;
+    }
+
+    /** Get the destination port of an entry.
+     * @param slot the slot containing the entry
+     * @return the destination port
+     */
+    int getDstPort(int slot) {
+        return (int) ports[slot] & 0xffff;
+    }
+
+    /** Get the packet count of an entry.
+     * @param slot the slot containing the entry
+     * @return the packet count
+     */
+    long getPacketCount(int slot) {
+        return packetCounts[slot];
+    }
+
+    /** Get the octet count of an entry.
+     * @param slot the slot containing the entry
+     * @return the octet count
+     */
+    long getOctetCount(int slot) {
+        return octetCounts[slot];
+    }
+
+    /** Get the first timestamp of an entry.
+     * @param slot the slot containing the entry
+     * @return the first timestamp
+     */
+    long getFirstTimestamp(int slot) {
+        return firstTimestamps[slot];
+    }
+
+    /** Get the last timestamp of an entry.
+     * @param slot the slot containing the entry
+     * @return the last timestamp
+     */
+    long getLastTimestamp(int slot) {
+        return lastTimestamps[slot];
+    }
+
+    /** Get the TCP flags of an entry.
+     * @param slot the slot containing the entry
+     * @return the TCP flags
+     */
+    int getTcpFlags(int slot) {
+        return tcpFlags[slot] & 0xff;
+    }
+}
@@ -0,0 +1,498 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.inet;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.libholmes.ArrayOctetString;
+import org.libholmes.Artefact;
+import org.libholmes.CompositeOctetString;
+import org.libholmes.Logger;
+import org.libholmes.OctetString;
+import org.libholmes.ParseException;
+import org.libholmes.Timestamped;
+
+/** A class for reassembling fragmented IPv4 datagrams.
+ *
+ * Fragments are grouped by source address, destination address, protocol
+ * and identification, and the parts of each datagram not yet received are
+ * tracked using hole descriptors as described by RFC 815. Where fragments
+ * overlap, the octets received first are retained. This matches the
+ * behaviour of most modern hosts, but since it may not match that of the
+ * intended recipient, overlaps are reported as findings, as are overlaps
+ * where the content differs and other anomalies indicative of evasion.
+ *
+ * The payload of a reassembled datagram refers to the payloads of the
+ * fragments rather than being a copy of them. Its header is a copy of the
+ * header from the first fragment, with the length, flags, fragment offset
+ * and checksum amended to describe the whole datagram.
+ *
+ * Timeouts are measured using the timestamps of the fragments (not the
+ * current time), starting from the first fragment of each datagram.
+ * Fragments without a timestamp never cause other datagrams to time out.
+ * Memory usage is bounded by discarding the least recently updated
+ * incomplete datagrams once the total length of the fragments held
+ * exceeds a given limit.
+ *
+ * Instances are not thread-safe. Furthermore, since timeouts and eviction
+ * depend on the order in which fragments are added, they should be added
+ * in capture order. A DecoderRegistry holding a decoder which uses a
+ * reassembler must therefore be used from one thread only, in capture
+ * order.
+ */
+public final class Inet4Reassembler {
+    /** The default timeout, in nanoseconds. */
+    public static final long DEFAULT_TIMEOUT = 30000000000L;
+
+    /** The default memory limit, in octets. */
+    public static final long DEFAULT_MEMORY_LIMIT = 0x400000;
+
+    /** The maximum length of an IPv4 datagram, in octets. */
+    private static final int MAX_LENGTH = 0xffff;
+
+    /** A key for identifying the fragments of a datagram. */
+    private static final class Key {
+        /** The source and destination addresses. */
+        private final long addrs;
+
+        /** The protocol and identification fields. */
+        private final int protoId;
+
+        /** Construct Key.
+         * @param addrs the source and destination addresses
+         * @param protoId the protocol and identification fields
+         */
+        Key(long addrs, int protoId) {
+            this.addrs = addrs;
+            this.protoId = protoId;
+        }
+
+        @Override
+        public boolean equals(Object thatObject) {
+            if (!(thatObject instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) thatObject;
+            return (this.addrs == that.addrs) &&
+                (this.protoId == that.protoId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(addrs) * 31 + protoId;
+        }
+    }
+
+    /** A part of the payload which has been received. */
+    private static final class Piece {
+        /** The offset of this piece within the payload. */
+        final int first;
+
+        /** The content of this piece. */
+        final OctetString data;
+
+        /** Construct Piece.
+         * @param first the offset of this piece within the payload
+         * @param data the content of this piece
+         */
+        Piece(int first, OctetString data) {
+            this.first = first;
+            this.data = data;
+        }
+    }
+
+    /** A part of the payload which has not yet been received. */
+    private static final class Hole {
+        /** The offset of the first octet in this hole. */
+        final int first;
+
+        /** The offset of the last octet in this hole. */
+        final int last;
+
+        /** Construct Hole.
+         * @param first the offset of the first octet in this hole
+         * @param last the offset of the last octet in this hole
+         */
+        Hole(int first, int last) {
+            this.first = first;
+            this.last = last;
+        }
+    }
+
+    /** The state of a datagram which is being reassembled. */
+    private static final class Buffer {
+        /** The timestamp of the first fragment received. */
+        final long start;
+
+        /** The timestamp of the most recent fragment received. */
+        long latest;
+
+        /** The header of the first fragment, or null if not received. */
+        OctetString header = null;
+
+        /** The length of the payload, or -1 if not yet known. */
+        int end = -1;
+
+        /** The parts of the payload received, in order of offset. */
+        final ArrayList<Piece> pieces = new ArrayList<Piece>();
+
+        /** The parts of the payload not yet received. */
+        ArrayList<Hole> holes = new ArrayList<Hole>();
+
+        /** The number of octets held by this buffer. */
+        int size = 0;
+
+        /** Construct Buffer.
+         * @param start the timestamp of the first fragment
+         */
+        Buffer(long start) {
+            this.start = start;
+            this.latest = start;
+            holes.add(new Hole(0, Integer.MAX_VALUE));
+        }
+    }
+
+    /** The logger for recording findings. */
+    private final Logger logger;
+
+    /** The timeout, in nanoseconds. */
+    private final long timeout;
+
+    /** The memory limit, in octets. */
+    private final long memoryLimit;
+
+    /** The datagrams being reassembled, least recently updated first. */
+    private final LinkedHashMap<Key, Buffer> buffers =
+        new LinkedHashMap<Key, Buffer>(16, 0.75f, true);
+
+    /** The number of octets held by all buffers. */
+    private long memoryUsed = 0;
+
+    /** The number of datagrams discarded due to timeout. */
+    private long timeoutCount = 0;
+
+    /** The number of datagrams discarded due to the memory limit. */
+    private long evictionCount = 0;
+
+    /** Construct Inet4Reassembler with a given timeout and memory limit.
+     * @param logger a logger for recording findings
+     * @param timeout the timeout, in nanoseconds
+     * @param memoryLimit the memory limit, in octets
+     */
+    public Inet4Reassembler(Logger logger, long timeout, long memoryLimit) {
+        this.logger = logger;
+        this.timeout = timeout;
+        this.memoryLimit = memoryLimit;
+    }
+
+    /** Construct Inet4Reassembler with the default timeout and memory
+     * limit.
+     * @param logger a logger for recording findings
+     */
+    public Inet4Reassembler(Logger logger) {
+        this(logger, DEFAULT_TIMEOUT, DEFAULT_MEMORY_LIMIT);
+    }
+
+    /** Make a key for a datagram.
+     * @param header the header of the datagram
+     * @return the resulting key
+     */
+    private static Key makeKey(OctetString header) {
+        long addrs = 0;
+        for (int i = 12; i != 20; ++i) {
+            addrs = (addrs << 8) | (header.getByte(i) & 0xff);
+        }
+        int protoId = ((header.getByte(9) & 0xff) << 16) |
+            ((header.getByte(4) & 0xff) << 8) | (header.getByte(5) & 0xff);
+        return new Key(addrs, protoId);
+    }
+
+    /** Discard a buffer.
+     * @param buffer the buffer to be discarded
+     */
+    private void discard(Buffer buffer) {
+        memoryUsed -= buffer.size;
+    }
+
+    /** Discard datagrams which have timed out.
+     * @param timestamp the current time, in nanoseconds since the epoch
+     */
+    public void expire(long timestamp) {
+        Iterator<Buffer> iter = buffers.values().iterator();
+        while (iter.hasNext()) {
+            Buffer buffer = iter.next();
+            if (buffer.start == Long.MIN_VALUE) {
+                // Datagrams without timestamps do not time out.
+                continue;
+            }
+            if (timestamp - buffer.start > timeout) {
+                discard(buffer);
+                iter.remove();
+                timeoutCount += 1;
+            } else if (timestamp - buffer.latest <= timeout) {
+                // Subsequent buffers were updated more recently, so are
+                // unlikely to have timed out. Any which have will be
+                // discarded when next updated.
+                break;
+            }
+        }
+    }
+
+    /** Discard datagrams until the memory limit is no longer exceeded. */
+    private void evict() {
+        Iterator<Buffer> iter = buffers.values().iterator();
+        while ((memoryUsed > memoryLimit) && iter.hasNext()) {
+            discard(iter.next());
+            iter.remove();
+            evictionCount += 1;
+        }
+    }
+
+    /** Check overlapping content for consistency.
+     * @param buffer the buffer into which a fragment is to be inserted
+     * @param first the offset of the first octet of the fragment
+     * @param data the payload of the fragment
+     * @return true if the content is consistent, otherwise false
+     */
+    private static boolean isConsistent(Buffer buffer, int first,
+        OctetString data) {
+
+        int last = first + data.length() - 1;
+        for (Piece piece : buffer.pieces) {
+            int pieceLast = piece.first + piece.data.length() - 1;
+            int a = Math.max(first, piece.first);
+            int b = Math.min(last, pieceLast);
+            if (a <= b) {
+                OctetString existing = piece.data.getOctetString(
+                    a - piece.first, b - a + 1);
+                if (!existing.equals(data.getOctetString(a - first,
+                    b - a + 1))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Insert a piece into a buffer, in order of offset.
+     * @param buffer the buffer
+     * @param piece the piece to be inserted
+     */
+    private static void insert(Buffer buffer, Piece piece) {
+        int index = buffer.pieces.size();
+        while ((index != 0) &&
+            (buffer.pieces.get(index - 1).first > piece.first)) {
+            index -= 1;
+        }
+        buffer.pieces.add(index, piece);
+        buffer.size += piece.data.length();
+    }
+
+    /** Fill those holes which are covered by a fragment.
+     * @param buffer the buffer into which the fragment is to be inserted
+     * @param first the offset of the first octet of the fragment
+     * @param data the payload of the fragment
+     * @return the number of octets used to fill holes
+     */
+    private static int fill(Buffer buffer, int first, OctetString data) {
+        int last = first + data.length() - 1;
+        int used = 0;
+        ArrayList<Hole> holes = new ArrayList<Hole>();
+        for (Hole hole : buffer.holes) {
+            if ((first > hole.last) || (last < hole.first)) {
+                holes.add(hole);
+                continue;
+            }
+            int a = Math.max(first, hole.first);
+            int b = Math.min(last, hole.last);
+            insert(buffer, new Piece(a,
+                data.getOctetString(a - first, b - a + 1)));
+            used += b - a + 1;
+            if (a > hole.first) {
+                holes.add(new Hole(hole.first, a - 1));
+            }
+            if (b < hole.last) {
+                holes.add(new Hole(b + 1, hole.last));
+            }
+        }
+        buffer.holes = holes;
+        return used;
+    }
+
+    /** Set the length of the payload, and discard holes beyond it.
+     * @param buffer the buffer
+     * @param end the length of the payload
+     */
+    private static void setEnd(Buffer buffer, int end) {
+        buffer.end = end;
+        ArrayList<Hole> holes = new ArrayList<Hole>();
+        for (Hole hole : buffer.holes) {
+            if (hole.first < end) {
+                holes.add((hole.last >= end) ?
+                    new Hole(hole.first, end - 1) : hole);
+            }
+        }
+        buffer.holes = holes;
+    }
+
+    /** Build the reassembled datagram.
+     * @param buffer the buffer, which must be complete
+     * @param parent the parent artefact for the reassembled datagram
+     * @return the reassembled datagram, or null if oversized
+     * @throws ParseException if the datagram cannot be parsed
+     */
+    private Inet4Datagram build(Buffer buffer, Artefact parent)
+        throws ParseException {
+
+        int headerLength = buffer.header.length();
+        if (headerLength + buffer.end > MAX_LENGTH) {
+            logger.log("Oversized IPv4 datagram after reassembly " +
+                "(%d octets)", headerLength + buffer.end);
+            return null;
+        }
+
+        byte[] header = buffer.header.getBytes();
+        int length = headerLength + buffer.end;
+        header[2] = (byte) (length >> 8);
+        header[3] = (byte) length;
+        header[6] &= (byte) 0xc0;
+        header[7] = 0;
+        header[10] = 0;
+        header[11] = 0;
+        int byteOrder = buffer.header.getByteOrder();
+        InetChecksum checksum = new InetChecksum();
+        checksum.add(new ArrayOctetString(header, byteOrder));
+        int sum = checksum.get();
+        header[10] = (byte) (sum >> 8);
+        header[11] = (byte) sum;
+
+        List<OctetString> parts = new ArrayList<OctetString>();
+        parts.add(new ArrayOctetString(header, byteOrder));
+        for (Piece piece : buffer.pieces) {
+            parts.add(piece.data);
+        }
+        OctetString content = new CompositeOctetString(parts, byteOrder);
+        return Inet4Datagram.parse(parent, content);
+    }
+
+    /** Add a datagram to this reassembler.
+     * If the datagram is not a fragment then it is returned unchanged.
+     * If it is a fragment which completes a datagram then the reassembled
+     * datagram is returned, with the same parent as the final fragment.
+     * Otherwise, the result is null.
+     * @param datagram the datagram to be added
+     * @return the reassembled datagram, or null if none
+     * @throws ParseException if the reassembled datagram cannot be parsed
+     */
+    public Inet4Datagram add(Inet4Datagram datagram) throws ParseException {
+        boolean more = datagram.hasMoreFragments();
+        int first = datagram.getFragmentOffset() * 8;
+        if (!more && (first == 0)) {
+            return datagram;
+        }
+
+        Timestamped ts = datagram.find(Timestamped.class);
+        long timestamp = (ts != null) ? ts.getTimestamp() : Long.MIN_VALUE;
+        if (ts != null) {
+            expire(timestamp);
+        }
+
+        OctetString header = datagram.getHeader();
+        Key key = makeKey(header);
+        Buffer buffer = buffers.get(key);
+        if ((buffer != null) && (ts != null) &&
+            (buffer.start != Long.MIN_VALUE) &&
+            (timestamp - buffer.start > timeout)) {
+            discard(buffer);
+            buffers.remove(key);
+            timeoutCount += 1;
+            buffer = null;
+        }
+        if (buffer == null) {
+            buffer = new Buffer(timestamp);
+            buffers.put(key, buffer);
+        } else if (ts != null) {
+            buffer.latest = Math.max(buffer.latest, timestamp);
+        }
+
+        OctetString data = datagram.getPayload();
+        if (more && ((data.length() & 7) != 0)) {
+            logger.log("IPv4 fragment length not a multiple of 8 " +
+                "(%d octets)", data.length());
+        }
+        int end = first + data.length();
+        if (header.length() + end > MAX_LENGTH) {
+            logger.log("IPv4 fragment extends beyond maximum datagram " +
+                "length");
+        }
+        if (!more) {
+            if (buffer.end < 0) {
+                setEnd(buffer, end);
+            } else if (end != buffer.end) {
+                logger.log("Inconsistent IPv4 datagram length " +
+                    "between fragments");
+            }
+        }
+        if ((buffer.end >= 0) && (end > buffer.end)) {
+            logger.log("IPv4 fragment extends beyond end of datagram");
+            data = data.getOctetString(0, Math.max(buffer.end - first, 0));
+        }
+        if ((first == 0) && (buffer.header == null)) {
+            buffer.header = header;
+            buffer.size += header.length();
+            memoryUsed += header.length();
+        }
+
+        if (!isConsistent(buffer, first, data)) {
+            logger.log("Overlapping IPv4 fragments with " +
+                "inconsistent content");
+        }
+        int used = fill(buffer, first, data);
+        memoryUsed += used;
+        if (used != data.length()) {
+            logger.log("Overlapping IPv4 fragments");
+        }
+
+        if ((buffer.end >= 0) && buffer.holes.isEmpty()) {
+            discard(buffer);
+            buffers.remove(key);
+            return build(buffer, datagram.getParent());
+        }
+        evict();
+        return null;
+    }
+
+    /** Get the number of datagrams currently being reassembled.
+     * @return the number of incomplete datagrams
+     */
+    public int size() {
+        return buffers.size();
+    }
+
+    /** Get the number of octets currently held.
+     * @return the number of octets
+     */
+    public long getMemoryUsed() {
+        return memoryUsed;
+    }
+
+    /** Get the number of datagrams discarded due to timeout.
+     * @return the number of datagrams
+     */
+    public long getTimeoutCount() {
+        return timeoutCount;
+    }
+
+    /** Get the number of datagrams discarded due to the memory limit.
+     * @return the number of datagrams
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+}
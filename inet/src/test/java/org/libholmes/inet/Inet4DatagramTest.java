@@ -5,11 +5,16 @@
 
 package org.libholmes.inet;
 
+import java.io.StringReader;
+import java.io.StringWriter;
+
 import static org.junit.Assert.*;
 import org.junit.Test;
 
 import javax.json.JsonObject;
 import javax.json.JsonArray;
+import javax.json.stream.JsonGenerator;
+import javax.json.Json;
 
 import org.libholmes.HexOctetReader;
 import org.libholmes.ArrayOctetReader;
@@ -473,4 +478,19 @@ public class Inet4DatagramTest {
         assertFalse(datagram8.isDuplicate(datagram0));
         assertFalse(datagram0.isDuplicate(datagram8));
     }
+
+    @Test
+    public void testWriteJson() throws ParseException {
+        Inet4Datagram datagram = Inet4Datagram.parse(null,
+            new HexOctetReader(
+                "47000024c9b4000040012ef1c0a80001" +
+                "c0a800ebff050102030000000000d631" +
+                "29cd0001"));
+        StringWriter out = new StringWriter();
+        try (JsonGenerator generator = Json.createGenerator(out)) {
+            datagram.writeJson(generator);
+        }
+        assertEquals(datagram.toJson(), Json.createReader(
+            new StringReader(out.toString())).readObject());
+    }
 }
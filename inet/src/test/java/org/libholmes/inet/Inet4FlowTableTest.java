@@ -0,0 +1,133 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.inet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import org.libholmes.HexOctetString;
+import org.libholmes.ParseException;
+
+public class Inet4FlowTableTest {
+    private final List<String> expired = new ArrayList<String>();
+
+    private void record(Inet4Flow flow) {
+        expired.add(flow + " " + flow.getPacketCount() + "/" +
+            flow.getOctetCount());
+    }
+
+    @Test
+    public void testCounters() {
+        Inet4FlowTable table = new Inet4FlowTable(this::record);
+        table.add(0x0a000001, 0x0a000002, 6, 0xc000, 80, 60, 0x02, 100);
+        table.add(0x0a000001, 0x0a000002, 6, 0xc000, 80, 52, 0x10, 300);
+        table.add(0x0a000002, 0x0a000001, 6, 80, 0xc000, 60, 0x12, 200);
+        assertEquals(2, table.size());
+
+        List<String> flows = new ArrayList<String>();
+        table.forEach(flow -> {
+            if (flow.getSrcPort() == 0xc000) {
+                assertEquals(0x0a000001, flow.getSrcAddr());
+                assertEquals(0x0a000002, flow.getDstAddr());
+                assertEquals(6, flow.getProtocol());
+                assertEquals(80, flow.getDstPort());
+                assertEquals(2, flow.getPacketCount());
+                assertEquals(112, flow.getOctetCount());
+                assertEquals(100, flow.getFirstTimestamp());
+                assertEquals(300, flow.getLastTimestamp());
+                assertEquals(0x12, flow.getTcpFlags());
+            }
+            flows.add(flow.toString());
+        });
+        assertEquals(2, flows.size());
+        assertTrue(flows.contains("10.0.0.1:49152 -> 10.0.0.2:80 (6)"));
+        assertTrue(flows.contains("10.0.0.2:80 -> 10.0.0.1:49152 (6)"));
+    }
+
+    @Test
+    public void testManyFlows() {
+        Inet4FlowTable table = new Inet4FlowTable(this::record);
+        for (int i = 0; i != 100000; ++i) {
+            table.add(0x0a000000 + (i >> 8), 0xc0a80001, 17, i & 0xffff,
+                53, 100, 0, i);
+        }
+        for (int i = 0; i != 100000; i += 2) {
+            table.add(0x0a000000 + (i >> 8), 0xc0a80001, 17, i & 0xffff,
+                53, 100, 0, 100000 + i);
+        }
+        assertEquals(100000, table.size());
+        long[] total = new long[2];
+        table.forEach(flow -> {
+            total[0] += flow.getPacketCount();
+            total[1] += flow.getOctetCount();
+        });
+        assertEquals(150000, total[0]);
+        assertEquals(15000000, total[1]);
+    }
+
+    @Test
+    public void testExpire() {
+        Inet4FlowTable table = new Inet4FlowTable(1000, this::record);
+        for (int i = 0; i != 5000; ++i) {
+            table.add(0x0a000001, 0x0a000002, 17, i, 53, 100, 0,
+                (i & 1) * 200);
+        }
+        assertEquals(5000, table.size());
+        table.expire(1150);
+        assertEquals(2500, table.size());
+        assertEquals(2500, expired.size());
+        table.forEach(flow -> assertEquals(1, flow.getSrcPort() & 1));
+
+        // Every remaining flow must still be reachable after removal.
+        for (int i = 1; i < 5000; i += 2) {
+            table.add(0x0a000001, 0x0a000002, 17, i, 53, 100, 0, 1160);
+        }
+        assertEquals(2500, table.size());
+
+        expired.clear();
+        table.flush();
+        assertEquals(0, table.size());
+        assertEquals(2500, expired.size());
+        assertTrue(expired.contains("10.0.0.1:1 -> 10.0.0.2:53 (17) 2/200"));
+    }
+
+    @Test
+    public void testAutomaticExpiry() {
+        Inet4FlowTable table = new Inet4FlowTable(1000, this::record);
+        table.add(0x0a000001, 0x0a000002, 1, 0, 0, 84, 0, 0);
+        table.add(0x0a000001, 0x0a000003, 1, 0, 0, 84, 0, 500);
+        assertTrue(expired.isEmpty());
+        table.add(0x0a000001, 0x0a000004, 1, 0, 0, 84, 0, 1200);
+        assertEquals(1, expired.size());
+        assertEquals("10.0.0.1:0 -> 10.0.0.2:0 (1) 1/84", expired.get(0));
+        assertEquals(2, table.size());
+    }
+
+    @Test
+    public void testDatagram() throws ParseException {
+        Inet4FlowTable table = new Inet4FlowTable(this::record);
+        table.add(Inet4Datagram.parse(null, new HexOctetString(
+            "45000028000040004006b7fcc0a80084c0a800eb" +
+            "0050c3c2e89b7d7979d976b4501216a000000000")));
+        table.add(Inet4Datagram.parse(null, new HexOctetString(
+            "4500001c000020004011b7fcc0a80084c0a800eb" +
+            "0035c3c200080000")));
+        table.add(Inet4Datagram.parse(null, new HexOctetString(
+            "45000018000000014011b7fcc0a80084c0a800eb" +
+            "01020304")));
+        assertEquals(3, table.size());
+        table.flush();
+        assertTrue(expired.contains(
+            "192.168.0.132:80 -> 192.168.0.235:50114 (6) 1/40"));
+        assertTrue(expired.contains(
+            "192.168.0.132:53 -> 192.168.0.235:50114 (17) 1/28"));
+        assertTrue(expired.contains(
+            "192.168.0.132:0 -> 192.168.0.235:0 (17) 1/24"));
+    }
+}
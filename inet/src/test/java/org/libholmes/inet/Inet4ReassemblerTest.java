@@ -0,0 +1,194 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.inet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.json.JsonObjectBuilder;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import org.libholmes.Artefact;
+import org.libholmes.HexOctetString;
+import org.libholmes.Logger;
+import org.libholmes.ParseException;
+import org.libholmes.Timestamped;
+
+public class Inet4ReassemblerTest {
+    private static class Packet extends Artefact implements Timestamped {
+        private final long timestamp;
+
+        Packet(long timestamp) {
+            super(null);
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        protected void buildJson(JsonObjectBuilder builder) {}
+    }
+
+    private final List<String> findings = new ArrayList<String>();
+
+    private final Logger logger = new Logger() {
+        @Override
+        public void log(String description, Object... args) {
+            findings.add(String.format(description, args));
+        }
+    };
+
+    private static Inet4Datagram makeFragment(long timestamp, int id,
+        int offset, boolean more, String payload) throws ParseException {
+
+        int length = 20 + payload.length() / 2;
+        int flags = (more ? 0x2000 : 0) | offset;
+        String header = String.format("4500%04x%04x%04x40110000" +
+            "c0a80001c0a80002", length, id, flags);
+        return Inet4Datagram.parse(new Packet(timestamp),
+            new HexOctetString(header + payload));
+    }
+
+    @Test
+    public void testUnfragmented() throws ParseException {
+        Inet4Reassembler reassembler = new Inet4Reassembler(logger);
+        Inet4Datagram datagram = makeFragment(0, 1, 0, false, "01020304");
+        assertSame(datagram, reassembler.add(datagram));
+        assertEquals(0, reassembler.size());
+    }
+
+    @Test
+    public void testOutOfOrder() throws ParseException {
+        Inet4Reassembler reassembler = new Inet4Reassembler(logger);
+        assertNull(reassembler.add(makeFragment(0, 1, 2, false, "2021")));
+        assertNull(reassembler.add(makeFragment(1, 1, 0, true,
+            "0001020304050607")));
+        assertEquals(1, reassembler.size());
+        assertEquals(30, reassembler.getMemoryUsed());
+        Inet4Datagram whole = reassembler.add(makeFragment(2, 1, 1, true,
+            "1011121314151617"));
+        assertNotNull(whole);
+        assertEquals(0, reassembler.size());
+        assertEquals(0, reassembler.getMemoryUsed());
+
+        assertEquals(new HexOctetString(
+            "0001020304050607101112131415161720 21".replace(" ", "")),
+            whole.getPayload());
+        assertEquals(38, whole.getLength());
+        assertFalse(whole.hasMoreFragments());
+        assertEquals(0, whole.getFragmentOffset());
+        assertEquals(1, whole.getId());
+        assertEquals(17, whole.getProtocol());
+        assertEquals(whole.getRecordedChecksum(),
+            whole.getCalculatedChecksum());
+        assertEquals(2, whole.find(Timestamped.class).getTimestamp());
+        assertTrue(findings.isEmpty());
+    }
+
+    @Test
+    public void testSeparateKeys() throws ParseException {
+        Inet4Reassembler reassembler = new Inet4Reassembler(logger);
+        assertNull(reassembler.add(makeFragment(0, 1, 0, true,
+            "0001020304050607")));
+        assertNull(reassembler.add(makeFragment(0, 2, 1, false, "aa")));
+        assertEquals(2, reassembler.size());
+        Inet4Datagram whole = reassembler.add(makeFragment(0, 1, 1, false,
+            "bb"));
+        assertEquals(new HexOctetString("0001020304050607bb"),
+            whole.getPayload());
+        assertEquals(1, reassembler.size());
+    }
+
+    @Test
+    public void testOverlap() throws ParseException {
+        Inet4Reassembler reassembler = new Inet4Reassembler(logger);
+        assertNull(reassembler.add(makeFragment(0, 1, 0, true,
+            "0001020304050607")));
+        assertNull(reassembler.add(makeFragment(0, 1, 0, true,
+            "0001020304050607")));
+        assertEquals(1, findings.size());
+        assertEquals("Overlapping IPv4 fragments", findings.get(0));
+
+        findings.clear();
+        assertNull(reassembler.add(makeFragment(0, 1, 1, true,
+            "08090a0b0c0d0e0f")));
+        Inet4Datagram whole = reassembler.add(makeFragment(0, 1, 1, false,
+            "ff090a0b0c0d0e0f1011"));
+        assertEquals(2, findings.size());
+        assertEquals("Overlapping IPv4 fragments with inconsistent content",
+            findings.get(0));
+        assertEquals(new HexOctetString(
+            "000102030405060708090a0b0c0d0e0f1011"), whole.getPayload());
+    }
+
+    @Test
+    public void testBeyondEnd() throws ParseException {
+        Inet4Reassembler reassembler = new Inet4Reassembler(logger);
+        assertNull(reassembler.add(makeFragment(0, 1, 1, false, "aabb")));
+        assertNull(reassembler.add(makeFragment(0, 1, 2, true,
+            "0001020304050607")));
+        assertEquals("IPv4 fragment extends beyond end of datagram",
+            findings.get(0));
+        Inet4Datagram whole = reassembler.add(makeFragment(0, 1, 0, true,
+            "0001020304050607"));
+        assertEquals(10, whole.getPayload().length());
+    }
+
+    @Test
+    public void testTimeout() throws ParseException {
+        Inet4Reassembler reassembler = new Inet4Reassembler(logger, 1000,
+            Inet4Reassembler.DEFAULT_MEMORY_LIMIT);
+        assertNull(reassembler.add(makeFragment(0, 1, 0, true,
+            "0001020304050607")));
+        assertNull(reassembler.add(makeFragment(500, 2, 0, true,
+            "0001020304050607")));
+        assertNull(reassembler.add(makeFragment(1200, 2, 1, true,
+            "0001020304050607")));
+        assertEquals(1, reassembler.getTimeoutCount());
+        assertNull(reassembler.add(makeFragment(1300, 1, 1, false, "aa")));
+        assertEquals(2, reassembler.size());
+        reassembler.expire(1600);
+        assertEquals(1, reassembler.size());
+        assertEquals(2, reassembler.getTimeoutCount());
+    }
+
+    @Test
+    public void testMemoryLimit() throws ParseException {
+        Inet4Reassembler reassembler = new Inet4Reassembler(logger,
+            Inet4Reassembler.DEFAULT_TIMEOUT, 64);
+        assertNull(reassembler.add(makeFragment(0, 1, 0, true,
+            "0001020304050607")));
+        assertNull(reassembler.add(makeFragment(1, 2, 0, true,
+            "0001020304050607")));
+        assertNull(reassembler.add(makeFragment(2, 1, 1, true,
+            "0001020304050607")));
+        assertEquals(64, reassembler.getMemoryUsed());
+        assertNull(reassembler.add(makeFragment(3, 3, 0, true,
+            "0001020304050607")));
+        assertEquals(1, reassembler.getEvictionCount());
+        assertEquals(2, reassembler.size());
+        assertEquals(64, reassembler.getMemoryUsed());
+
+        // Datagram 1 was updated more recently than datagram 2, so
+        // survives.
+        assertNotNull(reassembler.add(makeFragment(4, 1, 2, false, "ff")));
+    }
+
+    @Test
+    public void testOversized() throws ParseException {
+        Inet4Reassembler reassembler = new Inet4Reassembler(logger);
+        assertNull(reassembler.add(makeFragment(0, 1, 0x1fff, false,
+            "0001020304050607")));
+        assertEquals(1, findings.size());
+        assertEquals("IPv4 fragment extends beyond maximum datagram " +
+            "length", findings.get(0));
+    }
+}
@@ -5,16 +5,50 @@
 
 package org.libholmes.pcap;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+
 import javax.json.JsonObjectBuilder;
 
 import org.libholmes.OctetReader;
+import org.libholmes.MappedOctetReader;
+import org.libholmes.StreamOctetReader;
+import org.libholmes.ReadAheadInputStream;
 import org.libholmes.ParseException;
 import org.libholmes.Artefact;
 
 /** A class to represent a PCAP file.
  * Both big- and little-endian variants are supported.
  */
-public class PcapFile extends Artefact {
+public class PcapFile extends Artefact implements Closeable {
+    /** The length of the PCAP file header, in octets. */
+    private static final int HEADER_LENGTH = 24;
+
+    /** The length of a packet record header, in octets. */
+    private static final int RECORD_HEADER_LENGTH = 16;
+
+    /** The largest packet length considered plausible in recovery mode
+     * or when following a file, unless the snap length is larger.
+     */
+    private static final int MAX_PLAUSIBLE_LENGTH = 262144;
+
+    /** The furthest that timestamps may step backwards in recovery mode,
+     * in seconds.
+     */
+    private static final long MAX_BACKWARD_STEP = 86400;
+
+    /** The furthest that timestamps may step forwards in recovery mode,
+     * in seconds.
+     */
+    private static final long MAX_FORWARD_STEP = 366 * 86400;
+
     /** The magic number.
      * This should always be equal to 0xa1b2c3d4.
      */
@@ -51,13 +85,55 @@ public class PcapFile extends Artefact {
      */
     private OctetReader reader;
 
+    /** The pathname from which the PCAP file was parsed, or null if it
+     * was not parsed from a pathname.
+     */
+    private final Path path;
+
+    /** A resource to be closed when the PCAP file is closed, or null
+     * if none.
+     */
+    private Closeable resource = null;
+
+    /** True if packet payloads are to be materialised lazily. */
+    private boolean lazy = false;
+
+    /** True if damaged packet records are to be skipped. */
+    private boolean recovery = false;
+
+    /** The seconds component of the most recent packet timestamp,
+     * or -1 if no packets have been read since the file was opened or
+     * last repositioned.
+     */
+    private long lastTsSec = -1;
+
+    /** The number of octets skipped in recovery mode. */
+    private long skippedOctets = 0;
+
+    /** The number of times that recovery mode has resynchronised. */
+    private int resyncCount = 0;
+
     /** Construct PcapFile from octet source.
      * @param parent the parent of this artefact, or null if none
      * @param reader the octet source
      * @throws ParseException if the octet stream could not be parsed
      */
     public PcapFile(Artefact parent, OctetReader reader) throws ParseException {
+        this(parent, reader, null);
+    }
+
+    /** Construct PcapFile from octet source, recording its pathname.
+     * @param parent the parent of this artefact, or null if none
+     * @param reader the octet source
+     * @param path the pathname from which the octet source was obtained,
+     *  or null if none
+     * @throws ParseException if the octet stream could not be parsed
+     */
+    PcapFile(Artefact parent, OctetReader reader, Path path)
+        throws ParseException {
+
         super(parent);
+        this.path = path;
         if ((reader.peekInt(0) & 0xffffffffL) == 0xa1b2c3d4L) {
             // No action required: already set to corect byte order.
         } else if ((reader.peekInt(0) & 0xffffffffL) == 0xd4c3b2a1L) {
@@ -131,23 +207,308 @@ public class PcapFile extends Artefact {
         return network;
     }
 
+    /** Get the byte order of the PCAP file.
+     * @return the byte order
+     */
+    final int getByteOrder() {
+        return reader.getByteOrder();
+    }
+
+    /** Get the pathname from which the PCAP file was parsed.
+     * @return the pathname, or null if it was not parsed from a pathname
+     */
+    final Path getPath() {
+        return path;
+    }
+
+    /** Check whether packet payloads are materialised lazily.
+     * @return true if lazy, otherwise false
+     */
+    public final boolean isLazy() {
+        return lazy;
+    }
+
+    /** Set whether packet payloads are materialised lazily.
+     * In lazy mode, reading a packet from a memory-mapped file touches
+     * only the packet record header. The payload is sliced from the file
+     * when PcapPacket.getPayload() is first called, so scans which need
+     * only timestamps and lengths avoid creating it altogether. This has
+     * no effect unless the PcapFile was parsed from a pathname.
+     * @param lazy true to materialise payloads lazily, otherwise false
+     */
+    public final void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
+    /** Check whether damaged packet records are skipped.
+     * @return true if in recovery mode, otherwise false
+     */
+    public final boolean isRecovery() {
+        return recovery;
+    }
+
+    /** Set whether damaged packet records are skipped.
+     * In recovery mode each packet record header is checked for
+     * plausibility before it is read: the microseconds field must be in
+     * range, the captured length must not exceed the original length or
+     * the snap length, the record must fit within the file, and the
+     * timestamp must be reasonably close to that of the previous packet.
+     * If these checks fail then the file is scanned forward, one octet at
+     * a time, for a position at which both the record and the one after
+     * it are plausible. Any trailing partial record is discarded.
+     * @param recovery true to enable recovery mode, otherwise false
+     */
+    public final void setRecovery(boolean recovery) {
+        this.recovery = recovery;
+    }
+
+    /** Get the number of octets which have been skipped in recovery mode.
+     * @return the number of octets skipped
+     */
+    public final long getSkippedOctets() {
+        return skippedOctets;
+    }
+
+    /** Get the number of times that recovery mode has resynchronised.
+     * @return the number of damaged regions skipped
+     */
+    public final int getResyncCount() {
+        return resyncCount;
+    }
+
+    /** Check whether a given number of octets can be read.
+     * @param count the number of octets
+     * @return true if available, otherwise false
+     */
+    private boolean isAvailable(int count) {
+        if (reader.remaining() >= count) {
+            return true;
+        }
+        if (reader.isLengthKnown()) {
+            return false;
+        }
+        // The result of remaining() is only a lower bound, so attempt to
+        // peek the last octet in order to be certain.
+        try {
+            reader.peekByte(count - 1);
+            return true;
+        } catch (IndexOutOfBoundsException ex) {
+            return false;
+        }
+    }
+
+    /** Check whether the lengths in a packet record header are plausible.
+     * @param caplen the captured length
+     * @param len the original length
+     * @param snapLen the snap length of the file
+     * @return true if plausible, otherwise false
+     */
+    static boolean isPlausibleLength(int caplen, int len, int snapLen) {
+        int maxLength = Math.max(MAX_PLAUSIBLE_LENGTH, snapLen);
+        return (caplen >= 0) && (len >= 0) && (caplen <= len) &&
+            (len <= maxLength) && ((snapLen <= 0) || (caplen <= snapLen));
+    }
+
+    /** Check whether there is a plausible packet record at a given offset.
+     * @param offset the offset from the current position, in octets
+     * @return the length of the record if plausible, otherwise -1
+     */
+    private int checkRecord(int offset) {
+        if (!isAvailable(offset + RECORD_HEADER_LENGTH)) {
+            return -1;
+        }
+        int tsUsec = reader.peekInt(offset + 4);
+        if ((tsUsec < 0) || (tsUsec >= 1000000)) {
+            return -1;
+        }
+        int caplen = reader.peekInt(offset + 8);
+        int len = reader.peekInt(offset + 12);
+        if (!isPlausibleLength(caplen, len, snapLen)) {
+            return -1;
+        }
+        if (lastTsSec >= 0) {
+            long tsSec = reader.peekInt(offset) & 0xffffffffL;
+            if ((tsSec < lastTsSec - MAX_BACKWARD_STEP) ||
+                (tsSec > lastTsSec + MAX_FORWARD_STEP)) {
+                return -1;
+            }
+        }
+        int length = RECORD_HEADER_LENGTH + caplen;
+        return isAvailable(offset + length) ? length : -1;
+    }
+
+    /** Skip forward to the next plausible packet record, if necessary. */
+    private void resynchronise() {
+        if (checkRecord(0) >= 0) {
+            return;
+        }
+        long count = 0;
+        while (reader.hasRemaining()) {
+            int length = checkRecord(0);
+            if ((length >= 0) && (!isAvailable(length + 1) ||
+                (checkRecord(length) >= 0) ||
+                !isAvailable(length + RECORD_HEADER_LENGTH))) {
+                break;
+            }
+            reader.skip(1);
+            count += 1;
+        }
+        if (count != 0) {
+            skippedOctets += count;
+            resyncCount += 1;
+        }
+    }
+
     /** Read a packet from the PCAP file.
      * @return the resulting packet
      */
     public final PcapPacket readPacket() {
-        return new PcapPacket(this, reader);
+        if (recovery) {
+            resynchronise();
+        }
+        PcapPacket packet = new PcapPacket(this, reader, lazy);
+        lastTsSec = packet.getTsSec() & 0xffffffffL;
+        return packet;
+    }
+
+    /** Build an index of the packets which remain to be read.
+     * This requires that the length of the octet source be known in
+     * advance, which is not the case for a stream or a compressed file.
+     * Reading from the index does not affect the position of this
+     * PcapFile.
+     * @return the resulting index
+     * @throws IOException if the length of the octet source is not known
+     */
+    public final PcapIndex buildIndex() throws IOException {
+        if (!reader.isLengthKnown()) {
+            throw new IOException(
+                "cannot index a PCAP stream of unknown length");
+        }
+        return new PcapIndex(this, reader.dupOctetReader());
+    }
+
+    /** Get the octet source as a MappedOctetReader, for seeking.
+     * @return the octet source
+     * @throws IOException if the octet source is not memory-mapped
+     */
+    private MappedOctetReader getMappedReader() throws IOException {
+        if (!(reader instanceof MappedOctetReader)) {
+            throw new IOException(
+                "seeking requires an uncompressed PCAP file");
+        }
+        return (MappedOctetReader) reader;
+    }
+
+    /** Seek to a given packet number, using a sidecar index.
+     * The next packet read will be the one with the given number, counting
+     * from zero, or there will be no data remaining if there is no such
+     * packet. This requires that the PcapFile was parsed from the
+     * pathname of an uncompressed file (so that it is memory-mapped), and
+     * that the index is valid for that file.
+     * @param index the sidecar index
+     * @param packetNumber the required packet number
+     * @throws IOException if the PcapFile is not memory-mapped
+     */
+    public final void seekPacket(PcapSidecarIndex index, long packetNumber)
+        throws IOException {
+
+        MappedOctetReader mapped = getMappedReader();
+        lastTsSec = -1;
+        int entry = index.findPacket(packetNumber);
+        long current = 0;
+        mapped.setPosition(HEADER_LENGTH);
+        if (entry >= 0) {
+            mapped.setPosition(index.getOffset(entry));
+            current = index.getPacketNumber(entry);
+        }
+        while ((current < packetNumber) && skipPacket(mapped)) {
+            current += 1;
+        }
+    }
+
+    /** Seek to a given time, using a sidecar index.
+     * The next packet read will be the first with a timestamp at or after
+     * the given time, or there will be no data remaining if there is no
+     * such packet. Packets with earlier timestamps may follow it if the
+     * file is not in timestamp order. This requires that the PcapFile was
+     * parsed from the pathname of an uncompressed file (so that it is
+     * memory-mapped), and that the index is valid for that file.
+     * @param index the sidecar index
+     * @param timestamp the required time, in nanoseconds since the epoch
+     * @throws IOException if the PcapFile is not memory-mapped
+     */
+    public final void seekTime(PcapSidecarIndex index, long timestamp)
+        throws IOException {
+
+        MappedOctetReader mapped = getMappedReader();
+        lastTsSec = -1;
+        int entry = index.findTime(timestamp);
+        mapped.setPosition((entry >= 0) ?
+            index.getOffset(entry) : HEADER_LENGTH);
+        while (mapped.remaining() >= 16) {
+            long packetTimestamp = PcapPacket.makeTimestamp(
+                mapped.peekInt(0), mapped.peekInt(4));
+            if (packetTimestamp >= timestamp) {
+                break;
+            }
+            if (!skipPacket(mapped)) {
+                break;
+            }
+        }
+    }
+
+    /** Skip over a packet record without decoding it.
+     * @param mapped the octet source
+     * @return true if a packet was skipped, false if there was no
+     *  complete packet record to skip
+     */
+    private static boolean skipPacket(MappedOctetReader mapped) {
+        if (mapped.remaining() < 16) {
+            return false;
+        }
+        int caplen = mapped.peekInt(8);
+        if ((caplen < 0) || (caplen > mapped.remaining() - 16)) {
+            return false;
+        }
+        mapped.skip(16 + caplen);
+        return true;
+    }
+
+    /** Get the underlying octet source, positioned at the start of the
+     * next packet record.
+     * @return the octet source
+     */
+    final OctetReader getReader() {
+        return reader;
     }
 
     /** Check whether there is any data remaining to be read.
      * This does not necessarily imply that a packet can be read,
      * however if the PCAP file is complete and valid then that will
-     * be the case.
+     * be the case. In recovery mode, any damaged data is skipped first,
+     * so a packet can always be read if this returns true.
      * @return true if there is data remaining, otherwise false
      */
     public boolean hasRemaining() {
+        if (recovery) {
+            resynchronise();
+        }
         return reader.hasRemaining();
     }
 
+    /** Close the PCAP file.
+     * This releases any stream which was opened by the PcapFile itself.
+     * Streams supplied by the caller are not closed.
+     * @throws IOException if the stream could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (resource != null) {
+            resource.close();
+            resource = null;
+        }
+    }
+
     @Override
     protected final void buildJson(JsonObjectBuilder builder) {
         builder.add("magicNumber", getMagicNumber() & 0xffffffffL);
@@ -170,4 +531,76 @@ public class PcapFile extends Artefact {
 
         return new PcapFile(parent, reader);
     }
+
+    /** Determine whether a file is gzip-compressed.
+     * @param path the pathname of the file
+     * @return true if the file begins with the gzip magic number,
+     *  otherwise false
+     * @throws IOException if the file could not be read
+     */
+    private static boolean isGzip(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+            StandardOpenOption.READ)) {
+
+            ByteBuffer magic = ByteBuffer.allocate(2);
+            while (magic.hasRemaining() && (channel.read(magic) >= 0)) {
+                // No action: keep reading until full or end of file.
+            }
+            return (magic.position() == 2) &&
+                (magic.getShort(0) == (short) 0x1f8b);
+        }
+    }
+
+    /** Make PcapFile from a pathname.
+     * Uncompressed files are memory-mapped, so packet payloads refer
+     * directly to the mapped content and the file may be larger than
+     * Integer.MAX_VALUE octets.
+     *
+     * Gzip-compressed files are detected by their magic number, and are
+     * instead decompressed as a stream. Decompression takes place on a
+     * background thread, so that it overlaps with packet decoding. In
+     * that case the PcapFile should be closed once it is no longer needed.
+     * @param parent the parent of this artefact, or null if none
+     * @param path the pathname of the PCAP file
+     * @return the resulting PcapFile
+     * @throws IOException if the file could not be opened or mapped
+     * @throws ParseException if the octet stream could not be parsed
+     */
+    public static PcapFile parse(Artefact parent, Path path)
+        throws IOException, ParseException {
+
+        if (!isGzip(path)) {
+            return new PcapFile(parent,
+                new MappedOctetReader(path, OctetReader.BIG_ENDIAN), path);
+        }
+
+        InputStream in = new ReadAheadInputStream(
+            new GZIPInputStream(Files.newInputStream(path), 1 << 16));
+        try {
+            PcapFile pcap = new PcapFile(parent,
+                new StreamOctetReader(in, OctetReader.BIG_ENDIAN));
+            pcap.resource = in;
+            return pcap;
+        } catch (ParseException | RuntimeException ex) {
+            in.close();
+            throw ex;
+        }
+    }
+
+    /** Make PcapFile from an input stream.
+     * Packets are read from the stream as they are requested, using a
+     * buffer of bounded size, so the stream need not be held in memory
+     * and may be of unlimited length. Note that hasRemaining() will block
+     * until either more data has arrived or the stream has ended.
+     * @param parent the parent of this artefact, or null if none
+     * @param in the input stream
+     * @return the resulting PcapFile
+     * @throws ParseException if the octet stream could not be parsed
+     */
+    public static PcapFile parse(Artefact parent, InputStream in)
+        throws ParseException {
+
+        return new PcapFile(parent,
+            new StreamOctetReader(in, OctetReader.BIG_ENDIAN));
+    }
 }
@@ -0,0 +1,210 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.pcap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+import org.libholmes.ArrayOctetReader;
+import org.libholmes.OctetReader;
+import org.libholmes.ParseException;
+
+/** A class for following a PCAP file while it is being written.
+ *
+ * The size of the file is polled, and each packet is returned as soon as
+ * its record is complete. A partial record at the end of the file is left
+ * unread until the remainder has been written, as is a partial global
+ * header. Each record is copied out of the file when it becomes complete,
+ * so packets remain valid however much the file subsequently grows.
+ *
+ * Since a record cannot be skipped without trusting its length, a record
+ * header with an implausible captured or original length (judged as for
+ * recovery mode in PcapFile) is reported as a ParseException rather than
+ * being waited for indefinitely.
+ *
+ * The time at which each packet was found to be complete is recorded, so
+ * that the latency between capture and analysis can be measured. With
+ * blocking reads this is bounded by the poll interval, plus the time
+ * taken by the capture process to flush its output.
+ */
+public final class PcapFollower implements Closeable {
+    /** The length of the PCAP file header, in octets. */
+    private static final int HEADER_LENGTH = 24;
+
+    /** The length of a packet record header, in octets. */
+    private static final int RECORD_HEADER_LENGTH = 16;
+
+    /** The default poll interval, in nanoseconds. */
+    private static final long DEFAULT_POLL_INTERVAL = 10000000L;
+
+    /** The channel from which the file is read. */
+    private final FileChannel channel;
+
+    /** The poll interval, in nanoseconds. */
+    private final long pollInterval;
+
+    /** The wall clock time at which this follower was constructed, in
+     * nanoseconds since the epoch.
+     */
+    private final long baseTime;
+
+    /** The value of System.nanoTime at which this follower was
+     * constructed.
+     */
+    private final long baseNanoTime;
+
+    /** The PCAP file header, or null if not yet complete. */
+    private PcapFile pcap = null;
+
+    /** A buffer for reading packet record headers. */
+    private final ByteBuffer header =
+        ByteBuffer.allocate(RECORD_HEADER_LENGTH);
+
+    /** The offset within the file of the next packet record. */
+    private long position = HEADER_LENGTH;
+
+    /** The time at which the most recently returned packet was found to
+     * be complete, in nanoseconds since the epoch.
+     */
+    private long observedTime = 0;
+
+    /** Construct PcapFollower with a given poll interval.
+     * @param path the pathname of the PCAP file
+     * @param pollInterval the poll interval
+     * @param unit the unit of the poll interval
+     * @throws IOException if the file could not be opened
+     */
+    public PcapFollower(Path path, long pollInterval, TimeUnit unit)
+        throws IOException {
+
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.pollInterval = unit.toNanos(pollInterval);
+        this.baseTime = System.currentTimeMillis() * 1000000L;
+        this.baseNanoTime = System.nanoTime();
+    }
+
+    /** Construct PcapFollower with the default poll interval.
+     * @param path the pathname of the PCAP file
+     * @throws IOException if the file could not be opened
+     */
+    public PcapFollower(Path path) throws IOException {
+        this(path, DEFAULT_POLL_INTERVAL, TimeUnit.NANOSECONDS);
+    }
+
+    /** Read a given number of octets from the file.
+     * @param dst the buffer into which the octets should be read
+     * @param offset the offset within the file
+     * @throws IOException if the octets could not be read
+     */
+    private void readFully(ByteBuffer dst, long offset) throws IOException {
+        while (dst.hasRemaining()) {
+            int n = channel.read(dst, offset);
+            if (n < 0) {
+                throw new IOException("unexpected end of PCAP file");
+            }
+            offset += n;
+        }
+    }
+
+    /** Get the PCAP file header.
+     * @return the PCAP file header, or null if not yet complete
+     */
+    public PcapFile getPcapFile() {
+        return pcap;
+    }
+
+    /** Get the time at which the most recently returned packet was found
+     * to be complete.
+     * Subtracting the packet timestamp from this value gives the latency
+     * between capture and availability for analysis. The wall clock is
+     * read once, when the follower is constructed, and the elapsed time
+     * since then is measured with nanosecond resolution.
+     * @return the time, in nanoseconds since the epoch
+     */
+    public long getObservedTime() {
+        return observedTime;
+    }
+
+    /** Read the next packet if its record is complete, without blocking.
+     * @return the packet, or null if no complete packet is available
+     * @throws IOException if the file could not be read
+     * @throws ParseException if the file could not be parsed
+     */
+    public PcapPacket poll() throws IOException, ParseException {
+        long size = channel.size();
+        if (pcap == null) {
+            if (size < HEADER_LENGTH) {
+                return null;
+            }
+            ByteBuffer global = ByteBuffer.allocate(HEADER_LENGTH);
+            readFully(global, 0);
+            pcap = PcapFile.parse(null, new ArrayOctetReader(global.array(),
+                OctetReader.BIG_ENDIAN));
+            header.order(pcap.getByteOrder() == OctetReader.BIG_ENDIAN ?
+                ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+        }
+
+        if (size - position < RECORD_HEADER_LENGTH) {
+            return null;
+        }
+        header.clear();
+        readFully(header, position);
+        int caplen = header.getInt(8);
+        int len = header.getInt(12);
+        if (!PcapFile.isPlausibleLength(caplen, len, pcap.getSnapLen())) {
+            throw new ParseException(
+                "implausible packet length in PCAP file");
+        }
+        int length = RECORD_HEADER_LENGTH + caplen;
+        if (size - position < length) {
+            return null;
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(length);
+        readFully(record, position);
+        position += length;
+        observedTime = baseTime + (System.nanoTime() - baseNanoTime);
+        return new PcapPacket(pcap, new ArrayOctetReader(record.array(),
+            pcap.getByteOrder()));
+    }
+
+    /** Read the next packet, waiting for its record to be completed if
+     * necessary.
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return the packet, or null if the timeout expired
+     * @throws IOException if the file could not be read
+     * @throws ParseException if the file could not be parsed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public PcapPacket take(long timeout, TimeUnit unit)
+        throws IOException, ParseException, InterruptedException {
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            PcapPacket packet = poll();
+            if (packet != null) {
+                return packet;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return null;
+            }
+            TimeUnit.NANOSECONDS.sleep(Math.min(remaining, pollInterval));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,210 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.pcap;
+
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.libholmes.OctetReader;
+import org.libholmes.MappedOctetReader;
+
+/** A class to represent an index of the packets within a PCAP file.
+ *
+ * The index is built by a single pass through the packet record headers,
+ * without decoding any packets, and records the offset of each packet
+ * record in a primitive array. Packets can then be decoded in any order,
+ * or in parallel, using a Spliterator over the index. The spliterator is
+ * ordered, so terminal operations such as forEachOrdered and collect
+ * report packets in capture order even when the stream is parallel.
+ *
+ * The PCAP file must have been read from an OctetReader which supports
+ * duplication. A truncated packet record at the end of the file is
+ * excluded from the index.
+ */
+public final class PcapIndex {
+    /** The length of a packet record header, in octets. */
+    private static final int RECORD_HEADER_LENGTH = 16;
+
+    /** The PCAP file to which this index refers. */
+    private final PcapFile pcap;
+
+    /** A reader positioned at the start of the first indexed packet.
+     * This is never read from directly, only duplicated, so that it can
+     * safely be shared between threads.
+     */
+    private final OctetReader base;
+
+    /** The offset of each packet record, relative to the base reader. */
+    private final long[] offsets;
+
+    /** Build PcapIndex.
+     * @param pcap the PCAP file to which this index refers
+     * @param base a reader positioned at the start of the first packet
+     *  record to be indexed (not subsequently used by the caller)
+     */
+    PcapIndex(PcapFile pcap, OctetReader base) {
+        this.pcap = pcap;
+        this.base = base;
+
+        OctetReader reader = base.dupOctetReader();
+        long[] found = new long[1024];
+        int count = 0;
+        long offset = 0;
+        while (reader.remaining() >= RECORD_HEADER_LENGTH) {
+            int caplen = reader.peekInt(8);
+            if ((caplen < 0) ||
+                (caplen > reader.remaining() - RECORD_HEADER_LENGTH)) {
+                break;
+            }
+            if (count == found.length) {
+                found = Arrays.copyOf(found, count * 2);
+            }
+            found[count++] = offset;
+            reader.skip(RECORD_HEADER_LENGTH + caplen);
+            offset += RECORD_HEADER_LENGTH + caplen;
+        }
+        this.offsets = Arrays.copyOf(found, count);
+    }
+
+    /** Advance a reader by a given number of octets.
+     * @param reader the reader to be advanced
+     * @param count the number of octets to skip
+     */
+    private static void skip(OctetReader reader, long count) {
+        if (reader instanceof MappedOctetReader) {
+            MappedOctetReader mapped = (MappedOctetReader) reader;
+            mapped.setPosition(mapped.getPosition() + count);
+            return;
+        }
+        while (count > Integer.MAX_VALUE) {
+            reader.skip(Integer.MAX_VALUE);
+            count -= Integer.MAX_VALUE;
+        }
+        reader.skip((int) count);
+    }
+
+    /** Make a reader positioned at the start of a given packet record.
+     * @param index the index of the packet
+     * @return the resulting reader
+     */
+    private OctetReader makeReader(int index) {
+        OctetReader reader = base.dupOctetReader();
+        skip(reader, offsets[index]);
+        return reader;
+    }
+
+    /** Get the PCAP file to which this index refers.
+     * @return the PCAP file
+     */
+    public PcapFile getPcapFile() {
+        return pcap;
+    }
+
+    /** Get the number of packets in the index.
+     * @return the number of packets
+     */
+    public int size() {
+        return offsets.length;
+    }
+
+    /** Get the offset of a packet record.
+     * This is measured from the start of the first indexed packet record.
+     * @param index the index of the packet
+     * @return the offset, in octets
+     */
+    public long getOffset(int index) {
+        return offsets[index];
+    }
+
+    /** Decode a packet.
+     * @param index the index of the packet
+     * @return the resulting packet
+     */
+    public PcapPacket getPacket(int index) {
+        return new PcapPacket(pcap, makeReader(index));
+    }
+
+    /** Make a Spliterator for the indexed packets.
+     * @return the resulting Spliterator
+     */
+    public Spliterator<PcapPacket> spliterator() {
+        return new PacketSpliterator(0, offsets.length);
+    }
+
+    /** Make a Stream of the indexed packets.
+     * @param parallel true for a parallel stream, false for a sequential
+     *  stream
+     * @return the resulting Stream
+     */
+    public Stream<PcapPacket> stream(boolean parallel) {
+        return StreamSupport.stream(spliterator(), parallel);
+    }
+
+    /** A Spliterator over a range of indexed packets.
+     * Each instance reads its packets sequentially using its own reader,
+     * which is created when the first packet is requested.
+     */
+    private final class PacketSpliterator implements Spliterator<PcapPacket> {
+        /** The index of the next packet to be decoded. */
+        private int next;
+
+        /** The index immediately after the last packet to be decoded. */
+        private final int end;
+
+        /** A reader positioned at the start of the next packet record,
+         * or null if not yet created. */
+        private OctetReader reader = null;
+
+        /** Construct PacketSpliterator.
+         * @param next the index of the first packet to be decoded
+         * @param end the index immediately after the last packet
+         */
+        PacketSpliterator(int next, int end) {
+            this.next = next;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super PcapPacket> action) {
+            if (next == end) {
+                return false;
+            }
+            if (reader == null) {
+                reader = makeReader(next);
+            }
+            next += 1;
+            action.accept(new PcapPacket(pcap, reader));
+            return true;
+        }
+
+        @Override
+        public Spliterator<PcapPacket> trySplit() {
+            if (reader != null) {
+                return null;
+            }
+            int mid = (next + end) >>> 1;
+            if (mid == next) {
+                return null;
+            }
+            Spliterator<PcapPacket> prefix = new PacketSpliterator(next, mid);
+            next = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - next;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.pcap;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/** A class for reading packets from several PCAP files in timestamp
+ * order.
+ *
+ * This is intended for captures which have been rotated into many files,
+ * or which were recorded concurrently on more than one tap. Each file is
+ * expected to be in timestamp order, or nearly so, and packets are then
+ * merged using a binary heap keyed on the timestamp of the next packet
+ * from each file. Packets with equal timestamps are returned in the order
+ * in which their files were supplied.
+ *
+ * Packets are read from each file in batches of up to a given read-ahead
+ * depth, so that the files are accessed in runs rather than alternately.
+ * No file is read further ahead than this. If the files were parsed from
+ * pathnames then they can be placed in lazy mode beforehand, so that only
+ * the packet record headers are touched during the merge.
+ */
+public final class PcapMerger {
+    /** The default read-ahead depth, in packets. */
+    private static final int DEFAULT_READ_AHEAD = 16;
+
+    /** The PCAP files to be merged. */
+    private final PcapFile[] sources;
+
+    /** The packets read ahead from each file.
+     * Each row is used as a queue, from head[i] to head[i] + count[i].
+     */
+    private final PcapPacket[][] buffers;
+
+    /** The index of the next buffered packet for each file. */
+    private final int[] heads;
+
+    /** The number of buffered packets for each file. */
+    private final int[] counts;
+
+    /** The timestamp of the next packet from each file. */
+    private final long[] keys;
+
+    /** A binary min-heap of file indices, ordered by key then index. */
+    private final int[] heap;
+
+    /** The number of file indices currently in the heap. */
+    private int size = 0;
+
+    /** Construct PcapMerger with a given read-ahead depth.
+     * @param sources the PCAP files to be merged
+     * @param readAhead the maximum number of packets to read ahead from
+     *  each file
+     */
+    public PcapMerger(List<PcapFile> sources, int readAhead) {
+        if (readAhead < 1) {
+            throw new IllegalArgumentException(
+                "read-ahead depth must be positive");
+        }
+        int n = sources.size();
+        this.sources = sources.toArray(new PcapFile[n]);
+        this.buffers = new PcapPacket[n][readAhead];
+        this.heads = new int[n];
+        this.counts = new int[n];
+        this.keys = new long[n];
+        this.heap = new int[n];
+        for (int i = 0; i != n; ++i) {
+            if (fill(i)) {
+                heap[size] = i;
+                siftUp(size++);
+            }
+        }
+    }
+
+    /** Construct PcapMerger with the default read-ahead depth.
+     * @param sources the PCAP files to be merged
+     */
+    public PcapMerger(List<PcapFile> sources) {
+        this(sources, DEFAULT_READ_AHEAD);
+    }
+
+    /** Refill the read-ahead buffer for a given file.
+     * @param index the index of the file
+     * @return true if at least one packet was read, otherwise false
+     */
+    private boolean fill(int index) {
+        PcapFile pcap = sources[index];
+        PcapPacket[] buffer = buffers[index];
+        int count = 0;
+        while ((count != buffer.length) && pcap.hasRemaining()) {
+            buffer[count++] = pcap.readPacket();
+        }
+        heads[index] = 0;
+        counts[index] = count;
+        if (count != 0) {
+            keys[index] = buffer[0].getTimestamp();
+        }
+        return count != 0;
+    }
+
+    /** Compare two heap entries.
+     * @param a the first file index
+     * @param b the second file index
+     * @return true if a should be returned before b, otherwise false
+     */
+    private boolean before(int a, int b) {
+        return (keys[a] < keys[b]) || ((keys[a] == keys[b]) && (a < b));
+    }
+
+    /** Restore the heap property upwards from a given position.
+     * @param pos the position in the heap
+     */
+    private void siftUp(int pos) {
+        int index = heap[pos];
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            if (!before(index, heap[parent])) {
+                break;
+            }
+            heap[pos] = heap[parent];
+            pos = parent;
+        }
+        heap[pos] = index;
+    }
+
+    /** Restore the heap property downwards from a given position.
+     * @param pos the position in the heap
+     */
+    private void siftDown(int pos) {
+        int index = heap[pos];
+        while (true) {
+            int child = 2 * pos + 1;
+            if (child >= size) {
+                break;
+            }
+            if ((child + 1 < size) && before(heap[child + 1], heap[child])) {
+                child += 1;
+            }
+            if (!before(heap[child], index)) {
+                break;
+            }
+            heap[pos] = heap[child];
+            pos = child;
+        }
+        heap[pos] = index;
+    }
+
+    /** Check whether there are any packets remaining to be read.
+     * @return true if there are packets remaining, otherwise false
+     */
+    public boolean hasRemaining() {
+        return size != 0;
+    }
+
+    /** Read the packet with the earliest timestamp from any file.
+     * @return the resulting packet
+     */
+    public PcapPacket readPacket() {
+        if (size == 0) {
+            throw new NoSuchElementException("no packets remaining");
+        }
+        int index = heap[0];
+        PcapPacket[] buffer = buffers[index];
+        PcapPacket result = buffer[heads[index]];
+        buffer[heads[index]] = null;
+        heads[index] += 1;
+        counts[index] -= 1;
+        if (counts[index] != 0) {
+            keys[index] = buffer[heads[index]].getTimestamp();
+        } else if (!fill(index)) {
+            heap[0] = heap[--size];
+        }
+        if (size != 0) {
+            siftDown(0);
+        }
+        return result;
+    }
+}
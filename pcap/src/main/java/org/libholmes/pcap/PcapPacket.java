@@ -6,10 +6,13 @@
 package org.libholmes.pcap;
 
 import javax.json.JsonObjectBuilder;
+import javax.json.stream.JsonGenerator;
 
 import org.libholmes.OctetReader;
+import org.libholmes.MappedOctetReader;
 import org.libholmes.OctetString;
 import org.libholmes.Artefact;
+import org.libholmes.JsonProjection;
 import org.libholmes.Timestamped;
 
 /** A class to represent a packet within a PCAP file. */
@@ -30,20 +33,60 @@ public class PcapPacket extends Artefact implements Timestamped {
     /** The original length of this packet, in octets. */
     private final int len;
 
-    /** The payload. */
-    private final OctetString payload;
+    /** The payload, or null if it has not yet been materialised. */
+    private volatile OctetString payload;
+
+    /** The memory-mapped file from which the payload can be materialised,
+     * or null if the payload was read eagerly.
+     */
+    private final MappedOctetReader source;
+
+    /** The offset into the source file of the payload, in octets. */
+    private final long payloadOffset;
+
+    /** The offset into the source file of the packet record, in octets,
+     * or -1 if the packet was not read from a memory-mapped file.
+     */
+    private final long recordOffset;
 
     /** Construct PcapPacket from octet source.
      * @param parent the parent of this artefact, or null if none
      * @param reader the octet source
      */
     protected PcapPacket(Artefact parent, OctetReader reader) {
+        this(parent, reader, false);
+    }
+
+    /** Construct PcapPacket from octet source, optionally deferring
+     * materialisation of the payload.
+     * If lazy construction is requested and the octet source is a
+     * MappedOctetReader then only the packet record header is read, and
+     * the payload is sliced from the mapped file when first requested.
+     * Otherwise the payload is read immediately.
+     * @param parent the parent of this artefact, or null if none
+     * @param reader the octet source
+     * @param lazy true to defer materialisation of the payload,
+     *  otherwise false
+     */
+    protected PcapPacket(Artefact parent, OctetReader reader, boolean lazy) {
         super(parent);
+        this.recordOffset = (reader instanceof MappedOctetReader) ?
+            ((MappedOctetReader) reader).getPosition() : -1;
         this.tsSec = reader.readInt();
         this.tsUsec = reader.readInt();
         this.caplen = reader.readInt();
         this.len = reader.readInt();
-        this.payload = reader.readOctetString(getCapturedLength());
+        if (lazy && (reader instanceof MappedOctetReader)) {
+            MappedOctetReader mapped = (MappedOctetReader) reader;
+            this.source = mapped;
+            this.payloadOffset = mapped.getPosition();
+            this.payload = null;
+            mapped.skip(caplen);
+        } else {
+            this.source = null;
+            this.payloadOffset = 0;
+            this.payload = reader.readOctetString(getCapturedLength());
+        }
     }
 
     /** Get the seconds component of the timestamp.
@@ -65,6 +108,15 @@ public class PcapPacket extends Artefact implements Timestamped {
 
     @Override
     public final long getTimestamp() {
+        return makeTimestamp(tsSec, tsUsec);
+    }
+
+    /** Convert a PCAP timestamp to nanoseconds since the epoch.
+     * @param tsSec the seconds component of the timestamp
+     * @param tsUsec the microseconds component of the timestamp
+     * @return the timestamp, in nanoseconds
+     */
+    static long makeTimestamp(int tsSec, int tsUsec) {
         return ((tsSec * 1000000L) + tsUsec) * 1000;
     }
 
@@ -82,24 +134,79 @@ public class PcapPacket extends Artefact implements Timestamped {
         return len;
     }
 
+    /** Get the offset of the packet record within its source file.
+     * @return the offset, in octets, or -1 if the packet was not read
+     *  from a memory-mapped file
+     */
+    final long getRecordOffset() {
+        return recordOffset;
+    }
+
     /** Get the payload.
      * Note that the payload may have been truncated during capture, as the
      * number of octets recorded is limited by the snaplen parameter. This
      * condition can be detected by comparing the values returned by
      * getCapturedLength() and getOriginalLength().
+     * If materialisation of the payload was deferred then it takes place
+     * when this method is first called.
      * @return the payload
      */
     public final OctetString getPayload() {
-        return payload;
+        OctetString result = payload;
+        if (result == null) {
+            result = source.getOctetString(payloadOffset, caplen);
+            payload = result;
+        }
+        return result;
     }
 
     @Override
     protected final void buildJson(JsonObjectBuilder builder) {
-        builder.add("tsSec", getTsSec() & 0xffffffffL);
-        builder.add("tsUsec", getTsUsec() & 0xffffffffL);
-        builder.add("capturedLength", getCapturedLength() & 0xffffffffL);
-        builder.add("originalLength", getOriginalLength() & 0xffffffffL);
-        builder.add("payload", getPayload().toString());
+        buildJson(builder, JsonProjection.FULL);
+    }
+
+    @Override
+    protected final void buildJson(JsonObjectBuilder builder,
+        JsonProjection projection) {
+
+        if (projection.includes(this, "tsSec")) {
+            builder.add("tsSec", getTsSec() & 0xffffffffL);
+        }
+        if (projection.includes(this, "tsUsec")) {
+            builder.add("tsUsec", getTsUsec() & 0xffffffffL);
+        }
+        if (projection.includes(this, "capturedLength")) {
+            builder.add("capturedLength", getCapturedLength() & 0xffffffffL);
+        }
+        if (projection.includes(this, "originalLength")) {
+            builder.add("originalLength", getOriginalLength() & 0xffffffffL);
+        }
+        if (projection.includesDerived(this, "payload")) {
+            builder.add("payload", projection.encode(getPayload()));
+        }
+    }
+
+    @Override
+    protected final void generateJson(JsonGenerator generator,
+        JsonProjection projection) {
+
+        if (projection.includes(this, "tsSec")) {
+            generator.write("tsSec", getTsSec() & 0xffffffffL);
+        }
+        if (projection.includes(this, "tsUsec")) {
+            generator.write("tsUsec", getTsUsec() & 0xffffffffL);
+        }
+        if (projection.includes(this, "capturedLength")) {
+            generator.write("capturedLength",
+                getCapturedLength() & 0xffffffffL);
+        }
+        if (projection.includes(this, "originalLength")) {
+            generator.write("originalLength",
+                getOriginalLength() & 0xffffffffL);
+        }
+        if (projection.includesDerived(this, "payload")) {
+            generator.write("payload", projection.encode(getPayload()));
+        }
     }
 
     /** Parse PcapPacket from octet source.
@@ -110,4 +217,18 @@ public class PcapPacket extends Artefact implements Timestamped {
     public static PcapPacket parse(Artefact parent, OctetReader reader) {
         return new PcapPacket(parent, reader);
     }
+
+    /** Parse PcapPacket from octet source, optionally deferring
+     * materialisation of the payload.
+     * @param parent the parent of this artefact, or null if none
+     * @param reader the octet source
+     * @param lazy true to defer materialisation of the payload,
+     *  otherwise false
+     * @return the resulting PcapPacket
+     */
+    public static PcapPacket parse(Artefact parent, OctetReader reader,
+        boolean lazy) {
+
+        return new PcapPacket(parent, reader, lazy);
+    }
 }
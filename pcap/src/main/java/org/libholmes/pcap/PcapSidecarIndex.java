@@ -0,0 +1,347 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.pcap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.libholmes.MappedOctetReader;
+import org.libholmes.ParseException;
+
+/** A class to represent a persistent sparse index for a PCAP file.
+ *
+ * The index records the timestamp, file offset and packet number of
+ * every Nth packet, where N is the index interval. It is stored in a
+ * sidecar file alongside the PCAP file, together with the size and
+ * modification time of the PCAP file so that a stale index can be
+ * detected. Once loaded, it allows a PcapFile to seek to a given packet
+ * number or timestamp without reading every preceding packet record.
+ *
+ * Since PCAP files are not guaranteed to be in timestamp order, the
+ * timestamp recorded for each entry is the greatest timestamp of any
+ * packet up to and including the indexed packet. Seeking by timestamp
+ * therefore never skips a packet which is at or after the requested time,
+ * although packets which are earlier than that time may still follow.
+ */
+public final class PcapSidecarIndex {
+    /** The magic number for the sidecar file format. */
+    private static final int MAGIC_NUMBER = 0x4c484958;
+
+    /** The version number of the sidecar file format. */
+    private static final int VERSION = 1;
+
+    /** The length of the sidecar file header, in octets. */
+    private static final int HEADER_LENGTH = 32;
+
+    /** The length of each sidecar file entry, in octets. */
+    private static final int ENTRY_LENGTH = 24;
+
+    /** The default index interval, in packets. */
+    public static final int DEFAULT_INTERVAL = 1024;
+
+    /** The suffix added to the PCAP pathname to give the sidecar
+     * pathname. */
+    private static final String SUFFIX = ".idx";
+
+    /** The size of the indexed PCAP file, in octets. */
+    private final long fileSize;
+
+    /** The modification time of the indexed PCAP file, in milliseconds
+     * since the epoch. */
+    private final long modifiedTime;
+
+    /** The index interval, in packets. */
+    private final int interval;
+
+    /** The greatest timestamp up to and including each indexed packet. */
+    private final long[] timestamps;
+
+    /** The file offset of each indexed packet record. */
+    private final long[] offsets;
+
+    /** The packet number of each indexed packet. */
+    private final long[] packetNumbers;
+
+    /** Construct PcapSidecarIndex.
+     * @param fileSize the size of the indexed PCAP file
+     * @param modifiedTime the modification time of the indexed PCAP file
+     * @param interval the index interval
+     * @param timestamps the greatest timestamp up to each indexed packet
+     * @param offsets the file offset of each indexed packet
+     * @param packetNumbers the packet number of each indexed packet
+     */
+    private PcapSidecarIndex(long fileSize, long modifiedTime, int interval,
+        long[] timestamps, long[] offsets, long[] packetNumbers) {
+
+        this.fileSize = fileSize;
+        this.modifiedTime = modifiedTime;
+        this.interval = interval;
+        this.timestamps = timestamps;
+        this.offsets = offsets;
+        this.packetNumbers = packetNumbers;
+    }
+
+    /** Get the index interval.
+     * @return the number of packets between index entries
+     */
+    public int getInterval() {
+        return interval;
+    }
+
+    /** Get the number of index entries.
+     * @return the number of entries
+     */
+    public int size() {
+        return offsets.length;
+    }
+
+    /** Get the timestamp for an index entry.
+     * This is the greatest timestamp of any packet up to and including
+     * the indexed packet.
+     * @param index the index of the entry
+     * @return the timestamp, in nanoseconds since the epoch
+     */
+    public long getTimestamp(int index) {
+        return timestamps[index];
+    }
+
+    /** Get the file offset for an index entry.
+     * @param index the index of the entry
+     * @return the offset of the packet record, in octets
+     */
+    public long getOffset(int index) {
+        return offsets[index];
+    }
+
+    /** Get the packet number for an index entry.
+     * @param index the index of the entry
+     * @return the packet number, counting from zero
+     */
+    public long getPacketNumber(int index) {
+        return packetNumbers[index];
+    }
+
+    /** Find the last index entry at or before a given packet number.
+     * @param packetNumber the required packet number
+     * @return the index of the entry, or -1 if there is none
+     */
+    public int findPacket(long packetNumber) {
+        int index = Arrays.binarySearch(packetNumbers, packetNumber);
+        return (index >= 0) ? index : -index - 2;
+    }
+
+    /** Find the last index entry such that no packet up to and including
+     * it has a timestamp at or after a given time.
+     * @param timestamp the required timestamp, in nanoseconds
+     * @return the index of the entry, or -1 if there is none
+     */
+    public int findTime(long timestamp) {
+        int low = 0;
+        int high = timestamps.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid] < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low - 1;
+    }
+
+    /** Test whether this index is valid for a given PCAP file.
+     * @param pcapPath the pathname of the PCAP file
+     * @return true if the size and modification time match, otherwise
+     *  false
+     * @throws IOException if the attributes could not be read
+     */
+    public boolean isValidFor(Path pcapPath) throws IOException {
+        return (Files.size(pcapPath) == fileSize) &&
+            (Files.getLastModifiedTime(pcapPath).toMillis() == modifiedTime);
+    }
+
+    /** Write this index to a sidecar file.
+     * @param sidecarPath the pathname of the sidecar file
+     * @throws IOException if the file could not be written
+     */
+    public void write(Path sidecarPath) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(Files.newOutputStream(sidecarPath)))) {
+
+            out.writeInt(MAGIC_NUMBER);
+            out.writeInt(VERSION);
+            out.writeLong(fileSize);
+            out.writeLong(modifiedTime);
+            out.writeInt(interval);
+            out.writeInt(offsets.length);
+            for (int i = 0; i != offsets.length; ++i) {
+                out.writeLong(timestamps[i]);
+                out.writeLong(offsets[i]);
+                out.writeLong(packetNumbers[i]);
+            }
+        }
+    }
+
+    /** Get the default sidecar pathname for a PCAP file.
+     * @param pcapPath the pathname of the PCAP file
+     * @return the pathname of the sidecar file
+     */
+    public static Path getSidecarPath(Path pcapPath) {
+        return pcapPath.resolveSibling(pcapPath.getFileName() + SUFFIX);
+    }
+
+    /** Build an index by scanning a PCAP file.
+     * Only the packet record headers are read. The file must be
+     * uncompressed, since seeking within it requires it to be
+     * memory-mapped.
+     * @param pcapPath the pathname of the PCAP file
+     * @param interval the number of packets between index entries
+     * @return the resulting index
+     * @throws IOException if the file could not be read, or is compressed
+     * @throws ParseException if the file could not be parsed
+     */
+    public static PcapSidecarIndex build(Path pcapPath, int interval)
+        throws IOException, ParseException {
+
+        if (interval < 1) {
+            throw new IllegalArgumentException("invalid index interval");
+        }
+        long modifiedTime = Files.getLastModifiedTime(pcapPath).toMillis();
+        try (PcapFile pcap = PcapFile.parse(null, pcapPath)) {
+            if (!(pcap.getReader() instanceof MappedOctetReader)) {
+                throw new IOException(
+                    "sidecar index requires an uncompressed PCAP file");
+            }
+            return build((MappedOctetReader) pcap.getReader(),
+                modifiedTime, interval);
+        }
+    }
+
+    /** Build an index by scanning a memory-mapped PCAP file.
+     * @param reader the octet source, positioned at the first packet
+     *  record
+     * @param modifiedTime the modification time of the PCAP file
+     * @param interval the number of packets between index entries
+     * @return the resulting index
+     */
+    private static PcapSidecarIndex build(MappedOctetReader reader,
+        long modifiedTime, int interval) {
+
+        long fileSize = reader.getPosition() + reader.remainingLong();
+
+        int capacity = 1024;
+        long[] timestamps = new long[capacity];
+        long[] offsets = new long[capacity];
+        long[] packetNumbers = new long[capacity];
+        int count = 0;
+        long packetNumber = 0;
+        long maxTimestamp = Long.MIN_VALUE;
+        while (reader.remainingLong() >= 16) {
+            long timestamp = PcapPacket.makeTimestamp(reader.peekInt(0),
+                reader.peekInt(4));
+            int caplen = reader.peekInt(8);
+            if ((caplen < 0) || (caplen > reader.remainingLong() - 16)) {
+                break;
+            }
+            maxTimestamp = Math.max(maxTimestamp, timestamp);
+            if (packetNumber % interval == 0) {
+                if (count == capacity) {
+                    capacity *= 2;
+                    timestamps = Arrays.copyOf(timestamps, capacity);
+                    offsets = Arrays.copyOf(offsets, capacity);
+                    packetNumbers = Arrays.copyOf(packetNumbers, capacity);
+                }
+                timestamps[count] = maxTimestamp;
+                offsets[count] = reader.getPosition();
+                packetNumbers[count] = packetNumber;
+                count += 1;
+            }
+            reader.skip(16 + caplen);
+            packetNumber += 1;
+        }
+        return new PcapSidecarIndex(fileSize, modifiedTime, interval,
+            Arrays.copyOf(timestamps, count), Arrays.copyOf(offsets, count),
+            Arrays.copyOf(packetNumbers, count));
+    }
+
+    /** Read an index from a sidecar file.
+     * @param sidecarPath the pathname of the sidecar file
+     * @return the resulting index
+     * @throws IOException if the file could not be read
+     * @throws ParseException if the file is not a valid sidecar index
+     */
+    public static PcapSidecarIndex read(Path sidecarPath)
+        throws IOException, ParseException {
+
+        long sidecarSize = Files.size(sidecarPath);
+        try (DataInputStream in = new DataInputStream(
+            new BufferedInputStream(Files.newInputStream(sidecarPath)))) {
+
+            if (in.readInt() != MAGIC_NUMBER) {
+                throw new ParseException(
+                    "invalid magic number in PCAP sidecar index");
+            }
+            if (in.readInt() != VERSION) {
+                throw new ParseException(
+                    "unsupported version of PCAP sidecar index");
+            }
+            long fileSize = in.readLong();
+            long modifiedTime = in.readLong();
+            int interval = in.readInt();
+            int count = in.readInt();
+            if ((interval < 1) || (count < 0)) {
+                throw new ParseException("invalid PCAP sidecar index");
+            }
+            if (count > (sidecarSize - HEADER_LENGTH) / ENTRY_LENGTH) {
+                throw new ParseException(
+                    "entry count exceeds size of PCAP sidecar index");
+            }
+            long[] timestamps = new long[count];
+            long[] offsets = new long[count];
+            long[] packetNumbers = new long[count];
+            for (int i = 0; i != count; ++i) {
+                timestamps[i] = in.readLong();
+                offsets[i] = in.readLong();
+                packetNumbers[i] = in.readLong();
+            }
+            return new PcapSidecarIndex(fileSize, modifiedTime, interval,
+                timestamps, offsets, packetNumbers);
+        }
+    }
+
+    /** Load the sidecar index for a PCAP file, building it if necessary.
+     * If the sidecar file is missing, unreadable or stale then the index
+     * is rebuilt with the default interval and written to the sidecar
+     * file.
+     * @param pcapPath the pathname of the PCAP file
+     * @return the resulting index
+     * @throws IOException if the PCAP file could not be read or is
+     *  compressed, or the sidecar file could not be written
+     * @throws ParseException if the PCAP file could not be parsed
+     */
+    public static PcapSidecarIndex open(Path pcapPath)
+        throws IOException, ParseException {
+
+        Path sidecarPath = getSidecarPath(pcapPath);
+        try {
+            PcapSidecarIndex index = read(sidecarPath);
+            if (index.isValidFor(pcapPath)) {
+                return index;
+            }
+        } catch (IOException | ParseException ex) {
+            // No action: index will be rebuilt.
+        }
+        PcapSidecarIndex index = build(pcapPath, DEFAULT_INTERVAL);
+        index.write(sidecarPath);
+        return index;
+    }
+}
@@ -0,0 +1,228 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.pcap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.libholmes.OctetReader;
+import org.libholmes.OctetString;
+
+/** A class for writing packets to a PCAP file.
+ *
+ * The global header is copied from a source PcapFile, including its byte
+ * order, so that packet records from that file can be written without
+ * modification. Where a packet was read from a file parsed from a
+ * pathname, its record is copied directly from the source file using
+ * FileChannel.transferTo, without passing through the Java heap, and
+ * records which are adjacent in the source file are copied together.
+ * Other packets are encoded from their decoded fields.
+ *
+ * Packets must come from a file with the same magic number (and therefore
+ * timestamp resolution) and network type as the file from which the
+ * global header was copied, since neither can be converted. The byte
+ * order may differ.
+ */
+public final class PcapWriter implements Closeable {
+    /** The length of a packet record header, in octets. */
+    private static final int RECORD_HEADER_LENGTH = 16;
+
+    /** The destination channel. */
+    private final WritableByteChannel channel;
+
+    /** The byte order of the destination file. */
+    private final int byteOrder;
+
+    /** The magic number of the destination file. */
+    private final int magicNumber;
+
+    /** The network type of the destination file. */
+    private final int network;
+
+    /** A buffer for encoding packet record headers. */
+    private final ByteBuffer header;
+
+    /** Source channels, indexed by pathname. */
+    private final Map<Path, FileChannel> sources =
+        new HashMap<Path, FileChannel>();
+
+    /** The source channel of the pending run of records, or null if none. */
+    private FileChannel runChannel = null;
+
+    /** The source file of the pending run of records, or null if none. */
+    private PcapFile runSource = null;
+
+    /** The offset of the pending run of records in the source file. */
+    private long runStart = 0;
+
+    /** The length of the pending run of records, in octets. */
+    private long runLength = 0;
+
+    /** Construct PcapWriter for a given destination channel.
+     * The global header is written immediately.
+     * @param channel the destination channel
+     * @param source the PCAP file from which the global header should be
+     *  copied
+     * @throws IOException if the header could not be written
+     */
+    public PcapWriter(WritableByteChannel channel, PcapFile source)
+        throws IOException {
+
+        this.channel = channel;
+        this.byteOrder = source.getByteOrder();
+        this.magicNumber = source.getMagicNumber();
+        this.network = source.getNetworkType();
+        ByteOrder order = (byteOrder == OctetReader.BIG_ENDIAN) ?
+            ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+        this.header = ByteBuffer.allocate(RECORD_HEADER_LENGTH).order(order);
+
+        ByteBuffer global = ByteBuffer.allocate(24).order(order);
+        global.putInt(magicNumber);
+        global.putShort((short) source.getVersionMajor());
+        global.putShort((short) source.getVersionMinor());
+        global.putInt(source.getThisZone());
+        global.putInt(source.getSigFigs());
+        global.putInt(source.getSnapLen());
+        global.putInt(network);
+        global.flip();
+        writeFully(global);
+    }
+
+    /** Write the whole of a buffer to the destination channel.
+     * @param buffer the buffer to be written
+     * @throws IOException if the buffer could not be written
+     */
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /** Get the source channel for a given PCAP file.
+     * @param pcap the PCAP file
+     * @return the source channel
+     * @throws IOException if the source file could not be opened
+     */
+    private FileChannel getSourceChannel(PcapFile pcap) throws IOException {
+        Path path = pcap.getPath();
+        FileChannel result = sources.get(path);
+        if (result == null) {
+            result = FileChannel.open(path, StandardOpenOption.READ);
+            sources.put(path, result);
+        }
+        return result;
+    }
+
+    /** Copy the pending run of records to the destination channel.
+     * @throws IOException if the records could not be copied
+     */
+    private void flush() throws IOException {
+        while (runLength != 0) {
+            long count = runChannel.transferTo(runStart, runLength, channel);
+            if (count <= 0) {
+                throw new IOException("unable to copy from source file");
+            }
+            runStart += count;
+            runLength -= count;
+        }
+        runChannel = null;
+        runSource = null;
+    }
+
+    /** Write a packet.
+     * @param packet the packet to be written
+     * @throws IOException if the packet could not be written
+     * @throws IllegalArgumentException if the packet is from a file with
+     *  a different magic number or network type
+     */
+    public void writePacket(PcapPacket packet) throws IOException {
+        long offset = packet.getRecordOffset();
+        PcapFile pcap = packet.find(PcapFile.class);
+        if ((pcap != null) && (pcap.getMagicNumber() != magicNumber)) {
+            throw new IllegalArgumentException(
+                "packet has different timestamp resolution to PCAP file");
+        }
+        if ((pcap != null) && (pcap.getNetworkType() != network)) {
+            throw new IllegalArgumentException(
+                "packet has different network type to PCAP file");
+        }
+        if ((offset >= 0) && (pcap != null) && (pcap.getPath() != null) &&
+            (pcap.getByteOrder() == byteOrder)) {
+
+            long length = RECORD_HEADER_LENGTH +
+                (packet.getCapturedLength() & 0xffffffffL);
+            if ((pcap == runSource) && (offset == runStart + runLength)) {
+                runLength += length;
+                return;
+            }
+            flush();
+            runChannel = getSourceChannel(pcap);
+            runSource = pcap;
+            runStart = offset;
+            runLength = length;
+            return;
+        }
+
+        flush();
+        OctetString payload = packet.getPayload();
+        header.clear();
+        header.putInt(packet.getTsSec());
+        header.putInt(packet.getTsUsec());
+        header.putInt(payload.length());
+        header.putInt(packet.getOriginalLength());
+        header.flip();
+        writeFully(header);
+        writeFully(ByteBuffer.wrap(payload.getBytes()));
+    }
+
+    /** Copy any pending records, then close the source channels and the
+     * destination channel.
+     * @throws IOException if the records could not be copied, or a channel
+     *  could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            for (FileChannel source : sources.values()) {
+                source.close();
+            }
+            sources.clear();
+            channel.close();
+        }
+    }
+
+    /** Create a PCAP file at a given pathname.
+     * Any existing file is replaced.
+     * @param path the pathname of the file to be created
+     * @param source the PCAP file from which the global header should be
+     *  copied
+     * @return the resulting PcapWriter
+     * @throws IOException if the file could not be created
+     */
+    public static PcapWriter create(Path path, PcapFile source)
+        throws IOException {
+
+        FileChannel channel = FileChannel.open(path,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            return new PcapWriter(channel, source);
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+}
@@ -5,6 +5,13 @@
 
 package org.libholmes.pcap;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.zip.GZIPOutputStream;
+
 import static org.junit.Assert.*;
 import org.junit.Test;
 
@@ -104,4 +111,122 @@ public class PcapFileTest {
             packet3.getPayload());
         assertEquals(0, reader.remaining());
     }
+
+    @Test
+    public void testStream() throws ParseException {
+        HexOctetString content = new HexOctetString(
+            "d4c3b2a1020004000000000000000000dc05000001000000" +
+            "007a495a0000000008000000080000000104091019243140" +
+            "017a495a00000000070000000700000001040910192431");
+        PcapFile pcap = PcapFile.parse(null,
+            new ByteArrayInputStream(content.getBytes()));
+        assertEquals(pcap.getSnapLen(), 1500);
+
+        assertTrue(pcap.hasRemaining());
+        PcapPacket packet0 = pcap.readPacket();
+        assertTrue(pcap.hasRemaining());
+        PcapPacket packet1 = pcap.readPacket();
+        assertFalse(pcap.hasRemaining());
+        assertEquals(
+            new HexOctetString("0104091019243140"),
+            packet0.getPayload());
+        assertEquals(
+            new HexOctetString("01040910192431"),
+            packet1.getPayload());
+    }
+
+    @Test
+    public void testLazy() throws IOException, ParseException {
+        HexOctetString content = new HexOctetString(
+            "d4c3b2a1020004000000000000000000dc05000001000000" +
+            "007a495a0000000008000000080000000104091019243140" +
+            "017a495a00000000070000000700000001040910192431");
+        File file = File.createTempFile("libholmes", ".pcap");
+        file.deleteOnExit();
+        Files.write(file.toPath(), content.getBytes());
+        PcapFile pcap = PcapFile.parse(null, file.toPath());
+        assertFalse(pcap.isLazy());
+        pcap.setLazy(true);
+        assertTrue(pcap.isLazy());
+
+        PcapPacket packet0 = pcap.readPacket();
+        PcapPacket packet1 = pcap.readPacket();
+        assertFalse(pcap.hasRemaining());
+        assertEquals(0x5a497a01, packet1.getTsSec());
+        assertEquals(7, packet1.getCapturedLength());
+        assertEquals(
+            new HexOctetString("01040910192431"),
+            packet1.getPayload());
+        assertSame(packet1.getPayload(), packet1.getPayload());
+        assertEquals(
+            new HexOctetString("0104091019243140"),
+            packet0.getPayload());
+    }
+
+    private static final String damaged =
+        "d4c3b2a1020004000000000000000000dc05000001000000" +
+        "007a495a0000000008000000080000000104091019243140" +
+        "017a495a00000000ffffff7f0000010011223344" +
+        "027a495a000000000600000006000000010409101924" +
+        "037a495a0000000005000000050000000104091019" +
+        "047a495a00000000";
+
+    private static void checkRecovery(PcapFile pcap) {
+        pcap.setRecovery(true);
+        assertTrue(pcap.isRecovery());
+        assertTrue(pcap.hasRemaining());
+        assertEquals(8, pcap.readPacket().getCapturedLength());
+        assertTrue(pcap.hasRemaining());
+        PcapPacket packet1 = pcap.readPacket();
+        assertEquals(0x5a497a02, packet1.getTsSec());
+        assertEquals(
+            new HexOctetString("010409101924"),
+            packet1.getPayload());
+        assertTrue(pcap.hasRemaining());
+        assertEquals(0x5a497a03, pcap.readPacket().getTsSec());
+        assertFalse(pcap.hasRemaining());
+        assertEquals(28, pcap.getSkippedOctets());
+        assertEquals(2, pcap.getResyncCount());
+    }
+
+    @Test
+    public void testRecovery() throws ParseException {
+        checkRecovery(PcapFile.parse(null, new HexOctetReader(damaged)));
+    }
+
+    @Test
+    public void testStreamRecovery() throws ParseException {
+        checkRecovery(PcapFile.parse(null, new ByteArrayInputStream(
+            new HexOctetString(damaged).getBytes())));
+    }
+
+    @Test
+    public void testGzip() throws IOException, ParseException {
+        HexOctetString content = new HexOctetString(
+            "d4c3b2a1020004000000000000000000dc05000001000000" +
+            "007a495a0000000008000000080000000104091019243140" +
+            "017a495a00000000070000000700000001040910192431");
+        File file = File.createTempFile("libholmes", ".pcap.gz");
+        file.deleteOnExit();
+        try (OutputStream out = new GZIPOutputStream(
+            Files.newOutputStream(file.toPath()))) {
+
+            out.write(content.getBytes());
+        }
+
+        try (PcapFile pcap = PcapFile.parse(null, file.toPath())) {
+            assertEquals(1500, pcap.getSnapLen());
+            assertTrue(pcap.hasRemaining());
+            PcapPacket packet0 = pcap.readPacket();
+            assertTrue(pcap.hasRemaining());
+            PcapPacket packet1 = pcap.readPacket();
+            assertFalse(pcap.hasRemaining());
+            assertEquals(
+                new HexOctetString("0104091019243140"),
+                packet0.getPayload());
+            assertEquals(
+                new HexOctetString("01040910192431"),
+                packet1.getPayload());
+        }
+    }
 }
@@ -0,0 +1,85 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.pcap;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import org.libholmes.HexOctetString;
+import org.libholmes.ParseException;
+
+public class PcapFollowerTest {
+    private static void append(Path path, String hex) throws IOException {
+        Files.write(path, new HexOctetString(hex).getBytes(),
+            StandardOpenOption.APPEND);
+    }
+
+    @Test
+    public void testFollow()
+        throws IOException, ParseException, InterruptedException {
+
+        File file = File.createTempFile("libholmes", ".pcap");
+        file.deleteOnExit();
+        Path path = file.toPath();
+
+        try (PcapFollower follower = new PcapFollower(path, 1,
+            TimeUnit.MILLISECONDS)) {
+
+            assertNull(follower.poll());
+            append(path, "d4c3b2a102000400000000000000");
+            assertNull(follower.poll());
+            assertNull(follower.getPcapFile());
+            append(path, "0000dc05000001000000");
+            assertNull(follower.poll());
+            assertEquals(1500, follower.getPcapFile().getSnapLen());
+
+            append(path, "007a495a00000000080000000800");
+            assertNull(follower.poll());
+            append(path, "00000104091019");
+            assertNull(follower.take(5, TimeUnit.MILLISECONDS));
+            append(path, "243140" + "017a495a000000000700");
+            PcapPacket packet0 = follower.take(5, TimeUnit.MILLISECONDS);
+            assertEquals(new HexOctetString("0104091019243140"),
+                packet0.getPayload());
+            assertTrue(follower.getObservedTime() > packet0.getTimestamp());
+            assertNull(follower.poll());
+
+            append(path, "00000700000001040910192431");
+            PcapPacket packet1 = follower.poll();
+            assertEquals(0x5a497a01, packet1.getTsSec());
+            assertEquals(new HexOctetString("01040910192431"),
+                packet1.getPayload());
+            assertNull(follower.poll());
+        }
+    }
+
+    @Test
+    public void testImplausibleLength() throws IOException, ParseException {
+        File file = File.createTempFile("libholmes", ".pcap");
+        file.deleteOnExit();
+        Path path = file.toPath();
+        append(path, "d4c3b2a1020004000000000000000000dc05000001000000");
+
+        // Captured length 0x7ffffff8, which would overflow when the record
+        // header length is added.
+        append(path, "007a495a00000000f8ffff7ff8ffff7f");
+        try (PcapFollower follower = new PcapFollower(path)) {
+            try {
+                follower.poll();
+                fail();
+            } catch (ParseException ex) {
+                // Expected.
+            }
+        }
+    }
+}
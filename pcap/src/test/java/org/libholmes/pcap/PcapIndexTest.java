@@ -0,0 +1,93 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.pcap;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import org.libholmes.HexOctetReader;
+import org.libholmes.HexOctetString;
+import org.libholmes.OctetString;
+import org.libholmes.ParseException;
+
+public class PcapIndexTest {
+    private static final String content =
+        "d4c3b2a1020004000000000000000000dc05000001000000" +
+        "007a495a0000000008000000080000000104091019243140" +
+        "017a495a00000000070000000700000001040910192431" +
+        "027a495a000000000600000006000000010409101924" +
+        "037a495a0000000005000000050000000104091019";
+
+    @Test
+    public void testIndex() throws IOException, ParseException {
+        PcapFile pcap = PcapFile.parse(null, new HexOctetReader(content));
+        PcapIndex index = pcap.buildIndex();
+        assertEquals(4, index.size());
+        assertEquals(0, index.getOffset(0));
+        assertEquals(24, index.getOffset(1));
+        assertEquals(47, index.getOffset(2));
+        assertEquals(69, index.getOffset(3));
+        PcapPacket packet2 = index.getPacket(2);
+        assertEquals(0x5a497a02, packet2.getTsSec());
+        assertEquals(new HexOctetString("010409101924"),
+            packet2.getPayload());
+        assertSame(pcap, packet2.getParent());
+
+        // Building the index should not have consumed any packets.
+        assertEquals(8, pcap.readPacket().getCapturedLength());
+        assertEquals(3, pcap.buildIndex().size());
+    }
+
+    @Test
+    public void testTruncated() throws IOException, ParseException {
+        PcapFile pcap = PcapFile.parse(null, new HexOctetReader(
+            content.substring(0, content.length() - 2)));
+        assertEquals(3, pcap.buildIndex().size());
+    }
+
+    @Test
+    public void testParallelStream() throws IOException, ParseException {
+        StringBuilder builder = new StringBuilder(content);
+        for (int i = 0; i != 250; ++i) {
+            builder.append("047a495a000000000100000001000000");
+            builder.append(String.format("%02x", i));
+        }
+        PcapFile pcap = PcapFile.parse(null,
+            new HexOctetReader(builder.toString()));
+        PcapIndex index = pcap.buildIndex();
+        assertEquals(254, index.size());
+
+        List<OctetString> sequential = index.stream(false)
+            .map(PcapPacket::getPayload)
+            .collect(Collectors.toList());
+        List<OctetString> parallel = index.stream(true)
+            .map(PcapPacket::getPayload)
+            .collect(Collectors.toList());
+        assertEquals(254, parallel.size());
+        assertEquals(sequential, parallel);
+        assertEquals(new HexOctetString("f9"), parallel.get(253));
+    }
+
+    @Test
+    public void testStream() throws ParseException {
+        byte[] raw = new HexOctetString(content).getBytes();
+        PcapFile pcap = PcapFile.parse(null, new ByteArrayInputStream(raw));
+        try {
+            pcap.buildIndex();
+            fail("IOException expected");
+        } catch (IOException ex) {
+            // Expected.
+        }
+
+        // The failed attempt should not have consumed any packets.
+        assertEquals(8, pcap.readPacket().getCapturedLength());
+    }
+}
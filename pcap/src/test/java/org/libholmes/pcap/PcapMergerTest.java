@@ -0,0 +1,71 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.pcap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import org.libholmes.HexOctetReader;
+import org.libholmes.ParseException;
+
+public class PcapMergerTest {
+    private static final String header =
+        "d4c3b2a1020004000000000000000000dc05000001000000";
+
+    private static PcapFile makePcapFile(int fileId, int... tsSecs)
+        throws ParseException {
+
+        StringBuilder builder = new StringBuilder(header);
+        for (int tsSec : tsSecs) {
+            builder.append(String.format("%02x000000", tsSec));
+            builder.append("000000000200000002000000");
+            builder.append(String.format("%02x%02x", fileId, tsSec));
+        }
+        return PcapFile.parse(null, new HexOctetReader(builder.toString()));
+    }
+
+    private static List<String> merge(List<PcapFile> sources, int readAhead) {
+        PcapMerger merger = new PcapMerger(sources, readAhead);
+        List<String> result = new ArrayList<String>();
+        while (merger.hasRemaining()) {
+            result.add(merger.readPacket().getPayload().toString());
+        }
+        return result;
+    }
+
+    @Test
+    public void testMerge() throws ParseException {
+        for (int readAhead = 1; readAhead != 4; ++readAhead) {
+            List<PcapFile> sources = Arrays.asList(
+                makePcapFile(0, 1, 4, 7, 8),
+                makePcapFile(1),
+                makePcapFile(2, 2, 3, 9),
+                makePcapFile(3, 4, 5, 6));
+            assertEquals(Arrays.asList(
+                "0001", "0202", "0203", "0004", "0304", "0305", "0306",
+                "0007", "0008", "0209"), merge(sources, readAhead));
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        PcapMerger merger = new PcapMerger(new ArrayList<PcapFile>());
+        assertFalse(merger.hasRemaining());
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testReadBeyondEnd() throws ParseException {
+        PcapMerger merger = new PcapMerger(
+            Arrays.asList(makePcapFile(0, 1)));
+        merger.readPacket();
+        merger.readPacket();
+    }
+}
@@ -5,11 +5,20 @@
 
 package org.libholmes.pcap;
 
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.stream.JsonGenerator;
+
 import static org.junit.Assert.*;
 import org.junit.Test;
 
 import org.libholmes.HexOctetReader;
 import org.libholmes.HexOctetString;
+import org.libholmes.JsonProjection;
 
 public class PcapPacketTest {
     private static final String content = new String(
@@ -42,4 +51,31 @@ public class PcapPacketTest {
         assertEquals(1500, packet.getOriginalLength());
         assertEquals(new HexOctetString(content), packet.getPayload());
     }
+
+    @Test
+    public void testProjection() {
+        HexOctetReader reader = new HexOctetReader(
+            "<ff79495a3f420f0044000000dc050000" + content);
+        PcapPacket packet = PcapPacket.parse(null, reader);
+        JsonProjection projection = JsonProjection.DEFAULT
+            .include(PcapPacket.class, "tsSec", "tsUsec", "payload")
+            .exclude(PcapPacket.class, "tsUsec")
+            .withPayloadLimit(2);
+
+        // Both the built and the generated object should be filtered by
+        // the projection, without relying on select to remove fields.
+        JsonObjectBuilder builder = Json.createObjectBuilder();
+        packet.buildJson(builder, projection);
+        JsonObject built = builder.build();
+        assertEquals(2, built.size());
+        assertEquals(1514764799, built.getInt("tsSec"));
+        assertEquals("0001", built.getString("payload"));
+
+        StringWriter out = new StringWriter();
+        try (JsonGenerator generator = Json.createGenerator(out)) {
+            packet.writeJson(generator, projection);
+        }
+        assertEquals(built, Json.createReader(
+            new StringReader(out.toString())).readObject());
+    }
 }
@@ -0,0 +1,209 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.pcap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import org.libholmes.HexOctetString;
+import org.libholmes.ParseException;
+
+public class PcapSidecarIndexTest {
+    private static Path makePcapFile() throws IOException {
+        StringBuilder builder = new StringBuilder(
+            "d4c3b2a1020004000000000000000000dc05000001000000");
+        for (int i = 0; i != 10; ++i) {
+            // Packet i has a timestamp of i seconds, except that packet 5
+            // is out of order with a timestamp of 1 second.
+            int tsSec = (i == 5) ? 1 : i;
+            builder.append(String.format("%02x000000", tsSec));
+            builder.append("000000000100000001000000");
+            builder.append(String.format("%02x", i));
+        }
+        File file = File.createTempFile("libholmes", ".pcap");
+        file.deleteOnExit();
+        new File(file.getPath() + ".idx").deleteOnExit();
+        Files.write(file.toPath(),
+            new HexOctetString(builder.toString()).getBytes());
+        return file.toPath();
+    }
+
+    @Test
+    public void testBuild() throws IOException, ParseException {
+        Path path = makePcapFile();
+        PcapSidecarIndex index = PcapSidecarIndex.build(path, 4);
+        assertEquals(3, index.size());
+        assertEquals(0, index.getPacketNumber(0));
+        assertEquals(4, index.getPacketNumber(1));
+        assertEquals(8, index.getPacketNumber(2));
+        assertEquals(24, index.getOffset(0));
+        assertEquals(24 + 4 * 17, index.getOffset(1));
+        assertEquals(4000000000L, index.getTimestamp(1));
+        assertEquals(1, index.findPacket(7));
+        assertEquals(2, index.findPacket(8));
+        assertEquals(-1, index.findTime(0));
+        assertEquals(0, index.findTime(4000000000L));
+        assertEquals(1, index.findTime(4000000001L));
+    }
+
+    @Test
+    public void testOpen() throws IOException, ParseException {
+        Path path = makePcapFile();
+        Path sidecar = PcapSidecarIndex.getSidecarPath(path);
+        assertFalse(Files.exists(sidecar));
+        PcapSidecarIndex index = PcapSidecarIndex.open(path);
+        assertTrue(Files.exists(sidecar));
+        assertTrue(index.isValidFor(path));
+
+        PcapSidecarIndex loaded = PcapSidecarIndex.read(sidecar);
+        assertEquals(index.size(), loaded.size());
+        assertEquals(index.getOffset(0), loaded.getOffset(0));
+        assertTrue(loaded.isValidFor(path));
+
+        Files.setLastModifiedTime(path, FileTime.fromMillis(0));
+        assertFalse(loaded.isValidFor(path));
+        assertTrue(PcapSidecarIndex.open(path).isValidFor(path));
+    }
+
+    @Test
+    public void testSeek() throws IOException, ParseException {
+        Path path = makePcapFile();
+        PcapSidecarIndex index = PcapSidecarIndex.build(path, 4);
+        PcapFile pcap = PcapFile.parse(null, path);
+
+        pcap.seekPacket(index, 6);
+        assertEquals(new HexOctetString("06"),
+            pcap.readPacket().getPayload());
+        pcap.seekPacket(index, 2);
+        assertEquals(new HexOctetString("02"),
+            pcap.readPacket().getPayload());
+        pcap.seekPacket(index, 10);
+        assertFalse(pcap.hasRemaining());
+
+        pcap.seekTime(index, 7000000000L);
+        assertEquals(new HexOctetString("07"),
+            pcap.readPacket().getPayload());
+        pcap.seekTime(index, 0);
+        assertEquals(new HexOctetString("00"),
+            pcap.readPacket().getPayload());
+        pcap.seekTime(index, 3500000000L);
+        assertEquals(new HexOctetString("04"),
+            pcap.readPacket().getPayload());
+        assertEquals(new HexOctetString("05"),
+            pcap.readPacket().getPayload());
+    }
+
+    @Test
+    public void testSeekBackwardRecovery()
+        throws IOException, ParseException {
+
+        // Packet 0 is two days earlier than packet 1, which is further
+        // than recovery mode allows timestamps to step backwards.
+        String hex = "d4c3b2a1020004000000000000000000dc05000001000000" +
+            "00000000000000000100000001000000" + "00" +
+            "00a30200000000000100000001000000" + "01";
+        File file = File.createTempFile("libholmes", ".pcap");
+        file.deleteOnExit();
+        Files.write(file.toPath(), new HexOctetString(hex).getBytes());
+        Path path = file.toPath();
+
+        PcapSidecarIndex index = PcapSidecarIndex.build(path, 1);
+        PcapFile pcap = PcapFile.parse(null, path);
+        pcap.setRecovery(true);
+        pcap.seekPacket(index, 1);
+        assertEquals(new HexOctetString("01"),
+            pcap.readPacket().getPayload());
+        pcap.seekPacket(index, 0);
+        assertEquals(new HexOctetString("00"),
+            pcap.readPacket().getPayload());
+        pcap.seekTime(index, 1000000000L);
+        assertEquals(new HexOctetString("01"),
+            pcap.readPacket().getPayload());
+        pcap.seekTime(index, 0);
+        assertEquals(new HexOctetString("00"),
+            pcap.readPacket().getPayload());
+        assertEquals(0, pcap.getSkippedOctets());
+    }
+
+    @Test(expected = ParseException.class)
+    public void testReadExcessiveCount() throws IOException, ParseException {
+        Path path = makePcapFile();
+        Path sidecar = PcapSidecarIndex.getSidecarPath(path);
+        PcapSidecarIndex.build(path, 4).write(sidecar);
+        byte[] content = Files.readAllBytes(sidecar);
+        // Set the entry count to 0x7fffffff.
+        content[28] = 0x7f;
+        content[29] = (byte) 0xff;
+        content[30] = (byte) 0xff;
+        content[31] = (byte) 0xff;
+        Files.write(sidecar, content);
+        PcapSidecarIndex.read(sidecar);
+    }
+
+    @Test
+    public void testCompressed() throws IOException, ParseException {
+        Path path = makePcapFile();
+        PcapSidecarIndex index = PcapSidecarIndex.build(path, 4);
+        File file = File.createTempFile("libholmes", ".pcap.gz");
+        file.deleteOnExit();
+        try (OutputStream out = new GZIPOutputStream(
+            Files.newOutputStream(file.toPath()))) {
+
+            out.write(Files.readAllBytes(path));
+        }
+
+        try {
+            PcapSidecarIndex.build(file.toPath(), 4);
+            fail();
+        } catch (IOException ex) {
+            // Expected.
+        }
+        try (PcapFile pcap = PcapFile.parse(null, file.toPath())) {
+            try {
+                pcap.seekPacket(index, 6);
+                fail();
+            } catch (IOException ex) {
+                // Expected.
+            }
+            try {
+                pcap.seekTime(index, 0);
+                fail();
+            } catch (IOException ex) {
+                // Expected.
+            }
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testSeekTimeTruncated() throws IOException, ParseException {
+        // Three records, the last of which claims a captured length of 4
+        // octets but has only 1.
+        String hex = "d4c3b2a1020004000000000000000000dc05000001000000" +
+            "00000000000000000100000001000000" + "00" +
+            "01000000000000000100000001000000" + "01" +
+            "02000000000000000400000004000000" + "02";
+        File file = File.createTempFile("libholmes", ".pcap");
+        file.deleteOnExit();
+        Files.write(file.toPath(), new HexOctetString(hex).getBytes());
+        Path path = file.toPath();
+
+        PcapSidecarIndex index = PcapSidecarIndex.build(path, 1);
+        PcapFile pcap = PcapFile.parse(null, path);
+        pcap.seekTime(index, 1000000000L);
+        assertEquals(new HexOctetString("01"),
+            pcap.readPacket().getPayload());
+        pcap.seekTime(index, 7000000000L);
+        pcap.seekPacket(index, 7);
+    }
+}
@@ -0,0 +1,108 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.pcap;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import org.libholmes.ArrayOctetString;
+import org.libholmes.HexOctetReader;
+import org.libholmes.HexOctetString;
+import org.libholmes.OctetString;
+import org.libholmes.ParseException;
+
+public class PcapWriterTest {
+    private static final String content =
+        "d4c3b2a1020004000000000000000000dc05000001000000" +
+        "007a495a0000000008000000080000000104091019243140" +
+        "017a495a00000000070000000700000001040910192431" +
+        "027a495a000000000600000006000000010409101924" +
+        "037a495a0000000005000000050000000104091019";
+
+    private static Path makeTempFile() throws IOException {
+        File file = File.createTempFile("libholmes", ".pcap");
+        file.deleteOnExit();
+        return file.toPath();
+    }
+
+    private static void copyPackets(PcapFile pcap, Path path, int... numbers)
+        throws IOException {
+
+        try (PcapWriter writer = PcapWriter.create(path, pcap)) {
+            int index = 0;
+            int next = 0;
+            while (pcap.hasRemaining()) {
+                PcapPacket packet = pcap.readPacket();
+                if ((next < numbers.length) && (numbers[next] == index)) {
+                    writer.writePacket(packet);
+                    next += 1;
+                }
+                index += 1;
+            }
+        }
+    }
+
+    private static void checkOutput(Path path) throws IOException {
+        assertEquals(new HexOctetString(
+            "d4c3b2a1020004000000000000000000dc05000001000000" +
+            "007a495a0000000008000000080000000104091019243140" +
+            "017a495a00000000070000000700000001040910192431" +
+            "037a495a0000000005000000050000000104091019"),
+            new ArrayOctetString(Files.readAllBytes(path),
+                OctetString.BIG_ENDIAN));
+    }
+
+    @Test
+    public void testPassthrough() throws IOException, ParseException {
+        Path source = makeTempFile();
+        Files.write(source, new HexOctetString(content).getBytes());
+        Path output = makeTempFile();
+        copyPackets(PcapFile.parse(null, source), output, 0, 1, 3);
+        checkOutput(output);
+    }
+
+    @Test
+    public void testEncoded() throws IOException, ParseException {
+        Path output = makeTempFile();
+        copyPackets(PcapFile.parse(null, new HexOctetReader(content)),
+            output, 0, 1, 3);
+        checkOutput(output);
+    }
+
+    @Test
+    public void testNetworkMismatch() throws IOException, ParseException {
+        // As content, but big-endian and with a network type of 105.
+        PcapFile other = PcapFile.parse(null, new HexOctetReader(
+            "a1b2c3d4000200040000000000000000000005dc00000069" +
+            "5a497a0000000000000000010000000101"));
+        Path source = makeTempFile();
+        Files.write(source, new HexOctetString(content).getBytes());
+        PcapFile mapped = PcapFile.parse(null, source);
+        PcapFile unmapped = PcapFile.parse(null, new HexOctetReader(content));
+        try (PcapWriter writer =
+            PcapWriter.create(makeTempFile(), other)) {
+
+            try {
+                writer.writePacket(mapped.readPacket());
+                fail("IllegalArgumentException expected");
+            } catch (IllegalArgumentException ex) {
+                // Expected.
+            }
+            try {
+                writer.writePacket(unmapped.readPacket());
+                fail("IllegalArgumentException expected");
+            } catch (IllegalArgumentException ex) {
+                // Expected.
+            }
+            writer.writePacket(other.readPacket());
+        }
+    }
+}
@@ -0,0 +1,88 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.pcapng;
+
+import javax.json.JsonObjectBuilder;
+
+import org.libholmes.OctetString;
+import org.libholmes.Artefact;
+
+/** A class to represent a block within a pcapng file.
+ * This class is used directly for block types which are not otherwise
+ * recognised. The body is a view of the underlying octet source, with
+ * the byte order of the section in which the block occurs.
+ */
+public class PcapngBlock extends Artefact {
+    /** The option code used to mark the end of an option list. */
+    static final int OPT_ENDOFOPT = 0;
+
+    /** The block type. */
+    private final int blockType;
+
+    /** The block body.
+     * This excludes the block type and both copies of the block length.
+     */
+    private final OctetString body;
+
+    /** Construct PcapngBlock.
+     * @param parent the parent of this artefact, or null if none
+     * @param blockType the block type
+     * @param body the block body
+     */
+    protected PcapngBlock(Artefact parent, int blockType, OctetString body) {
+        super(parent);
+        this.blockType = blockType;
+        this.body = body;
+    }
+
+    /** Get the block type.
+     * @return the block type
+     */
+    public final int getBlockType() {
+        return blockType;
+    }
+
+    /** Get the block body.
+     * This excludes the block type and both copies of the block length.
+     * @return the block body
+     */
+    public final OctetString getBody() {
+        return body;
+    }
+
+    /** Find an option within the block body.
+     * Options are encoded as a 16-bit code, a 16-bit length, and a value
+     * padded to a multiple of four octets. The list is terminated by
+     * opt_endofopt or by the end of the body.
+     * @param offset the offset into the body of the first option
+     * @param code the required option code
+     * @return the option value, or null if not found
+     */
+    protected final OctetString findOption(int offset, int code) {
+        int len = body.length();
+        while (offset <= len - 4) {
+            int optCode = body.getShort(offset) & 0xffff;
+            int optLen = body.getShort(offset + 2) & 0xffff;
+            if (optCode == OPT_ENDOFOPT) {
+                break;
+            }
+            if (optLen > len - offset - 4) {
+                break;
+            }
+            if (optCode == code) {
+                return body.getOctetString(offset + 4, optLen);
+            }
+            offset += 4 + ((optLen + 3) & ~3);
+        }
+        return null;
+    }
+
+    @Override
+    protected void buildJson(JsonObjectBuilder builder) {
+        builder.add("blockType", getBlockType() & 0xffffffffL);
+        builder.add("body", getBody().toString());
+    }
+}
@@ -0,0 +1,215 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.pcapng;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.json.JsonObjectBuilder;
+
+import org.libholmes.OctetReader;
+import org.libholmes.OctetString;
+import org.libholmes.MappedOctetReader;
+import org.libholmes.StreamOctetReader;
+import org.libholmes.ParseException;
+import org.libholmes.Artefact;
+
+/** A class to represent a pcapng file.
+ * Blocks are read sequentially from the octet source. Block bodies,
+ * and hence packet payloads, are views of the octet source rather than
+ * copies, so when the file is memory-mapped no packet data is copied
+ * onto the heap. Files containing multiple sections are supported,
+ * including sections with differing byte orders.
+ */
+public class PcapngFile extends Artefact {
+    /** The length of the block header and trailer combined, in octets. */
+    private static final int BLOCK_OVERHEAD = 12;
+
+    /** The first section header. */
+    private final PcapngSectionHeader firstSection;
+
+    /** The current section header. */
+    private PcapngSectionHeader section;
+
+    /** The interfaces defined within the current section. */
+    private List<PcapngInterface> interfaces;
+
+    /** The octet source for reading the pcapng file.
+     * This is left configured with the byte order of the current section.
+     */
+    private final OctetReader reader;
+
+    /** Construct PcapngFile from octet source.
+     * @param parent the parent of this artefact, or null if none
+     * @param reader the octet source
+     * @throws ParseException if the octet stream could not be parsed
+     */
+    public PcapngFile(Artefact parent, OctetReader reader)
+        throws ParseException {
+
+        super(parent);
+        if (reader.peekInt(0) != PcapngSectionHeader.BLOCK_TYPE) {
+            throw new ParseException("invalid magic number in pcapng file");
+        }
+        this.reader = reader;
+        readBlock();
+        this.firstSection = section;
+    }
+
+    /** Get the first section header.
+     * @return the first section header
+     */
+    public final PcapngSectionHeader getFirstSection() {
+        return firstSection;
+    }
+
+    /** Get the current section header.
+     * This is the header of the section containing the most recently
+     * read block.
+     * @return the current section header
+     */
+    public final PcapngSectionHeader getSection() {
+        return section;
+    }
+
+    /** Get the interfaces defined so far within the current section.
+     * @return the interfaces, indexed by interface ID
+     */
+    public final List<PcapngInterface> getInterfaces() {
+        return Collections.unmodifiableList(interfaces);
+    }
+
+    /** Read a block from the pcapng file.
+     * Section header and interface description blocks are recorded so
+     * that subsequent packets can be interpreted, as well as being
+     * returned to the caller.
+     * @return the resulting block
+     * @throws ParseException if the block could not be parsed
+     */
+    public final PcapngBlock readBlock() throws ParseException {
+        int blockType = reader.peekInt(0);
+        if (blockType == PcapngSectionHeader.BLOCK_TYPE) {
+            int magic = reader.peekInt(8);
+            if (magic == Integer.reverseBytes(
+                PcapngSectionHeader.BYTE_ORDER_MAGIC)) {
+
+                reader.setByteOrder(~reader.getByteOrder());
+            } else if (magic != PcapngSectionHeader.BYTE_ORDER_MAGIC) {
+                throw new ParseException(
+                    "invalid byte-order magic in pcapng file");
+            }
+        }
+
+        reader.skip(4);
+        int blockLength = reader.readInt();
+        if ((blockLength < BLOCK_OVERHEAD) || ((blockLength & 3) != 0)) {
+            throw new ParseException("invalid block length in pcapng file");
+        }
+        OctetString body = reader.readOctetString(
+            blockLength - BLOCK_OVERHEAD);
+        if (reader.readInt() != blockLength) {
+            throw new ParseException(
+                "mismatched block length in pcapng file");
+        }
+
+        switch (blockType) {
+            case PcapngSectionHeader.BLOCK_TYPE:
+                section = new PcapngSectionHeader(this, body);
+                interfaces = new ArrayList<PcapngInterface>();
+                return section;
+            case PcapngInterface.BLOCK_TYPE:
+                PcapngInterface iface = new PcapngInterface(section, body);
+                interfaces.add(iface);
+                return iface;
+            case PcapngPacket.ENHANCED_BLOCK_TYPE:
+            case PcapngPacket.SIMPLE_BLOCK_TYPE:
+            case PcapngPacket.PACKET_BLOCK_TYPE:
+                return PcapngPacket.parse(section, blockType, body,
+                    interfaces);
+            default:
+                return new PcapngBlock(section, blockType, body);
+        }
+    }
+
+    /** Read a packet from the pcapng file.
+     * Any intervening blocks which are not packets are processed and then
+     * discarded.
+     * @return the resulting packet, or null if there are no further packets
+     * @throws ParseException if a block could not be parsed
+     */
+    public final PcapngPacket readPacket() throws ParseException {
+        while (reader.hasRemaining()) {
+            PcapngBlock block = readBlock();
+            if (block instanceof PcapngPacket) {
+                return (PcapngPacket) block;
+            }
+        }
+        return null;
+    }
+
+    /** Check whether there is any data remaining to be read.
+     * This does not necessarily imply that a packet can be read, since
+     * the remaining data may consist of other types of block.
+     * @return true if there is data remaining, otherwise false
+     */
+    public boolean hasRemaining() {
+        return reader.hasRemaining();
+    }
+
+    @Override
+    protected final void buildJson(JsonObjectBuilder builder) {
+        builder.add("versionMajor", firstSection.getVersionMajor());
+        builder.add("versionMinor", firstSection.getVersionMinor());
+    }
+
+    /** Make PcapngFile from octet source.
+     * @param parent the parent of this artefact, or null if none
+     * @param reader the octet source
+     * @return the resulting PcapngFile
+     * @throws ParseException if the octet stream could not be parsed
+     */
+    public static PcapngFile parse(Artefact parent, OctetReader reader)
+        throws ParseException {
+
+        return new PcapngFile(parent, reader);
+    }
+
+    /** Make PcapngFile from a pathname.
+     * The file is memory-mapped, so packet payloads refer directly to the
+     * mapped content and the file may be larger than Integer.MAX_VALUE
+     * octets.
+     * @param parent the parent of this artefact, or null if none
+     * @param path the pathname of the pcapng file
+     * @return the resulting PcapngFile
+     * @throws IOException if the file could not be opened or mapped
+     * @throws ParseException if the octet stream could not be parsed
+     */
+    public static PcapngFile parse(Artefact parent, Path path)
+        throws IOException, ParseException {
+
+        return new PcapngFile(parent,
+            new MappedOctetReader(path, OctetReader.BIG_ENDIAN));
+    }
+
+    /** Make PcapngFile from an input stream.
+     * Blocks are read from the stream as they are requested, using a
+     * buffer of bounded size, so the stream need not be held in memory.
+     * @param parent the parent of this artefact, or null if none
+     * @param in the input stream
+     * @return the resulting PcapngFile
+     * @throws ParseException if the octet stream could not be parsed
+     */
+    public static PcapngFile parse(Artefact parent, InputStream in)
+        throws ParseException {
+
+        return new PcapngFile(parent,
+            new StreamOctetReader(in, OctetReader.BIG_ENDIAN));
+    }
+}
@@ -0,0 +1,159 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.pcapng;
+
+import javax.json.JsonObjectBuilder;
+
+import org.libholmes.OctetString;
+import org.libholmes.Artefact;
+import org.libholmes.ParseException;
+
+/** A class to represent an interface description block within a pcapng
+ * file.
+ * Interfaces are numbered from zero in order of appearance within each
+ * section. The interface determines the link type of its packets, and
+ * the resolution and offset of their timestamps.
+ */
+public class PcapngInterface extends PcapngBlock {
+    /** The block type for an interface description block. */
+    public static final int BLOCK_TYPE = 0x00000001;
+
+    /** The option code for the timestamp resolution. */
+    private static final int IF_TSRESOL = 9;
+
+    /** The option code for the timestamp offset. */
+    private static final int IF_TSOFFSET = 14;
+
+    /** The default timestamp resolution (microseconds). */
+    private static final int DEFAULT_TSRESOL = 6;
+
+    /** The length of the fixed part of the block body, in octets. */
+    private static final int FIXED_LENGTH = 8;
+
+    /** Powers of ten which can be represented as a long integer. */
+    private static final long[] POWERS_OF_TEN = {
+        1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L,
+        100000000L, 1000000000L, 10000000000L, 100000000000L,
+        1000000000000L, 10000000000000L, 100000000000000L,
+        1000000000000000L, 10000000000000000L, 100000000000000000L,
+        1000000000000000000L };
+
+    /** The link type. */
+    private final int linkType;
+
+    /** The maximum number of octets captured from each packet.
+     * A value of zero indicates that there is no limit.
+     */
+    private final int snapLen;
+
+    /** The timestamp resolution.
+     * If the most significant bit is clear then the remaining bits are
+     * a negative power of ten, otherwise they are a negative power of two.
+     */
+    private final int tsResol;
+
+    /** The timestamp offset, in seconds. */
+    private final long tsOffset;
+
+    /** Construct PcapngInterface from a block body.
+     * @param parent the parent of this artefact, or null if none
+     * @param body the block body
+     * @throws ParseException if the block body could not be parsed
+     */
+    PcapngInterface(Artefact parent, OctetString body)
+        throws ParseException {
+
+        super(parent, BLOCK_TYPE, body);
+        if (body.length() < FIXED_LENGTH) {
+            throw new ParseException(
+                "interface description block too short in pcapng file");
+        }
+        this.linkType = body.getShort(0) & 0xffff;
+        this.snapLen = body.getInt(4);
+
+        OctetString resolOption = findOption(FIXED_LENGTH, IF_TSRESOL);
+        this.tsResol = (resolOption != null && !resolOption.isEmpty()) ?
+            resolOption.getByte(0) & 0xff : DEFAULT_TSRESOL;
+        OctetString offsetOption = findOption(FIXED_LENGTH, IF_TSOFFSET);
+        this.tsOffset = (offsetOption != null &&
+            offsetOption.length() >= 8) ? offsetOption.getLong(0) : 0;
+    }
+
+    /** Get the link type.
+     * This uses the same numbering as the network type of a PCAP file.
+     * @return the link type
+     */
+    public final int getLinkType() {
+        return linkType;
+    }
+
+    /** Get the maximum number of octets captured from each packet.
+     * @return the number of octets captured, or zero if unlimited
+     */
+    public final int getSnapLen() {
+        return snapLen;
+    }
+
+    /** Get the timestamp resolution.
+     * If the most significant bit is clear then the remaining bits are
+     * a negative power of ten, otherwise they are a negative power of two.
+     * @return the timestamp resolution
+     */
+    public final int getTsResol() {
+        return tsResol;
+    }
+
+    /** Get the timestamp offset.
+     * This is the number of seconds to be added to each timestamp.
+     * @return the timestamp offset, in seconds
+     */
+    public final long getTsOffset() {
+        return tsOffset;
+    }
+
+    /** Convert a raw timestamp from this interface to nanoseconds since
+     * the epoch.
+     * @param ts the raw timestamp, in units of the timestamp resolution
+     * @return the timestamp, in nanoseconds
+     */
+    public final long makeTimestamp(long ts) {
+        int exponent = tsResol & 0x7f;
+        long result;
+        if ((tsResol & 0x80) == 0) {
+            if (exponent <= 9) {
+                result = ts * POWERS_OF_TEN[9 - exponent];
+            } else if (exponent - 9 < POWERS_OF_TEN.length) {
+                result = Long.divideUnsigned(ts,
+                    POWERS_OF_TEN[exponent - 9]);
+            } else {
+                result = 0;
+            }
+        } else {
+            // Split into whole seconds and a binary fraction, discarding
+            // low-order bits of the fraction where necessary so that it
+            // can be scaled to nanoseconds without overflow.
+            long seconds = (exponent < 64) ? ts >>> exponent : 0;
+            long fraction = (exponent < 64) ? ts & ((1L << exponent) - 1) :
+                ts;
+            int shift = exponent;
+            if (shift > 32) {
+                fraction = (shift - 32 < 64) ? fraction >>> (shift - 32) : 0;
+                shift = 32;
+            }
+            result = seconds * 1000000000L +
+                ((fraction * 1000000000L) >>> shift);
+        }
+        return result + tsOffset * 1000000000L;
+    }
+
+    @Override
+    protected void buildJson(JsonObjectBuilder builder) {
+        builder.add("linkType", getLinkType());
+        builder.add("snapLen", getSnapLen() & 0xffffffffL);
+        builder.add("tsResol", getTsResol());
+        builder.add("tsOffset", getTsOffset());
+    }
+}
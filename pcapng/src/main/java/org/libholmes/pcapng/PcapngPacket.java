@@ -0,0 +1,310 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.pcapng;
+
+import java.util.List;
+
+import javax.json.JsonObjectBuilder;
+import javax.json.stream.JsonGenerator;
+
+import org.libholmes.OctetString;
+import org.libholmes.Artefact;
+import org.libholmes.JsonProjection;
+import org.libholmes.ParseException;
+import org.libholmes.Timestamped;
+
+/** A class to represent a packet within a pcapng file.
+ * This may originate from an enhanced packet block, a simple packet
+ * block, or an obsolete packet block. The payload is a view of the
+ * underlying octet source, and can be passed to the same decoders as
+ * the payload of a PCAP packet.
+ */
+public class PcapngPacket extends PcapngBlock implements Timestamped {
+    /** The block type for an obsolete packet block. */
+    public static final int PACKET_BLOCK_TYPE = 0x00000002;
+
+    /** The block type for a simple packet block. */
+    public static final int SIMPLE_BLOCK_TYPE = 0x00000003;
+
+    /** The block type for an enhanced packet block. */
+    public static final int ENHANCED_BLOCK_TYPE = 0x00000006;
+
+    /** The interface on which this packet was captured. */
+    private final PcapngInterface iface;
+
+    /** The interface ID. */
+    private final int interfaceId;
+
+    /** The raw timestamp, in units of the interface timestamp resolution.
+     * Simple packet blocks do not have a timestamp, in which case this is
+     * equal to zero.
+     */
+    private final long rawTimestamp;
+
+    /** The captured length of this packet, in octets. */
+    private final int caplen;
+
+    /** The original length of this packet, in octets. */
+    private final int len;
+
+    /** The payload. */
+    private final OctetString payload;
+
+    /** Construct PcapngPacket.
+     * @param parent the parent of this artefact, or null if none
+     * @param blockType the block type
+     * @param body the block body
+     * @param interfaceId the interface ID
+     * @param iface the interface on which the packet was captured
+     * @param rawTimestamp the raw timestamp
+     * @param caplen the captured length, in octets
+     * @param len the original length, in octets
+     * @param dataOffset the offset into the body of the packet data
+     * @throws ParseException if the captured length is invalid
+     */
+    private PcapngPacket(Artefact parent, int blockType, OctetString body,
+        int interfaceId, PcapngInterface iface, long rawTimestamp,
+        int caplen, int len, int dataOffset) throws ParseException {
+
+        super(parent, blockType, body);
+        if ((caplen < 0) || (caplen > body.length() - dataOffset)) {
+            throw new ParseException(
+                "captured length exceeds block length in pcapng file");
+        }
+        this.interfaceId = interfaceId;
+        this.iface = iface;
+        this.rawTimestamp = rawTimestamp;
+        this.caplen = caplen;
+        this.len = len;
+        this.payload = body.getOctetString(dataOffset, caplen);
+    }
+
+    /** Get the interface ID.
+     * This is the index of the interface description block within the
+     * current section.
+     * @return the interface ID
+     */
+    public final int getInterfaceId() {
+        return interfaceId;
+    }
+
+    /** Get the interface on which this packet was captured.
+     * @return the interface
+     */
+    public final PcapngInterface getInterface() {
+        return iface;
+    }
+
+    /** Get the link type.
+     * This uses the same numbering as the network type of a PCAP file.
+     * @return the link type
+     */
+    public final int getLinkType() {
+        return iface.getLinkType();
+    }
+
+    /** Get the raw timestamp.
+     * This is expressed in units of the interface timestamp resolution,
+     * and does not include the interface timestamp offset.
+     * @return the raw timestamp
+     */
+    public final long getRawTimestamp() {
+        return rawTimestamp;
+    }
+
+    @Override
+    public final long getTimestamp() {
+        return iface.makeTimestamp(rawTimestamp);
+    }
+
+    /** Get the captured length of this packet.
+     * @return the captured length, in octets
+     */
+    public final int getCapturedLength() {
+        return caplen;
+    }
+
+    /** Get the original length of this packet.
+     * @return the original length, in octets
+     */
+    public final int getOriginalLength() {
+        return len;
+    }
+
+    /** Get the payload.
+     * Note that the payload may have been truncated during capture. This
+     * condition can be detected by comparing the values returned by
+     * getCapturedLength() and getOriginalLength().
+     * @return the payload
+     */
+    public final OctetString getPayload() {
+        return payload;
+    }
+
+    @Override
+    protected final void buildJson(JsonObjectBuilder builder) {
+        buildJson(builder, JsonProjection.FULL);
+    }
+
+    @Override
+    protected final void buildJson(JsonObjectBuilder builder,
+        JsonProjection projection) {
+
+        if (projection.includes(this, "interfaceId")) {
+            builder.add("interfaceId", getInterfaceId() & 0xffffffffL);
+        }
+        if (projection.includes(this, "timestamp")) {
+            builder.add("timestamp", getTimestamp());
+        }
+        if (projection.includes(this, "capturedLength")) {
+            builder.add("capturedLength", getCapturedLength() & 0xffffffffL);
+        }
+        if (projection.includes(this, "originalLength")) {
+            builder.add("originalLength", getOriginalLength() & 0xffffffffL);
+        }
+        if (projection.includesDerived(this, "payload")) {
+            builder.add("payload", projection.encode(getPayload()));
+        }
+    }
+
+    @Override
+    protected void generateJson(JsonGenerator generator,
+        JsonProjection projection) {
+
+        if (projection.includes(this, "interfaceId")) {
+            generator.write("interfaceId", getInterfaceId() & 0xffffffffL);
+        }
+        if (projection.includes(this, "timestamp")) {
+            generator.write("timestamp", getTimestamp());
+        }
+        if (projection.includes(this, "capturedLength")) {
+            generator.write("capturedLength",
+                getCapturedLength() & 0xffffffffL);
+        }
+        if (projection.includes(this, "originalLength")) {
+            generator.write("originalLength",
+                getOriginalLength() & 0xffffffffL);
+        }
+        if (projection.includesDerived(this, "payload")) {
+            generator.write("payload", projection.encode(getPayload()));
+        }
+    }
+
+    /** Look up an interface by ID.
+     * @param interfaces the interfaces of the current section
+     * @param interfaceId the interface ID
+     * @return the interface
+     * @throws ParseException if there is no such interface
+     */
+    private static PcapngInterface getInterface(
+        List<PcapngInterface> interfaces, int interfaceId)
+        throws ParseException {
+
+        if ((interfaceId < 0) || (interfaceId >= interfaces.size())) {
+            throw new ParseException(
+                "undefined interface ID in pcapng file");
+        }
+        return interfaces.get(interfaceId);
+    }
+
+    /** Parse PcapngPacket from a block body.
+     * @param parent the parent of this artefact, or null if none
+     * @param blockType the block type
+     * @param body the block body
+     * @param interfaces the interfaces of the current section
+     * @return the resulting PcapngPacket
+     * @throws ParseException if the block body could not be parsed
+     */
+    static PcapngPacket parse(Artefact parent, int blockType,
+        OctetString body, List<PcapngInterface> interfaces)
+        throws ParseException {
+
+        switch (blockType) {
+            case ENHANCED_BLOCK_TYPE:
+                return parseEnhanced(parent, body, interfaces);
+            case SIMPLE_BLOCK_TYPE:
+                return parseSimple(parent, body, interfaces);
+            case PACKET_BLOCK_TYPE:
+                return parseObsolete(parent, body, interfaces);
+            default:
+                throw new IllegalArgumentException(
+                    "block type is not a packet block");
+        }
+    }
+
+    /** Parse PcapngPacket from the body of an enhanced packet block.
+     * @param parent the parent of this artefact, or null if none
+     * @param body the block body
+     * @param interfaces the interfaces of the current section
+     * @return the resulting PcapngPacket
+     * @throws ParseException if the block body could not be parsed
+     */
+    private static PcapngPacket parseEnhanced(Artefact parent,
+        OctetString body, List<PcapngInterface> interfaces)
+        throws ParseException {
+
+        if (body.length() < 20) {
+            throw new ParseException(
+                "enhanced packet block too short in pcapng file");
+        }
+        int interfaceId = body.getInt(0);
+        long ts = ((body.getInt(4) & 0xffffffffL) << 32) |
+            (body.getInt(8) & 0xffffffffL);
+        return new PcapngPacket(parent, ENHANCED_BLOCK_TYPE, body,
+            interfaceId, getInterface(interfaces, interfaceId), ts,
+            body.getInt(12), body.getInt(16), 20);
+    }
+
+    /** Parse PcapngPacket from the body of a simple packet block.
+     * The captured length is inferred from the original length, the
+     * block length and the snap length of the first interface.
+     * @param parent the parent of this artefact, or null if none
+     * @param body the block body
+     * @param interfaces the interfaces of the current section
+     * @return the resulting PcapngPacket
+     * @throws ParseException if the block body could not be parsed
+     */
+    private static PcapngPacket parseSimple(Artefact parent,
+        OctetString body, List<PcapngInterface> interfaces)
+        throws ParseException {
+
+        if (body.length() < 4) {
+            throw new ParseException(
+                "simple packet block too short in pcapng file");
+        }
+        PcapngInterface iface = getInterface(interfaces, 0);
+        int len = body.getInt(0);
+        long caplen = Math.min(len & 0xffffffffL, body.length() - 4);
+        if (iface.getSnapLen() != 0) {
+            caplen = Math.min(caplen, iface.getSnapLen() & 0xffffffffL);
+        }
+        return new PcapngPacket(parent, SIMPLE_BLOCK_TYPE, body, 0, iface,
+            0, (int) caplen, len, 4);
+    }
+
+    /** Parse PcapngPacket from the body of an obsolete packet block.
+     * @param parent the parent of this artefact, or null if none
+     * @param body the block body
+     * @param interfaces the interfaces of the current section
+     * @return the resulting PcapngPacket
+     * @throws ParseException if the block body could not be parsed
+     */
+    private static PcapngPacket parseObsolete(Artefact parent,
+        OctetString body, List<PcapngInterface> interfaces)
+        throws ParseException {
+
+        if (body.length() < 20) {
+            throw new ParseException(
+                "packet block too short in pcapng file");
+        }
+        int interfaceId = body.getShort(0) & 0xffff;
+        long ts = ((body.getInt(4) & 0xffffffffL) << 32) |
+            (body.getInt(8) & 0xffffffffL);
+        return new PcapngPacket(parent, PACKET_BLOCK_TYPE, body,
+            interfaceId, getInterface(interfaces, interfaceId), ts,
+            body.getInt(12), body.getInt(16), 20);
+    }
+}
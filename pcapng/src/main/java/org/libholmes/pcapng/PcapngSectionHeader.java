@@ -0,0 +1,82 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.pcapng;
+
+import javax.json.JsonObjectBuilder;
+
+import org.libholmes.OctetString;
+import org.libholmes.Artefact;
+import org.libholmes.ParseException;
+
+/** A class to represent a section header block within a pcapng file.
+ * Each section has its own byte order and its own set of interfaces.
+ */
+public class PcapngSectionHeader extends PcapngBlock {
+    /** The block type for a section header block. */
+    public static final int BLOCK_TYPE = 0x0a0d0d0a;
+
+    /** The byte-order magic, as read using the correct byte order. */
+    public static final int BYTE_ORDER_MAGIC = 0x1a2b3c4d;
+
+    /** The length of the fixed part of the block body, in octets. */
+    private static final int FIXED_LENGTH = 16;
+
+    /** The major version number. */
+    private final int versionMajor;
+
+    /** The minor version number. */
+    private final int versionMinor;
+
+    /** The section length, in octets, or -1 if not specified. */
+    private final long sectionLength;
+
+    /** Construct PcapngSectionHeader from a block body.
+     * @param parent the parent of this artefact, or null if none
+     * @param body the block body
+     * @throws ParseException if the block body could not be parsed
+     */
+    PcapngSectionHeader(Artefact parent, OctetString body)
+        throws ParseException {
+
+        super(parent, BLOCK_TYPE, body);
+        if (body.length() < FIXED_LENGTH) {
+            throw new ParseException(
+                "section header block too short in pcapng file");
+        }
+        this.versionMajor = body.getShort(4) & 0xffff;
+        this.versionMinor = body.getShort(6) & 0xffff;
+        this.sectionLength = body.getLong(8);
+    }
+
+    /** Get the major version number.
+     * @return the major version number
+     */
+    public final int getVersionMajor() {
+        return versionMajor;
+    }
+
+    /** Get the minor version number.
+     * @return the minor version number
+     */
+    public final int getVersionMinor() {
+        return versionMinor;
+    }
+
+    /** Get the section length.
+     * This excludes the section header block itself.
+     * @return the section length, in octets, or -1 if not specified
+     */
+    public final long getSectionLength() {
+        return sectionLength;
+    }
+
+    @Override
+    protected void buildJson(JsonObjectBuilder builder) {
+        builder.add("versionMajor", getVersionMajor());
+        builder.add("versionMinor", getVersionMinor());
+        builder.add("sectionLength", getSectionLength());
+    }
+}
@@ -0,0 +1,14 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+/**
+ * This package provides support for the PCAP Next Generation (pcapng)
+ * file format as part of libholmes.
+ *
+ * Information about this format can be found at:
+ * - https://github.com/pcapng/pcapng
+ * - https://wiki.wireshark.org/Development/PcapNg
+ */
+package org.libholmes.pcapng;
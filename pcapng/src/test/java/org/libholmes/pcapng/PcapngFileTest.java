@@ -0,0 +1,149 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.pcapng;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.stream.JsonGenerator;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import org.libholmes.ByteBufferOctetString;
+import org.libholmes.HexOctetReader;
+import org.libholmes.HexOctetString;
+import org.libholmes.JsonProjection;
+import org.libholmes.ParseException;
+
+public class PcapngFileTest {
+    // A little-endian section with nanosecond timestamps, containing an
+    // enhanced packet block and a name resolution block, followed by a
+    // big-endian section with microsecond timestamps and a snap length
+    // of 4, containing an enhanced packet block and a simple packet block.
+    private static final String content =
+        "0a0d0d0a1c0000004d3c2b1a01000000ffffffffffffffff1c000000" +
+        "0100000020000000010000000000000009000100090000000000000020000000" +
+        "0600000028000000000000008f8605151503052a060000003c000000" +
+        "010203040506000028000000" +
+        "04000000100000000000000010000000" +
+        "0a0d0d0a0000001c1a2b3c4d00010000ffffffffffffffff0000001c" +
+        "0000000100000014000100000000000400000014" +
+        "000000060000002800000000000561aba9d27fff0000000500000005" +
+        "0708090a0b00000000000028" +
+        "0000000300000018000000060c0d0e0f1011000000000018";
+
+    private static void checkPackets(PcapngFile pcapng)
+        throws ParseException {
+
+        assertEquals(1, pcapng.getFirstSection().getVersionMajor());
+        assertEquals(0, pcapng.getFirstSection().getVersionMinor());
+        assertEquals(-1, pcapng.getFirstSection().getSectionLength());
+
+        PcapngPacket packet0 = pcapng.readPacket();
+        assertEquals(1, packet0.getLinkType());
+        assertEquals(0, packet0.getInterfaceId());
+        assertEquals(1514764799123456789L, packet0.getTimestamp());
+        assertEquals(6, packet0.getCapturedLength());
+        assertEquals(60, packet0.getOriginalLength());
+        assertEquals(new HexOctetString("010203040506"),
+            packet0.getPayload());
+
+        PcapngPacket packet1 = pcapng.readPacket();
+        assertNotSame(pcapng.getFirstSection(), pcapng.getSection());
+        assertEquals(1, pcapng.getInterfaces().size());
+        assertEquals(4, packet1.getInterface().getSnapLen());
+        assertEquals(1514764799999999000L, packet1.getTimestamp());
+        assertEquals(new HexOctetString("0708090a0b"),
+            packet1.getPayload());
+
+        PcapngPacket packet2 = pcapng.readPacket();
+        assertEquals(PcapngPacket.SIMPLE_BLOCK_TYPE, packet2.getBlockType());
+        assertEquals(4, packet2.getCapturedLength());
+        assertEquals(6, packet2.getOriginalLength());
+        assertEquals(new HexOctetString("0c0d0e0f"), packet2.getPayload());
+
+        assertFalse(pcapng.hasRemaining());
+        assertNull(pcapng.readPacket());
+    }
+
+    @Test
+    public void testReader() throws ParseException {
+        checkPackets(PcapngFile.parse(null, new HexOctetReader(content)));
+    }
+
+    @Test
+    public void testStream() throws ParseException {
+        checkPackets(PcapngFile.parse(null, new ByteArrayInputStream(
+            new HexOctetString(content).getBytes())));
+    }
+
+    @Test
+    public void testPath() throws IOException, ParseException {
+        File file = File.createTempFile("libholmes", ".pcapng");
+        file.deleteOnExit();
+        Files.write(file.toPath(), new HexOctetString(content).getBytes());
+        PcapngFile pcapng = PcapngFile.parse(null, file.toPath());
+        assertTrue(pcapng.readPacket().getPayload()
+            instanceof ByteBufferOctetString);
+    }
+
+    @Test
+    public void testProjection() throws ParseException {
+        PcapngPacket packet = PcapngFile.parse(null,
+            new HexOctetReader(content)).readPacket();
+        JsonProjection projection = JsonProjection.DEFAULT
+            .exclude(PcapngPacket.class, "interfaceId", "originalLength");
+
+        // Both the built and the generated object should be filtered by
+        // the projection, without relying on select to remove fields.
+        JsonObjectBuilder builder = Json.createObjectBuilder();
+        packet.buildJson(builder, projection);
+        JsonObject built = builder.build();
+        assertEquals(2, built.size());
+        assertEquals(1514764799123456789L,
+            built.getJsonNumber("timestamp").longValue());
+        assertEquals(6, built.getInt("capturedLength"));
+
+        StringWriter out = new StringWriter();
+        try (JsonGenerator generator = Json.createGenerator(out)) {
+            packet.writeJson(generator, projection);
+        }
+        assertEquals(built, Json.createReader(
+            new StringReader(out.toString())).readObject());
+    }
+
+    @Test
+    public void testBlocks() throws ParseException {
+        PcapngFile pcapng = PcapngFile.parse(null,
+            new HexOctetReader(content));
+        assertTrue(pcapng.readBlock() instanceof PcapngInterface);
+        assertTrue(pcapng.readBlock() instanceof PcapngPacket);
+        PcapngBlock block = pcapng.readBlock();
+        assertEquals(4, block.getBlockType());
+        assertEquals(new HexOctetString("00000000"), block.getBody());
+        assertTrue(pcapng.readBlock() instanceof PcapngSectionHeader);
+    }
+
+    @Test(expected = ParseException.class)
+    public void testInvalidMagic() throws ParseException {
+        PcapngFile.parse(null, new HexOctetReader(
+            "d4c3b2a1020004000000000000000000dc05000001000000"));
+    }
+
+    @Test(expected = ParseException.class)
+    public void testMismatchedLength() throws ParseException {
+        PcapngFile.parse(null, new HexOctetReader(
+            "0a0d0d0a1c0000004d3c2b1a01000000ffffffffffffffff20000000"));
+    }
+}
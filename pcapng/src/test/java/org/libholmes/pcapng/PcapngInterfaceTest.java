@@ -0,0 +1,45 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.pcapng;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import org.libholmes.HexOctetString;
+import org.libholmes.ParseException;
+
+public class PcapngInterfaceTest {
+    @Test
+    public void testDefaultResolution() throws ParseException {
+        PcapngInterface iface = new PcapngInterface(null,
+            new HexOctetString(">00010000000005dc"));
+        assertEquals(1, iface.getLinkType());
+        assertEquals(1500, iface.getSnapLen());
+        assertEquals(6, iface.getTsResol());
+        assertEquals(1500000L, iface.makeTimestamp(1500));
+    }
+
+    @Test
+    public void testDecimalResolution() throws ParseException {
+        PcapngInterface iface = new PcapngInterface(null,
+            new HexOctetString(">0001000000000000" +
+                "0009000103000000" + "00000000"));
+        assertEquals(3, iface.getTsResol());
+        assertEquals(1500000000L, iface.makeTimestamp(1500));
+    }
+
+    @Test
+    public void testBinaryResolution() throws ParseException {
+        // Resolution of 2^-30 seconds, with an offset of 10 seconds.
+        PcapngInterface iface = new PcapngInterface(null,
+            new HexOctetString(">0001000000000000" +
+                "000900019e000000" + "000e0008000000000000000a"));
+        assertEquals(0x9e, iface.getTsResol());
+        assertEquals(10, iface.getTsOffset());
+        assertEquals(15500000000L,
+            iface.makeTimestamp((5L << 30) + (1L << 29)));
+    }
+}
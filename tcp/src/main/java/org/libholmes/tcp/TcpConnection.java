@@ -0,0 +1,508 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.tcp;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+
+import org.libholmes.ArrayOctetString;
+import org.libholmes.OctetString;
+import org.libholmes.ParseException;
+import org.libholmes.inet.Inet4Address;
+import org.libholmes.inet.InetSocketAddress;
+
+/** A class to represent the state and metrics of a TCP connection.
+ *
+ * The client is the endpoint which sent the initial SYN or, if the
+ * handshake was not captured, the sender of the first segment seen.
+ * Per-direction metrics are indexed by CLIENT (for segments sent by the
+ * client) or SERVER (for segments sent by the server). To keep the
+ * footprint small, they are held in two primitive arrays rather than in
+ * separate objects, and the endpoints are held as packed addresses and
+ * ports rather than as socket address objects (which would otherwise
+ * keep the packet from which they were parsed reachable).
+ *
+ * Round trip times are measured at the capture point. The handshake RTT
+ * is the time from the SYN to the ACK which completes the handshake.
+ * Timestamp RTT samples are taken from the time at which a new TSval is
+ * first seen to the time at which it is first echoed by the other
+ * endpoint.
+ */
+public final class TcpConnection {
+    /** The index for metrics relating to segments sent by the client. */
+    public static final int CLIENT = 0;
+
+    /** The index for metrics relating to segments sent by the server. */
+    public static final int SERVER = 1;
+
+    /** The state of a connection for which no SYN has been seen. */
+    public static final int STATE_UNKNOWN = 0;
+
+    /** The state after a SYN has been seen. */
+    public static final int STATE_SYN_SENT = 1;
+
+    /** The state after a SYN-ACK has been seen. */
+    public static final int STATE_SYN_RECEIVED = 2;
+
+    /** The state after the handshake has been completed. */
+    public static final int STATE_ESTABLISHED = 3;
+
+    /** The state after a FIN has been seen in one direction only. */
+    public static final int STATE_HALF_CLOSED = 4;
+
+    /** The state after a FIN has been seen in both directions. */
+    public static final int STATE_CLOSED = 5;
+
+    /** The state after a RST has been seen. */
+    public static final int STATE_RESET = 6;
+
+    /** The reason given for a connection which has not ended. */
+    public static final int REASON_NONE = 0;
+
+    /** The reason given when FINs have been seen in both directions. */
+    public static final int REASON_FIN = 1;
+
+    /** The reason given when a RST has been seen. */
+    public static final int REASON_RST = 2;
+
+    /** The reason given when the connection was idle for too long. */
+    public static final int REASON_TIMEOUT = 3;
+
+    /** The reason given when the connection was evicted to save memory. */
+    public static final int REASON_EVICTED = 4;
+
+    /** The reason given when the tracker was flushed. */
+    public static final int REASON_FLUSH = 5;
+
+    /** The index of the packet count within the long metrics. */
+    private static final int PACKETS = 0;
+
+    /** The index of the octet count within the long metrics. */
+    private static final int OCTETS = 1;
+
+    /** The index of the retransmission count within the long metrics. */
+    private static final int RETRANSMISSIONS = 2;
+
+    /** The index of the maximum window within the long metrics. */
+    private static final int MAX_WINDOW = 3;
+
+    /** The index of the pending TSval time within the long metrics. */
+    private static final int TS_TIME = 4;
+
+    /** The number of long metrics per direction. */
+    private static final int LONG_COUNT = 5;
+
+    /** The index of the window scale shift within the int metrics. */
+    private static final int WINDOW_SCALE = 0;
+
+    /** The index of the highest sequence number within the int metrics. */
+    private static final int HIGHEST_SEQ = 1;
+
+    /** The index of the status bits within the int metrics. */
+    private static final int STATUS = 2;
+
+    /** The index of the pending TSval within the int metrics. */
+    private static final int TS_PENDING = 3;
+
+    /** The index of the most recent TSval within the int metrics. */
+    private static final int TS_LAST = 4;
+
+    /** The number of int metrics per direction. */
+    private static final int INT_COUNT = 5;
+
+    /** A status bit indicating that a sequence number has been seen. */
+    private static final int SEEN_SEQ = 1;
+
+    /** A status bit indicating that a FIN has been seen. */
+    private static final int SEEN_FIN = 2;
+
+    /** A status bit indicating that a TSval is awaiting an echo. */
+    private static final int SEEN_PENDING_TS = 4;
+
+    /** A status bit indicating that a TSval has been seen. */
+    private static final int SEEN_TS = 8;
+
+    /** The client address and port, packed for fast comparison. */
+    final long clientEndpoint;
+
+    /** The server address and port, packed as for the client. */
+    private final long serverEndpoint;
+
+    /** The current state. */
+    private int state = STATE_UNKNOWN;
+
+    /** The reason for which the connection ended, if it has ended. */
+    private int reason = REASON_NONE;
+
+    /** The timestamp of the first segment. */
+    private final long firstTimestamp;
+
+    /** The timestamp of the most recent segment. */
+    private long lastTimestamp;
+
+    /** The timestamp of the first SYN, or -1 if none. */
+    private long synTimestamp = -1;
+
+    /** The timestamp of the first SYN-ACK, or -1 if none. */
+    private long synAckTimestamp = -1;
+
+    /** The timestamp at which the handshake completed, or -1 if not. */
+    private long establishedTimestamp = -1;
+
+    /** The number of timestamp RTT samples. */
+    private int tsRttCount = 0;
+
+    /** The sum of the timestamp RTT samples. */
+    private long tsRttSum = 0;
+
+    /** The smallest timestamp RTT sample. */
+    private long tsRttMin = Long.MAX_VALUE;
+
+    /** Per-direction metrics of type long. */
+    private final long[] longs = new long[LONG_COUNT * 2];
+
+    /** Per-direction metrics of type int. */
+    private final int[] ints = new int[INT_COUNT * 2];
+
+    /** Construct TcpConnection.
+     * Each endpoint is packed with the IPv4 address in bits 16 to 47 and
+     * the port in bits 0 to 15.
+     * @param clientEndpoint the client address and port, packed
+     * @param serverEndpoint the server address and port, packed
+     * @param timestamp the timestamp of the first segment
+     */
+    TcpConnection(long clientEndpoint, long serverEndpoint, long timestamp) {
+        this.clientEndpoint = clientEndpoint;
+        this.serverEndpoint = serverEndpoint;
+        this.firstTimestamp = timestamp;
+        this.lastTimestamp = timestamp;
+        ints[CLIENT * INT_COUNT + WINDOW_SCALE] = -1;
+        ints[SERVER * INT_COUNT + WINDOW_SCALE] = -1;
+    }
+
+    /** Update the window scale and timestamp metrics from the options
+     * of a segment.
+     * @param segment the segment
+     * @param dir the direction of the segment
+     * @param timestamp the timestamp of the segment
+     */
+    private void updateOptions(TcpSegment segment, int dir, long timestamp) {
+        int base = dir * INT_COUNT;
+        int peer = (dir ^ 1) * INT_COUNT;
+        for (TcpOption option : segment.getOptions()) {
+            if ((option instanceof TcpWindowScaleOption) &&
+                segment.getSynFlag()) {
+                ints[base + WINDOW_SCALE] =
+                    ((TcpWindowScaleOption) option).getShift();
+            } else if (option instanceof TcpTimestampsOption) {
+                TcpTimestampsOption tsopt = (TcpTimestampsOption) option;
+                int tsval = tsopt.getTimestampValue();
+                int tsecr = tsopt.getTimestampEchoReply();
+                if (((ints[peer + STATUS] & SEEN_PENDING_TS) != 0) &&
+                    (tsecr - ints[peer + TS_PENDING] >= 0)) {
+                    // An echo of a later TSval means that the pending
+                    // value was not echoed, so no sample can be taken.
+                    if (tsecr == ints[peer + TS_PENDING]) {
+                        long rtt = timestamp -
+                            longs[(dir ^ 1) * LONG_COUNT + TS_TIME];
+                        tsRttCount += 1;
+                        tsRttSum += rtt;
+                        tsRttMin = Math.min(tsRttMin, rtt);
+                    }
+                    ints[peer + STATUS] &= ~SEEN_PENDING_TS;
+                }
+                int status = ints[base + STATUS];
+                if (((status & SEEN_TS) == 0) ||
+                    (tsval != ints[base + TS_LAST])) {
+                    if ((status & SEEN_PENDING_TS) == 0) {
+                        ints[base + TS_PENDING] = tsval;
+                        longs[dir * LONG_COUNT + TS_TIME] = timestamp;
+                        status |= SEEN_PENDING_TS;
+                    }
+                    ints[base + TS_LAST] = tsval;
+                    ints[base + STATUS] = status | SEEN_TS;
+                }
+            }
+        }
+    }
+
+    /** Update the state and metrics of this connection with a segment.
+     * @param segment the segment
+     * @param dir the direction of the segment
+     * @param timestamp the timestamp of the segment
+     * @return true if the connection has now ended, otherwise false
+     */
+    boolean update(TcpSegment segment, int dir, long timestamp) {
+        int base = dir * INT_COUNT;
+        int lbase = dir * LONG_COUNT;
+        boolean syn = segment.getSynFlag();
+        boolean ack = segment.getAckFlag();
+        boolean fin = segment.getFinFlag();
+        int length = segment.getPayload().length();
+        lastTimestamp = Math.max(lastTimestamp, timestamp);
+        longs[lbase + PACKETS] += 1;
+        longs[lbase + OCTETS] += length;
+        updateOptions(segment, dir, timestamp);
+
+        // A segment is counted as a retransmission if it occupies
+        // sequence space without extending beyond the highest sequence
+        // number already seen in that direction.
+        int seqLength = length + (syn ? 1 : 0) + (fin ? 1 : 0);
+        if (seqLength != 0) {
+            int end = segment.getSeq() + seqLength;
+            if ((ints[base + STATUS] & SEEN_SEQ) == 0) {
+                ints[base + HIGHEST_SEQ] = end;
+                ints[base + STATUS] |= SEEN_SEQ;
+            } else if (end - ints[base + HIGHEST_SEQ] <= 0) {
+                longs[lbase + RETRANSMISSIONS] += 1;
+            } else {
+                ints[base + HIGHEST_SEQ] = end;
+            }
+        }
+
+        long window = segment.getWindowSize();
+        if (!syn && isWindowScaled()) {
+            window <<= ints[base + WINDOW_SCALE];
+        }
+        longs[lbase + MAX_WINDOW] = Math.max(longs[lbase + MAX_WINDOW],
+            window);
+
+        if (segment.getRstFlag()) {
+            state = STATE_RESET;
+            reason = REASON_RST;
+            return true;
+        }
+        if (syn && !ack && (dir == CLIENT)) {
+            if (synTimestamp < 0) {
+                synTimestamp = timestamp;
+            }
+            if (state == STATE_UNKNOWN) {
+                state = STATE_SYN_SENT;
+            }
+        } else if (syn && ack && (dir == SERVER)) {
+            if (synAckTimestamp < 0) {
+                synAckTimestamp = timestamp;
+            }
+            if (state == STATE_SYN_SENT) {
+                state = STATE_SYN_RECEIVED;
+            }
+        } else if (ack && (dir == CLIENT) && (state == STATE_SYN_RECEIVED)) {
+            state = STATE_ESTABLISHED;
+            establishedTimestamp = timestamp;
+        }
+        if (fin) {
+            ints[base + STATUS] |= SEEN_FIN;
+            if ((ints[(dir ^ 1) * INT_COUNT + STATUS] & SEEN_FIN) != 0) {
+                state = STATE_CLOSED;
+                reason = REASON_FIN;
+                return true;
+            }
+            state = STATE_HALF_CLOSED;
+        }
+        return false;
+    }
+
+    /** Record the reason for which the connection ended.
+     * @param reason the reason
+     */
+    void end(int reason) {
+        this.reason = reason;
+    }
+
+    /** Unpack a socket address.
+     * @param endpoint the address and port, packed
+     * @return the socket address
+     */
+    private static InetSocketAddress unpack(long endpoint) {
+        byte[] bytes = new byte[4];
+        for (int i = 0; i != 4; ++i) {
+            bytes[i] = (byte) (endpoint >>> (40 - i * 8));
+        }
+        try {
+            return new InetSocketAddress(Inet4Address.parse(
+                new ArrayOctetString(bytes, OctetString.BIG_ENDIAN)),
+                (int) (endpoint & 0xffff));
+        } catch (ParseException ex) {
+            // This should not happen.
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /** Get the socket address of the client.
+     * @return the socket address
+     */
+    public InetSocketAddress getClientAddr() {
+        return unpack(clientEndpoint);
+    }
+
+    /** Get the socket address of the server.
+     * @return the socket address
+     */
+    public InetSocketAddress getServerAddr() {
+        return unpack(serverEndpoint);
+    }
+
+    /** Get the current state.
+     * @return the state, as one of the STATE constants
+     */
+    public int getState() {
+        return state;
+    }
+
+    /** Get the reason for which the connection ended.
+     * @return the reason, as one of the REASON constants
+     */
+    public int getReason() {
+        return reason;
+    }
+
+    /** Get the timestamp of the first segment.
+     * @return the timestamp, in nanoseconds since the epoch
+     */
+    public long getFirstTimestamp() {
+        return firstTimestamp;
+    }
+
+    /** Get the timestamp of the most recent segment.
+     * @return the timestamp, in nanoseconds since the epoch
+     */
+    public long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    /** Get the round trip time of the handshake.
+     * This is measured from the SYN to the ACK which completes the
+     * handshake.
+     * @return the round trip time in nanoseconds, or -1 if the whole
+     *  handshake was not seen
+     */
+    public long getHandshakeRtt() {
+        if ((synTimestamp < 0) || (establishedTimestamp < 0)) {
+            return -1;
+        }
+        return establishedTimestamp - synTimestamp;
+    }
+
+    /** Get the round trip time between the capture point and the server.
+     * This is measured from the SYN to the SYN-ACK.
+     * @return the round trip time in nanoseconds, or -1 if not seen
+     */
+    public long getServerRtt() {
+        if ((synTimestamp < 0) || (synAckTimestamp < 0)) {
+            return -1;
+        }
+        return synAckTimestamp - synTimestamp;
+    }
+
+    /** Get the number of timestamp RTT samples.
+     * @return the number of samples
+     */
+    public int getTimestampRttCount() {
+        return tsRttCount;
+    }
+
+    /** Get the smallest timestamp RTT sample.
+     * @return the round trip time in nanoseconds, or -1 if none
+     */
+    public long getTimestampRttMin() {
+        return (tsRttCount != 0) ? tsRttMin : -1;
+    }
+
+    /** Get the mean timestamp RTT.
+     * @return the round trip time in nanoseconds, or -1 if none
+     */
+    public long getTimestampRttMean() {
+        return (tsRttCount != 0) ? tsRttSum / tsRttCount : -1;
+    }
+
+    /** Get the number of segments sent in one direction.
+     * @param dir CLIENT or SERVER
+     * @return the number of segments
+     */
+    public long getPacketCount(int dir) {
+        return longs[dir * LONG_COUNT + PACKETS];
+    }
+
+    /** Get the number of payload octets sent in one direction.
+     * @param dir CLIENT or SERVER
+     * @return the number of octets
+     */
+    public long getOctetCount(int dir) {
+        return longs[dir * LONG_COUNT + OCTETS];
+    }
+
+    /** Get the number of retransmitted segments in one direction.
+     * @param dir CLIENT or SERVER
+     * @return the number of retransmissions
+     */
+    public long getRetransmissionCount(int dir) {
+        return longs[dir * LONG_COUNT + RETRANSMISSIONS];
+    }
+
+    /** Get the window scale shift requested in one direction.
+     * @param dir CLIENT or SERVER
+     * @return the shift count, or -1 if no window scale option was sent
+     */
+    public int getWindowScale(int dir) {
+        return ints[dir * INT_COUNT + WINDOW_SCALE];
+    }
+
+    /** Check whether window scaling is in effect.
+     * This requires both endpoints to have sent a window scale option.
+     * @return true if in effect, otherwise false
+     */
+    public boolean isWindowScaled() {
+        return (getWindowScale(CLIENT) >= 0) &&
+            (getWindowScale(SERVER) >= 0);
+    }
+
+    /** Get the largest window advertised in one direction.
+     * This takes account of window scaling, if in effect.
+     * @param dir CLIENT or SERVER
+     * @return the window size, in octets
+     */
+    public long getMaxWindow(int dir) {
+        return longs[dir * LONG_COUNT + MAX_WINDOW];
+    }
+
+    /** Add the metrics for one direction to a JSON object.
+     * @param builder the builder for the JSON object
+     * @param dir CLIENT or SERVER
+     */
+    private void buildJson(JsonObjectBuilder builder, int dir) {
+        builder.add("packets", getPacketCount(dir));
+        builder.add("octets", getOctetCount(dir));
+        builder.add("retransmissions", getRetransmissionCount(dir));
+        builder.add("windowScale", getWindowScale(dir));
+        builder.add("maxWindow", getMaxWindow(dir));
+    }
+
+    /** Convert this connection to JSON.
+     * @return this connection, as a JSON object
+     */
+    public JsonObject toJson() {
+        JsonObjectBuilder client = Json.createObjectBuilder();
+        buildJson(client, CLIENT);
+        JsonObjectBuilder server = Json.createObjectBuilder();
+        buildJson(server, SERVER);
+        return Json.createObjectBuilder()
+            .add("clientAddr", getClientAddr().toString())
+            .add("serverAddr", getServerAddr().toString())
+            .add("state", state)
+            .add("reason", reason)
+            .add("firstTimestamp", firstTimestamp)
+            .add("lastTimestamp", lastTimestamp)
+            .add("handshakeRtt", getHandshakeRtt())
+            .add("serverRtt", getServerRtt())
+            .add("timestampRttCount", tsRttCount)
+            .add("timestampRttMin", getTimestampRttMin())
+            .add("timestampRttMean", getTimestampRttMean())
+            .add("client", client)
+            .add("server", server)
+            .build();
+    }
+}
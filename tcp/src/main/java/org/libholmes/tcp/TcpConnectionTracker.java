@@ -0,0 +1,240 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.tcp;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.function.Consumer;
+
+import org.libholmes.OctetString;
+import org.libholmes.Timestamped;
+
+/** A class for tracking the lifecycle of TCP connections.
+ *
+ * Segments are fed to the tracker one at a time, and a TcpConnection
+ * record is passed to a consumer whenever a connection ends: by FIN in
+ * both directions, by RST, by being idle for longer than the timeout, or
+ * by eviction. The number of connections tracked at once is bounded, and
+ * when the limit is reached the least recently active connection is
+ * evicted. Timeouts are measured using the timestamps of the segments.
+ *
+ * After a connection has ended by FIN or RST, its key is remembered for a
+ * linger period so that the final ACK, and any retransmitted FINs, are
+ * absorbed rather than being reported as a new connection. A SYN or a
+ * segment carrying payload for the same key starts a new connection.
+ *
+ * Connections are keyed by their addresses and ports packed into a pair
+ * of primitives, in an order which does not depend on the direction of
+ * the segment, so no socket address objects are allocated or retained
+ * for any segment. Only IPv4 is currently supported.
+ */
+public final class TcpConnectionTracker {
+    /** The default idle timeout, in nanoseconds. */
+    public static final long DEFAULT_TIMEOUT = 300000000000L;
+
+    /** The default maximum number of connections. */
+    public static final int DEFAULT_MAX_CONNECTIONS = 0x100000;
+
+    /** The period for which closed connections are remembered, in
+     * nanoseconds. This matches the TIME_WAIT period used by Linux.
+     */
+    public static final long LINGER = 60000000000L;
+
+    /** A key for identifying a connection in either direction. */
+    private static final class Key {
+        /** The lower and higher addresses. */
+        private final long addrs;
+
+        /** The ports corresponding to the lower and higher addresses. */
+        private final int ports;
+
+        /** Construct Key.
+         * @param addrs the lower and higher addresses
+         * @param ports the corresponding ports
+         */
+        Key(long addrs, int ports) {
+            this.addrs = addrs;
+            this.ports = ports;
+        }
+
+        @Override
+        public boolean equals(Object thatObject) {
+            if (!(thatObject instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) thatObject;
+            return (this.addrs == that.addrs) && (this.ports == that.ports);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(addrs) * 31 + ports;
+        }
+    }
+
+    /** The consumer for connection records. */
+    private final Consumer<TcpConnection> consumer;
+
+    /** The idle timeout, in nanoseconds. */
+    private final long timeout;
+
+    /** The maximum number of connections. */
+    private final int maxConnections;
+
+    /** The connections being tracked, least recently active first. */
+    private final LinkedHashMap<Key, TcpConnection> connections =
+        new LinkedHashMap<Key, TcpConnection>(16, 0.75f, true);
+
+    /** The time at which each recently closed connection ended, in the
+     * order in which they ended.
+     */
+    private final LinkedHashMap<Key, Long> closed =
+        new LinkedHashMap<Key, Long>();
+
+    /** Construct TcpConnectionTracker with given limits.
+     * @param consumer the consumer for connection records
+     * @param timeout the idle timeout, in nanoseconds
+     * @param maxConnections the maximum number of connections
+     */
+    public TcpConnectionTracker(Consumer<TcpConnection> consumer,
+        long timeout, int maxConnections) {
+
+        this.consumer = consumer;
+        this.timeout = timeout;
+        this.maxConnections = maxConnections;
+    }
+
+    /** Construct TcpConnectionTracker with the default limits.
+     * @param consumer the consumer for connection records
+     */
+    public TcpConnectionTracker(Consumer<TcpConnection> consumer) {
+        this(consumer, DEFAULT_TIMEOUT, DEFAULT_MAX_CONNECTIONS);
+    }
+
+    /** Pack an IPv4 address into an integer.
+     * @param addr the address
+     * @return the address, as a big-endian integer
+     */
+    private static long pack(OctetString addr) {
+        long result = 0;
+        for (int i = 0; i != 4; ++i) {
+            result = (result << 8) | (addr.getByte(i) & 0xff);
+        }
+        return result;
+    }
+
+    /** End a connection and pass it to the consumer.
+     * @param conn the connection
+     * @param reason the reason for which it ended
+     */
+    private void end(TcpConnection conn, int reason) {
+        conn.end(reason);
+        consumer.accept(conn);
+    }
+
+    /** End connections which have been idle for longer than the timeout.
+     * @param timestamp the current time, in nanoseconds since the epoch
+     */
+    public void expire(long timestamp) {
+        Iterator<TcpConnection> iter = connections.values().iterator();
+        while (iter.hasNext()) {
+            TcpConnection conn = iter.next();
+            if (timestamp - conn.getLastTimestamp() <= timeout) {
+                break;
+            }
+            iter.remove();
+            end(conn, TcpConnection.REASON_TIMEOUT);
+        }
+        Iterator<Long> closedIter = closed.values().iterator();
+        while (closedIter.hasNext()) {
+            if (timestamp - closedIter.next() <= LINGER) {
+                break;
+            }
+            closedIter.remove();
+        }
+    }
+
+    /** End all connections.
+     * This should be called when there are no more segments to be added.
+     */
+    public void flush() {
+        for (TcpConnection conn : connections.values()) {
+            end(conn, TcpConnection.REASON_FLUSH);
+        }
+        connections.clear();
+        closed.clear();
+    }
+
+    /** Add a segment to this tracker.
+     * Segments which are not carried by IPv4 are ignored.
+     * @param segment the segment to be added
+     */
+    public void add(TcpSegment segment) {
+        OctetString srcAddr = segment.getSrcAddr().getAddress();
+        OctetString dstAddr = segment.getDstAddr().getAddress();
+        if ((srcAddr.length() != 4) || (dstAddr.length() != 4)) {
+            return;
+        }
+        Timestamped ts = segment.find(Timestamped.class);
+        long timestamp = (ts != null) ? ts.getTimestamp() : 0;
+        if (ts != null) {
+            expire(timestamp);
+        }
+
+        long src = (pack(srcAddr) << 16) | segment.getSrcPort();
+        long dst = (pack(dstAddr) << 16) | segment.getDstPort();
+        long lo = Math.min(src, dst);
+        long hi = Math.max(src, dst);
+        Key key = new Key(((lo >>> 16) << 32) | (hi >>> 16),
+            (int) (((lo & 0xffff) << 16) | (hi & 0xffff)));
+
+        TcpConnection conn = connections.get(key);
+        if (conn == null) {
+            if (closed.containsKey(key)) {
+                if (!segment.getSynFlag() &&
+                    (segment.getPayload().length() == 0)) {
+                    return;
+                }
+                closed.remove(key);
+            }
+            if (connections.size() >= maxConnections) {
+                Iterator<TcpConnection> iter =
+                    connections.values().iterator();
+                TcpConnection eldest = iter.next();
+                iter.remove();
+                end(eldest, TcpConnection.REASON_EVICTED);
+            }
+            // A SYN-ACK is sent by the server, so if that is the first
+            // segment seen then the client is the destination.
+            if (segment.getSynFlag() && segment.getAckFlag()) {
+                conn = new TcpConnection(dst, src, timestamp);
+            } else {
+                conn = new TcpConnection(src, dst, timestamp);
+            }
+            connections.put(key, conn);
+        }
+
+        int dir = (src == conn.clientEndpoint) ?
+            TcpConnection.CLIENT : TcpConnection.SERVER;
+        if (conn.update(segment, dir, timestamp)) {
+            connections.remove(key);
+            consumer.accept(conn);
+            if (closed.size() >= maxConnections) {
+                Iterator<Long> iter = closed.values().iterator();
+                iter.next();
+                iter.remove();
+            }
+            closed.put(key, timestamp);
+        }
+    }
+
+    /** Get the number of connections being tracked.
+     * @return the number of connections
+     */
+    public int size() {
+        return connections.size();
+    }
+}
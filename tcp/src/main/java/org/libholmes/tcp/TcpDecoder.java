@@ -0,0 +1,50 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.tcp;
+
+import org.libholmes.OctetString;
+import org.libholmes.Artefact;
+import org.libholmes.Decoder;
+import org.libholmes.DecoderRegistry;
+import org.libholmes.ParseException;
+import org.libholmes.inet.InetDatagram;
+
+/** A decoder for TCP segments.
+ * The payload is dispatched by destination port, or failing that by
+ * source port.
+ */
+public final class TcpDecoder implements Decoder {
+    /** The IP protocol number for TCP. */
+    public static final int PROTOCOL_TCP = 6;
+
+    /** The shared instance of this decoder. */
+    private static final TcpDecoder INSTANCE = new TcpDecoder();
+
+    /** Construct TcpDecoder. */
+    private TcpDecoder() {}
+
+    @Override
+    public Artefact decode(DecoderRegistry registry, Artefact parent,
+        OctetString content, int depth) throws ParseException {
+
+        if (!(parent instanceof InetDatagram)) {
+            throw new ParseException(
+                "TCP must be carried within an IP datagram");
+        }
+        TcpSegment tcp = TcpSegment.parse((InetDatagram) parent, content);
+        return registry.decodePorts(DecoderRegistry.TCP_PORT,
+            tcp.getSrcPort(), tcp.getDstPort(), tcp, tcp.getPayload(),
+            depth);
+    }
+
+    /** Register this decoder.
+     * @param registry the registry
+     */
+    public static void register(DecoderRegistry registry) {
+        registry.register(DecoderRegistry.IP_PROTOCOL, PROTOCOL_TCP,
+            INSTANCE);
+    }
+}
@@ -0,0 +1,237 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.tcp;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.libholmes.Logger;
+import org.libholmes.Timestamped;
+import org.libholmes.inet.InetSocketAddressPair;
+
+/** A class for reassembling TCP segments into ordered streams.
+ *
+ * Each connection is represented by a pair of TcpStreams, one for each
+ * direction, and content is delivered to a TcpStreamListener as soon as
+ * it becomes contiguous. Whole sessions are therefore never buffered:
+ * only content which has arrived out of order is held.
+ *
+ * The amount held is bounded in two ways. If the content held for one
+ * stream exceeds the per-flow limit then the stream skips over its first
+ * gap. If the content held for all streams exceeds the global limit then
+ * streams are flushed, starting with the least recently updated
+ * connection. Connections are forgotten when both directions have been
+ * closed by FIN, when either is reset, or when idle for longer than the
+ * timeout. Timeouts are measured using the timestamps of the segments.
+ *
+ * A connection is only opened by a segment which carries a SYN or
+ * payload. Segments with neither, such as the final ACK of a connection
+ * or a retransmitted FIN, would deliver nothing to a new connection, so
+ * they are ignored if they do not belong to one already being tracked.
+ */
+public final class TcpReassembler {
+    /** The default idle timeout, in nanoseconds. */
+    public static final long DEFAULT_TIMEOUT = 300000000000L;
+
+    /** The default per-flow limit, in octets. */
+    public static final int DEFAULT_FLOW_LIMIT = 0x40000;
+
+    /** The default global memory limit, in octets. */
+    public static final long DEFAULT_MEMORY_LIMIT = 0x4000000;
+
+    /** The state of a connection. */
+    private static final class Connection {
+        /** The stream from the endpoint which sent the first segment. */
+        final TcpStream client;
+
+        /** The stream in the opposite direction. */
+        final TcpStream server;
+
+        /** The timestamp of the most recent segment. */
+        long latest;
+
+        /** Construct Connection.
+         * @param client the stream from the first sender
+         * @param server the stream in the opposite direction
+         * @param latest the timestamp of the first segment
+         */
+        Connection(TcpStream client, TcpStream server, long latest) {
+            this.client = client;
+            this.server = server;
+            this.latest = latest;
+            client.setPeer(server);
+            server.setPeer(client);
+        }
+    }
+
+    /** The listener to which stream content is delivered. */
+    private final TcpStreamListener listener;
+
+    /** The logger for recording findings. */
+    private final Logger logger;
+
+    /** The idle timeout, in nanoseconds. */
+    private final long timeout;
+
+    /** The per-flow limit, in octets. */
+    private final int flowLimit;
+
+    /** The global memory limit, in octets. */
+    private final long memoryLimit;
+
+    /** The connections being tracked, keyed by the socket addresses of
+     * the client stream, least recently updated first.
+     */
+    private final LinkedHashMap<InetSocketAddressPair, Connection>
+        connections =
+        new LinkedHashMap<InetSocketAddressPair, Connection>(16, 0.75f,
+        true);
+
+    /** The number of octets held out of order by all streams. */
+    private long memoryUsed = 0;
+
+    /** Construct TcpReassembler with given limits.
+     * @param listener the listener to which content should be delivered
+     * @param logger a logger for recording findings
+     * @param timeout the idle timeout, in nanoseconds
+     * @param flowLimit the per-flow limit, in octets
+     * @param memoryLimit the global memory limit, in octets
+     */
+    public TcpReassembler(TcpStreamListener listener, Logger logger,
+        long timeout, int flowLimit, long memoryLimit) {
+
+        this.listener = listener;
+        this.logger = logger;
+        this.timeout = timeout;
+        this.flowLimit = flowLimit;
+        this.memoryLimit = memoryLimit;
+    }
+
+    /** Construct TcpReassembler with the default limits.
+     * @param listener the listener to which content should be delivered
+     * @param logger a logger for recording findings
+     */
+    public TcpReassembler(TcpStreamListener listener, Logger logger) {
+        this(listener, logger, DEFAULT_TIMEOUT, DEFAULT_FLOW_LIMIT,
+            DEFAULT_MEMORY_LIMIT);
+    }
+
+    /** Flush and close both streams of a connection.
+     * @param conn the connection
+     */
+    private void finish(Connection conn) {
+        memoryUsed -= conn.client.flush();
+        memoryUsed -= conn.server.flush();
+        conn.client.close();
+        conn.server.close();
+    }
+
+    /** Close connections which have been idle for longer than the
+     * timeout.
+     * @param timestamp the current time, in nanoseconds since the epoch
+     */
+    public void expire(long timestamp) {
+        Iterator<Connection> iter = connections.values().iterator();
+        while (iter.hasNext()) {
+            Connection conn = iter.next();
+            if (timestamp - conn.latest <= timeout) {
+                break;
+            }
+            finish(conn);
+            iter.remove();
+        }
+    }
+
+    /** Flush and close all connections.
+     * This should be called when there are no more segments to be added.
+     */
+    public void flush() {
+        for (Connection conn : connections.values()) {
+            finish(conn);
+        }
+        connections.clear();
+    }
+
+    /** Release held content until the global memory limit is no longer
+     * exceeded.
+     */
+    private void evict() {
+        Iterator<Connection> iter = connections.values().iterator();
+        while ((memoryUsed > memoryLimit) && iter.hasNext()) {
+            Connection conn = iter.next();
+            memoryUsed -= conn.client.flush();
+            memoryUsed -= conn.server.flush();
+        }
+    }
+
+    /** Add a segment to this reassembler.
+     * @param segment the segment to be added
+     */
+    public void add(TcpSegment segment) {
+        Timestamped ts = segment.find(Timestamped.class);
+        long timestamp = (ts != null) ? ts.getTimestamp() : 0;
+        if (ts != null) {
+            expire(timestamp);
+        }
+
+        InetSocketAddressPair addrs = new InetSocketAddressPair(
+            segment.getSrcSockAddr(), segment.getDstSockAddr());
+        InetSocketAddressPair key = addrs;
+        Connection conn = connections.get(key);
+        TcpStream stream = null;
+        if (conn != null) {
+            stream = conn.client;
+        } else {
+            key = addrs.reverse();
+            conn = connections.get(key);
+            if (conn != null) {
+                stream = conn.server;
+            }
+        }
+        if (conn == null) {
+            if (segment.getRstFlag() || (!segment.getSynFlag() &&
+                (segment.getPayload().length() == 0))) {
+                return;
+            }
+            key = addrs;
+            conn = new Connection(new TcpStream(addrs, listener),
+                new TcpStream(addrs.reverse(), listener), timestamp);
+            connections.put(key, conn);
+            stream = conn.client;
+        }
+        conn.latest = Math.max(conn.latest, timestamp);
+
+        if (segment.getRstFlag()) {
+            finish(conn);
+            connections.remove(key);
+            return;
+        }
+
+        memoryUsed += stream.add(segment.getSeq(), segment.getPayload(),
+            segment.getSynFlag(), segment.getFinFlag(), logger);
+        while (stream.getPendingCount() > flowLimit) {
+            memoryUsed -= stream.skip();
+        }
+        if (conn.client.isClosed() && conn.server.isClosed()) {
+            connections.remove(key);
+        }
+        evict();
+    }
+
+    /** Get the number of connections being tracked.
+     * @return the number of connections
+     */
+    public int size() {
+        return connections.size();
+    }
+
+    /** Get the number of octets held out of order by all streams.
+     * @return the number of octets
+     */
+    public long getMemoryUsed() {
+        return memoryUsed;
+    }
+}
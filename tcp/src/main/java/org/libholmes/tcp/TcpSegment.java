@@ -11,10 +11,13 @@ import java.util.Collections;
 import javax.json.Json;
 import javax.json.JsonObjectBuilder;
 import javax.json.JsonArrayBuilder;
+import javax.json.stream.JsonGenerator;
 
 import org.libholmes.OctetReader;
 import org.libholmes.OctetString;
+import org.libholmes.OctetWindow;
 import org.libholmes.Artefact;
+import org.libholmes.JsonProjection;
 import org.libholmes.ParseException;
 import org.libholmes.inet.InetChecksum;
 import org.libholmes.inet.InetAddress;
@@ -28,6 +31,12 @@ public class TcpSegment extends Artefact {
     /** The undecoded header. */
     private final OctetString header;
 
+    /** A window onto the undecoded header, for reading header fields.
+     * The bounds of the header are validated once, when the window is
+     * created, rather than each time a field is read.
+     */
+    private final OctetWindow headerWindow;
+
     /** The undecoded payload. */
     private final OctetString payload;
 
@@ -53,6 +62,7 @@ public class TcpSegment extends Artefact {
                 "invalid header length for TCP");
         }
         this.header = reader.readOctetString(headerLength);
+        this.headerWindow = this.header.getWindow();
         this.payload = reader.readOctetString(reader.remaining());
 
         OctetReader headerReader = header.makeOctetReader();
@@ -94,14 +104,14 @@ public class TcpSegment extends Artefact {
      * @return the source port
      */
     public final int getSrcPort() {
-        return header.getShort(0) & 0xffff;
+        return headerWindow.getShort(0) & 0xffff;
     }
 
     /** Get destination port.
      * @return the destination port
      */
     public final int getDstPort() {
-        return header.getShort(2) & 0xffff;
+        return headerWindow.getShort(2) & 0xffff;
     }
 
     /** Get source socket address.
@@ -126,7 +136,7 @@ public class TcpSegment extends Artefact {
      * @return the wrapped sequence number for this segment
      */
     public final int getSeq() {
-        return header.getInt(4);
+        return headerWindow.getInt(4);
     }
 
     /** Get wrapped acknowledgement number.
@@ -137,77 +147,77 @@ public class TcpSegment extends Artefact {
      * @return the wrapped acknowledgement number for this segment
      */
     public final int getAck() {
-        return header.getInt(8);
+        return headerWindow.getInt(8);
     }
 
     /** Get the data offset, in 32-bit words.
      * @return the data offset
      */
     public final int getDataOffset() {
-        return (header.getByte(12) >> 4) & 0xf;
+        return (headerWindow.getByte(12) >> 4) & 0xf;
     }
 
     /** Get NS flag.
      * @return the NS flag.
      */
     public final boolean getNsFlag() {
-        return (header.getByte(12) & 0x01) != 0;
+        return (headerWindow.getByte(12) & 0x01) != 0;
     }
 
     /** Get CWR flag.
      * @return the CWR flag.
      */
     public final boolean getCwrFlag() {
-        return (header.getByte(13) & 0x80) != 0;
+        return (headerWindow.getByte(13) & 0x80) != 0;
     }
 
     /** Get ECE flag.
      * @return the ECE flag.
      */
     public final boolean getEceFlag() {
-        return (header.getByte(13) & 0x40) != 0;
+        return (headerWindow.getByte(13) & 0x40) != 0;
     }
 
     /** Get URG flag.
      * @return the URG flag.
      */
     public final boolean getUrgFlag() {
-        return (header.getByte(13) & 0x20) != 0;
+        return (headerWindow.getByte(13) & 0x20) != 0;
     }
 
     /** Get ACK flag.
      * @return the ACK flag.
      */
     public final boolean getAckFlag() {
-        return (header.getByte(13) & 0x10) != 0;
+        return (headerWindow.getByte(13) & 0x10) != 0;
     }
 
     /** Get PSH flag.
      * @return the PSH flag.
      */
     public final boolean getPshFlag() {
-        return (header.getByte(13) & 0x08) != 0;
+        return (headerWindow.getByte(13) & 0x08) != 0;
     }
 
     /** Get RST flag.
      * @return the RST flag.
      */
     public final boolean getRstFlag() {
-        return (header.getByte(13) & 0x04) != 0;
+        return (headerWindow.getByte(13) & 0x04) != 0;
     }
 
     /** Get SYN flag.
      * @return the SYN flag.
      */
     public final boolean getSynFlag() {
-        return (header.getByte(13) & 0x02) != 0;
+        return (headerWindow.getByte(13) & 0x02) != 0;
     }
 
     /** Get FIN flag.
      * @return the FIN flag.
      */
     public final boolean getFinFlag() {
-        return (header.getByte(13) & 0x01) != 0;
+        return (headerWindow.getByte(13) & 0x01) != 0;
     }
 
     /** Get window size.
@@ -216,7 +226,7 @@ public class TcpSegment extends Artefact {
      * @return the window size
      */
     public final int getWindowSize() {
-        return header.getShort(14) & 0xffff;
+        return headerWindow.getShort(14) & 0xffff;
     }
 
     /** Get the recorded checksum.
@@ -225,7 +235,7 @@ public class TcpSegment extends Artefact {
      * @return the recorded checksum
      */
     public final int getRecordedChecksum() {
-        return header.getShort(16) & 0xffff;
+        return headerWindow.getShort(16) & 0xffff;
     }
 
     /** Get the calculated checksum.
@@ -247,7 +257,7 @@ public class TcpSegment extends Artefact {
      * @return the urgent pointer
      */
     public final int getUrgentPointer() {
-        return header.getShort(18) & 0xffff;
+        return headerWindow.getShort(18) & 0xffff;
     }
 
     /** Get the options list
@@ -273,32 +283,153 @@ public class TcpSegment extends Artefact {
 
     @Override
     public final void buildJson(JsonObjectBuilder builder) {
-        JsonArrayBuilder optionsBuilder = Json.createArrayBuilder();
-        for (TcpOption option : options) {
-            optionsBuilder.add(option.toJson());
-        }
-
-        builder.add("srcPort", getSrcPort());
-        builder.add("dstPort", getDstPort());
-        builder.add("seq", getSeq() & 0xffffffffL);
-        builder.add("ack", getAck() & 0xffffffffL);
-        builder.add("dataOffset", getDataOffset());
-        builder.add("nsFlag", getNsFlag());
-        builder.add("cwrFlag", getCwrFlag());
-        builder.add("eceFlag", getEceFlag());
-        builder.add("urgFlag", getUrgFlag());
-        builder.add("ackFlag", getAckFlag());
-        builder.add("pshFlag", getPshFlag());
-        builder.add("rstFlag", getRstFlag());
-        builder.add("synFlag", getSynFlag());
-        builder.add("finFlag", getFinFlag());
-        builder.add("windowSize", getWindowSize());
-        builder.add("recordedChecksum", getRecordedChecksum());
-        builder.add("calculatedChecksum", getCalculatedChecksum());
-        builder.add("urgentPointer", getUrgentPointer());
-        builder.add("options", optionsBuilder.build());
-        builder.add("padding", padding.toString());
-        builder.add("payload", payload.toString());
+        buildJson(builder, JsonProjection.FULL);
+    }
+
+    @Override
+    protected final void buildJson(JsonObjectBuilder builder,
+        JsonProjection projection) {
+
+        if (projection.includes(this, "srcPort")) {
+            builder.add("srcPort", getSrcPort());
+        }
+        if (projection.includes(this, "dstPort")) {
+            builder.add("dstPort", getDstPort());
+        }
+        if (projection.includes(this, "seq")) {
+            builder.add("seq", getSeq() & 0xffffffffL);
+        }
+        if (projection.includes(this, "ack")) {
+            builder.add("ack", getAck() & 0xffffffffL);
+        }
+        if (projection.includes(this, "dataOffset")) {
+            builder.add("dataOffset", getDataOffset());
+        }
+        if (projection.includes(this, "nsFlag")) {
+            builder.add("nsFlag", getNsFlag());
+        }
+        if (projection.includes(this, "cwrFlag")) {
+            builder.add("cwrFlag", getCwrFlag());
+        }
+        if (projection.includes(this, "eceFlag")) {
+            builder.add("eceFlag", getEceFlag());
+        }
+        if (projection.includes(this, "urgFlag")) {
+            builder.add("urgFlag", getUrgFlag());
+        }
+        if (projection.includes(this, "ackFlag")) {
+            builder.add("ackFlag", getAckFlag());
+        }
+        if (projection.includes(this, "pshFlag")) {
+            builder.add("pshFlag", getPshFlag());
+        }
+        if (projection.includes(this, "rstFlag")) {
+            builder.add("rstFlag", getRstFlag());
+        }
+        if (projection.includes(this, "synFlag")) {
+            builder.add("synFlag", getSynFlag());
+        }
+        if (projection.includes(this, "finFlag")) {
+            builder.add("finFlag", getFinFlag());
+        }
+        if (projection.includes(this, "windowSize")) {
+            builder.add("windowSize", getWindowSize());
+        }
+        if (projection.includes(this, "recordedChecksum")) {
+            builder.add("recordedChecksum", getRecordedChecksum());
+        }
+        if (projection.includesDerived(this, "calculatedChecksum")) {
+            builder.add("calculatedChecksum", getCalculatedChecksum());
+        }
+        if (projection.includes(this, "urgentPointer")) {
+            builder.add("urgentPointer", getUrgentPointer());
+        }
+        if (projection.includes(this, "options")) {
+            JsonArrayBuilder optionsBuilder = Json.createArrayBuilder();
+            for (TcpOption option : options) {
+                optionsBuilder.add(option.toJson());
+            }
+            builder.add("options", optionsBuilder.build());
+        }
+        if (projection.includes(this, "padding")) {
+            builder.add("padding", padding.toString());
+        }
+        if (projection.includesDerived(this, "payload")) {
+            builder.add("payload", projection.encode(payload));
+        }
+    }
+
+    @Override
+    protected final void generateJson(JsonGenerator generator,
+        JsonProjection projection) {
+
+        if (projection.includes(this, "srcPort")) {
+            generator.write("srcPort", getSrcPort());
+        }
+        if (projection.includes(this, "dstPort")) {
+            generator.write("dstPort", getDstPort());
+        }
+        if (projection.includes(this, "seq")) {
+            generator.write("seq", getSeq() & 0xffffffffL);
+        }
+        if (projection.includes(this, "ack")) {
+            generator.write("ack", getAck() & 0xffffffffL);
+        }
+        if (projection.includes(this, "dataOffset")) {
+            generator.write("dataOffset", getDataOffset());
+        }
+        if (projection.includes(this, "nsFlag")) {
+            generator.write("nsFlag", getNsFlag());
+        }
+        if (projection.includes(this, "cwrFlag")) {
+            generator.write("cwrFlag", getCwrFlag());
+        }
+        if (projection.includes(this, "eceFlag")) {
+            generator.write("eceFlag", getEceFlag());
+        }
+        if (projection.includes(this, "urgFlag")) {
+            generator.write("urgFlag", getUrgFlag());
+        }
+        if (projection.includes(this, "ackFlag")) {
+            generator.write("ackFlag", getAckFlag());
+        }
+        if (projection.includes(this, "pshFlag")) {
+            generator.write("pshFlag", getPshFlag());
+        }
+        if (projection.includes(this, "rstFlag")) {
+            generator.write("rstFlag", getRstFlag());
+        }
+        if (projection.includes(this, "synFlag")) {
+            generator.write("synFlag", getSynFlag());
+        }
+        if (projection.includes(this, "finFlag")) {
+            generator.write("finFlag", getFinFlag());
+        }
+        if (projection.includes(this, "windowSize")) {
+            generator.write("windowSize", getWindowSize());
+        }
+        if (projection.includes(this, "recordedChecksum")) {
+            generator.write("recordedChecksum", getRecordedChecksum());
+        }
+        if (projection.includesDerived(this, "calculatedChecksum")) {
+            generator.write("calculatedChecksum", getCalculatedChecksum());
+        }
+        if (projection.includes(this, "urgentPointer")) {
+            generator.write("urgentPointer", getUrgentPointer());
+        }
+        if (projection.includes(this, "options")) {
+            generator.writeStartArray("options");
+            for (TcpOption option : options) {
+                option.writeJson(generator);
+            }
+            generator.writeEnd();
+        }
+        if (projection.includes(this, "padding")) {
+            generator.write("padding", padding.toString());
+        }
+        if (projection.includesDerived(this, "payload")) {
+            generator.write("payload", projection.encode(payload));
+        }
     }
 
     /** Parse TCP segment from an OctetReader.
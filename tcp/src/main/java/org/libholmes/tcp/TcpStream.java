@@ -0,0 +1,318 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.tcp;
+
+import java.util.ArrayList;
+
+import org.libholmes.Logger;
+import org.libholmes.OctetString;
+import org.libholmes.inet.InetSocketAddressPair;
+
+/** A class to represent one direction of a reassembled TCP connection.
+ *
+ * Content which arrives in order is delivered to the listener at once.
+ * Content which arrives early is held until the missing octets arrive,
+ * or until the reassembler decides to skip over them. Sequence numbers
+ * are compared modulo 2^32, so streams may wrap around. Where segments
+ * overlap, the octets received first are retained, and retransmitted
+ * octets which have already been delivered are discarded.
+ */
+public final class TcpStream {
+    /** A part of the stream which has been received out of order. */
+    private static final class Piece {
+        /** The sequence number of the first octet. */
+        final int seq;
+
+        /** The content of this piece. */
+        final OctetString data;
+
+        /** Construct Piece.
+         * @param seq the sequence number of the first octet
+         * @param data the content of this piece
+         */
+        Piece(int seq, OctetString data) {
+            this.seq = seq;
+            this.data = data;
+        }
+    }
+
+    /** The source and destination socket addresses. */
+    private final InetSocketAddressPair addrs;
+
+    /** The listener to which content is delivered. */
+    private final TcpStreamListener listener;
+
+    /** The stream flowing in the opposite direction, or null if none. */
+    private TcpStream peer = null;
+
+    /** True if the initial sequence number is known, otherwise false. */
+    private boolean started = false;
+
+    /** The sequence number of the next octet to be delivered. */
+    private int next = 0;
+
+    /** True if a FIN has been received, otherwise false. */
+    private boolean finished = false;
+
+    /** The sequence number of the FIN, if received. */
+    private int finSeq = 0;
+
+    /** True if the stream has been closed, otherwise false. */
+    private boolean closed = false;
+
+    /** Pieces received out of order, in stream order. */
+    private final ArrayList<Piece> pending = new ArrayList<Piece>();
+
+    /** The number of octets held in pending pieces. */
+    private int pendingCount = 0;
+
+    /** The number of octets delivered. */
+    private long deliveredCount = 0;
+
+    /** The number of octets received more than once. */
+    private long retransmittedCount = 0;
+
+    /** The number of octets skipped over without being received. */
+    private long skippedCount = 0;
+
+    /** Construct TcpStream.
+     * @param addrs the source and destination socket addresses
+     * @param listener the listener to which content should be delivered
+     */
+    TcpStream(InetSocketAddressPair addrs, TcpStreamListener listener) {
+        this.addrs = addrs;
+        this.listener = listener;
+    }
+
+    /** Set the stream flowing in the opposite direction.
+     * @param peer the stream flowing in the opposite direction
+     */
+    void setPeer(TcpStream peer) {
+        this.peer = peer;
+    }
+
+    /** Get the source and destination socket addresses.
+     * @return the socket addresses
+     */
+    public InetSocketAddressPair getAddrs() {
+        return addrs;
+    }
+
+    /** Get the stream flowing in the opposite direction.
+     * @return the peer stream
+     */
+    public TcpStream getPeer() {
+        return peer;
+    }
+
+    /** Get the sequence number of the next octet to be delivered.
+     * @return the sequence number
+     */
+    public int getNextSeq() {
+        return next;
+    }
+
+    /** Get the number of octets held out of order.
+     * @return the number of octets
+     */
+    public int getPendingCount() {
+        return pendingCount;
+    }
+
+    /** Get the number of octets delivered.
+     * @return the number of octets
+     */
+    public long getDeliveredCount() {
+        return deliveredCount;
+    }
+
+    /** Get the number of octets received more than once.
+     * @return the number of octets
+     */
+    public long getRetransmittedCount() {
+        return retransmittedCount;
+    }
+
+    /** Get the number of octets skipped over without being received.
+     * @return the number of octets
+     */
+    public long getSkippedCount() {
+        return skippedCount;
+    }
+
+    /** Check whether the stream has been closed.
+     * @return true if closed, otherwise false
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /** Hold content which has arrived out of order.
+     * Only those parts which do not overlap content already held are
+     * retained.
+     * @param seq the sequence number of the first octet, which must not
+     *  precede the next octet to be delivered
+     * @param data the content
+     * @param logger a logger for recording findings
+     */
+    private void hold(int seq, OctetString data, Logger logger) {
+        int first = seq - next;
+        int last = first + data.length();
+        int cursor = first;
+        ArrayList<Piece> added = new ArrayList<Piece>();
+        boolean consistent = true;
+        for (Piece piece : pending) {
+            int pieceFirst = piece.seq - next;
+            int pieceLast = pieceFirst + piece.data.length();
+            if (pieceLast <= cursor) {
+                continue;
+            }
+            if (pieceFirst >= last) {
+                break;
+            }
+            if (pieceFirst > cursor) {
+                added.add(new Piece(next + cursor,
+                    data.getOctetString(cursor - first,
+                    pieceFirst - cursor)));
+            }
+            int a = Math.max(cursor, pieceFirst);
+            int b = Math.min(last, pieceLast);
+            if (!piece.data.getOctetString(a - pieceFirst, b - a).equals(
+                data.getOctetString(a - first, b - a))) {
+                consistent = false;
+            }
+            retransmittedCount += b - a;
+            cursor = pieceLast;
+        }
+        if (cursor < last) {
+            added.add(new Piece(next + cursor,
+                data.getOctetString(cursor - first, last - cursor)));
+        }
+        if (!consistent) {
+            logger.log("Overlapping TCP segments with inconsistent content");
+        }
+
+        for (Piece piece : added) {
+            int index = pending.size();
+            while ((index != 0) &&
+                (pending.get(index - 1).seq - next > piece.seq - next)) {
+                index -= 1;
+            }
+            pending.add(index, piece);
+            pendingCount += piece.data.length();
+        }
+    }
+
+    /** Deliver any pending content which is now contiguous. */
+    private void drain() {
+        while (!pending.isEmpty() && (pending.get(0).seq == next)) {
+            Piece piece = pending.remove(0);
+            pendingCount -= piece.data.length();
+            next += piece.data.length();
+            deliveredCount += piece.data.length();
+            listener.deliver(this, piece.data);
+        }
+        if (finished && (next == finSeq) && pending.isEmpty()) {
+            next += 1;
+            close();
+        }
+    }
+
+    /** Add a segment to this stream.
+     * @param seq the sequence number of the segment
+     * @param data the payload of the segment
+     * @param syn true if the SYN flag is set, otherwise false
+     * @param fin true if the FIN flag is set, otherwise false
+     * @param logger a logger for recording findings
+     * @return the change in the number of octets held out of order
+     */
+    int add(int seq, OctetString data, boolean syn, boolean fin,
+        Logger logger) {
+
+        if (closed) {
+            return 0;
+        }
+        int before = pendingCount;
+        if (syn) {
+            if (!started) {
+                started = true;
+                next = seq + 1;
+            }
+            seq += 1;
+        } else if (!started) {
+            // The start of the connection was not captured, so pick up
+            // the stream from the first segment seen.
+            started = true;
+            next = seq;
+        }
+        if (fin && !finished) {
+            finished = true;
+            finSeq = seq + data.length();
+        }
+
+        int behind = next - seq;
+        if (behind > 0) {
+            int count = Math.min(behind, data.length());
+            retransmittedCount += count;
+            data = data.getOctetString(count, data.length() - count);
+            seq += count;
+        }
+        if (!data.isEmpty()) {
+            if (pending.isEmpty() && (seq == next)) {
+                next += data.length();
+                deliveredCount += data.length();
+                listener.deliver(this, data);
+            } else {
+                hold(seq, data, logger);
+            }
+        }
+        drain();
+        return pendingCount - before;
+    }
+
+    /** Skip over the first gap in the stream.
+     * Pending content following the gap is then delivered.
+     * @return the number of pending octets released
+     */
+    int skip() {
+        if (pending.isEmpty()) {
+            return 0;
+        }
+        int before = pendingCount;
+        int count = pending.get(0).seq - next;
+        skippedCount += count;
+        listener.gap(this, count);
+        next = pending.get(0).seq;
+        drain();
+        return before - pendingCount;
+    }
+
+    /** Skip over all gaps in the stream, delivering all pending content.
+     * @return the number of pending octets released
+     */
+    int flush() {
+        int released = 0;
+        while (!pending.isEmpty()) {
+            released += skip();
+        }
+        return released;
+    }
+
+    /** Close this stream, discarding any pending content.
+     * @return the number of pending octets released
+     */
+    int close() {
+        if (closed) {
+            return 0;
+        }
+        int released = pendingCount;
+        closed = true;
+        pending.clear();
+        pendingCount = 0;
+        listener.close(this);
+        return released;
+    }
+}
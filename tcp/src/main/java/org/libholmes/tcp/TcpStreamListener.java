@@ -0,0 +1,36 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.tcp;
+
+import org.libholmes.OctetString;
+
+/** An interface for receiving the content of reassembled TCP streams.
+ * Each stream carries the octets sent in one direction of a connection.
+ * Notifications for a given stream are made in stream order.
+ */
+public interface TcpStreamListener {
+    /** Deliver a contiguous chunk of stream content.
+     * The chunk immediately follows the previous chunk delivered for the
+     * same stream, unless separated by a gap.
+     * @param stream the stream to which the content belongs
+     * @param data the content
+     */
+    void deliver(TcpStream stream, OctetString data);
+
+    /** Report a gap in the stream content.
+     * This occurs when octets were not captured, or could not be buffered
+     * until the missing octets arrived.
+     * @param stream the stream in which the gap occurred
+     * @param count the number of octets missing
+     */
+    void gap(TcpStream stream, int count);
+
+    /** Report the end of a stream.
+     * No further notifications are made for the stream.
+     * @param stream the stream which has ended
+     */
+    void close(TcpStream stream);
+}
@@ -0,0 +1,221 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.tcp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import org.libholmes.Artefact;
+import org.libholmes.HexOctetString;
+import org.libholmes.ParseException;
+import org.libholmes.Timestamped;
+import org.libholmes.inet.Inet4Datagram;
+
+public class TcpConnectionTrackerTest {
+    private static final int FIN = 0x01;
+    private static final int SYN = 0x02;
+    private static final int RST = 0x04;
+    private static final int ACK = 0x10;
+
+    private static class Packet extends Artefact implements Timestamped {
+        private final long timestamp;
+
+        Packet(long timestamp) {
+            super(null);
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        protected void buildJson(JsonObjectBuilder builder) {}
+    }
+
+    private final List<TcpConnection> records =
+        new ArrayList<TcpConnection>();
+
+    private static TcpSegment makeSegment(long timestamp, boolean fromClient,
+        int clientPort, int seq, int flags, int window, String options,
+        String payload) throws ParseException {
+
+        int headerLength = 20 + options.length() / 2;
+        int length = 20 + headerLength + payload.length() / 2;
+        String addrs = fromClient ? "0a0000010a000002" : "0a0000020a000001";
+        String ports = fromClient ? String.format("%04x0050", clientPort) :
+            String.format("0050%04x", clientPort);
+        String hex = String.format("4500%04x0000400040060000%s%s%08x" +
+            "00000000%02x%02x%04x00000000%s%s", length, addrs, ports, seq,
+            headerLength << 2, flags, window, options, payload);
+        Inet4Datagram datagram = Inet4Datagram.parse(new Packet(timestamp),
+            new HexOctetString(hex));
+        return TcpSegment.parse(datagram, datagram.getPayload());
+    }
+
+    private static TcpSegment makeSegment(long timestamp, boolean fromClient,
+        int seq, int flags, int window, String options, String payload)
+        throws ParseException {
+
+        return makeSegment(timestamp, fromClient, 0x1000, seq, flags, window,
+            options, payload);
+    }
+
+    private static String ts(int tsval, int tsecr) {
+        return String.format("0101080a%08x%08x", tsval, tsecr);
+    }
+
+    @Test
+    public void testLifecycle() throws ParseException {
+        TcpConnectionTracker tracker = new TcpConnectionTracker(records::add);
+        tracker.add(makeSegment(1000, true, 100, SYN, 0x2000,
+            "03030701" + ts(1, 0), ""));
+        tracker.add(makeSegment(1500, false, 500, SYN | ACK, 0xffff,
+            "03030201" + ts(70, 1), ""));
+        tracker.add(makeSegment(1800, true, 101, ACK, 0x0100,
+            ts(2, 70), ""));
+        tracker.add(makeSegment(1900, true, 101, ACK, 0x0100,
+            ts(3, 70), "0102030405"));
+        tracker.add(makeSegment(2000, true, 101, ACK, 0x0100,
+            ts(4, 70), "0102030405"));
+        tracker.add(makeSegment(2400, false, 501, ACK, 0x0200,
+            ts(71, 3), ""));
+        assertEquals(1, tracker.size());
+        tracker.add(makeSegment(3000, true, 106, ACK | FIN, 0x0100,
+            ts(5, 71), ""));
+        assertTrue(records.isEmpty());
+        tracker.add(makeSegment(3200, false, 501, ACK | FIN, 0x0200,
+            ts(72, 5), ""));
+        assertEquals(0, tracker.size());
+        assertEquals(1, records.size());
+
+        // The final ACK and a retransmitted FIN belong to the connection
+        // which has just closed, so must not be reported again.
+        tracker.add(makeSegment(3300, true, 107, ACK, 0x0100,
+            ts(6, 72), ""));
+        tracker.add(makeSegment(3400, false, 501, ACK | FIN, 0x0200,
+            ts(72, 5), ""));
+        assertEquals(0, tracker.size());
+        tracker.flush();
+        assertEquals(1, records.size());
+
+        TcpConnection conn = records.get(0);
+        assertEquals("10.0.0.1:4096", conn.getClientAddr().toString());
+        assertEquals("10.0.0.2:80", conn.getServerAddr().toString());
+        assertEquals(TcpConnection.STATE_CLOSED, conn.getState());
+        assertEquals(TcpConnection.REASON_FIN, conn.getReason());
+        assertEquals(1000, conn.getFirstTimestamp());
+        assertEquals(3200, conn.getLastTimestamp());
+        assertEquals(800, conn.getHandshakeRtt());
+        assertEquals(500, conn.getServerRtt());
+        assertEquals(5, conn.getPacketCount(TcpConnection.CLIENT));
+        assertEquals(3, conn.getPacketCount(TcpConnection.SERVER));
+        assertEquals(10, conn.getOctetCount(TcpConnection.CLIENT));
+        assertEquals(1, conn.getRetransmissionCount(TcpConnection.CLIENT));
+        assertEquals(0, conn.getRetransmissionCount(TcpConnection.SERVER));
+        assertEquals(7, conn.getWindowScale(TcpConnection.CLIENT));
+        assertEquals(2, conn.getWindowScale(TcpConnection.SERVER));
+        assertTrue(conn.isWindowScaled());
+        assertEquals(0xffff, conn.getMaxWindow(TcpConnection.SERVER));
+        assertEquals(0x8000, conn.getMaxWindow(TcpConnection.CLIENT));
+
+        // Samples are 1 (500), 70 (300), 71 (600) and 5 (200). TSval 2 is
+        // never echoed, so yields no sample.
+        assertEquals(4, conn.getTimestampRttCount());
+        assertEquals(200, conn.getTimestampRttMin());
+        assertEquals(400, conn.getTimestampRttMean());
+
+        JsonObject json = conn.toJson();
+        assertEquals(800, json.getInt("handshakeRtt"));
+        assertEquals(5, json.getJsonObject("client").getInt("packets"));
+    }
+
+    @Test
+    public void testReset() throws ParseException {
+        TcpConnectionTracker tracker = new TcpConnectionTracker(records::add);
+        tracker.add(makeSegment(0, true, 100, SYN, 0xffff, "", ""));
+        tracker.add(makeSegment(10, false, 0, RST | ACK, 0, "", ""));
+        assertEquals(0, tracker.size());
+        assertEquals(TcpConnection.STATE_RESET, records.get(0).getState());
+        assertEquals(TcpConnection.REASON_RST, records.get(0).getReason());
+        assertFalse(records.get(0).isWindowScaled());
+        assertEquals(-1, records.get(0).getHandshakeRtt());
+    }
+
+    @Test
+    public void testReuseAfterLinger() throws ParseException {
+        TcpConnectionTracker tracker = new TcpConnectionTracker(records::add);
+        tracker.add(makeSegment(0, true, 100, SYN, 0xffff, "", ""));
+        tracker.add(makeSegment(10, false, 0, RST | ACK, 0, "", ""));
+        tracker.add(makeSegment(20, false, 0, RST | ACK, 0, "", ""));
+        assertEquals(0, tracker.size());
+
+        // A new SYN reuses the key immediately.
+        tracker.add(makeSegment(30, true, 200, SYN, 0xffff, "", ""));
+        assertEquals(1, tracker.size());
+        tracker.add(makeSegment(40, false, 0, RST | ACK, 0, "", ""));
+        assertEquals(2, records.size());
+
+        // Once the linger period has passed, any segment does.
+        tracker.add(makeSegment(40 + TcpConnectionTracker.LINGER + 1, true,
+            201, ACK, 0xffff, "", ""));
+        assertEquals(1, tracker.size());
+        tracker.flush();
+        assertEquals(3, records.size());
+        assertEquals(TcpConnection.STATE_UNKNOWN, records.get(2).getState());
+    }
+
+    @Test
+    public void testSynAckFirst() throws ParseException {
+        TcpConnectionTracker tracker = new TcpConnectionTracker(records::add);
+        tracker.add(makeSegment(0, false, 500, SYN | ACK, 0xffff, "", ""));
+        tracker.add(makeSegment(10, true, 101, ACK | FIN, 0x100, "", ""));
+        tracker.flush();
+        TcpConnection conn = records.get(0);
+        assertEquals("10.0.0.1:4096", conn.getClientAddr().toString());
+        assertEquals(TcpConnection.STATE_HALF_CLOSED, conn.getState());
+        assertEquals(TcpConnection.REASON_FLUSH, conn.getReason());
+        assertEquals(1, conn.getPacketCount(TcpConnection.CLIENT));
+    }
+
+    @Test
+    public void testTimeout() throws ParseException {
+        TcpConnectionTracker tracker = new TcpConnectionTracker(records::add,
+            1000, 16);
+        tracker.add(makeSegment(0, true, 100, SYN, 0xffff, "", ""));
+        tracker.add(makeSegment(500, true, 0x2000, 100, SYN, 0xffff, "", ""));
+        tracker.add(makeSegment(1200, true, 0x3000, 100, SYN, 0xffff, "",
+            ""));
+        assertEquals(1, records.size());
+        assertEquals(TcpConnection.REASON_TIMEOUT, records.get(0).getReason());
+        assertEquals(4096, records.get(0).getClientAddr().getPort());
+        assertEquals(2, tracker.size());
+    }
+
+    @Test
+    public void testEviction() throws ParseException {
+        TcpConnectionTracker tracker = new TcpConnectionTracker(records::add,
+            TcpConnectionTracker.DEFAULT_TIMEOUT, 2);
+        tracker.add(makeSegment(0, true, 0x1000, 100, SYN, 0xffff, "", ""));
+        tracker.add(makeSegment(1, true, 0x2000, 100, SYN, 0xffff, "", ""));
+        tracker.add(makeSegment(2, false, 0x1000, 500, SYN | ACK, 0xffff,
+            "", ""));
+        assertEquals(2, tracker.size());
+        assertTrue(records.isEmpty());
+        tracker.add(makeSegment(3, true, 0x3000, 100, SYN, 0xffff, "", ""));
+        assertEquals(2, tracker.size());
+        assertEquals(1, records.size());
+        assertEquals(TcpConnection.REASON_EVICTED, records.get(0).getReason());
+        assertEquals(0x2000, records.get(0).getClientAddr().getPort());
+    }
+}
@@ -0,0 +1,188 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.tcp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import org.libholmes.HexOctetString;
+import org.libholmes.Logger;
+import org.libholmes.OctetString;
+import org.libholmes.ParseException;
+import org.libholmes.inet.Inet4Datagram;
+
+public class TcpReassemblerTest {
+    private static final int SYN = 0x02;
+    private static final int RST = 0x04;
+    private static final int FIN = 0x01;
+    private static final int ACK = 0x10;
+
+    private final List<String> events = new ArrayList<String>();
+
+    private final List<String> findings = new ArrayList<String>();
+
+    private final TcpStreamListener listener = new TcpStreamListener() {
+        @Override
+        public void deliver(TcpStream stream, OctetString data) {
+            events.add(stream.getAddrs().getSrcAddr().getPort() + ":" +
+                data);
+        }
+
+        @Override
+        public void gap(TcpStream stream, int count) {
+            events.add(stream.getAddrs().getSrcAddr().getPort() + ":gap" +
+                count);
+        }
+
+        @Override
+        public void close(TcpStream stream) {
+            events.add(stream.getAddrs().getSrcAddr().getPort() + ":close");
+        }
+    };
+
+    private final Logger logger = new Logger() {
+        @Override
+        public void log(String description, Object... args) {
+            findings.add(String.format(description, args));
+        }
+    };
+
+    private static TcpSegment makeSegment(boolean fromClient, int seq,
+        int flags, String payload) throws ParseException {
+
+        int length = 40 + payload.length() / 2;
+        String addrs = fromClient ? "0a0000010a000002" : "0a0000020a000001";
+        String ports = fromClient ? "10000050" : "00501000";
+        String hex = String.format("4500%04x0000400040060000%s%s%08x" +
+            "0000000050%02xffff00000000%s", length, addrs, ports, seq,
+            flags, payload);
+        Inet4Datagram datagram = Inet4Datagram.parse(null,
+            new HexOctetString(hex));
+        return TcpSegment.parse(datagram, datagram.getPayload());
+    }
+
+    @Test
+    public void testInOrder() throws ParseException {
+        TcpReassembler reassembler = new TcpReassembler(listener, logger);
+        reassembler.add(makeSegment(true, 100, SYN, ""));
+        reassembler.add(makeSegment(false, 500, SYN | ACK, ""));
+        reassembler.add(makeSegment(true, 101, ACK, "0102"));
+        reassembler.add(makeSegment(false, 501, ACK, "aabbcc"));
+        reassembler.add(makeSegment(true, 103, ACK | FIN, "03"));
+        reassembler.add(makeSegment(false, 504, ACK | FIN, ""));
+        assertEquals(0, reassembler.size());
+
+        // The final ACK and a retransmitted FIN must not open a new
+        // connection.
+        reassembler.add(makeSegment(true, 105, ACK, ""));
+        reassembler.add(makeSegment(false, 504, ACK | FIN, ""));
+        assertEquals(0, reassembler.size());
+        reassembler.flush();
+        assertEquals("[4096:0102, 80:aabbcc, 4096:03, 4096:close, " +
+            "80:close]", events.toString());
+    }
+
+    @Test
+    public void testOutOfOrder() throws ParseException {
+        TcpReassembler reassembler = new TcpReassembler(listener, logger);
+        reassembler.add(makeSegment(true, 100, SYN, ""));
+        reassembler.add(makeSegment(true, 105, ACK, "0506"));
+        reassembler.add(makeSegment(true, 103, ACK, "0304"));
+        assertEquals(4, reassembler.getMemoryUsed());
+        assertTrue(events.isEmpty());
+        reassembler.add(makeSegment(true, 101, ACK, "0102"));
+        assertEquals(0, reassembler.getMemoryUsed());
+        assertEquals("[4096:0102, 4096:0304, 4096:0506]",
+            events.toString());
+    }
+
+    @Test
+    public void testWraparound() throws ParseException {
+        TcpReassembler reassembler = new TcpReassembler(listener, logger);
+        reassembler.add(makeSegment(true, 0xfffffffd, SYN, ""));
+        reassembler.add(makeSegment(true, 0x00000000, ACK, "0304"));
+        reassembler.add(makeSegment(true, 0xfffffffe, ACK, "0102"));
+        assertEquals("[4096:0102, 4096:0304]", events.toString());
+    }
+
+    @Test
+    public void testRetransmission() throws ParseException {
+        TcpReassembler reassembler = new TcpReassembler(listener, logger);
+        reassembler.add(makeSegment(true, 100, SYN, ""));
+        reassembler.add(makeSegment(true, 101, ACK, "01020304"));
+        reassembler.add(makeSegment(true, 101, ACK, "01020304"));
+        reassembler.add(makeSegment(true, 103, ACK, "03040506"));
+        assertEquals("[4096:01020304, 4096:0506]", events.toString());
+        assertTrue(findings.isEmpty());
+    }
+
+    @Test
+    public void testInconsistentOverlap() throws ParseException {
+        TcpReassembler reassembler = new TcpReassembler(listener, logger);
+        reassembler.add(makeSegment(true, 100, SYN, ""));
+        reassembler.add(makeSegment(true, 103, ACK, "0304"));
+        reassembler.add(makeSegment(true, 103, ACK, "ff0405"));
+        reassembler.add(makeSegment(true, 101, ACK, "0102"));
+        assertEquals("[4096:0102, 4096:0304, 4096:05]", events.toString());
+        assertEquals(1, findings.size());
+        assertEquals("Overlapping TCP segments with inconsistent content",
+            findings.get(0));
+    }
+
+    @Test
+    public void testFlowLimit() throws ParseException {
+        TcpReassembler reassembler = new TcpReassembler(listener, logger,
+            TcpReassembler.DEFAULT_TIMEOUT, 4,
+            TcpReassembler.DEFAULT_MEMORY_LIMIT);
+        reassembler.add(makeSegment(true, 100, SYN, ""));
+        reassembler.add(makeSegment(true, 103, ACK, "0304"));
+        reassembler.add(makeSegment(true, 107, ACK, "0708"));
+        assertTrue(events.isEmpty());
+        reassembler.add(makeSegment(true, 109, ACK, "09"));
+        assertEquals("[4096:gap2, 4096:0304]", events.toString());
+        assertEquals(3, reassembler.getMemoryUsed());
+    }
+
+    @Test
+    public void testMemoryLimit() throws ParseException {
+        TcpReassembler reassembler = new TcpReassembler(listener, logger,
+            TcpReassembler.DEFAULT_TIMEOUT, 0x10000, 2);
+        reassembler.add(makeSegment(true, 100, SYN, ""));
+        reassembler.add(makeSegment(true, 103, ACK, "0304"));
+        assertTrue(events.isEmpty());
+        reassembler.add(makeSegment(false, 500, SYN | ACK, ""));
+        reassembler.add(makeSegment(false, 502, ACK, "02"));
+        assertEquals("[4096:gap2, 4096:0304, 80:gap1, 80:02]",
+            events.toString());
+        assertEquals(0, reassembler.getMemoryUsed());
+    }
+
+    @Test
+    public void testReset() throws ParseException {
+        TcpReassembler reassembler = new TcpReassembler(listener, logger);
+        reassembler.add(makeSegment(true, 100, SYN, ""));
+        reassembler.add(makeSegment(true, 103, ACK, "0304"));
+        reassembler.add(makeSegment(false, 0, RST, ""));
+        assertEquals(0, reassembler.size());
+        assertEquals(0, reassembler.getMemoryUsed());
+        assertEquals("[4096:gap2, 4096:0304, 4096:close, 80:close]",
+            events.toString());
+    }
+
+    @Test
+    public void testFlush() throws ParseException {
+        TcpReassembler reassembler = new TcpReassembler(listener, logger);
+        reassembler.add(makeSegment(true, 100, ACK, "0001"));
+        reassembler.add(makeSegment(true, 104, ACK, "04"));
+        reassembler.flush();
+        assertEquals(0, reassembler.size());
+        assertEquals("[4096:0001, 4096:gap2, 4096:04, 4096:close, " +
+            "80:close]", events.toString());
+    }
+}
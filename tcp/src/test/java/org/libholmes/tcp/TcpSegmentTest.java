@@ -5,12 +5,17 @@
 
 package org.libholmes.tcp;
 
+import java.io.StringReader;
+import java.io.StringWriter;
+
 import static org.junit.Assert.*;
 import org.junit.Test;
 
 import java.util.List;
 import javax.json.JsonObject;
 import javax.json.JsonArray;
+import javax.json.stream.JsonGenerator;
+import javax.json.Json;
 
 import org.libholmes.HexOctetReader;
 import org.libholmes.ParseException;
@@ -539,4 +544,22 @@ public class TcpSegmentTest {
         assertEquals("12345678", tcpSegment.getPayload().toString());
         assertEquals("12345678", tcpSegment.toJson().getString("payload"));
     }
+
+    @Test
+    public void testWriteJson() throws ParseException {
+        HexOctetReader reader = new HexOctetReader(
+            "4500003c000040004006b7fcc0a80084" +
+            "c0a800eb0050c3c2e89b7d7979d976b4" +
+            "a01216a002b80000020405b40402080a" +
+            "e765064c04829ef001030305");
+        Inet4Datagram inetDatagram = Inet4Datagram.parse(null, reader);
+        TcpSegment tcpSegment = TcpSegment.parse(inetDatagram,
+            inetDatagram.getPayload());
+        StringWriter out = new StringWriter();
+        try (JsonGenerator generator = Json.createGenerator(out)) {
+            tcpSegment.writeJson(generator);
+        }
+        assertEquals(tcpSegment.toJson(), Json.createReader(
+            new StringReader(out.toString())).readObject());
+    }
 }
@@ -6,10 +6,13 @@
 package org.libholmes.udp;
 
 import javax.json.JsonObjectBuilder;
+import javax.json.stream.JsonGenerator;
 
 import org.libholmes.OctetReader;
 import org.libholmes.OctetString;
+import org.libholmes.OctetWindow;
 import org.libholmes.Artefact;
+import org.libholmes.JsonProjection;
 import org.libholmes.ParseException;
 import org.libholmes.inet.InetChecksum;
 import org.libholmes.inet.InetAddress;
@@ -23,6 +26,12 @@ public class UdpDatagram extends Artefact {
     /** The undecoded header. */
     private final OctetString header;
 
+    /** A window onto the undecoded header, for reading header fields.
+     * The bounds of the header are validated once, when the window is
+     * created, rather than each time a field is read.
+     */
+    private final OctetWindow headerWindow;
+
     /** The undecoded payload. */
     private final OctetString payload;
 
@@ -36,6 +45,7 @@ public class UdpDatagram extends Artefact {
 
         super(parent);
         this.header = reader.readOctetString(8);
+        this.headerWindow = this.header.getWindow();
         int length = this.getLength();
         if (length < 8) {
             throw new ParseException(
@@ -69,14 +79,14 @@ public class UdpDatagram extends Artefact {
      * @return the source port
      */
     public final int getSrcPort() {
-        return header.getShort(0) & 0xffff;
+        return headerWindow.getShort(0) & 0xffff;
     }
 
     /** Get destination port.
      * @return the destination port
      */
     public final int getDstPort() {
-        return header.getShort(2) & 0xffff;
+        return headerWindow.getShort(2) & 0xffff;
     }
 
     /** Get source socket address.
@@ -97,7 +107,7 @@ public class UdpDatagram extends Artefact {
      * @return the length, in octets
      */
     public final int getLength() {
-        return header.getShort(4) & 0xffff;
+        return headerWindow.getShort(4) & 0xffff;
     }
 
     /** Get the recorded checksum.
@@ -106,7 +116,7 @@ public class UdpDatagram extends Artefact {
      * @return the recorded checksum
      */
     public final int getRecordedChecksum() {
-        return header.getShort(6) & 0xffff;
+        return headerWindow.getShort(6) & 0xffff;
     }
 
     /** Get the calculated checksum.
@@ -132,12 +142,55 @@ public class UdpDatagram extends Artefact {
 
     @Override
     public final void buildJson(JsonObjectBuilder builder) {
-        builder.add("srcPort", getSrcPort());
-        builder.add("dstPort", getDstPort());
-        builder.add("length", getLength());
-        builder.add("recordedChecksum", getRecordedChecksum());
-        builder.add("calculatedChecksum", getCalculatedChecksum());
-        builder.add("payload", payload.toString());
+        buildJson(builder, JsonProjection.FULL);
+    }
+
+    @Override
+    protected final void buildJson(JsonObjectBuilder builder,
+        JsonProjection projection) {
+
+        if (projection.includes(this, "srcPort")) {
+            builder.add("srcPort", getSrcPort());
+        }
+        if (projection.includes(this, "dstPort")) {
+            builder.add("dstPort", getDstPort());
+        }
+        if (projection.includes(this, "length")) {
+            builder.add("length", getLength());
+        }
+        if (projection.includes(this, "recordedChecksum")) {
+            builder.add("recordedChecksum", getRecordedChecksum());
+        }
+        if (projection.includesDerived(this, "calculatedChecksum")) {
+            builder.add("calculatedChecksum", getCalculatedChecksum());
+        }
+        if (projection.includesDerived(this, "payload")) {
+            builder.add("payload", projection.encode(payload));
+        }
+    }
+
+    @Override
+    protected final void generateJson(JsonGenerator generator,
+        JsonProjection projection) {
+
+        if (projection.includes(this, "srcPort")) {
+            generator.write("srcPort", getSrcPort());
+        }
+        if (projection.includes(this, "dstPort")) {
+            generator.write("dstPort", getDstPort());
+        }
+        if (projection.includes(this, "length")) {
+            generator.write("length", getLength());
+        }
+        if (projection.includes(this, "recordedChecksum")) {
+            generator.write("recordedChecksum", getRecordedChecksum());
+        }
+        if (projection.includesDerived(this, "calculatedChecksum")) {
+            generator.write("calculatedChecksum", getCalculatedChecksum());
+        }
+        if (projection.includesDerived(this, "payload")) {
+            generator.write("payload", projection.encode(payload));
+        }
     }
 
     /** Parse UDP datagram from an OctetReader.
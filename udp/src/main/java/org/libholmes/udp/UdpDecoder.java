@@ -0,0 +1,50 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.udp;
+
+import org.libholmes.OctetString;
+import org.libholmes.Artefact;
+import org.libholmes.Decoder;
+import org.libholmes.DecoderRegistry;
+import org.libholmes.ParseException;
+import org.libholmes.inet.InetDatagram;
+
+/** A decoder for UDP datagrams.
+ * The payload is dispatched by destination port, or failing that by
+ * source port.
+ */
+public final class UdpDecoder implements Decoder {
+    /** The IP protocol number for UDP. */
+    public static final int PROTOCOL_UDP = 17;
+
+    /** The shared instance of this decoder. */
+    private static final UdpDecoder INSTANCE = new UdpDecoder();
+
+    /** Construct UdpDecoder. */
+    private UdpDecoder() {}
+
+    @Override
+    public Artefact decode(DecoderRegistry registry, Artefact parent,
+        OctetString content, int depth) throws ParseException {
+
+        if (!(parent instanceof InetDatagram)) {
+            throw new ParseException(
+                "UDP must be carried within an IP datagram");
+        }
+        UdpDatagram udp = UdpDatagram.parse((InetDatagram) parent, content);
+        return registry.decodePorts(DecoderRegistry.UDP_PORT,
+            udp.getSrcPort(), udp.getDstPort(), udp, udp.getPayload(),
+            depth);
+    }
+
+    /** Register this decoder.
+     * @param registry the registry
+     */
+    public static void register(DecoderRegistry registry) {
+        registry.register(DecoderRegistry.IP_PROTOCOL, PROTOCOL_UDP,
+            INSTANCE);
+    }
+}
@@ -5,12 +5,18 @@
 
 package org.libholmes.udp;
 
+import java.io.StringReader;
+import java.io.StringWriter;
+
 import static org.junit.Assert.*;
 import org.junit.Test;
 
 import javax.json.JsonObject;
+import javax.json.stream.JsonGenerator;
+import javax.json.Json;
 
 import org.libholmes.HexOctetReader;
+import org.libholmes.JsonProjection;
 import org.libholmes.ParseException;
 import org.libholmes.inet.Inet4Datagram;
 
@@ -44,4 +50,51 @@ public class UdpDatagramTest {
         assertEquals(0xaef1, udpJson.getInt("calculatedChecksum"));
         assertEquals("74657374", udpJson.getString("payload"));
     }
+
+    @Test
+    public void testWriteJson() throws ParseException {
+        HexOctetReader reader = new HexOctetReader(
+            "45000020f99340004011be75c0a80088" +
+            "c0a800ebb60d3039000caef174657374");
+        Inet4Datagram inetDatagram = Inet4Datagram.parse(null, reader);
+        UdpDatagram udpDatagram = UdpDatagram.parse(inetDatagram,
+            inetDatagram.getPayload());
+        StringWriter out = new StringWriter();
+        try (JsonGenerator generator = Json.createGenerator(out)) {
+            udpDatagram.writeJson(generator);
+        }
+        assertEquals(udpDatagram.toJson(), Json.createReader(
+            new StringReader(out.toString())).readObject());
+    }
+
+    @Test
+    public void testProjection() throws ParseException {
+        HexOctetReader reader = new HexOctetReader(
+            "45000020f99340004011be75c0a80088" +
+            "c0a800ebb60d3039000caef174657374");
+        Inet4Datagram inetDatagram = Inet4Datagram.parse(null, reader);
+        UdpDatagram udpDatagram = UdpDatagram.parse(inetDatagram,
+            inetDatagram.getPayload());
+
+        JsonObject json0 = udpDatagram.toJson(JsonProjection.DEFAULT);
+        assertEquals(46605, json0.getInt("srcPort"));
+        assertFalse(json0.containsKey("calculatedChecksum"));
+        assertFalse(json0.containsKey("payload"));
+
+        JsonProjection projection = JsonProjection.DEFAULT
+            .include(UdpDatagram.class, "dstPort", "payload")
+            .withPayloadLimit(2)
+            .withPayloadEncoding(JsonProjection.BASE64);
+        JsonObject json1 = udpDatagram.toJson(projection);
+        assertEquals(2, json1.size());
+        assertEquals(12345, json1.getInt("dstPort"));
+        assertEquals("dGU=", json1.getString("payload"));
+
+        StringWriter out = new StringWriter();
+        try (JsonGenerator generator = Json.createGenerator(out)) {
+            udpDatagram.writeJson(generator, projection);
+        }
+        assertEquals(json1, Json.createReader(
+            new StringReader(out.toString())).readObject());
+    }
 }
@@ -0,0 +1,55 @@
+// This file is part of libholmes.
+// Copyright 2019 Graham Shaw.
+// Distribution and modification are permitted within the terms of the
+// GNU General Public License (version 3 or any later version).
+
+package org.libholmes.udp;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import org.libholmes.Artefact;
+import org.libholmes.DecoderRegistry;
+import org.libholmes.HexOctetString;
+import org.libholmes.ParseException;
+import org.libholmes.inet.Inet4Datagram;
+import org.libholmes.inet.Inet4Decoder;
+
+public class UdpDecoderTest {
+    // IPv4 10.0.0.2 to 10.0.0.1, UDP port 5353 to 53, empty payload.
+    private static final String datagram =
+        "4500001c00010000401100000a0000020a00000114e9003500080000";
+
+    @Test
+    public void testDecode() throws ParseException {
+        DecoderRegistry registry = new DecoderRegistry();
+        Inet4Decoder.register(registry);
+        UdpDecoder.register(registry);
+
+        Artefact artefact = registry.decodeFrame(null,
+            Inet4Decoder.LINKTYPE_RAW, new HexOctetString(datagram));
+        assertTrue(artefact instanceof UdpDatagram);
+        UdpDatagram udp = (UdpDatagram) artefact;
+        assertEquals(5353, udp.getSrcPort());
+        assertEquals(53, udp.getDstPort());
+        assertTrue(udp.getParent() instanceof Inet4Datagram);
+
+        artefact = registry.decodeFrame(null, Inet4Decoder.LINKTYPE_RAW,
+            new HexOctetString(datagram), 1);
+        assertTrue(artefact instanceof Inet4Datagram);
+    }
+
+    @Test
+    public void testDecodeRawIpv6() throws ParseException {
+        DecoderRegistry registry = new DecoderRegistry();
+        Inet4Decoder.register(registry);
+        UdpDecoder.register(registry);
+
+        // IPv6 ::1 to ::1, UDP port 5353 to 53, empty payload.
+        String ipv6 = "6000000000081140" +
+            "00000000000000000000000000000001" +
+            "00000000000000000000000000000001" + "14e9003500080000";
+        assertNull(registry.decodeFrame(null, Inet4Decoder.LINKTYPE_RAW,
+            new HexOctetString(ipv6)));
+    }
+}